@@ -0,0 +1,96 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.integration;
+
+import java.util.concurrent.TimeUnit;
+import org.codebrewer.dump1090processor.basestation.integration.RingBufferChannel.WaitStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.integration.channel.AbstractSubscribableChannel;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+
+/**
+ * Benchmarks for handing messages from a single sending thread to partitioned worker threads,
+ * through the queues of a {@link PartitionedChannel} and through the ring of a
+ * {@link RingBufferChannel} using each of its wait strategies.
+ *
+ * <p>Messages are created once, so that the benchmark measures only the cost of the handoff. Run
+ * using {@code ./gradlew jmh}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class ChannelHandoffBenchmark {
+  private static final int PARTITION_COUNT = 2;
+  private static final int CAPACITY = 4096;
+  private static final int MESSAGE_COUNT = 1024;
+
+  @Param({"PARTITIONED", "BUSY_SPIN", "YIELD", "BLOCKING"})
+  public String channelType;
+
+  private AbstractSubscribableChannel channel;
+  private Message<?>[] messages;
+  private int index;
+
+  @Setup
+  public void setUp() {
+    if ("PARTITIONED".equals(channelType)) {
+      channel = new PartitionedChannel(PARTITION_COUNT, CAPACITY / PARTITION_COUNT, this::keyOf);
+    } else {
+      channel = new RingBufferChannel(
+          PARTITION_COUNT, CAPACITY, WaitStrategy.valueOf(channelType), this::keyOf);
+    }
+
+    final Blackhole blackhole = new Blackhole(
+        "Today's password is swordfish. I understand instantiating Blackholes directly is"
+            + " dangerous.");
+
+    channel.setBeanName("handoff");
+    channel.subscribe(blackhole::consume);
+    channel.afterPropertiesSet();
+    messages = new Message<?>[MESSAGE_COUNT];
+
+    for (int i = 0; i < MESSAGE_COUNT; i++) {
+      messages[i] = new GenericMessage<>(i);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    channel.destroy();
+  }
+
+  private int keyOf(Message<?> message) {
+    return (Integer) message.getPayload();
+  }
+
+  @Benchmark
+  public boolean send() {
+    index = (index + 1) & (MESSAGE_COUNT - 1);
+
+    return channel.send(messages[index]);
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.codebrewer.dump1090processor.basestation.domain.TransmissionType;
+
+/**
+ * A corpus of BaseStation messages for benchmarks, modelled on the output of dump1090.
+ *
+ * <p>A corpus holds either messages of a single transmission type or, for {@link #MIXED}, a mix of
+ * message types in roughly the proportions seen from a receiver with a view of busy airspace.
+ */
+final class BaseStationCorpus {
+  /**
+   * The name of the corpus holding a realistic mix of message types.
+   */
+  static final String MIXED = "MIXED";
+
+  private static final int SIZE = 1024;
+  private static final long SEED = 0x1090L;
+
+  private static final String[] ICAO_ADDRESSES = {
+      "4CA2D6", "400981", "48C22B", "40066B", "405637", "45D967", "405FD4", "39C494", "4075FD",
+      "4CA7B9", "3C6586", "4B1A2C", "A1B2C3", "~4075FD", "896C4E", "06A0A4"
+  };
+
+  // Each sample is a message of the given transmission type, with {a} standing for an ICAO address
+  // and {t} for the generated and logged dates and times, weighted by its share of real traffic
+  //
+  private static final Sample[] SAMPLES = {
+      new Sample(TransmissionType.IDENTIFICATION_AND_CATEGORY, 3,
+          "MSG,1,1,1,{a},1,{t},BCS2135 ,,,,,,,,,,,"),
+      new Sample(TransmissionType.SURFACE_POSITION, 1,
+          "MSG,2,1,1,{a},1,{t},,0,12.0,271.0,55.95252,-3.36499,,,,,,-1"),
+      new Sample(TransmissionType.AIRBORNE_POSITION, 26,
+          "MSG,3,1,1,{a},1,{t},,39000,,,56.37831,-2.75441,,,0,0,0,0"),
+      new Sample(TransmissionType.AIRBORNE_VELOCITY, 24,
+          "MSG,4,1,1,{a},1,{t},,,465.0,41.1,,,-64,,,,,0"),
+      new Sample(TransmissionType.SURVEILLANCE_ALTITUDE, 18,
+          "MSG,5,1,1,{a},1,{t},,8375,,,,,,,0,,0,0"),
+      new Sample(TransmissionType.SURVEILLANCE_ID, 5,
+          "MSG,6,1,1,{a},1,{t},,16475,,,,,,2726,0,0,0,0"),
+      new Sample(TransmissionType.AIR_TO_AIR, 14,
+          "MSG,7,1,1,{a},1,{t},,16475,,,,,,,,,,0"),
+      new Sample(TransmissionType.ALL_CALL_REPLY, 9,
+          "MSG,8,1,1,{a},1,{t},,,,,,,,,,,,0"),
+  };
+
+  private BaseStationCorpus() {
+  }
+
+  private static String timestamps(int index) {
+    final String date = "2019/05/11";
+    final String time =
+        String.format("22:%02d:%02d.%03d", index / 60 % 60, index % 60, index * 37 % 1000);
+
+    return date + ',' + time + ',' + date + ',' + time;
+  }
+
+  /**
+   * Gets the message texts of a corpus.
+   *
+   * @param name the name of a {@link TransmissionType}, or {@link #MIXED}
+   *
+   * @return the message texts of the corpus, in a fixed pseudo-random order
+   */
+  static String[] texts(String name) {
+    final List<Sample> samples = new ArrayList<>();
+
+    for (Sample sample : SAMPLES) {
+      if (MIXED.equals(name)) {
+        for (int i = 0; i < sample.weight; i++) {
+          samples.add(sample);
+        }
+      } else if (sample.transmissionType.name().equals(name)) {
+        samples.add(sample);
+      }
+    }
+
+    if (samples.isEmpty()) {
+      throw new IllegalArgumentException("Unknown corpus: " + name);
+    }
+
+    final Random random = new Random(SEED);
+    final List<String> texts = new ArrayList<>(SIZE);
+
+    for (int i = 0; i < SIZE; i++) {
+      final Sample sample = samples.get(random.nextInt(samples.size()));
+
+      texts.add(
+          sample.pattern.replace("{a}", ICAO_ADDRESSES[random.nextInt(ICAO_ADDRESSES.length)])
+                        .replace("{t}", timestamps(i)));
+    }
+
+    Collections.shuffle(texts, random);
+
+    return texts.toArray(new String[0]);
+  }
+
+  /**
+   * Gets the message texts of a corpus, encoded as they are received from the feed.
+   *
+   * @param name the name of a {@link TransmissionType}, or {@link #MIXED}
+   *
+   * @return the message texts of the corpus as US-ASCII bytes, in a fixed pseudo-random order
+   */
+  static byte[][] bytes(String name) {
+    final String[] texts = texts(name);
+    final byte[][] bytes = new byte[texts.length][];
+
+    for (int i = 0; i < texts.length; i++) {
+      bytes[i] = texts[i].getBytes(StandardCharsets.US_ASCII);
+    }
+
+    return bytes;
+  }
+
+  private static final class Sample {
+    private final TransmissionType transmissionType;
+    private final int weight;
+    private final String pattern;
+
+    private Sample(TransmissionType transmissionType, int weight, String pattern) {
+      this.transmissionType = transmissionType;
+      this.weight = weight;
+      this.pattern = pattern;
+    }
+  }
+}
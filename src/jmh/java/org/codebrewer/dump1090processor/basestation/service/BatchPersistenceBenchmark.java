@@ -0,0 +1,107 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
+import org.codebrewer.dump1090processor.basestation.repository.BaseStationMessageRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks for persisting BaseStation messages in batches to a database that takes a fixed time
+ * to write each batch, comparing a single platform thread writing one batch at a time with
+ * batches written concurrently on platform threads and on virtual threads.
+ *
+ * <p>Virtual threads are only used when the benchmark is run on a JVM that supports them, such as
+ * by {@code ./gradlew jmh -Dorg.gradle.java.home=/path/to/jdk21}, and are otherwise replaced by
+ * platform threads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class BatchPersistenceBenchmark {
+  private static final int MESSAGE_COUNT = 20_000;
+  private static final int BATCH_SIZE = 100;
+  private static final long WRITE_MILLIS = 2L;
+
+  @Param({"PLATFORM_SINGLE", "PLATFORM_CONCURRENT", "VIRTUAL_CONCURRENT"})
+  public String threadModel;
+
+  @Param({"16"})
+  public int concurrency;
+
+  private BaseStationMessage message;
+  private MessageBatchPersistenceService persistenceService;
+
+  private static BaseStationMessageRepository slowRepository() {
+    return (BaseStationMessageRepository) Proxy.newProxyInstance(
+        BaseStationMessageRepository.class.getClassLoader(),
+        new Class<?>[] {BaseStationMessageRepository.class},
+        (proxy, method, args) -> {
+          if ("saveAll".equals(method.getName())) {
+            Thread.sleep(WRITE_MILLIS);
+
+            return args[0];
+          }
+
+          throw new UnsupportedOperationException(method.getName());
+        });
+  }
+
+  @Setup(Level.Trial)
+  public void setUpTrial() {
+    message = new MessageParsingService().parseCsvMessageText(
+        "MSG,3,1,1,4CA2D6,1,2021/01/01,12:00:00.000,2021/01/01,12:00:00.000,,39000,,,"
+            + "56.37831,-2.75441,,,0,0,0,0");
+  }
+
+  @Setup(Level.Invocation)
+  public void setUpInvocation() {
+    persistenceService = new MessageBatchPersistenceService(
+        slowRepository(),
+        BATCH_SIZE,
+        1L,
+        MESSAGE_COUNT,
+        "PLATFORM_SINGLE".equals(threadModel) ? 1 : concurrency,
+        1,
+        0L,
+        "VIRTUAL_CONCURRENT".equals(threadModel),
+        new PipelineMetrics(new SimpleMeterRegistry()));
+    persistenceService.start();
+  }
+
+  @Benchmark
+  public long persistMessages() throws InterruptedException {
+    for (int i = 0; i < MESSAGE_COUNT; i++) {
+      persistenceService.persist(message);
+    }
+
+    persistenceService.stop();
+
+    return persistenceService.getPersistedMessageCount();
+  }
+}
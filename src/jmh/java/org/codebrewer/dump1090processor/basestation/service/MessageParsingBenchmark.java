@@ -0,0 +1,92 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.TimeUnit;
+import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks for parsing BaseStation messages, from text and from the bytes received from the
+ * feed, for each transmission type and for a realistic mix of message types.
+ *
+ * <p>Run using {@code ./gradlew jmh}, which also reports the bytes allocated per operation
+ * ({@code gc.alloc.rate.norm}) using the GC profiler.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class MessageParsingBenchmark {
+  @Param({
+      BaseStationCorpus.MIXED,
+      "IDENTIFICATION_AND_CATEGORY",
+      "SURFACE_POSITION",
+      "AIRBORNE_POSITION",
+      "AIRBORNE_VELOCITY",
+      "SURVEILLANCE_ALTITUDE",
+      "SURVEILLANCE_ID",
+      "AIR_TO_AIR",
+      "ALL_CALL_REPLY"
+  })
+  public String corpus;
+
+  private final MessageParsingService messageParsingService = new MessageParsingService();
+  private final MessagePayloadTransformerService messagePayloadTransformerService =
+      new MessagePayloadTransformerService(
+          messageParsingService,
+          new ByteMessageParsingService(),
+          new PipelineMetrics(new SimpleMeterRegistry()));
+
+  private String[] texts;
+  private byte[][] bytes;
+  private int index;
+
+  @Setup
+  public void setUp() {
+    texts = BaseStationCorpus.texts(corpus);
+    bytes = BaseStationCorpus.bytes(corpus);
+  }
+
+  private int nextIndex() {
+    index = (index + 1) & (texts.length - 1);
+
+    return index;
+  }
+
+  @Benchmark
+  public BaseStationMessage parseCsvMessageText() {
+    return messageParsingService.parseCsvMessageText(texts[nextIndex()]);
+  }
+
+  @Benchmark
+  public BaseStationMessage transformPayloadFromBytes() {
+    return messagePayloadTransformerService.transformPayload(bytes[nextIndex()]);
+  }
+
+  @Benchmark
+  public BaseStationMessage transformPayloadFromString() {
+    return messagePayloadTransformerService.transformPayload(texts[nextIndex()]);
+  }
+}
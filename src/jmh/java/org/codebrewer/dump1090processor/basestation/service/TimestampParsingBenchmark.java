@@ -0,0 +1,98 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks for parsing the date and time of BaseStation messages, comparing the formatter-based
+ * parsing used as a fallback with the {@link TimestampDecoder} used for well-formed input.
+ *
+ * <p>Run using {@code ./gradlew jmh}, which also reports the bytes allocated per operation
+ * ({@code gc.alloc.rate.norm}) using the GC profiler.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class TimestampParsingBenchmark {
+  private static final int DATE_FIELD_INDEX = 6;
+  private static final int TIME_FIELD_INDEX = 7;
+
+  private final MessageParsingService messageParsingService = new MessageParsingService();
+  private final TimestampDecoder timestampDecoder = new TimestampDecoder(ZoneId.systemDefault());
+
+  private String[] dates;
+  private String[] times;
+  private byte[][] bytes;
+  private int index;
+
+  @Setup
+  public void setUp() {
+    final String[] texts = BaseStationCorpus.texts(BaseStationCorpus.MIXED);
+
+    dates = new String[texts.length];
+    times = new String[texts.length];
+    bytes = new byte[texts.length][];
+
+    for (int i = 0; i < texts.length; i++) {
+      final String[] fields = texts[i].split(",", -1);
+
+      dates[i] = fields[DATE_FIELD_INDEX];
+      times[i] = fields[TIME_FIELD_INDEX];
+      bytes[i] = (dates[i] + ',' + times[i]).getBytes(StandardCharsets.US_ASCII);
+    }
+  }
+
+  private int nextIndex() {
+    index = (index + 1) & (dates.length - 1);
+
+    return index;
+  }
+
+  @Benchmark
+  public Instant parseTimestamp() {
+    final int i = nextIndex();
+
+    return messageParsingService.parseTimestamp(dates[i], times[i]);
+  }
+
+  @Benchmark
+  public Instant parseTimestampWithFormatter() {
+    final int i = nextIndex();
+
+    return MessageParsingService.parseTimestamp(dates[i], times[i], ZoneId.systemDefault());
+  }
+
+  @Benchmark
+  public Instant decodeTimestampFromBytes() {
+    final int i = nextIndex();
+    final byte[] timestamp = bytes[i];
+    final int dateEnd = dates[i].length();
+
+    return timestampDecoder.decode(timestamp, 0, dateEnd, dateEnd + 1, timestamp.length);
+  }
+}
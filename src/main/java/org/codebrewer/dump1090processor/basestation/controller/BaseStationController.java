@@ -5,10 +5,16 @@ import java.util.List;
 
 import org.codebrewer.dump1090processor.basestation.entity.Aircraft;
 import org.codebrewer.dump1090processor.basestation.repository.AircraftRepository;
+import org.codebrewer.dump1090processor.basestation.service.AircraftChanges;
+import org.codebrewer.dump1090processor.basestation.service.AircraftStateService;
+import org.codebrewer.dump1090processor.basestation.service.AircraftStreamService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @RestController
 @RequestMapping("aircraft")
@@ -18,21 +24,24 @@ public class BaseStationController {
 
     private final AircraftRepository aircraftRepository;
 
+    private final AircraftStateService aircraftStateService;
+
+    private final AircraftStreamService aircraftStreamService;
+
     @Autowired
-    public BaseStationController(AircraftRepository aircraftRepository) {
+    public BaseStationController(AircraftRepository aircraftRepository, AircraftStateService aircraftStateService,
+            AircraftStreamService aircraftStreamService) {
         super();
         this.aircraftRepository = aircraftRepository;
+        this.aircraftStateService = aircraftStateService;
+        this.aircraftStreamService = aircraftStreamService;
     }
 
     @GetMapping("/all")
     List<Aircraft> getAllAircraft() {
-        List<Aircraft> result = new ArrayList<>();
-
         long tov = System.currentTimeMillis() - STALE_MILLIS;
 
-        aircraftRepository.findAllByTovGreaterThan(tov).forEach(result::add);
-
-        return result;
+        return aircraftStateService.getAircraftSeenSince(tov);
     }
 
     @GetMapping("/stale")
@@ -44,4 +53,27 @@ public class BaseStationController {
         return result;
     }
 
+    /**
+     * Gets the aircraft added, updated or removed since a given version.
+     *
+     * @param since the version returned by the previous request, or zero to get all aircraft
+     * @return the changes since the given version, including the version to pass in the next
+     *         request
+     */
+    @GetMapping("/changes")
+    AircraftChanges getAircraftChanges(@RequestParam(name = "since", defaultValue = "0") long since) {
+        return aircraftStateService.getChangesSince(since);
+    }
+
+    /**
+     * Streams live aircraft state as Server-Sent Events: a snapshot of all aircraft followed by
+     * periodic sets of changes.
+     *
+     * @return an emitter for the stream
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    SseEmitter streamAircraft() {
+        return aircraftStreamService.subscribe();
+    }
+
 }
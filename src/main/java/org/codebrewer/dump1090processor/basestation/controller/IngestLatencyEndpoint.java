@@ -0,0 +1,62 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.controller;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.codebrewer.dump1090processor.basestation.service.IngestLatencyService;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * An actuator endpoint, at {@code /actuator/ingestlatency}, reporting the time taken for
+ * BaseStation messages to become visible in the state of aircraft, as tracked by
+ * {@link IngestLatencyService}.
+ */
+@Component
+@Endpoint(id = "ingestlatency")
+public class IngestLatencyEndpoint {
+  private final IngestLatencyService ingestLatencyService;
+
+  /**
+   * Sole constructor for this class.
+   *
+   * @param ingestLatencyService the service tracking the time taken for messages to become visible
+   */
+  public IngestLatencyEndpoint(IngestLatencyService ingestLatencyService) {
+    this.ingestLatencyService = ingestLatencyService;
+  }
+
+  /**
+   * Gets the latency distribution of the messages read from each feed and the most recently
+   * sampled lagging messages.
+   *
+   * @return the latency distribution of each feed and the sampled lagging messages
+   */
+  @ReadOperation
+  public Map<String, Object> ingestLatency() {
+    final Map<String, Object> ingestLatency = new LinkedHashMap<>();
+
+    ingestLatency.put("lagThresholdMillis", ingestLatencyService.getLagThresholdMillis());
+    ingestLatency.put("laggingMessageCount", ingestLatencyService.getLaggingMessageCount());
+    ingestLatency.put("feeds", ingestLatencyService.getFeedLatencies());
+    ingestLatency.put("laggingMessages", ingestLatencyService.getLaggingMessageSamples());
+
+    return ingestLatency;
+  }
+}
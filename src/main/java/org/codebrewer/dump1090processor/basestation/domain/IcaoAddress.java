@@ -0,0 +1,180 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.domain;
+
+/**
+ * Utility methods for converting between the textual and integer representations of the 24 bit
+ * addresses that identify aircraft transponders.
+ *
+ * <p>In messages, an address is a 6 digit hexadecimal number, prefixed by '~' when {@code dump1090}
+ * has derived it from a non-ICAO source (such as a TIS-B message). The integer representation holds
+ * the address in its low 24 bits, with {@link #NON_ICAO_FLAG} set for addresses having the prefix,
+ * so that every valid address maps to a distinct non-negative int.
+ */
+public class IcaoAddress {
+  /**
+   * The bit set in the integer representation of an address that did not come from an ICAO
+   * transponder.
+   */
+  public static final int NON_ICAO_FLAG = 1 << 24;
+
+  /**
+   * The value returned by the parsing methods of this class for text that is not a valid address.
+   */
+  public static final int INVALID = -1;
+
+  private static final char NON_ICAO_PREFIX = '~';
+  private static final int DIGIT_COUNT = 6;
+  private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+  private static int hexDigitValue(int c) {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    } else if (c >= 'A' && c <= 'F') {
+      return c - 'A' + 10;
+    } else if (c >= 'a' && c <= 'f') {
+      return c - 'a' + 10;
+    }
+
+    return -1;
+  }
+
+  /**
+   * Parses the textual representation of an address.
+   *
+   * @param text a 6 digit hexadecimal number, optionally prefixed by '~', null is invalid
+   *
+   * @return the integer representation of the address, or {@link #INVALID} if the text is not a
+   * valid address
+   */
+  public static int parse(CharSequence text) {
+    if (text == null) {
+      return INVALID;
+    }
+
+    final int length = text.length();
+    final boolean nonIcao = length == DIGIT_COUNT + 1 && text.charAt(0) == NON_ICAO_PREFIX;
+
+    if (length != DIGIT_COUNT && !nonIcao) {
+      return INVALID;
+    }
+
+    int address = 0;
+
+    for (int i = length - DIGIT_COUNT; i < length; i++) {
+      final int digit = hexDigitValue(text.charAt(i));
+
+      if (digit < 0) {
+        return INVALID;
+      }
+
+      address = address << 4 | digit;
+    }
+
+    return nonIcao ? address | NON_ICAO_FLAG : address;
+  }
+
+  /**
+   * Parses the US-ASCII encoded textual representation of an address held in a byte array.
+   *
+   * @param bytes an array holding the address, not null
+   * @param start the offset of the first byte of the address
+   * @param end the offset after the last byte of the address
+   *
+   * @return the integer representation of the address, or {@link #INVALID} if the bytes are not a
+   * valid address
+   */
+  public static int parse(byte[] bytes, int start, int end) {
+    final int length = end - start;
+    final boolean nonIcao = length == DIGIT_COUNT + 1 && bytes[start] == NON_ICAO_PREFIX;
+
+    if (length != DIGIT_COUNT && !nonIcao) {
+      return INVALID;
+    }
+
+    int address = 0;
+
+    for (int i = end - DIGIT_COUNT; i < end; i++) {
+      final int digit = hexDigitValue(bytes[i]);
+
+      if (digit < 0) {
+        return INVALID;
+      }
+
+      address = address << 4 | digit;
+    }
+
+    return nonIcao ? address | NON_ICAO_FLAG : address;
+  }
+
+  /**
+   * Formats the integer representation of an address as text.
+   *
+   * @param address the integer representation of an address, as returned by the parsing methods
+   * of this class
+   *
+   * @return the address as a 6 digit upper-case hexadecimal number, prefixed by '~' if the address
+   * did not come from an ICAO transponder
+   *
+   * @throws IllegalArgumentException if {@code address} is not a valid integer representation
+   */
+  public static String format(int address) {
+    if (!isValid(address)) {
+      throw new IllegalArgumentException(String.format("Invalid ICAO address: %d", address));
+    }
+
+    final boolean nonIcao = isNonIcao(address);
+    final char[] chars = new char[nonIcao ? DIGIT_COUNT + 1 : DIGIT_COUNT];
+
+    if (nonIcao) {
+      chars[0] = NON_ICAO_PREFIX;
+    }
+
+    for (int i = chars.length - 1, shift = 0; shift < 24; i--, shift += 4) {
+      chars[i] = HEX_DIGITS[address >>> shift & 0xF];
+    }
+
+    return new String(chars);
+  }
+
+  /**
+   * Indicates whether or not an int is a valid integer representation of an address.
+   *
+   * @param address an int
+   *
+   * @return true if {@code address} could be returned by the parsing methods of this class for
+   * a valid address, otherwise false
+   */
+  public static boolean isValid(int address) {
+    return (address & ~(NON_ICAO_FLAG | 0xFFFFFF)) == 0;
+  }
+
+  /**
+   * Indicates whether or not an address did not come from an ICAO transponder.
+   *
+   * @param address the integer representation of an address
+   *
+   * @return true if the address was derived from a non-ICAO source, otherwise false
+   */
+  public static boolean isNonIcao(int address) {
+    return (address & NON_ICAO_FLAG) != 0;
+  }
+
+  private IcaoAddress() {
+    // Utility class
+  }
+}
@@ -1,13 +1,20 @@
 package org.codebrewer.dump1090processor.basestation.entity;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.Transient;
+
+import org.codebrewer.dump1090processor.basestation.domain.IcaoAddress;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 @Entity
 public class Aircraft {
 
     @Id
-    private String icaoAddress;
+    @Column(name = "icao_address")
+    private int icao;
 
     private double latitude;
 
@@ -17,24 +24,59 @@ public class Aircraft {
 
     private String callSign;
 
+    private Float altitude;
+
+    private Float groundSpeed;
+
+    private Float track;
+
+    private Short squawk;
+
+    @Transient
+    private long version;
+
     public Aircraft() {
         super();
     }
 
-    public Aircraft(String icaoAddress, double latitude, double longitude, long tov) {
+    /**
+     * Copy constructor, used to take a snapshot of an aircraft's state.
+     *
+     * @param aircraft the aircraft to copy, not null
+     */
+    public Aircraft(Aircraft aircraft) {
         super();
-        this.icaoAddress = icaoAddress;
+        this.icao = aircraft.icao;
+        this.latitude = aircraft.latitude;
+        this.longitude = aircraft.longitude;
+        this.tov = aircraft.tov;
+        this.callSign = aircraft.callSign;
+        this.altitude = aircraft.altitude;
+        this.groundSpeed = aircraft.groundSpeed;
+        this.track = aircraft.track;
+        this.squawk = aircraft.squawk;
+        this.version = aircraft.version;
+    }
+
+    public Aircraft(int icao, double latitude, double longitude, long tov) {
+        super();
+        this.icao = icao;
         this.latitude = latitude;
         this.longitude = longitude;
         this.tov = tov;
     }
 
-    public String getIcaoAddress() {
-        return icaoAddress;
+    @JsonIgnore
+    public int getIcao() {
+        return icao;
+    }
+
+    public void setIcao(int icao) {
+        this.icao = icao;
     }
 
-    public void setIcaoAddress(String icaoAddress) {
-        this.icaoAddress = icaoAddress;
+    public String getIcaoAddress() {
+        return IcaoAddress.format(icao);
     }
 
     public String getCallSign() {
@@ -69,9 +111,55 @@ public class Aircraft {
         this.tov = tov;
     }
 
+    public Float getAltitude() {
+        return altitude;
+    }
+
+    public void setAltitude(Float altitude) {
+        this.altitude = altitude;
+    }
+
+    public Float getGroundSpeed() {
+        return groundSpeed;
+    }
+
+    public void setGroundSpeed(Float groundSpeed) {
+        this.groundSpeed = groundSpeed;
+    }
+
+    public Float getTrack() {
+        return track;
+    }
+
+    public void setTrack(Float track) {
+        this.track = track;
+    }
+
+    public Short getSquawk() {
+        return squawk;
+    }
+
+    public void setSquawk(Short squawk) {
+        this.squawk = squawk;
+    }
+
+    /**
+     * Gets the version of the most recent change to this aircraft's state, which is held only in
+     * memory.
+     *
+     * @return the version of the most recent change to this aircraft's state
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
-        return "Aircraft [icaoAddress=" + icaoAddress + ", callSign=" + callSign + ", latitude=" + latitude + ", longitude=" + longitude + ", tov=" + tov + "]";
+        return "Aircraft [icaoAddress=" + getIcaoAddress() + ", callSign=" + callSign + ", latitude=" + latitude + ", longitude=" + longitude + ", tov=" + tov + ", altitude=" + altitude + ", groundSpeed=" + groundSpeed + ", track=" + track + ", squawk=" + squawk + "]";
     }
 
 }
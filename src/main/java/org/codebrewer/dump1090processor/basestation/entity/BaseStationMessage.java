@@ -25,6 +25,9 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Inheritance;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Transient;
+import org.codebrewer.dump1090processor.basestation.domain.IcaoAddress;
 
 /**
  * Abstract base class for BaseStation message entities.
@@ -40,19 +43,41 @@ public abstract class BaseStationMessage {
   public static final BaseStationMessage INVALID_MESSAGE = new BaseStationMessage() {
   };
 
+  // Identifiers are allocated in blocks by Hibernate's pooled optimizer so that batches of
+  // messages can be inserted without a sequence query per message
+  //
   @Id
-  @GeneratedValue(strategy = GenerationType.SEQUENCE)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "base_station_message_seq")
+  @SequenceGenerator(
+      name = "base_station_message_seq",
+      sequenceName = "base_station_message_seq",
+      allocationSize = 50)
   private long id;
-  @Column(length = 6, nullable = false)
-  private String icaoAddress;
+
+  // Stored in the integer representation described by IcaoAddress. An ad hoc query wanting the
+  // textual form can render it as, for H2:
+  //
+  //   CASEWHEN(BITAND(icao_address, 16777216) <> 0, '~', '')
+  //     || LPAD(TO_CHAR(BITAND(icao_address, 16777215), 'FMXXXXXX'), 6, '0')
+  //
+  @Column(name = "icao_address", nullable = false)
+  private int icao;
   @Column(nullable = false)
   private Instant timestamp;
 
+  // When this message was received from a feed and parsed, in milliseconds since the epoch, or
+  // zero if not known, for tracking the time taken for the message to be processed
+  //
+  @Transient
+  private long receivedMillis;
+  @Transient
+  private long parsedMillis;
+
   protected BaseStationMessage() {
   }
 
   protected BaseStationMessage(Builder builder) {
-    icaoAddress = builder.icaoAddress;
+    icao = builder.icaoAddress;
     timestamp = builder.creationTimestamp;
   }
 
@@ -60,14 +85,62 @@ public abstract class BaseStationMessage {
     return id;
   }
 
+  /**
+   * Gets the address of the transponder that sent this message.
+   *
+   * @return the 24 bit address assigned by the ICAO to an aircraft transponder, in the integer
+   * representation described by {@link IcaoAddress}
+   */
+  public int getIcao() {
+    return icao;
+  }
+
+  /**
+   * Gets the address of the transponder that sent this message, formatted as text.
+   *
+   * @return the 24 bit address assigned by the ICAO to an aircraft transponder, represented as a 6
+   * digit hexadecimal number
+   */
   public String getIcaoAddress() {
-    return icaoAddress;
+    return IcaoAddress.format(icao);
   }
 
   public Instant getTimestamp() {
     return timestamp;
   }
 
+  /**
+   * Gets when this message was received from a feed, which is not persisted.
+   *
+   * @return the number of milliseconds since the epoch at which this message was received, or zero
+   * if not known
+   */
+  public long getReceivedMillis() {
+    return receivedMillis;
+  }
+
+  /**
+   * Gets when this message was parsed, which is not persisted.
+   *
+   * @return the number of milliseconds since the epoch at which this message was parsed, or zero
+   * if not known
+   */
+  public long getParsedMillis() {
+    return parsedMillis;
+  }
+
+  /**
+   * Records when this message was received from a feed and parsed.
+   *
+   * @param receivedMillis the number of milliseconds since the epoch at which this message was
+   * received, or zero if not known
+   * @param parsedMillis the number of milliseconds since the epoch at which this message was parsed
+   */
+  public void stampIngest(long receivedMillis, long parsedMillis) {
+    this.receivedMillis = receivedMillis;
+    this.parsedMillis = parsedMillis;
+  }
+
   /**
    * Abstract base class for generically building BaseStation message subclasses.
    *
@@ -77,7 +150,7 @@ public abstract class BaseStationMessage {
    * @param <B> the type of builder that builds messages of type {@code <M>}
    */
   static abstract class Builder<M extends BaseStationMessage, B extends Builder<M, B>> {
-    private final String icaoAddress;
+    private final int icaoAddress;
     private final Instant creationTimestamp;
 
     /**
@@ -85,11 +158,16 @@ public abstract class BaseStationMessage {
      * message types.
      *
      * @param icaoAddress the 24 bit address assigned by the ICAO to an aircraft transponder,
-     * represented as a 6 digit hexadecimal number, not null
+     * in the integer representation described by {@code IcaoAddress}
      * @param timestamp the instant at which the message was received, not null
      */
-    Builder(String icaoAddress, Instant timestamp) {
-      this.icaoAddress = Objects.requireNonNull(icaoAddress, "ICAO address is required");
+    Builder(int icaoAddress, Instant timestamp) {
+      if (!IcaoAddress.isValid(icaoAddress)) {
+        throw new IllegalArgumentException(
+            String.format("Invalid ICAO address: %d", icaoAddress));
+      }
+
+      this.icaoAddress = icaoAddress;
       this.creationTimestamp = Objects.requireNonNull(timestamp, "Timestamp is required");
     }
 
@@ -111,7 +189,7 @@ public abstract class BaseStationMessage {
 
 @Override
 public String toString() {
-    return "BaseStationMessage [id=" + id + ", icaoAddress=" + icaoAddress + ", timestamp=" + timestamp + "]";
+    return "BaseStationMessage [id=" + id + ", icaoAddress=" + getIcaoAddress() + ", timestamp=" + timestamp + "]";
 }
 
 
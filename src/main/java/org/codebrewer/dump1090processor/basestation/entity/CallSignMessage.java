@@ -54,10 +54,10 @@ public abstract class CallSignMessage extends BaseStationMessage {
      * message types.
      *
      * @param icaoAddress the 24 bit address assigned by the ICAO to an aircraft transponder,
-     * represented as a 6 digit hexadecimal number, not null
+     * in the integer representation described by {@code IcaoAddress}
      * @param timestamp the instant at which the message was received, not null
      */
-    Builder(String icaoAddress, Instant timestamp) {
+    Builder(int icaoAddress, Instant timestamp) {
       super(icaoAddress, timestamp);
     }
 
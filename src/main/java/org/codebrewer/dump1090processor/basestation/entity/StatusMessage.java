@@ -60,10 +60,10 @@ public class StatusMessage extends BaseStationMessage {
      * message types and to this type.
      *
      * @param icaoAddress the 24 bit address assigned by the ICAO to an aircraft transponder,
-     * represented as a 6 digit hexadecimal number, not null
+     * in the integer representation described by {@code IcaoAddress}
      * @param timestamp the instant at which the message was received, not null
      */
-    public Builder(String icaoAddress, Instant timestamp) {
+    public Builder(int icaoAddress, Instant timestamp) {
       super(icaoAddress, timestamp);
     }
 
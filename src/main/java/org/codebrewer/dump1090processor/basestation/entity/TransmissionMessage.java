@@ -17,29 +17,60 @@
 package org.codebrewer.dump1090processor.basestation.entity;
 
 import java.time.Instant;
+import javax.persistence.Access;
+import javax.persistence.AccessType;
 import javax.persistence.DiscriminatorValue;
 import javax.persistence.Entity;
+import javax.persistence.Transient;
 import org.codebrewer.dump1090processor.basestation.domain.TransmissionType;
 import org.geolatte.geom.G2D;
 import org.geolatte.geom.Point;
 
 /**
  * Class for BaseStation "transmission message" entities.
+ *
+ * <p>Numeric and flag properties are held in primitive fields, with a bitmask recording which of
+ * them have a value, so that parsing a message does not create a wrapper object per property. The
+ * public getters box values on demand (returning null for properties having no value) and are
+ * used by Hibernate to map the properties to the same nullable columns as wrapper-typed fields
+ * would be.
  */
 @Entity
 @DiscriminatorValue(value = "MSG")
 public class TransmissionMessage extends CallSignMessage {
+  // Bits in presentValues recording which properties have a value and, for flags, bits in
+  // flagValues recording whether a flag is set
+  //
+  private static final int ALTITUDE = 1;
+  private static final int GROUND_SPEED = 1 << 1;
+  private static final int TRACK = 1 << 2;
+  private static final int VERTICAL_RATE = 1 << 3;
+  private static final int SQUAWK = 1 << 4;
+  private static final int ALERT = 1 << 5;
+  private static final int EMERGENCY = 1 << 6;
+  private static final int IDENT_ACTIVE = 1 << 7;
+  private static final int ON_GROUND = 1 << 8;
+
+  private static int withFlag(int flagValues, int flag, boolean value) {
+    return value ? flagValues | flag : flagValues & ~flag;
+  }
+
   private TransmissionType transmissionType;
-  private Float altitude;
-  private Float groundSpeed;
-  private Float track;
   private Point<G2D> position;
-  private Short verticalRate;
-  private Short squawk;
-  private Boolean alert;
-  private Boolean emergency;
-  private Boolean identActive;
-  private Boolean onGround;
+  @Transient
+  private float altitude;
+  @Transient
+  private float groundSpeed;
+  @Transient
+  private float track;
+  @Transient
+  private short verticalRate;
+  @Transient
+  private short squawk;
+  @Transient
+  private int presentValues;
+  @Transient
+  private int flagValues;
 
   @SuppressWarnings("unused")
   TransmissionMessage() {
@@ -50,90 +81,185 @@ public class TransmissionMessage extends CallSignMessage {
   private TransmissionMessage(Builder builder) {
     super(builder);
     transmissionType = builder.transmissionType;
+    position = builder.position;
     altitude = builder.altitude;
     groundSpeed = builder.groundSpeed;
     track = builder.track;
-    position = builder.position;
     verticalRate = builder.verticalRate;
     squawk = builder.squawk;
-    alert = builder.alert;
-    emergency = builder.emergency;
-    identActive = builder.identActive;
-    onGround = builder.onGround;
+    presentValues = builder.presentValues;
+    flagValues = builder.flagValues;
+  }
+
+  private boolean isPresent(int property) {
+    return (presentValues & property) != 0;
+  }
+
+  private Boolean getFlag(int flag) {
+    return isPresent(flag) ? (flagValues & flag) != 0 : null;
+  }
+
+  // The private setters below are used only by Hibernate, when loading an entity
+  //
+  private void setPresent(int property, boolean present) {
+    presentValues = withFlag(presentValues, property, present);
+  }
+
+  private void setFlag(int flag, Boolean value) {
+    setPresent(flag, value != null);
+    flagValues = withFlag(flagValues, flag, value != null && value);
   }
 
   public TransmissionType getTransmissionType() {
     return transmissionType;
   }
 
+  @Access(AccessType.PROPERTY)
   public Float getAltitude() {
-    return altitude;
+    return isPresent(ALTITUDE) ? altitude : null;
+  }
+
+  @SuppressWarnings("unused")
+  private void setAltitude(Float altitude) {
+    setPresent(ALTITUDE, altitude != null);
+    this.altitude = altitude == null ? 0.0f : altitude;
   }
 
+  @Access(AccessType.PROPERTY)
   public Float getGroundSpeed() {
-    return groundSpeed;
+    return isPresent(GROUND_SPEED) ? groundSpeed : null;
   }
 
+  @SuppressWarnings("unused")
+  private void setGroundSpeed(Float groundSpeed) {
+    setPresent(GROUND_SPEED, groundSpeed != null);
+    this.groundSpeed = groundSpeed == null ? 0.0f : groundSpeed;
+  }
+
+  @Access(AccessType.PROPERTY)
   public Float getTrack() {
-    return track;
+    return isPresent(TRACK) ? track : null;
+  }
+
+  @SuppressWarnings("unused")
+  private void setTrack(Float track) {
+    setPresent(TRACK, track != null);
+    this.track = track == null ? 0.0f : track;
   }
 
   public Point<G2D> getPosition() {
     return position;
   }
 
+  @Access(AccessType.PROPERTY)
   public Short getVerticalRate() {
-    return verticalRate;
+    return isPresent(VERTICAL_RATE) ? verticalRate : null;
   }
 
+  @SuppressWarnings("unused")
+  private void setVerticalRate(Short verticalRate) {
+    setPresent(VERTICAL_RATE, verticalRate != null);
+    this.verticalRate = verticalRate == null ? 0 : verticalRate;
+  }
+
+  @Access(AccessType.PROPERTY)
   public Short getSquawk() {
-    return squawk;
+    return isPresent(SQUAWK) ? squawk : null;
+  }
+
+  @SuppressWarnings("unused")
+  private void setSquawk(Short squawk) {
+    setPresent(SQUAWK, squawk != null);
+    this.squawk = squawk == null ? 0 : squawk;
   }
 
+  @Access(AccessType.PROPERTY)
   public Boolean getAlert() {
-    return alert;
+    return getFlag(ALERT);
   }
 
+  @SuppressWarnings("unused")
+  private void setAlert(Boolean alert) {
+    setFlag(ALERT, alert);
+  }
+
+  @Access(AccessType.PROPERTY)
   public Boolean getEmergency() {
-    return emergency;
+    return getFlag(EMERGENCY);
+  }
+
+  @SuppressWarnings("unused")
+  private void setEmergency(Boolean emergency) {
+    setFlag(EMERGENCY, emergency);
   }
 
+  @Access(AccessType.PROPERTY)
   public Boolean getIdentActive() {
-    return identActive;
+    return getFlag(IDENT_ACTIVE);
   }
 
+  @SuppressWarnings("unused")
+  private void setIdentActive(Boolean identActive) {
+    setFlag(IDENT_ACTIVE, identActive);
+  }
+
+  @Access(AccessType.PROPERTY)
   public Boolean getOnGround() {
-    return onGround;
+    return getFlag(ON_GROUND);
+  }
+
+  @SuppressWarnings("unused")
+  private void setOnGround(Boolean onGround) {
+    setFlag(ON_GROUND, onGround);
   }
 
   /**
    * A builder for the {@code TransmissionMessage} entity type.
+   *
+   * <p>Each property can be set from either a primitive value or a wrapper, where a null wrapper
+   * means that the property has no value.
    */
   public static class Builder extends CallSignMessage.Builder {
     private TransmissionType transmissionType;
-    private Float altitude;
-    private Float groundSpeed;
-    private Float track;
     private Point<G2D> position;
-    private Short verticalRate;
-    private Short squawk;
-    private Boolean alert;
-    private Boolean emergency;
-    private Boolean identActive;
-    private Boolean onGround;
+    private float altitude;
+    private float groundSpeed;
+    private float track;
+    private short verticalRate;
+    private short squawk;
+    private int presentValues;
+    private int flagValues;
 
     /**
      * Sole constructor for this class, with parameters for properties common to all BaseStation
      * message types and to this type.
      *
      * @param icaoAddress the 24 bit address assigned by the ICAO to an aircraft transponder,
-     * represented as a 6 digit hexadecimal number, not null
+     * in the integer representation described by {@code IcaoAddress}
      * @param creationTimestamp the instant at which the message was received, not null
      */
-    public Builder(String icaoAddress, Instant creationTimestamp) {
+    public Builder(int icaoAddress, Instant creationTimestamp) {
       super(icaoAddress, creationTimestamp);
     }
 
+    private Builder present(int property, boolean present) {
+      presentValues = withFlag(presentValues, property, present);
+
+      return self();
+    }
+
+    private Builder flag(int flag, boolean value) {
+      flagValues = withFlag(flagValues, flag, value);
+
+      return present(flag, true);
+    }
+
+    private Builder flag(int flag, Boolean value) {
+      flagValues = withFlag(flagValues, flag, value != null && value);
+
+      return present(flag, value != null);
+    }
+
     @Override
     public TransmissionMessage build() {
       return new TransmissionMessage(this);
@@ -150,22 +276,40 @@ public class TransmissionMessage extends CallSignMessage {
       return self();
     }
 
-    public Builder altitude(Float altitude) {
+    public Builder altitude(float altitude) {
       this.altitude = altitude;
 
-      return self();
+      return present(ALTITUDE, true);
     }
 
-    public Builder groundSpeed(Float groundSpeed) {
+    public Builder altitude(Float altitude) {
+      this.altitude = altitude == null ? 0.0f : altitude;
+
+      return present(ALTITUDE, altitude != null);
+    }
+
+    public Builder groundSpeed(float groundSpeed) {
       this.groundSpeed = groundSpeed;
 
-      return self();
+      return present(GROUND_SPEED, true);
     }
 
-    public Builder track(Float track) {
+    public Builder groundSpeed(Float groundSpeed) {
+      this.groundSpeed = groundSpeed == null ? 0.0f : groundSpeed;
+
+      return present(GROUND_SPEED, groundSpeed != null);
+    }
+
+    public Builder track(float track) {
       this.track = track;
 
-      return self();
+      return present(TRACK, true);
+    }
+
+    public Builder track(Float track) {
+      this.track = track == null ? 0.0f : track;
+
+      return present(TRACK, track != null);
     }
 
     public Builder position(Point<G2D> position) {
@@ -174,49 +318,69 @@ public class TransmissionMessage extends CallSignMessage {
       return self();
     }
 
-    public Builder verticalRate(Short verticalRate) {
+    public Builder verticalRate(short verticalRate) {
       this.verticalRate = verticalRate;
 
-      return self();
+      return present(VERTICAL_RATE, true);
     }
 
-    public Builder squawk(Short squawk) {
+    public Builder verticalRate(Short verticalRate) {
+      this.verticalRate = verticalRate == null ? 0 : verticalRate;
+
+      return present(VERTICAL_RATE, verticalRate != null);
+    }
+
+    public Builder squawk(short squawk) {
       this.squawk = squawk;
 
-      return self();
+      return present(SQUAWK, true);
+    }
+
+    public Builder squawk(Short squawk) {
+      this.squawk = squawk == null ? 0 : squawk;
+
+      return present(SQUAWK, squawk != null);
+    }
+
+    public Builder alert(boolean alert) {
+      return flag(ALERT, alert);
     }
 
     public Builder alert(Boolean alert) {
-      this.alert = alert;
+      return flag(ALERT, alert);
+    }
 
-      return self();
+    public Builder emergency(boolean emergency) {
+      return flag(EMERGENCY, emergency);
     }
 
     public Builder emergency(Boolean emergency) {
-      this.emergency = emergency;
+      return flag(EMERGENCY, emergency);
+    }
 
-      return self();
+    public Builder identActive(boolean identActive) {
+      return flag(IDENT_ACTIVE, identActive);
     }
 
     public Builder identActive(Boolean identActive) {
-      this.identActive = identActive;
+      return flag(IDENT_ACTIVE, identActive);
+    }
 
-      return self();
+    public Builder onGround(boolean onGround) {
+      return flag(ON_GROUND, onGround);
     }
 
     public Builder onGround(Boolean onGround) {
-      this.onGround = onGround;
-
-      return self();
+      return flag(ON_GROUND, onGround);
     }
   }
 
 @Override
 public String toString() {
-    return "TransmissionMessage [transmissionType=" + transmissionType + ", altitude=" + altitude + ", groundSpeed="
-            + groundSpeed + ", track=" + track + ", position=" + position + ", verticalRate=" + verticalRate
-            + ", squawk=" + squawk + ", alert=" + alert + ", emergency=" + emergency + ", identActive=" + identActive
-            + ", onGround=" + onGround + ", toString()=" + super.toString() + "]";
+    return "TransmissionMessage [transmissionType=" + transmissionType + ", altitude=" + getAltitude() + ", groundSpeed="
+            + getGroundSpeed() + ", track=" + getTrack() + ", position=" + position + ", verticalRate=" + getVerticalRate()
+            + ", squawk=" + getSquawk() + ", alert=" + getAlert() + ", emergency=" + getEmergency() + ", identActive=" + getIdentActive()
+            + ", onGround=" + getOnGround() + ", toString()=" + super.toString() + "]";
 }
 
 
@@ -17,11 +17,19 @@
 package org.codebrewer.dump1090processor.basestation.integration;
 
 import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
+import org.codebrewer.dump1090processor.basestation.service.AvrMessageProducerService;
+import org.codebrewer.dump1090processor.basestation.service.AvrMessageTransformerService;
+import org.codebrewer.dump1090processor.basestation.service.BeastMessageProducerService;
+import org.codebrewer.dump1090processor.basestation.service.BeastMessageTransformerService;
+import org.codebrewer.dump1090processor.basestation.service.DuplicateMessageFilteringService;
 import org.codebrewer.dump1090processor.basestation.service.EmptyMessageFilteringService;
 import org.codebrewer.dump1090processor.basestation.service.InvalidMessageFilteringService;
 import org.codebrewer.dump1090processor.basestation.service.MessagePayloadTransformerService;
 import org.codebrewer.dump1090processor.basestation.service.MessageProducerService;
+import org.codebrewer.dump1090processor.basestation.service.MessageReplayService;
+import org.codebrewer.dump1090processor.basestation.service.MultiFeedService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.integration.dsl.IntegrationFlow;
@@ -33,15 +41,56 @@ import org.springframework.integration.dsl.IntegrationFlows;
  *
  * <p>Incoming messages are transformed into {@link BaseStationMessage} entities and placed on the
  * message channel named by {@link #BASE_STATION_MESSAGE_CHANNEL_NAME}.
+ *
+ * <p>The flow is split into stages so that the thread reading from the feed does no more than
+ * discard empty messages. Raw messages are handed to the channel named by
+ * {@link #BASE_STATION_PARSE_CHANNEL_NAME} for parsing and parsed messages are handed to the
+ * channel named by {@link #BASE_STATION_MESSAGE_CHANNEL_NAME} for persistence. Both channels are
+ * {@link PartitionedChannel}s, partitioned by ICAO address, so that messages from an aircraft are
+ * handled in the order in which they were received while messages from different aircraft are
+ * handled concurrently. The number of partitions is given by the
+ * {@code basestation.pipeline.partitions} property, defaulting to the number of available
+ * processors, and the capacity of each partition's queue by the
+ * {@code basestation.pipeline.queue.capacity} property.
+ *
+ * <p>Raw messages read from the live feed by {@link MessageProducerService}, the busiest path,
+ * are instead handed to the channel named by {@link #BASE_STATION_FEED_CHANNEL_NAME}, a
+ * {@link RingBufferChannel} that is partitioned in the same way but hands off messages without
+ * locking. The number of slots in its ring is given by the {@code basestation.pipeline.ring.size}
+ * property and how its idle workers wait by the {@code basestation.pipeline.ring.wait} property.
+ *
+ * <p>Messages may instead be replayed from a recorded feed by {@link MessageReplayService}, or read
+ * from the feeds of many receivers by {@link MultiFeedService}, and enter the flow at the same
+ * point as those read from the live feed. Messages from many receivers are filtered of the
+ * duplicates that arise when receivers hear the same aircraft before they are parsed.
+ *
+ * <p>Messages may also be read from the Beast binary feed by {@link BeastMessageProducerService}
+ * or from the AVR raw feed by {@link AvrMessageProducerService}. These are decoded by
+ * {@link BeastMessageTransformerService} and {@link AvrMessageTransformerService} respectively on
+ * the thread reading the feed, so that the messages from an aircraft are decoded in order, and
+ * join the flow after parsing.
  */
 @Configuration
 public class BaseStationIntegrationConfiguration {
+  static final String BASE_STATION_FEED_CHANNEL_NAME = "baseStationFeedChannel";
+  static final String BASE_STATION_PARSE_CHANNEL_NAME = "baseStationParseChannel";
   static final String BASE_STATION_MESSAGE_CHANNEL_NAME = "baseStationMessageChannel";
 
   private final MessageProducerService messageProducerService;
+  private final MessageReplayService messageReplayService;
+  private final MultiFeedService multiFeedService;
+  private final BeastMessageProducerService beastMessageProducerService;
+  private final AvrMessageProducerService avrMessageProducerService;
   private final EmptyMessageFilteringService emptyMessageFilteringService;
+  private final DuplicateMessageFilteringService duplicateMessageFilteringService;
   private final MessagePayloadTransformerService messagePayloadTransformerService;
   private final InvalidMessageFilteringService invalidMessageFilteringService;
+  private final BeastMessageTransformerService beastMessageTransformerService;
+  private final AvrMessageTransformerService avrMessageTransformerService;
+  private final int partitionCount;
+  private final int queueCapacity;
+  private final int ringSize;
+  private final RingBufferChannel.WaitStrategy ringWaitStrategy;
 
   /**
    * Sole constructor for this class.
@@ -50,28 +99,136 @@ public class BaseStationIntegrationConfiguration {
    * {@code basestation.feed.start.auto} property and defaults to true if undefined.
    *
    * @param messageProducerService a service for producing the message feed
+   * @param messageReplayService a service for producing the message feed from a recording
+   * @param multiFeedService a service for producing the message feeds of many receivers
+   * @param beastMessageProducerService a service for producing the Beast binary message feed
+   * @param avrMessageProducerService a service for producing the AVR raw message feed
    * @param emptyMessageFilteringService a service for removing empty messages from the message feed
+   * @param duplicateMessageFilteringService a service for removing messages heard by more than one
+   * receiver from the message feed
    * @param messagePayloadTransformerService a service for transforming incoming message payloads
    * into {@code BaseStationMessage} objects
    * @param invalidMessageFilteringService a service for removing invalid messages from the message
    * feed
+   * @param beastMessageTransformerService a service for transforming Beast binary frames into
+   * {@code BaseStationMessage} objects
+   * @param avrMessageTransformerService a service for transforming AVR raw messages into
+   * {@code BaseStationMessage} objects
+   * @param partitionCount the number of partitions of each stage of the flow, or zero to use the
+   * number of available processors
+   * @param queueCapacity the maximum number of messages waiting to be handled by each partition
+   * @param ringSize the number of slots in the ring through which messages from the live feed are
+   * handed off, a power of two
+   * @param ringWaitStrategy how the workers handling messages from the live feed wait while idle
    */
   @Autowired
   public BaseStationIntegrationConfiguration(
       MessageProducerService messageProducerService,
+      MessageReplayService messageReplayService,
+      MultiFeedService multiFeedService,
+      BeastMessageProducerService beastMessageProducerService,
+      AvrMessageProducerService avrMessageProducerService,
       EmptyMessageFilteringService emptyMessageFilteringService,
+      DuplicateMessageFilteringService duplicateMessageFilteringService,
       MessagePayloadTransformerService messagePayloadTransformerService,
-      InvalidMessageFilteringService invalidMessageFilteringService) {
+      InvalidMessageFilteringService invalidMessageFilteringService,
+      BeastMessageTransformerService beastMessageTransformerService,
+      AvrMessageTransformerService avrMessageTransformerService,
+      @Value("${basestation.pipeline.partitions:0}") int partitionCount,
+      @Value("${basestation.pipeline.queue.capacity:1024}") int queueCapacity,
+      @Value("${basestation.pipeline.ring.size:4096}") int ringSize,
+      @Value("${basestation.pipeline.ring.wait:BLOCKING}")
+          RingBufferChannel.WaitStrategy ringWaitStrategy) {
     this.messageProducerService = messageProducerService;
+    this.messageReplayService = messageReplayService;
+    this.multiFeedService = multiFeedService;
+    this.beastMessageProducerService = beastMessageProducerService;
+    this.avrMessageProducerService = avrMessageProducerService;
     this.messagePayloadTransformerService = messagePayloadTransformerService;
     this.emptyMessageFilteringService = emptyMessageFilteringService;
+    this.duplicateMessageFilteringService = duplicateMessageFilteringService;
     this.invalidMessageFilteringService = invalidMessageFilteringService;
+    this.beastMessageTransformerService = beastMessageTransformerService;
+    this.avrMessageTransformerService = avrMessageTransformerService;
+    this.partitionCount =
+        partitionCount > 0 ? partitionCount : Runtime.getRuntime().availableProcessors();
+    this.queueCapacity = queueCapacity;
+    this.ringSize = ringSize;
+    this.ringWaitStrategy = ringWaitStrategy;
+  }
+
+  @Bean(name = BASE_STATION_FEED_CHANNEL_NAME)
+  public RingBufferChannel baseStationFeedChannel() {
+    return new RingBufferChannel(
+        partitionCount, ringSize, ringWaitStrategy, IcaoAddressPartitionKey::of);
+  }
+
+  @Bean(name = BASE_STATION_PARSE_CHANNEL_NAME)
+  public PartitionedChannel baseStationParseChannel() {
+    return new PartitionedChannel(partitionCount, queueCapacity, IcaoAddressPartitionKey::of);
+  }
+
+  @Bean(name = BASE_STATION_MESSAGE_CHANNEL_NAME)
+  public PartitionedChannel baseStationMessageChannel() {
+    return new PartitionedChannel(partitionCount, queueCapacity, IcaoAddressPartitionKey::of);
   }
 
   @Bean
   public IntegrationFlow tcpMessageClient() {
     return IntegrationFlows.from(messageProducerService.tcpMessageClient())
                            .filter(emptyMessageFilteringService)
+                           .channel(BASE_STATION_FEED_CHANNEL_NAME)
+                           .get();
+  }
+
+  @Bean
+  public IntegrationFlow replayMessageClient() {
+    return IntegrationFlows.from(messageReplayService.replayMessageClient())
+                           .filter(emptyMessageFilteringService)
+                           .channel(BASE_STATION_PARSE_CHANNEL_NAME)
+                           .get();
+  }
+
+  @Bean
+  public IntegrationFlow multiFeedMessageClient() {
+    return IntegrationFlows.from(multiFeedService.multiFeedMessageClient())
+                           .filter(emptyMessageFilteringService)
+                           .channel(BASE_STATION_PARSE_CHANNEL_NAME)
+                           .get();
+  }
+
+  @Bean
+  public IntegrationFlow beastMessageClient() {
+    return IntegrationFlows.from(beastMessageProducerService.beastMessageClient())
+                           .transform(beastMessageTransformerService)
+                           .filter(invalidMessageFilteringService)
+                           .channel(BASE_STATION_MESSAGE_CHANNEL_NAME)
+                           .get();
+  }
+
+  @Bean
+  public IntegrationFlow avrMessageClient() {
+    return IntegrationFlows.from(avrMessageProducerService.avrMessageClient())
+                           .transform(avrMessageTransformerService)
+                           .filter(invalidMessageFilteringService)
+                           .channel(BASE_STATION_MESSAGE_CHANNEL_NAME)
+                           .get();
+  }
+
+  @Bean
+  public IntegrationFlow baseStationFeedParser() {
+    return IntegrationFlows.from(BASE_STATION_FEED_CHANNEL_NAME)
+                           .filter(duplicateMessageFilteringService)
+                           .transform(messagePayloadTransformerService)
+                           .filter(invalidMessageFilteringService)
+                           .channel(BASE_STATION_MESSAGE_CHANNEL_NAME)
+                           .get();
+  }
+
+  @Bean
+  public IntegrationFlow baseStationMessageParser() {
+    return IntegrationFlows.from(BASE_STATION_PARSE_CHANNEL_NAME)
+                           .filter(duplicateMessageFilteringService)
                            .transform(messagePayloadTransformerService)
                            .filter(invalidMessageFilteringService)
                            .channel(BASE_STATION_MESSAGE_CHANNEL_NAME)
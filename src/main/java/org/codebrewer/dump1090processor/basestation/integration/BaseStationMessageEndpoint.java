@@ -18,18 +18,14 @@ package org.codebrewer.dump1090processor.basestation.integration;
 
 import static org.codebrewer.dump1090processor.basestation.integration.BaseStationIntegrationConfiguration.BASE_STATION_MESSAGE_CHANNEL_NAME;
 
-import java.util.Optional;
-
-import org.codebrewer.dump1090processor.basestation.domain.TransmissionType;
-import org.codebrewer.dump1090processor.basestation.entity.Aircraft;
+import java.io.IOException;
 import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
-import org.codebrewer.dump1090processor.basestation.entity.CallSignMessage;
-import org.codebrewer.dump1090processor.basestation.entity.IdMessage;
-import org.codebrewer.dump1090processor.basestation.entity.TransmissionMessage;
-import org.codebrewer.dump1090processor.basestation.repository.AircraftRepository;
-import org.codebrewer.dump1090processor.basestation.repository.BaseStationMessageRepository;
-import org.geolatte.geom.G2D;
-import org.geolatte.geom.Point;
+import org.codebrewer.dump1090processor.basestation.service.AircraftStateService;
+import org.codebrewer.dump1090processor.basestation.service.IngestLatencyService;
+import org.codebrewer.dump1090processor.basestation.service.MessageBatchPersistenceService;
+import org.codebrewer.dump1090processor.basestation.service.MessageLogService;
+import org.codebrewer.dump1090processor.basestation.service.MultiFeedMessageProducer;
+import org.codebrewer.dump1090processor.basestation.service.PipelineMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -38,6 +34,7 @@ import org.springframework.integration.annotation.MessageEndpoint;
 import org.springframework.integration.annotation.ServiceActivator;
 import org.springframework.jmx.export.annotation.ManagedOperation;
 import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
 
 /**
@@ -45,16 +42,23 @@ import org.springframework.messaging.handler.annotation.Payload;
  *
  * <p>
  * By default, valid consumed messages are persisted to the BaseStation
- * repository. A managed operation is provided to give runtime control over
- * persistence.
+ * repository, in batches written by a background thread. If the local message log is
+ * enabled, messages are written there first and drained to the repository by
+ * {@link MessageLogService}. A managed operation is provided to give runtime control over
+ * persistence. Every consumed message is applied to the in-memory state of
+ * aircraft, which is written to the database in the background, and the time
+ * taken for it to do so is tracked by {@link IngestLatencyService}.
  */
 @MessageEndpoint
 @ManagedResource(objectName = "org.codebrewer.dump1090processor:type=Control,name=BaseStationMessageEndpoint", description = "An endpoint for handling BaseStation messages")
 public class BaseStationMessageEndpoint {
     private static final Logger LOGGER = LoggerFactory.getLogger(BaseStationMessageEndpoint.class);
 
-    private final BaseStationMessageRepository repository;
-    private final AircraftRepository aircraftRepository;
+    private final MessageBatchPersistenceService messageBatchPersistenceService;
+    private final AircraftStateService aircraftStateService;
+    private final PipelineMetrics pipelineMetrics;
+    private final IngestLatencyService ingestLatencyService;
+    private final MessageLogService messageLogService;
     private volatile boolean persistMessages;
 
     /**
@@ -65,17 +69,30 @@ public class BaseStationMessageEndpoint {
      * {@code basestation.feed.persist} property. Messages are persisted if the
      * property is undefined.
      *
-     * @param repository      a repository to which BaseStation message entities can
-     *                        be persisted
-     * @param persistMessages whether or not BaseStation message entities should be
-     *                        persisted
+     * @param messageBatchPersistenceService a service that persists BaseStation
+     *                                       message entities in batches
+     * @param aircraftStateService a service holding the state of aircraft, which is
+     *                             updated by each message
+     * @param persistMessages      whether or not BaseStation message entities should
+     *                             be persisted
+     * @param pipelineMetrics      the meters counting consumed messages and recording
+     *                             the time taken to update the state of aircraft
+     * @param ingestLatencyService a service tracking the time taken for messages to
+     *                             update the state of aircraft
+     * @param messageLogService    a service writing messages to a local log ahead
+     *                             of the repository, if enabled
      */
     @Autowired
-    public BaseStationMessageEndpoint(BaseStationMessageRepository repository, AircraftRepository aircraftRepository,
-            @Value("${basestation.feed.persist:true}") boolean persistMessages) {
+    public BaseStationMessageEndpoint(MessageBatchPersistenceService messageBatchPersistenceService,
+            AircraftStateService aircraftStateService, @Value("${basestation.feed.persist:true}") boolean persistMessages,
+            PipelineMetrics pipelineMetrics, IngestLatencyService ingestLatencyService,
+            MessageLogService messageLogService) {
         LOGGER.info("BaseStation message persistence: {}", persistMessages);
-        this.repository = repository;
-        this.aircraftRepository = aircraftRepository;
+        this.messageBatchPersistenceService = messageBatchPersistenceService;
+        this.aircraftStateService = aircraftStateService;
+        this.pipelineMetrics = pipelineMetrics;
+        this.ingestLatencyService = ingestLatencyService;
+        this.messageLogService = messageLogService;
         this.persistMessages = persistMessages;
     }
 
@@ -88,84 +105,49 @@ public class BaseStationMessageEndpoint {
      * BASE_STATION_MESSAGE_CHANNEL_NAME}.
      *
      * @param baseStationMessage an incoming BaseStation message
+     * @param feedId the id of the feed from which the message was read, or null if it
+     *               was read from the only feed
      */
     @SuppressWarnings("UnresolvedMessageChannel")
     @ServiceActivator(inputChannel = BASE_STATION_MESSAGE_CHANNEL_NAME)
-    public void consume(@Payload BaseStationMessage baseStationMessage) {
+    public void consume(@Payload BaseStationMessage baseStationMessage,
+            @Header(name = MultiFeedMessageProducer.FEED_ID_HEADER, required = false) String feedId) {
+        long persistedMillis = 0L;
 
         LOGGER.debug(baseStationMessage.toString());
+        pipelineMetrics.countMessage(baseStationMessage);
 
         if (persistMessages) {
-            repository.save(baseStationMessage);
-
-            if (baseStationMessage instanceof TransmissionMessage) {
-                TransmissionMessage transmissionMessage = (TransmissionMessage) baseStationMessage;
-                LOGGER.debug(transmissionMessage.toString());
-
-                if (transmissionMessage.getTransmissionType() == TransmissionType.AIRBORNE_POSITION) {
-                    String icaoAddress = transmissionMessage.getIcaoAddress();
-                    Point<G2D> position = transmissionMessage.getPosition();
-
-                    if (position != null) {
-                        double lat = position.getPosition().getLat();
-                        double lon = position.getPosition().getLon();
-                        long tov = transmissionMessage.getTimestamp().toEpochMilli();
-
-                        Optional<Aircraft> optAircraft = aircraftRepository.findById(icaoAddress);
-                        Aircraft aircraft;
-
-                        if (optAircraft.isPresent()) {
-                            aircraft = optAircraft.get();
-
-                            aircraft.setLatitude(lat);
-                            aircraft.setLongitude(lon);
-                            aircraft.setTov(tov);
-                        } else {
-                            aircraft = new Aircraft(icaoAddress, lat, lon, tov);
-                        }
-
-                        LOGGER.debug(aircraft.toString());
-                        aircraftRepository.save(aircraft);
-                    } else {
-                        LOGGER.warn("missing position from TransmissionMessage " + transmissionMessage);
-                    }
-                } else if (transmissionMessage.getTransmissionType() == TransmissionType.SURVEILLANCE_ID) {
-                    String icaoAddress = transmissionMessage.getIcaoAddress();
-                    String callSign = transmissionMessage.getCallSign();
-
-                    Optional<Aircraft> optAircraft = aircraftRepository.findById(icaoAddress);
-
-                    if (optAircraft.isPresent()) {
-                        Aircraft aircraft = optAircraft.get();
-
-                        if ((callSign != null) && !callSign.isEmpty()) {
-                            aircraft.setCallSign(callSign);
-
-                            LOGGER.debug(aircraft.toString());
-                            aircraftRepository.save(aircraft);
-                        }
-                    }
-                }
-            } else if (baseStationMessage instanceof IdMessage) {
-                IdMessage idMessage = (IdMessage) baseStationMessage;
-                LOGGER.debug(idMessage.toString());
-
-                String icaoAddress = idMessage.getIcaoAddress();
-                String callSign = idMessage.getCallSign();
-
-                Optional<Aircraft> optAircraft = aircraftRepository.findById(icaoAddress);
-                if (optAircraft.isPresent()) {
-                    Aircraft aircraft = optAircraft.get();
-
-                    if ((callSign != null) && !callSign.isEmpty()) {
-                        aircraft.setCallSign(callSign);
-
-                        LOGGER.debug(aircraft.toString());
-                        aircraftRepository.save(aircraft);
-                    }
-                }
+            try {
+                persist(baseStationMessage);
+                persistedMillis = System.currentTimeMillis();
+            } catch (InterruptedException e) {
+                LOGGER.warn("Interrupted before message could be queued for persistence");
+                Thread.currentThread().interrupt();
             }
         }
+
+        final long startNanos = System.nanoTime();
+
+        aircraftStateService.update(baseStationMessage);
+        pipelineMetrics.recordStage(PipelineMetrics.Stage.AIRCRAFT_UPDATE, startNanos);
+        ingestLatencyService.record(feedId, baseStationMessage, persistedMillis, System.currentTimeMillis());
+    }
+
+    private void persist(BaseStationMessage baseStationMessage) throws InterruptedException {
+        if (messageLogService.isEnabled()) {
+            try {
+                messageLogService.append(baseStationMessage);
+
+                return;
+            } catch (IOException e) {
+                // Fall back to queueing the message directly so that it is not lost
+                //
+                LOGGER.error("Failed to write message to log: {}", e.getMessage());
+            }
+        }
+
+        messageBatchPersistenceService.persist(baseStationMessage);
     }
 
     /**
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.integration;
+
+import org.codebrewer.dump1090processor.basestation.domain.IcaoAddress;
+import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
+import org.codebrewer.dump1090processor.basestation.service.ByteSlice;
+import org.springframework.messaging.Message;
+
+/**
+ * Computes partition keys from the ICAO address of the aircraft that sent a message, so that all
+ * messages from an aircraft are handled by the same partition of a {@link PartitionedChannel}.
+ *
+ * <p>The same key is computed for the raw text of a message as for the {@link BaseStationMessage}
+ * parsed from it.
+ */
+final class IcaoAddressPartitionKey {
+  // The ICAO address is the fifth field of a message
+  //
+  private static final int ICAO_ADDRESS_FIELD_INDEX = 4;
+
+  private IcaoAddressPartitionKey() {
+  }
+
+  private static int parse(byte[] bytes, int offset, int length) {
+    int fieldIndex = 0;
+    int fieldStart = offset;
+
+    for (int i = offset; i < offset + length; i++) {
+      if (bytes[i] == ',') {
+        if (fieldIndex == ICAO_ADDRESS_FIELD_INDEX) {
+          return IcaoAddress.parse(bytes, fieldStart, i);
+        }
+
+        fieldIndex++;
+        fieldStart = i + 1;
+      }
+    }
+
+    return IcaoAddress.INVALID;
+  }
+
+  private static int parse(String text) {
+    int fieldStart = 0;
+
+    for (int fieldIndex = 0; fieldIndex < ICAO_ADDRESS_FIELD_INDEX; fieldIndex++) {
+      fieldStart = text.indexOf(',', fieldStart) + 1;
+
+      if (fieldStart == 0) {
+        return IcaoAddress.INVALID;
+      }
+    }
+
+    final int fieldEnd = text.indexOf(',', fieldStart);
+
+    return fieldEnd < 0
+        ? IcaoAddress.INVALID
+        : IcaoAddress.parse(text.substring(fieldStart, fieldEnd));
+  }
+
+  /**
+   * Computes the partition key of a message.
+   *
+   * @param message a message whose payload is the raw text of a BaseStation message, as a byte
+   * array, byte slice or string, or a {@code BaseStationMessage}
+   *
+   * @return the integer representation of the ICAO address of the aircraft that sent the message,
+   * or {@link IcaoAddress#INVALID} if it cannot be determined
+   */
+  static int of(Message<?> message) {
+    final Object payload = message.getPayload();
+
+    if (payload instanceof BaseStationMessage) {
+      return ((BaseStationMessage) payload).getIcao();
+    } else if (payload instanceof ByteSlice) {
+      final ByteSlice slice = (ByteSlice) payload;
+
+      return parse(slice.array(), slice.offset(), slice.length());
+    } else if (payload instanceof byte[]) {
+      return parse((byte[]) payload, 0, ((byte[]) payload).length);
+    } else if (payload instanceof String) {
+      return parse((String) payload);
+    }
+
+    return IcaoAddress.INVALID;
+  }
+}
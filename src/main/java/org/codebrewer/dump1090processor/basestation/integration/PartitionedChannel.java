@@ -0,0 +1,291 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.integration;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.integration.channel.AbstractSubscribableChannel;
+import org.springframework.integration.dispatcher.MessageDispatcher;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.export.naming.SelfNaming;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.util.Assert;
+
+/**
+ * A message channel that hands messages off to a fixed number of partitions, each having a bounded
+ * queue and a single worker thread.
+ *
+ * <p>The partition to which a message is sent is chosen from a key computed from the message, so
+ * messages having the same key are handled in the order in which they were sent, while messages
+ * having different keys can be handled concurrently. Sending a message blocks while the queue of
+ * its partition is full, applying back-pressure to the sender.
+ *
+ * <p>Each partition delivers all of its messages to the same subscribed handler. Exceptions thrown
+ * by a handler are logged and counted but do not stop the partition's worker thread.
+ */
+@ManagedResource(description = "A channel that partitions messages across worker threads")
+public class PartitionedChannel extends AbstractSubscribableChannel implements SelfNaming {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PartitionedChannel.class);
+  private static final long POLL_INTERVAL_MILLIS = 100L;
+
+  private final ToIntFunction<Message<?>> partitionKeyFunction;
+  private final int queueCapacity;
+  private final Partition[] partitions;
+  private final PartitionedDispatcher dispatcher = new PartitionedDispatcher();
+  private final AtomicLong dispatchedMessageCount = new AtomicLong();
+  private final AtomicLong failedMessageCount = new AtomicLong();
+  private volatile boolean running;
+
+  /**
+   * Sole constructor for this class.
+   *
+   * @param partitionCount the number of partitions, and so worker threads, to use
+   * @param queueCapacity the maximum number of messages waiting to be handled by each partition
+   * @param partitionKeyFunction a function computing the partition key of a message
+   */
+  public PartitionedChannel(
+      int partitionCount, int queueCapacity, ToIntFunction<Message<?>> partitionKeyFunction) {
+    Assert.isTrue(partitionCount > 0, "Partition count must be positive");
+    Assert.isTrue(queueCapacity > 0, "Queue capacity must be positive");
+    Assert.notNull(partitionKeyFunction, "Partition key function is required");
+    this.partitionKeyFunction = partitionKeyFunction;
+    this.queueCapacity = queueCapacity;
+    this.partitions = new Partition[partitionCount];
+
+    for (int i = 0; i < partitionCount; i++) {
+      partitions[i] = new Partition(i, queueCapacity);
+    }
+  }
+
+  /**
+   * Computes the partition to which messages with a given key are sent.
+   *
+   * @param key a partition key
+   * @param partitionCount the number of partitions
+   *
+   * @return the index of a partition, in the range [0, partitionCount)
+   */
+  static int partitionOf(int key, int partitionCount) {
+    return Math.floorMod(key ^ (key >>> 16), partitionCount);
+  }
+
+  @Override
+  protected MessageDispatcher getDispatcher() {
+    return dispatcher;
+  }
+
+  @Override
+  protected void onInit() {
+    super.onInit();
+    running = true;
+
+    for (Partition partition : partitions) {
+      partition.worker.setName(getComponentName() + "-" + partition.index);
+      partition.worker.start();
+    }
+  }
+
+  @Override
+  public void destroy() {
+    super.destroy();
+    running = false;
+
+    for (Partition partition : partitions) {
+      try {
+        partition.worker.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+
+        return;
+      }
+    }
+  }
+
+  @Override
+  public ObjectName getObjectName() throws MalformedObjectNameException {
+    return new ObjectName(
+        "org.codebrewer.dump1090processor:type=Counter,name=" + getComponentName());
+  }
+
+  /**
+   * Gets the number of partitions used by this channel.
+   *
+   * @return the number of partitions used by this channel
+   */
+  @ManagedAttribute(description = "The number of partitions used by this channel")
+  public int getPartitionCount() {
+    return partitions.length;
+  }
+
+  /**
+   * Gets the maximum number of messages waiting to be handled by each partition.
+   *
+   * @return the maximum number of messages waiting to be handled by each partition
+   */
+  @ManagedAttribute(description = "The maximum number of messages queued for each partition")
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  /**
+   * Gets the number of messages waiting to be handled by all partitions.
+   *
+   * @return the number of messages waiting to be handled by all partitions
+   */
+  @ManagedAttribute(description = "The number of messages queued for all partitions")
+  public int getQueueDepth() {
+    int queueDepth = 0;
+
+    for (Partition partition : partitions) {
+      queueDepth += partition.queue.size();
+    }
+
+    return queueDepth;
+  }
+
+  /**
+   * Gets the number of messages waiting to be handled by each partition.
+   *
+   * @return the number of messages waiting to be handled by each partition, indexed by partition
+   */
+  @ManagedAttribute(description = "The number of messages queued for each partition")
+  public int[] getPartitionQueueDepths() {
+    final int[] queueDepths = new int[partitions.length];
+
+    for (int i = 0; i < partitions.length; i++) {
+      queueDepths[i] = partitions[i].queue.size();
+    }
+
+    return queueDepths;
+  }
+
+  /**
+   * Gets the total number of messages handled since application startup.
+   *
+   * @return the total number of messages handled since application startup
+   */
+  @ManagedAttribute(description = "The total number of messages handled since application startup")
+  public long getDispatchedMessageCount() {
+    return dispatchedMessageCount.get();
+  }
+
+  /**
+   * Gets the total number of messages whose handling failed since application startup.
+   *
+   * @return the total number of messages whose handling failed since application startup
+   */
+  @ManagedAttribute(
+      description = "The total number of messages whose handling failed since application startup")
+  public long getFailedMessageCount() {
+    return failedMessageCount.get();
+  }
+
+  private final class Partition {
+    private final int index;
+    private final BlockingQueue<Message<?>> queue;
+    private final Thread worker;
+
+    private Partition(int index, int queueCapacity) {
+      this.index = index;
+      this.queue = new ArrayBlockingQueue<>(queueCapacity);
+      this.worker = new Thread(this::handleMessages);
+      worker.setDaemon(true);
+    }
+
+    private void handleMessages() {
+      try {
+        while (running || !queue.isEmpty()) {
+          final Message<?> message = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+          if (message != null) {
+            handleMessage(message);
+          }
+        }
+      } catch (InterruptedException e) {
+        LOGGER.warn("Partition {} interrupted with {} messages queued", index, queue.size());
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void handleMessage(Message<?> message) {
+      final List<MessageHandler> handlers = dispatcher.handlers;
+      final int handlerCount = handlers.size();
+
+      if (handlerCount == 0) {
+        LOGGER.warn("No handler subscribed to channel {}", getComponentName());
+        failedMessageCount.incrementAndGet();
+
+        return;
+      }
+
+      try {
+        handlers.get(index % handlerCount).handleMessage(message);
+        dispatchedMessageCount.incrementAndGet();
+      } catch (RuntimeException e) {
+        LOGGER.error("Failed to handle message on channel {}", getComponentName(), e);
+        failedMessageCount.incrementAndGet();
+      }
+    }
+  }
+
+  private final class PartitionedDispatcher implements MessageDispatcher {
+    private final List<MessageHandler> handlers = new CopyOnWriteArrayList<>();
+
+    @Override
+    public boolean addHandler(MessageHandler handler) {
+      return !handlers.contains(handler) && handlers.add(handler);
+    }
+
+    @Override
+    public boolean removeHandler(MessageHandler handler) {
+      return handlers.remove(handler);
+    }
+
+    @Override
+    public boolean dispatch(Message<?> message) {
+      final int key = partitionKeyFunction.applyAsInt(message);
+      final Partition partition = partitions[partitionOf(key, partitions.length)];
+
+      try {
+        partition.queue.put(message);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+
+        throw new MessageDeliveryException(message, "Interrupted while queueing message");
+      }
+
+      return true;
+    }
+
+    @Override
+    public int getHandlerCount() {
+      return handlers.size();
+    }
+  }
+}
@@ -0,0 +1,510 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.integration;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.integration.channel.AbstractSubscribableChannel;
+import org.springframework.integration.dispatcher.MessageDispatcher;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.export.naming.SelfNaming;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.util.Assert;
+
+/**
+ * A message channel that hands messages off to a fixed number of worker threads through a single
+ * preallocated ring of slots, in the manner of the LMAX Disruptor.
+ *
+ * <p>Sending a message writes it and its partition key into the next slot of the ring and then
+ * publishes the slot by advancing a sequence number, so handing off a message allocates no memory
+ * and contends for no lock. Every worker follows the whole ring but handles only the messages
+ * whose key belongs to its partition, so messages having the same key are handled in the order in
+ * which they were sent, as for a {@link PartitionedChannel}. Workers handle every slot published
+ * since they last looked as one batch before publishing their own progress, and sending blocks
+ * while the slowest worker is a whole ring behind, applying back-pressure to the sender.
+ *
+ * <p>Once every worker has passed a slot, the sender clears it the next time it sends, so that
+ * its message can be garbage collected without waiting for the ring to come round again. While
+ * nothing is being sent, the ring holds on only to the messages not yet passed by every worker
+ * when the last message was sent, and the channel releases them all when it is destroyed.
+ *
+ * <p>The ring is designed for a single sending thread, such as the thread reading a feed. Sends
+ * from more than one thread are serialised, which is correct but loses much of the benefit.
+ *
+ * <p>How idle workers wait for messages is chosen by a {@link WaitStrategy}, trading CPU use for
+ * handoff latency. Exceptions thrown by a handler are logged and counted but do not stop the
+ * worker thread.
+ *
+ * <p>When the channel is destroyed, workers finish handling the messages already sent. A worker
+ * still running after the shutdown timeout, as when it is blocked handing a message to a channel
+ * that has itself been destroyed, is interrupted and left behind rather than holding up shutdown.
+ */
+@ManagedResource(description = "A channel that hands messages to worker threads through a ring")
+public class RingBufferChannel extends AbstractSubscribableChannel implements SelfNaming {
+  private static final Logger LOGGER = LoggerFactory.getLogger(RingBufferChannel.class);
+  private static final long POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100L);
+  private static final long DEFAULT_SHUTDOWN_TIMEOUT_MILLIS = 5_000L;
+
+  /**
+   * The ways in which idle workers wait for messages to be sent.
+   */
+  public enum WaitStrategy {
+    /**
+     * Workers spin, giving the lowest handoff latency while using a processor each.
+     */
+    BUSY_SPIN,
+
+    /**
+     * Workers spin, yielding the processor between checks, giving low latency while letting
+     * other threads run.
+     */
+    YIELD,
+
+    /**
+     * Workers block until signalled by the sender, using no processor time while idle.
+     */
+    BLOCKING
+  }
+
+  private final ToIntFunction<Message<?>> partitionKeyFunction;
+  private final WaitStrategy waitStrategy;
+  private final Message<?>[] messages;
+  private final int[] keys;
+  private final int mask;
+  private final Worker[] workers;
+  private final Sequence cursor = new Sequence();
+  private final RingDispatcher dispatcher = new RingDispatcher();
+  private final AtomicLong failedMessageCount = new AtomicLong();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition published = lock.newCondition();
+  private final AtomicInteger blockedWorkerCount = new AtomicInteger();
+  private long clearedSequence = -1L;
+  private long shutdownTimeoutMillis = DEFAULT_SHUTDOWN_TIMEOUT_MILLIS;
+  private volatile boolean running;
+
+  /**
+   * Sole constructor for this class.
+   *
+   * @param partitionCount the number of partitions, and so worker threads, to use
+   * @param ringSize the number of slots in the ring, a power of two
+   * @param waitStrategy how idle workers wait for messages
+   * @param partitionKeyFunction a function computing the partition key of a message
+   */
+  public RingBufferChannel(
+      int partitionCount,
+      int ringSize,
+      WaitStrategy waitStrategy,
+      ToIntFunction<Message<?>> partitionKeyFunction) {
+    Assert.isTrue(partitionCount > 0, "Partition count must be positive");
+    Assert.isTrue(
+        ringSize > 0 && Integer.bitCount(ringSize) == 1, "Ring size must be a power of two");
+    Assert.notNull(waitStrategy, "Wait strategy is required");
+    Assert.notNull(partitionKeyFunction, "Partition key function is required");
+    this.partitionKeyFunction = partitionKeyFunction;
+    this.waitStrategy = waitStrategy;
+    this.messages = new Message<?>[ringSize];
+    this.keys = new int[ringSize];
+    this.mask = ringSize - 1;
+    this.workers = new Worker[partitionCount];
+
+    for (int i = 0; i < partitionCount; i++) {
+      workers[i] = new Worker(i);
+    }
+  }
+
+  /**
+   * Sets how long to wait for workers to finish handling messages when the channel is destroyed,
+   * before interrupting them.
+   *
+   * @param shutdownTimeoutMillis the number of milliseconds to wait for workers to stop
+   */
+  public void setShutdownTimeout(long shutdownTimeoutMillis) {
+    this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+  }
+
+  @Override
+  protected MessageDispatcher getDispatcher() {
+    return dispatcher;
+  }
+
+  @Override
+  protected void onInit() {
+    super.onInit();
+    running = true;
+
+    for (Worker worker : workers) {
+      worker.thread.setName(getComponentName() + "-" + worker.index);
+      worker.thread.start();
+    }
+  }
+
+  @Override
+  public void destroy() {
+    super.destroy();
+    running = false;
+    signalWorkers();
+
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMillis);
+    boolean stopped = true;
+
+    try {
+      for (Worker worker : workers) {
+        final long remainingMillis =
+            TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+
+        worker.thread.join(Math.max(1L, remainingMillis));
+      }
+
+      for (Worker worker : workers) {
+        if (worker.thread.isAlive()) {
+          LOGGER.warn("Partition {} of channel {} did not stop within {}ms, interrupting it",
+              worker.index, getComponentName(), shutdownTimeoutMillis);
+          worker.thread.interrupt();
+          worker.thread.join(TimeUnit.NANOSECONDS.toMillis(POLL_INTERVAL_NANOS));
+          stopped &= !worker.thread.isAlive();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+
+      return;
+    }
+
+    // Slots are left alone while a worker that has been interrupted might still read them
+    //
+    if (!stopped) {
+      return;
+    }
+
+    synchronized (dispatcher) {
+      Arrays.fill(messages, null);
+      clearedSequence = cursor.get();
+    }
+  }
+
+  @Override
+  public ObjectName getObjectName() throws MalformedObjectNameException {
+    return new ObjectName(
+        "org.codebrewer.dump1090processor:type=Counter,name=" + getComponentName());
+  }
+
+  private long slowestWorkerSequence() {
+    long sequence = Long.MAX_VALUE;
+
+    for (Worker worker : workers) {
+      sequence = Math.min(sequence, worker.sequence.get());
+    }
+
+    return sequence;
+  }
+
+  /**
+   * Gets the number of slots still holding a message.
+   *
+   * @return the number of slots still holding a message
+   */
+  int getOccupiedSlotCount() {
+    synchronized (dispatcher) {
+      return (int) Arrays.stream(messages).filter(Objects::nonNull).count();
+    }
+  }
+
+  private void signalWorkers() {
+    if (blockedWorkerCount.get() > 0) {
+      lock.lock();
+
+      try {
+        published.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Gets the number of partitions used by this channel.
+   *
+   * @return the number of partitions used by this channel
+   */
+  @ManagedAttribute(description = "The number of partitions used by this channel")
+  public int getPartitionCount() {
+    return workers.length;
+  }
+
+  /**
+   * Gets the number of slots in the ring.
+   *
+   * @return the number of slots in the ring
+   */
+  @ManagedAttribute(description = "The number of slots in the ring")
+  public int getRingSize() {
+    return messages.length;
+  }
+
+  /**
+   * Gets the name of the strategy used by idle workers to wait for messages.
+   *
+   * @return the name of the strategy used by idle workers to wait for messages
+   */
+  @ManagedAttribute(description = "The strategy used by idle workers to wait for messages")
+  public String getWaitStrategy() {
+    return waitStrategy.name();
+  }
+
+  /**
+   * Gets the number of slots sent but not yet passed by the slowest worker.
+   *
+   * @return the number of slots sent but not yet passed by the slowest worker
+   */
+  @ManagedAttribute(description = "The number of slots not yet passed by the slowest worker")
+  public long getBacklog() {
+    return Math.max(0L, cursor.get() - slowestWorkerSequence());
+  }
+
+  /**
+   * Gets the total number of messages handled since application startup.
+   *
+   * @return the total number of messages handled since application startup
+   */
+  @ManagedAttribute(description = "The total number of messages handled since application startup")
+  public long getDispatchedMessageCount() {
+    long dispatchedMessageCount = 0L;
+
+    for (Worker worker : workers) {
+      dispatchedMessageCount += worker.handledMessageCount;
+    }
+
+    return dispatchedMessageCount;
+  }
+
+  /**
+   * Gets the total number of messages whose handling failed since application startup.
+   *
+   * @return the total number of messages whose handling failed since application startup
+   */
+  @ManagedAttribute(
+      description = "The total number of messages whose handling failed since application startup")
+  public long getFailedMessageCount() {
+    return failedMessageCount.get();
+  }
+
+  /**
+   * A sequence number padded to fill a cache line of its own, so that the sender and the workers
+   * do not slow each other down by writing to neighbouring memory.
+   */
+  @SuppressWarnings("unused")
+  private static final class Sequence extends AtomicLong {
+    private static final long serialVersionUID = 1L;
+
+    private long p1;
+    private long p2;
+    private long p3;
+    private long p4;
+    private long p5;
+    private long p6;
+    private long p7;
+
+    private Sequence() {
+      super(-1L);
+    }
+  }
+
+  private final class Worker {
+    private final int index;
+    private final Sequence sequence = new Sequence();
+    private final Thread thread;
+    private volatile long handledMessageCount;
+
+    private Worker(int index) {
+      this.index = index;
+      this.thread = new Thread(this::handleMessages);
+      thread.setDaemon(true);
+    }
+
+    private void handleMessages() {
+      long nextSequence = sequence.get() + 1L;
+
+      try {
+        while (true) {
+          final long availableSequence = waitFor(nextSequence);
+
+          if (availableSequence < nextSequence) {
+            return;
+          }
+
+          long handledCount = 0L;
+
+          for (long s = nextSequence; s <= availableSequence; s++) {
+            final int slot = (int) s & mask;
+
+            if (Thread.interrupted()) {
+              throw new InterruptedException();
+            }
+
+            if (PartitionedChannel.partitionOf(keys[slot], workers.length) == index
+                && handleMessage(messages[slot])) {
+              handledCount++;
+            }
+          }
+
+          // Publish progress once per batch, rather than once per slot
+          //
+          handledMessageCount += handledCount;
+          sequence.lazySet(availableSequence);
+          nextSequence = availableSequence + 1L;
+        }
+      } catch (InterruptedException e) {
+        LOGGER.warn(
+            "Partition {} interrupted {} slots behind", index, cursor.get() - sequence.get());
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private long waitFor(long nextSequence) throws InterruptedException {
+      long availableSequence;
+
+      while ((availableSequence = cursor.get()) < nextSequence) {
+        if (!running) {
+          return availableSequence;
+        }
+
+        switch (waitStrategy) {
+          case BUSY_SPIN:
+            break;
+          case YIELD:
+            Thread.yield();
+            break;
+          default:
+            // The sender only takes the lock to signal while a worker is counted as blocked, so
+            // the cursor is checked again after counting
+            //
+            lock.lock();
+            blockedWorkerCount.incrementAndGet();
+
+            try {
+              if (cursor.get() < nextSequence && running) {
+                published.awaitNanos(POLL_INTERVAL_NANOS);
+              }
+            } finally {
+              blockedWorkerCount.decrementAndGet();
+              lock.unlock();
+            }
+        }
+      }
+
+      return availableSequence;
+    }
+
+    private boolean handleMessage(Message<?> message) {
+      final List<MessageHandler> handlers = dispatcher.handlers;
+      final int handlerCount = handlers.size();
+
+      if (handlerCount == 0) {
+        LOGGER.warn("No handler subscribed to channel {}", getComponentName());
+        failedMessageCount.incrementAndGet();
+
+        return false;
+      }
+
+      try {
+        handlers.get(index % handlerCount).handleMessage(message);
+
+        return true;
+      } catch (RuntimeException e) {
+        LOGGER.error("Failed to handle message on channel {}", getComponentName(), e);
+        failedMessageCount.incrementAndGet();
+
+        return false;
+      }
+    }
+  }
+
+  private final class RingDispatcher implements MessageDispatcher {
+    private final List<MessageHandler> handlers = new CopyOnWriteArrayList<>();
+
+    @Override
+    public boolean addHandler(MessageHandler handler) {
+      return !handlers.contains(handler) && handlers.add(handler);
+    }
+
+    @Override
+    public boolean removeHandler(MessageHandler handler) {
+      return handlers.remove(handler);
+    }
+
+    @Override
+    public boolean dispatch(Message<?> message) {
+      final int key = partitionKeyFunction.applyAsInt(message);
+
+      synchronized (this) {
+        final long nextSequence = cursor.get() + 1L;
+        long slowestSequence = slowestWorkerSequence();
+
+        // Wait for the slowest worker to pass the slot, a whole ring ago, that is to be reused
+        //
+        while (nextSequence - messages.length > slowestSequence) {
+          if (Thread.currentThread().isInterrupted()) {
+            throw new MessageDeliveryException(message, "Interrupted while queueing message");
+          }
+
+          LockSupport.parkNanos(1L);
+          slowestSequence = slowestWorkerSequence();
+        }
+
+        // Clear the slots every worker has passed since the last send. No worker reads them again
+        // and only the sender writes to them, so this needs no further synchronisation.
+        //
+        for (long s = clearedSequence + 1L; s <= slowestSequence; s++) {
+          messages[(int) s & mask] = null;
+        }
+
+        clearedSequence = Math.max(clearedSequence, slowestSequence);
+
+        final int slot = (int) nextSequence & mask;
+
+        messages[slot] = message;
+        keys[slot] = key;
+        cursor.set(nextSequence);
+      }
+
+      signalWorkers();
+
+      return true;
+    }
+
+    @Override
+    public int getHandlerCount() {
+      return handlers.size();
+    }
+  }
+}
@@ -8,7 +8,7 @@ import org.springframework.data.repository.CrudRepository;
 /**
  * Interface to a repository for the {@link Aircraft} entity class.
  */
-public interface AircraftRepository extends CrudRepository<Aircraft, String> {
+public interface AircraftRepository extends CrudRepository<Aircraft, Integer> {
 
     List<Aircraft> findAllByTovGreaterThan(long tov);
 
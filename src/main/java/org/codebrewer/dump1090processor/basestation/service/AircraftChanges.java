@@ -0,0 +1,79 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import java.util.Collections;
+import java.util.List;
+import org.codebrewer.dump1090processor.basestation.entity.Aircraft;
+
+/**
+ * A set of changes to the aircraft held in memory: the aircraft added or updated, the ICAO
+ * addresses of the aircraft removed, and the version of the most recent change included.
+ *
+ * <p>A full set of changes holds every aircraft, and any aircraft not included should be treated
+ * as removed.
+ */
+public class AircraftChanges {
+  private final List<Aircraft> updated;
+  private final List<String> removed;
+  private final long version;
+  private final boolean full;
+
+  /**
+   * Sole constructor for this class.
+   *
+   * @param updated snapshots of the aircraft added or updated, not null
+   * @param removed the ICAO addresses of the aircraft removed, as 6 digit hexadecimal numbers, not
+   * null
+   * @param version the version of the most recent change included
+   * @param full whether or not the updated aircraft are every aircraft held in memory
+   */
+  public AircraftChanges(List<Aircraft> updated, List<String> removed, long version, boolean full) {
+    this.updated = Collections.unmodifiableList(updated);
+    this.removed = Collections.unmodifiableList(removed);
+    this.version = version;
+    this.full = full;
+  }
+
+  public List<Aircraft> getUpdated() {
+    return updated;
+  }
+
+  public List<String> getRemoved() {
+    return removed;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public boolean isFull() {
+    return full;
+  }
+
+  /**
+   * Indicates whether or not this set of changes is empty.
+   *
+   * @return true if this is not a full set of changes and no aircraft were added, updated or
+   * removed, otherwise false
+   */
+  @JsonIgnore
+  public boolean isEmpty() {
+    return !full && updated.isEmpty() && removed.isEmpty();
+  }
+}
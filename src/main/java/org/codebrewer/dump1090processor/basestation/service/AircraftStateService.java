@@ -0,0 +1,590 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.codebrewer.dump1090processor.basestation.domain.IcaoAddress;
+import org.codebrewer.dump1090processor.basestation.domain.TransmissionType;
+import org.codebrewer.dump1090processor.basestation.entity.Aircraft;
+import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
+import org.codebrewer.dump1090processor.basestation.entity.IdMessage;
+import org.codebrewer.dump1090processor.basestation.entity.TransmissionMessage;
+import org.codebrewer.dump1090processor.basestation.repository.AircraftRepository;
+import org.geolatte.geom.G2D;
+import org.geolatte.geom.Point;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * A service that holds the live state of aircraft in memory, keyed by ICAO address, and writes
+ * changes to the aircraft repository in the background.
+ *
+ * <p>BaseStation messages update aircraft state without any database access. Aircraft changed
+ * since the last flush are remembered and a background thread periodically saves a snapshot of
+ * each of them to the repository, so that several updates to an aircraft between flushes cost a
+ * single write. Aircraft not heard from for longer than the expiry period are evicted from memory
+ * once their latest state has been flushed.
+ *
+ * <p>Every change to an aircraft, including its eviction, is given a version number taken from a
+ * counter that only ever increases, so that {@link #getChangesSince(long)} can return just the
+ * aircraft changed since a version a client has already seen. An evicted aircraft is remembered
+ * as a tombstone, holding the version of its eviction, for the expiry period. The counter starts
+ * from the time of startup in microseconds, so that versions issued before a restart are older
+ * than any issued after it.
+ *
+ * <p>The interval between flushes and the expiry period are configured in milliseconds using the
+ * {@code basestation.aircraft.flush.interval} and {@code basestation.aircraft.expiry} properties.
+ * Whether or not aircraft are written to the repository is configured using the
+ * {@code basestation.aircraft.persist} property, which defaults to the value of the
+ * {@code basestation.feed.persist} property.
+ */
+@Service
+@ManagedResource(
+    objectName = "org.codebrewer.dump1090processor:type=Control,name=AircraftStateService",
+    description = "A service that holds live aircraft state and writes it to persistent storage")
+public class AircraftStateService {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AircraftStateService.class);
+
+  private static boolean hasCallSign(String callSign) {
+    return callSign != null && !callSign.isEmpty();
+  }
+
+  private final AircraftRepository aircraftRepository;
+  private final long flushIntervalMillis;
+  private final long expiryMillis;
+  private final ConcurrentMap<Integer, Aircraft> aircraftByIcao = new ConcurrentHashMap<>();
+  private final Set<Integer> changedIcaos = ConcurrentHashMap.newKeySet();
+  private final ConcurrentMap<Integer, Tombstone> tombstonesByIcao = new ConcurrentHashMap<>();
+  private final AtomicLong version;
+  private volatile long prunedVersion;
+  private final AtomicLong flushedAircraftCount = new AtomicLong();
+  private volatile boolean persistAircraft;
+  private ScheduledExecutorService flushExecutor;
+
+  /**
+   * Sole constructor for this class.
+   *
+   * @param aircraftRepository a repository to which aircraft entities can be persisted
+   * @param flushIntervalMillis the number of milliseconds between writes of changed aircraft to
+   * the repository
+   * @param expiryMillis the number of milliseconds after which an aircraft not heard from is
+   * evicted from memory
+   * @param persistAircraft whether or not aircraft entities should be persisted
+   */
+  public AircraftStateService(
+      AircraftRepository aircraftRepository,
+      @Value("${basestation.aircraft.flush.interval:5000}") long flushIntervalMillis,
+      @Value("${basestation.aircraft.expiry:600000}") long expiryMillis,
+      @Value("${basestation.aircraft.persist:${basestation.feed.persist:true}}")
+          boolean persistAircraft) {
+    LOGGER.info(
+        "Aircraft flush interval: {}ms, expiry: {}ms, persistence: {}",
+        flushIntervalMillis, expiryMillis, persistAircraft);
+    this.aircraftRepository = aircraftRepository;
+    this.flushIntervalMillis = flushIntervalMillis;
+    this.expiryMillis = expiryMillis;
+    this.persistAircraft = persistAircraft;
+    this.prunedVersion = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    this.version = new AtomicLong(prunedVersion);
+  }
+
+  /**
+   * Loads recently seen aircraft from the repository and starts the background flusher.
+   */
+  @PostConstruct
+  public void start() {
+    final long tov = System.currentTimeMillis() - expiryMillis;
+
+    aircraftRepository.findAllByTovGreaterThan(tov)
+                      .forEach(aircraft -> {
+                        aircraft.setVersion(nextVersion());
+                        aircraftByIcao.put(aircraft.getIcao(), aircraft);
+                      });
+    LOGGER.info("Loaded {} recently seen aircraft", aircraftByIcao.size());
+
+    flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "aircraft-flusher");
+
+      thread.setDaemon(true);
+
+      return thread;
+    });
+    flushExecutor.scheduleWithFixedDelay(
+        this::flushAndEvict, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops the background flusher, then writes any remaining changes to the repository.
+   */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    if (flushExecutor != null) {
+      flushExecutor.shutdown();
+      flushExecutor.awaitTermination(flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    flush();
+  }
+
+  private long nextVersion() {
+    return version.incrementAndGet();
+  }
+
+  private void updatePosition(TransmissionMessage transmissionMessage) {
+    final Point<G2D> position = transmissionMessage.getPosition();
+
+    if (position == null) {
+      LOGGER.warn("missing position from TransmissionMessage {}", transmissionMessage);
+
+      return;
+    }
+
+    final int icao = transmissionMessage.getIcao();
+    final double lat = position.getPosition().getLat();
+    final double lon = position.getPosition().getLon();
+    final long tov = transmissionMessage.getTimestamp().toEpochMilli();
+    boolean updated = false;
+
+    while (!updated) {
+      final Aircraft aircraft =
+          aircraftByIcao.computeIfAbsent(icao, key -> new Aircraft(key, lat, lon, tov));
+
+      synchronized (aircraft) {
+        // Retry if the aircraft was evicted before the lock was acquired
+        //
+        if (aircraftByIcao.get(icao) == aircraft) {
+          aircraft.setLatitude(lat);
+          aircraft.setLongitude(lon);
+          aircraft.setTov(tov);
+
+          if (transmissionMessage.getAltitude() != null) {
+            aircraft.setAltitude(transmissionMessage.getAltitude());
+          }
+
+          aircraft.setVersion(nextVersion());
+          updated = true;
+        }
+      }
+    }
+
+    changedIcaos.add(icao);
+  }
+
+  private void updateVelocity(TransmissionMessage transmissionMessage) {
+    final Aircraft aircraft = aircraftByIcao.get(transmissionMessage.getIcao());
+
+    if (aircraft != null) {
+      final Float groundSpeed = transmissionMessage.getGroundSpeed();
+      final Float track = transmissionMessage.getTrack();
+
+      synchronized (aircraft) {
+        if ((groundSpeed == null || groundSpeed.equals(aircraft.getGroundSpeed()))
+            && (track == null || track.equals(aircraft.getTrack()))) {
+          return;
+        }
+
+        if (groundSpeed != null) {
+          aircraft.setGroundSpeed(groundSpeed);
+        }
+
+        if (track != null) {
+          aircraft.setTrack(track);
+        }
+
+        aircraft.setVersion(nextVersion());
+      }
+
+      changedIcaos.add(transmissionMessage.getIcao());
+    }
+  }
+
+  private void updateAltitudeAndSquawk(TransmissionMessage transmissionMessage) {
+    final Aircraft aircraft = aircraftByIcao.get(transmissionMessage.getIcao());
+
+    if (aircraft != null) {
+      final String callSign =
+          hasCallSign(transmissionMessage.getCallSign()) ? transmissionMessage.getCallSign() : null;
+      final Float altitude = transmissionMessage.getAltitude();
+      final Short squawk = transmissionMessage.getSquawk();
+
+      synchronized (aircraft) {
+        if ((callSign == null || callSign.equals(aircraft.getCallSign()))
+            && (altitude == null || altitude.equals(aircraft.getAltitude()))
+            && (squawk == null || squawk.equals(aircraft.getSquawk()))) {
+          return;
+        }
+
+        if (callSign != null) {
+          aircraft.setCallSign(callSign);
+        }
+
+        if (altitude != null) {
+          aircraft.setAltitude(altitude);
+        }
+
+        if (squawk != null) {
+          aircraft.setSquawk(squawk);
+        }
+
+        aircraft.setVersion(nextVersion());
+      }
+
+      changedIcaos.add(transmissionMessage.getIcao());
+    }
+  }
+
+  private void updateCallSign(IdMessage idMessage) {
+    if (hasCallSign(idMessage.getCallSign())) {
+      final Aircraft aircraft = aircraftByIcao.get(idMessage.getIcao());
+
+      if (aircraft != null) {
+        synchronized (aircraft) {
+          if (idMessage.getCallSign().equals(aircraft.getCallSign())) {
+            return;
+          }
+
+          aircraft.setCallSign(idMessage.getCallSign());
+          aircraft.setVersion(nextVersion());
+        }
+
+        changedIcaos.add(idMessage.getIcao());
+      }
+    }
+  }
+
+  /**
+   * Applies a BaseStation message to the state of the aircraft that sent it.
+   *
+   * <p>An airborne position message adds an aircraft that is not yet known. Other messages update
+   * only aircraft that are already known.
+   *
+   * @param baseStationMessage a BaseStation message, not null
+   */
+  public void update(BaseStationMessage baseStationMessage) {
+    if (baseStationMessage instanceof TransmissionMessage) {
+      final TransmissionMessage transmissionMessage = (TransmissionMessage) baseStationMessage;
+      final TransmissionType transmissionType = transmissionMessage.getTransmissionType();
+
+      if (transmissionType == TransmissionType.AIRBORNE_POSITION) {
+        updatePosition(transmissionMessage);
+      } else if (transmissionType == TransmissionType.AIRBORNE_VELOCITY) {
+        updateVelocity(transmissionMessage);
+      } else if (transmissionType == TransmissionType.SURVEILLANCE_ID) {
+        updateAltitudeAndSquawk(transmissionMessage);
+      }
+    } else if (baseStationMessage instanceof IdMessage) {
+      updateCallSign((IdMessage) baseStationMessage);
+    }
+  }
+
+  /**
+   * Gets snapshots of the aircraft last seen after a given time.
+   *
+   * @param tov a time, in milliseconds since the epoch
+   *
+   * @return copies of the state of the aircraft whose time of validity is later than {@code tov}
+   */
+  public List<Aircraft> getAircraftSeenSince(long tov) {
+    final List<Aircraft> result = new ArrayList<>();
+
+    for (Aircraft aircraft : aircraftByIcao.values()) {
+      synchronized (aircraft) {
+        if (aircraft.getTov() > tov) {
+          result.add(new Aircraft(aircraft));
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Gets a snapshot of an aircraft.
+   *
+   * @param icao the ICAO address of an aircraft
+   *
+   * @return a copy of the state of the aircraft, or null if the aircraft is not held in memory
+   */
+  public Aircraft getAircraft(int icao) {
+    final Aircraft aircraft = aircraftByIcao.get(icao);
+
+    if (aircraft == null) {
+      return null;
+    }
+
+    synchronized (aircraft) {
+      return new Aircraft(aircraft);
+    }
+  }
+
+  private boolean isLiveAfter(int icao, long version) {
+    final Aircraft aircraft = aircraftByIcao.get(icao);
+
+    if (aircraft == null) {
+      return false;
+    }
+
+    synchronized (aircraft) {
+      return aircraft.getVersion() > version;
+    }
+  }
+
+  /**
+   * Gets the aircraft changed since a given version.
+   *
+   * <p>If changes since the given version can no longer be determined, because tombstones that
+   * might be needed have been discarded or because the version was not issued by this instance of
+   * the service, then every aircraft held in memory is returned and the result is marked as full,
+   * meaning that the client should discard any aircraft it holds that are not returned.
+   *
+   * @param since a version returned by an earlier call, or zero to get every aircraft
+   *
+   * @return snapshots of the aircraft added or updated since the given version, the addresses of
+   * the aircraft evicted since the given version, and a version to pass to the next call
+   */
+  public AircraftChanges getChangesSince(long since) {
+    // Aircraft take their versions while locked, so reading the counter before scanning ensures
+    // every change up to the version returned is seen by the scan
+    //
+    final long highWaterMark = version.get();
+    final boolean full = since < prunedVersion || since > highWaterMark;
+    final List<Aircraft> updated = new ArrayList<>();
+    final List<String> removed = new ArrayList<>();
+
+    for (Aircraft aircraft : aircraftByIcao.values()) {
+      synchronized (aircraft) {
+        if (full || aircraft.getVersion() > since) {
+          updated.add(new Aircraft(aircraft));
+        }
+      }
+    }
+
+    if (!full) {
+      tombstonesByIcao.forEach((icao, tombstone) -> {
+        if (tombstone.version > since && !isLiveAfter(icao, tombstone.version)) {
+          removed.add(IcaoAddress.format(icao));
+        }
+      });
+    }
+
+    return new AircraftChanges(updated, removed, highWaterMark, full);
+  }
+
+  /**
+   * Writes a snapshot of each aircraft changed since the last flush to the repository.
+   *
+   * <p>If aircraft persistence is disabled then the changes are discarded.
+   *
+   * @return the number of aircraft written to the repository
+   */
+  @ManagedOperation(description = "Write changed aircraft to persistent storage now")
+  public int flush() {
+    final List<Aircraft> snapshots = new ArrayList<>();
+
+    for (Iterator<Integer> iterator = changedIcaos.iterator(); iterator.hasNext(); ) {
+      final Integer icao = iterator.next();
+      final Aircraft aircraft = aircraftByIcao.get(icao);
+
+      iterator.remove();
+
+      if (aircraft != null) {
+        synchronized (aircraft) {
+          snapshots.add(new Aircraft(aircraft));
+        }
+      }
+    }
+
+    if (snapshots.isEmpty() || !persistAircraft) {
+      return 0;
+    }
+
+    try {
+      aircraftRepository.saveAll(snapshots);
+    } catch (RuntimeException e) {
+      // Try again at the next flush
+      //
+      snapshots.forEach(aircraft -> changedIcaos.add(aircraft.getIcao()));
+
+      throw e;
+    }
+
+    flushedAircraftCount.addAndGet(snapshots.size());
+    LOGGER.debug("Flushed {} aircraft", snapshots.size());
+
+    return snapshots.size();
+  }
+
+  /**
+   * Evicts from memory the aircraft not heard from since a given time, unless they have changes
+   * still to be flushed.
+   *
+   * @param tov a time, in milliseconds since the epoch
+   *
+   * @return the number of aircraft evicted
+   */
+  int evictAircraftNotSeenSince(long tov) {
+    int evictedCount = 0;
+
+    for (Iterator<Map.Entry<Integer, Aircraft>> iterator = aircraftByIcao.entrySet().iterator();
+        iterator.hasNext(); ) {
+      final Map.Entry<Integer, Aircraft> entry = iterator.next();
+      final Aircraft aircraft = entry.getValue();
+
+      synchronized (aircraft) {
+        if (aircraft.getTov() > tov || changedIcaos.contains(entry.getKey())) {
+          continue;
+        }
+
+        tombstonesByIcao.put(
+            entry.getKey(), new Tombstone(nextVersion(), System.currentTimeMillis()));
+        iterator.remove();
+        evictedCount++;
+      }
+    }
+
+    return evictedCount;
+  }
+
+  /**
+   * Discards the tombstones of aircraft evicted before a given time.
+   *
+   * @param evictedMillis a time, in milliseconds since the epoch
+   *
+   * @return the number of tombstones discarded
+   */
+  int pruneTombstonesBefore(long evictedMillis) {
+    int prunedCount = 0;
+
+    for (Iterator<Tombstone> iterator = tombstonesByIcao.values().iterator();
+        iterator.hasNext(); ) {
+      final Tombstone tombstone = iterator.next();
+
+      if (tombstone.evictedMillis < evictedMillis) {
+        prunedVersion = Math.max(prunedVersion, tombstone.version);
+        iterator.remove();
+        prunedCount++;
+      }
+    }
+
+    return prunedCount;
+  }
+
+  private void flushAndEvict() {
+    try {
+      flush();
+
+      final long now = System.currentTimeMillis();
+      final int evictedCount = evictAircraftNotSeenSince(now - expiryMillis);
+
+      pruneTombstonesBefore(now - expiryMillis);
+
+      if (evictedCount > 0) {
+        LOGGER.debug("Evicted {} aircraft", evictedCount);
+      }
+    } catch (RuntimeException e) {
+      LOGGER.error("Failed to flush aircraft: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Gets the number of aircraft held in memory.
+   *
+   * @return the number of aircraft held in memory
+   */
+  @ManagedAttribute(description = "The number of aircraft held in memory")
+  public int getAircraftCount() {
+    return aircraftByIcao.size();
+  }
+
+  /**
+   * Gets the version of the most recent change to any aircraft.
+   *
+   * @return the version of the most recent change to any aircraft
+   */
+  @ManagedAttribute(description = "The version of the most recent change to any aircraft")
+  public long getVersion() {
+    return version.get();
+  }
+
+  /**
+   * Gets the number of aircraft changed since the last flush.
+   *
+   * @return the number of aircraft changed since the last flush
+   */
+  @ManagedAttribute(description = "The number of aircraft changed since the last flush")
+  public int getChangedAircraftCount() {
+    return changedIcaos.size();
+  }
+
+  /**
+   * Gets the number of aircraft snapshots written to the repository since startup.
+   *
+   * @return the number of aircraft snapshots written to the repository since startup
+   */
+  @ManagedAttribute(description = "The number of aircraft snapshots written to persistent storage")
+  public long getFlushedAircraftCount() {
+    return flushedAircraftCount.get();
+  }
+
+  /**
+   * Indicates whether or not aircraft are written to the application's database.
+   *
+   * @return true if aircraft are written to the database, otherwise false
+   */
+  @ManagedOperation(description = "Whether or not aircraft are saved to persistent storage")
+  public boolean isPersistAircraft() {
+    return persistAircraft;
+  }
+
+  /**
+   * Controls whether or not aircraft are written to the application's database.
+   *
+   * @param persistAircraft true if aircraft should be written to the database, false if not
+   */
+  @ManagedOperation(description = "Control whether or not aircraft are saved to persistent storage")
+  public void setPersistAircraft(boolean persistAircraft) {
+    LOGGER.info("Persist aircraft: {}", persistAircraft);
+    this.persistAircraft = persistAircraft;
+  }
+
+  private static final class Tombstone {
+    private final long version;
+    private final long evictedMillis;
+
+    private Tombstone(long version, long evictedMillis) {
+      this.version = version;
+      this.evictedMillis = evictedMillis;
+    }
+  }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * A service that streams live aircraft state to subscribers as Server-Sent Events.
+ *
+ * <p>A new subscriber is sent a {@code snapshot} event holding a full {@link AircraftChanges}.
+ * Every {@code basestation.aircraft.stream.interval} milliseconds, the aircraft changed since the
+ * previous broadcast are then sent to all subscribers as a {@code changes} event, so that an
+ * aircraft updated several times in between is sent once. No event is sent if nothing has
+ * changed. Each event is serialized once, however many subscribers there are, and no subscriber
+ * causes any database access. Events carry the version of the changes they hold, which a client
+ * can pass to {@link AircraftStateService#getChangesSince(long)} to resume without a snapshot.
+ *
+ * <p>Broadcasting only queues an event for each subscriber. Events are sent by a pool of sender
+ * threads, at most one at a time for each subscriber so that its events stay in order, and so a
+ * slow subscriber holds up neither the broadcast nor other subscribers. A subscriber with
+ * {@code basestation.aircraft.stream.queue.capacity} events still waiting to be sent when another
+ * is broadcast has fallen behind, and its stream is completed so that its client can reconnect
+ * and start again from a snapshot.
+ */
+@Service
+@ManagedResource(
+    objectName = "org.codebrewer.dump1090processor:type=Counter,name=AircraftStreamService",
+    description = "A service that streams live aircraft state to subscribers")
+public class AircraftStreamService {
+  static final String SNAPSHOT_EVENT_NAME = "snapshot";
+  static final String CHANGES_EVENT_NAME = "changes";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AircraftStreamService.class);
+
+  // An event serialized once and shared by all the subscribers to which it is sent
+  //
+  private static final class Event {
+    private final String name;
+    private final String json;
+
+    private Event(String name, String json) {
+      this.name = name;
+      this.json = json;
+    }
+  }
+
+  // A subscriber's emitter and the events waiting to be sent to it
+  //
+  private final class Subscriber {
+    private final SseEmitter emitter;
+    private final BlockingQueue<Event> events;
+    private final AtomicBoolean sending = new AtomicBoolean();
+
+    private Subscriber(SseEmitter emitter) {
+      this.emitter = emitter;
+      this.events = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    // Queues an event, returning false if the subscriber has fallen behind
+    //
+    private boolean offer(Event event) {
+      if (!events.offer(event)) {
+        return false;
+      }
+
+      if (sending.compareAndSet(false, true)) {
+        try {
+          senderExecutor.execute(this::sendEvents);
+        } catch (RejectedExecutionException e) {
+          sending.set(false);
+        }
+      }
+
+      return true;
+    }
+
+    private void sendEvents() {
+      do {
+        Event event;
+
+        while ((event = events.poll()) != null) {
+          if (!send(this, event)) {
+            events.clear();
+
+            return;
+          }
+        }
+
+        sending.set(false);
+
+        // Carry on if an event was queued after the queue was found to be empty but before the
+        // flag was cleared, since whoever queued it will have seen the flag set
+        //
+      } while (!events.isEmpty() && sending.compareAndSet(false, true));
+    }
+  }
+
+  private final AircraftStateService aircraftStateService;
+  private final ObjectMapper objectMapper;
+  private final long intervalMillis;
+  private final int queueCapacity;
+  private final Executor senderExecutor;
+  private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+  private final Object publishLock = new Object();
+  private final AtomicLong publishedChangesCount = new AtomicLong();
+  private final AtomicLong sentEventCount = new AtomicLong();
+  private final AtomicLong droppedSubscriberCount = new AtomicLong();
+  private volatile long lastVersion;
+  private ScheduledExecutorService publishExecutor;
+
+  /**
+   * Sole public constructor for this class.
+   *
+   * @param aircraftStateService a service holding the state of aircraft
+   * @param objectMapper an object mapper used to serialize events
+   * @param intervalMillis the number of milliseconds between broadcasts of changes
+   * @param queueCapacity the maximum number of events waiting to be sent to a subscriber
+   * @param virtualThreads whether or not events are sent on virtual threads, if the JVM supports
+   * them
+   */
+  @Autowired
+  public AircraftStreamService(
+      AircraftStateService aircraftStateService,
+      ObjectMapper objectMapper,
+      @Value("${basestation.aircraft.stream.interval:1000}") long intervalMillis,
+      @Value("${basestation.aircraft.stream.queue.capacity:16}") int queueCapacity,
+      @Value("${basestation.threads.virtual:false}") boolean virtualThreads) {
+    this(aircraftStateService, objectMapper, intervalMillis, queueCapacity,
+        Executors.newCachedThreadPool(
+            VirtualThreads.threadFactory("aircraft-stream-sender-", virtualThreads)));
+  }
+
+  AircraftStreamService(
+      AircraftStateService aircraftStateService,
+      ObjectMapper objectMapper,
+      long intervalMillis,
+      int queueCapacity,
+      Executor senderExecutor) {
+    LOGGER.info(
+        "Aircraft stream interval: {}ms, queue capacity: {}", intervalMillis, queueCapacity);
+    this.aircraftStateService = aircraftStateService;
+    this.objectMapper = objectMapper;
+    this.intervalMillis = intervalMillis;
+    this.queueCapacity = queueCapacity;
+    this.senderExecutor = senderExecutor;
+  }
+
+  /**
+   * Starts broadcasting changes to aircraft to subscribers.
+   */
+  @PostConstruct
+  public void start() {
+    lastVersion = aircraftStateService.getVersion();
+    publishExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "aircraft-streamer");
+
+      thread.setDaemon(true);
+
+      return thread;
+    });
+    publishExecutor.scheduleWithFixedDelay(
+        this::publishChanges, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops broadcasting changes and completes the streams of all subscribers.
+   */
+  @PreDestroy
+  public void stop() {
+    if (publishExecutor != null) {
+      publishExecutor.shutdownNow();
+    }
+
+    if (senderExecutor instanceof ExecutorService) {
+      ((ExecutorService) senderExecutor).shutdownNow();
+    }
+
+    subscribers.forEach(subscriber -> subscriber.emitter.complete());
+    subscribers.clear();
+  }
+
+  private boolean send(Subscriber subscriber, Event event) {
+    try {
+      subscriber.emitter.send(
+          SseEmitter.event().name(event.name).data(event.json, MediaType.APPLICATION_JSON));
+      sentEventCount.incrementAndGet();
+
+      return true;
+    } catch (IOException | IllegalStateException e) {
+      LOGGER.debug("Dropping aircraft stream subscriber: {}", e.getMessage());
+      subscribers.remove(subscriber);
+      subscriber.emitter.completeWithError(e);
+
+      return false;
+    }
+  }
+
+  // Queues an event for a subscriber, completing the subscriber's stream if it has fallen behind
+  //
+  private void offer(Subscriber subscriber, Event event) {
+    if (!subscriber.offer(event)) {
+      LOGGER.debug("Dropping aircraft stream subscriber that has fallen behind");
+      droppedSubscriberCount.incrementAndGet();
+      subscribers.remove(subscriber);
+      subscriber.emitter.complete();
+    }
+  }
+
+  /**
+   * Adds a subscriber to the stream of aircraft state, sending it a snapshot of every aircraft held
+   * in memory.
+   *
+   * @return an emitter for the new subscriber's stream
+   */
+  public SseEmitter subscribe() {
+    final SseEmitter emitter = new SseEmitter(0L);
+    final Subscriber subscriber = new Subscriber(emitter);
+
+    emitter.onCompletion(() -> subscribers.remove(subscriber));
+    emitter.onTimeout(() -> subscribers.remove(subscriber));
+    emitter.onError(e -> subscribers.remove(subscriber));
+
+    // Take the snapshot and register the subscriber without publishing in between, so the
+    // subscriber receives every change made after the snapshot
+    //
+    synchronized (publishLock) {
+      try {
+        final String json =
+            objectMapper.writeValueAsString(aircraftStateService.getChangesSince(0L));
+
+        subscribers.add(subscriber);
+        offer(subscriber, new Event(SNAPSHOT_EVENT_NAME, json));
+      } catch (JsonProcessingException e) {
+        LOGGER.error("Failed to serialize aircraft snapshot: {}", e.getMessage());
+        emitter.completeWithError(e);
+      }
+    }
+
+    return emitter;
+  }
+
+  /**
+   * Queues the changes to aircraft reported since the last broadcast to be sent to all
+   * subscribers.
+   */
+  void publishChanges() {
+    synchronized (publishLock) {
+      try {
+        final AircraftChanges changes = aircraftStateService.getChangesSince(lastVersion);
+
+        lastVersion = changes.getVersion();
+
+        if (changes.isEmpty()) {
+          return;
+        }
+
+        final Event event = new Event(
+            changes.isFull() ? SNAPSHOT_EVENT_NAME : CHANGES_EVENT_NAME,
+            objectMapper.writeValueAsString(changes));
+
+        for (Subscriber subscriber : subscribers) {
+          offer(subscriber, event);
+        }
+
+        publishedChangesCount.incrementAndGet();
+      } catch (JsonProcessingException | RuntimeException e) {
+        LOGGER.error("Failed to publish aircraft changes: {}", e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Gets the number of subscribers to the stream of aircraft state.
+   *
+   * @return the number of subscribers to the stream of aircraft state
+   */
+  @ManagedAttribute(description = "The number of subscribers to the stream of aircraft state")
+  public int getSubscriberCount() {
+    return subscribers.size();
+  }
+
+  /**
+   * Gets the total number of sets of changes broadcast since application startup.
+   *
+   * @return the total number of sets of changes broadcast since application startup
+   */
+  @ManagedAttribute(description = "The total number of sets of changes broadcast since startup")
+  public long getPublishedChangesCount() {
+    return publishedChangesCount.get();
+  }
+
+  /**
+   * Gets the total number of events sent to subscribers since application startup.
+   *
+   * @return the total number of events sent to subscribers since application startup
+   */
+  @ManagedAttribute(description = "The total number of events sent to subscribers since startup")
+  public long getSentEventCount() {
+    return sentEventCount.get();
+  }
+
+  /**
+   * Gets the total number of subscribers dropped for falling behind since application startup.
+   *
+   * @return the total number of subscribers dropped for falling behind since application startup
+   */
+  @ManagedAttribute(description = "The total number of subscribers dropped for falling behind")
+  public long getDroppedSubscriberCount() {
+    return droppedSubscriberCount.get();
+  }
+}
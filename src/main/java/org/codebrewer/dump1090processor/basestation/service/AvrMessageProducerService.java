@@ -0,0 +1,119 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.integration.ip.tcp.TcpReceivingChannelAdapter;
+import org.springframework.integration.ip.tcp.connection.TcpNetClientConnectionFactory;
+import org.springframework.integration.ip.tcp.serializer.ByteArrayLfSerializer;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * A service that connects to the AVR raw message feed of {@code dump1090}, or of a lightweight
+ * receiver, which carries the raw Mode S messages as lines of hexadecimal digits.
+ *
+ * <p>Each message produced is a line, without its line feed, to be decoded by an
+ * {@link AvrMessageTransformerService}.
+ */
+@Service
+@ManagedResource(
+    objectName = "org.codebrewer.dump1090processor:type=Control,name=AvrMessageProducerService",
+    description = "A service that connects to the AVR raw message feed")
+public class AvrMessageProducerService {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(AvrMessageProducerService.class);
+
+  private final TcpReceivingChannelAdapter messageProducer;
+
+  /**
+   * Sole constructor for this class.
+   *
+   * @param host the host serving the AVR raw message feed
+   * @param port the port on which the AVR raw message feed is served
+   * @param autoStart whether or not to connect to the feed when the application starts
+   * @param virtualThreads whether or not to read the feed on a virtual thread, if the JVM supports
+   * them
+   */
+  public AvrMessageProducerService(
+      @Value("${basestation.avr.host:${dump1090.host:localhost}}") String host,
+      @Value("${basestation.avr.port:30002}") int port,
+      @Value("${basestation.avr.start.auto:false}") boolean autoStart,
+      @Value("${basestation.threads.virtual:false}") boolean virtualThreads) {
+    LOGGER.info("AvrMessageProducerService: {}:{}, auto-start: {}", host, port, autoStart);
+
+    final TcpNetClientConnectionFactory clientConnectionFactory =
+        new TcpNetClientConnectionFactory(host, port);
+
+    clientConnectionFactory.setSingleUse(false);
+    clientConnectionFactory.setDeserializer(new ByteArrayLfSerializer());
+
+    if (virtualThreads) {
+      clientConnectionFactory.setTaskExecutor(
+          VirtualThreads.threadPerTaskExecutor("avr-feed-reader-", true));
+    }
+
+    messageProducer = new TcpReceivingChannelAdapter();
+    messageProducer.setClientMode(true);
+    messageProducer.setConnectionFactory(clientConnectionFactory);
+    messageProducer.setAutoStartup(autoStart);
+  }
+
+  public TcpReceivingChannelAdapter avrMessageClient() {
+    return messageProducer;
+  }
+
+  /**
+   * Gets whether or not the connection to the AVR raw message feed is currently established.
+   *
+   * @return whether or not the connection to the AVR raw message feed is currently
+   * established.
+   */
+  @ManagedAttribute(
+      description =
+          "Whether or not the connection to the AVR raw message feed is currently established")
+  public boolean isRunning() {
+    return messageProducer.isRunning();
+  }
+
+  /**
+   * Requests connection to the AVR raw message feed.
+   *
+   * <p>Has no effect if already started.
+   */
+  @ManagedOperation(description = "Connect to the feed and start reading AVR raw messages")
+  public void start() {
+    LOGGER.info("'Start' requested for AVR raw message feed");
+    messageProducer.start();
+  }
+
+  /**
+   * Requests disconnection from the AVR raw message feed.
+   *
+   * <p>Has no effect if already stopped.
+   */
+  @ManagedOperation(
+      description = "Stop reading AVR raw messages and disconnect from the feed")
+  public void stop() {
+    LOGGER.info("'Stop' requested for AVR raw message feed");
+    messageProducer.stop();
+  }
+}
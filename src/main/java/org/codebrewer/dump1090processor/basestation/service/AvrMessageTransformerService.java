@@ -0,0 +1,167 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage.INVALID_MESSAGE;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.integration.transformer.AbstractPayloadTransformer;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * Transforms the lines of the AVR raw message feed into BaseStation messages.
+ *
+ * <p>Each line holds a Mode S message as hexadecimal digits, either as {@code *<message>;} or,
+ * when {@code dump1090} is asked to include timestamps, as {@code @<timestamp><message>;} where the
+ * timestamp is 12 hexadecimal digits. The message is decoded by a {@link ModeSDecoder} in the same
+ * way as by {@link BeastMessageTransformerService}, and lines that cannot be decoded, including
+ * those holding Mode A/C replies, are transformed into {@link BaseStationMessage#INVALID_MESSAGE}.
+ *
+ * <p>Decoding a position depends on earlier messages from the same aircraft, so lines should be
+ * transformed in the order in which they are read. Positions can be decoded from single messages
+ * if the position of the receiver is given by the {@code basestation.receiver.latitude} and
+ * {@code basestation.receiver.longitude} properties.
+ */
+@Service
+@ManagedResource(
+    objectName = "org.codebrewer.dump1090processor:type=Counter,name=AvrTransformerService",
+    description = "Transforms the incoming stream of AVR raw messages into BaseStation messages")
+public class AvrMessageTransformerService
+    extends AbstractPayloadTransformer<byte[], BaseStationMessage> {
+  private static final int TIMESTAMP_DIGITS = 12;
+  private static final int LONG_MESSAGE_LENGTH = 14;
+
+  private final ModeSDecoder decoder;
+  private final AtomicLong decodedMessageCount = new AtomicLong();
+  private final AtomicLong undecodedMessageCount = new AtomicLong();
+
+  /**
+   * Sole constructor for this class.
+   *
+   * @param receiverLatitude the latitude of the receiver in degrees, or NaN if unknown
+   * @param receiverLongitude the longitude of the receiver in degrees, or NaN if unknown
+   */
+  public AvrMessageTransformerService(
+      @Value("${basestation.receiver.latitude:NaN}") double receiverLatitude,
+      @Value("${basestation.receiver.longitude:NaN}") double receiverLongitude) {
+    decoder = new ModeSDecoder(receiverLatitude, receiverLongitude);
+  }
+
+  private static int hexDigitValue(int c) {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    } else if (c >= 'A' && c <= 'F') {
+      return c - 'A' + 10;
+    } else if (c >= 'a' && c <= 'f') {
+      return c - 'a' + 10;
+    }
+
+    return -1;
+  }
+
+  // Returns the message held by a line, or null if the line is malformed
+  //
+  private static byte[] messageAt(byte[] line) {
+    int start = 0;
+    int end = line.length;
+
+    while (start < end && line[start] >= 0 && line[start] <= ' ') {
+      start++;
+    }
+
+    while (end > start && line[end - 1] >= 0 && line[end - 1] <= ' ') {
+      end--;
+    }
+
+    if (end - start < 2 || line[end - 1] != ';') {
+      return null;
+    }
+
+    if (line[start] == '@') {
+      start += TIMESTAMP_DIGITS;
+    } else if (line[start] != '*') {
+      return null;
+    }
+
+    final int digits = end - 1 - ++start;
+
+    if (digits <= 0 || digits > 2 * LONG_MESSAGE_LENGTH || (digits & 1) != 0) {
+      return null;
+    }
+
+    final byte[] message = new byte[digits / 2];
+
+    for (int i = 0; i < message.length; i++) {
+      final int high = hexDigitValue(line[start + 2 * i]);
+      final int low = hexDigitValue(line[start + 2 * i + 1]);
+
+      if (high < 0 || low < 0) {
+        return null;
+      }
+
+      message[i] = (byte) (high << 4 | low);
+    }
+
+    return message;
+  }
+
+  @Override
+  protected BaseStationMessage transformPayload(byte[] line) {
+    final byte[] message = messageAt(line);
+    final BaseStationMessage baseStationMessage =
+        message == null ? null : decoder.decode(message, 0, message.length, Instant.now());
+
+    if (baseStationMessage == null) {
+      undecodedMessageCount.incrementAndGet();
+
+      return INVALID_MESSAGE;
+    }
+
+    decodedMessageCount.incrementAndGet();
+
+    return baseStationMessage;
+  }
+
+  /**
+   * Gets the total number of messages decoded into BaseStation messages since application startup.
+   *
+   * @return the total number of messages decoded since application startup
+   */
+  @ManagedAttribute(
+      description = "The total number of messages decoded since application startup")
+  public long getDecodedMessageCount() {
+    return decodedMessageCount.get();
+  }
+
+  /**
+   * Gets the total number of messages that could not be decoded since application startup,
+   * because they are malformed, failed their parity check, came from an unknown aircraft or are of
+   * an unsupported type.
+   *
+   * @return the total number of messages that could not be decoded since application startup
+   */
+  @ManagedAttribute(
+      description = "The total number of messages that could not be decoded since startup")
+  public long getUndecodedMessageCount() {
+    return undecodedMessageCount.get();
+  }
+}
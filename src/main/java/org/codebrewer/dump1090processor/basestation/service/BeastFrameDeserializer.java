@@ -0,0 +1,174 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.springframework.integration.ip.tcp.serializer.AbstractByteArraySerializer;
+import org.springframework.integration.ip.tcp.serializer.SoftEndOfStreamException;
+
+/**
+ * Reads and writes the frames of the Beast binary format, served by {@code dump1090} on port 30005.
+ *
+ * <p>On the wire each frame starts with the escape byte {@code 0x1a} followed by a type byte, a 6
+ * byte big-endian timestamp counting at 12MHz, a signal level byte and the bytes of the received
+ * message. Any {@code 0x1a} byte within the frame after the type byte is doubled. Frames carry a
+ * 2 byte Mode A/C reply (type '1'), a 7 byte short Mode S message (type '2') or a 14 byte long Mode
+ * S message (type '3'); frames of any other type are skipped.
+ *
+ * <p>A deserialized frame is returned without escaping, as the type byte followed by the
+ * timestamp, signal level and message bytes, so that the message starts at offset
+ * {@link #MESSAGE_OFFSET}. Bytes between frames, and frames cut short by the start of another
+ * frame, are discarded.
+ */
+public class BeastFrameDeserializer extends AbstractByteArraySerializer {
+  public static final byte TYPE_MODE_AC = '1';
+  public static final byte TYPE_MODE_S_SHORT = '2';
+  public static final byte TYPE_MODE_S_LONG = '3';
+  public static final int TIMESTAMP_OFFSET = 1;
+  public static final int SIGNAL_LEVEL_OFFSET = 7;
+  public static final int MESSAGE_OFFSET = 8;
+
+  private static final int ESCAPE = 0x1a;
+
+  private static int messageLength(int type) {
+    switch (type) {
+      case TYPE_MODE_AC:
+        return 2;
+      case TYPE_MODE_S_SHORT:
+        return 7;
+      case TYPE_MODE_S_LONG:
+        return 14;
+      default:
+        return -1;
+    }
+  }
+
+  /**
+   * Gets the 12MHz timestamp of a deserialized frame.
+   *
+   * @param frame a frame returned by {@link #deserialize(InputStream)}, not null
+   *
+   * @return the timestamp of the frame
+   */
+  public static long getTimestamp(byte[] frame) {
+    long timestamp = 0L;
+
+    for (int i = TIMESTAMP_OFFSET; i < SIGNAL_LEVEL_OFFSET; i++) {
+      timestamp = timestamp << 8 | frame[i] & 0xff;
+    }
+
+    return timestamp;
+  }
+
+  /**
+   * Gets the signal level of a deserialized frame.
+   *
+   * @param frame a frame returned by {@link #deserialize(InputStream)}, not null
+   *
+   * @return the signal level of the frame, from 0 to 255
+   */
+  public static int getSignalLevel(byte[] frame) {
+    return frame[SIGNAL_LEVEL_OFFSET] & 0xff;
+  }
+
+  @Override
+  public byte[] deserialize(InputStream inputStream) throws IOException {
+    int b = inputStream.read();
+    int type = -1;
+
+    if (b < 0) {
+      throw new SoftEndOfStreamException("Stream closed between frames");
+    }
+
+    while (true) {
+      if (type < 0) {
+        // Skip to the start of a frame
+        //
+        while (b != ESCAPE) {
+          b = readByte(inputStream);
+        }
+
+        type = readByte(inputStream);
+      }
+
+      final int length = messageLength(type);
+
+      if (length < 0) {
+        // A doubled escape byte outside a frame is frame data, not the start of a frame
+        //
+        b = type == ESCAPE ? 0 : type;
+        type = -1;
+        continue;
+      }
+
+      final byte[] frame = new byte[MESSAGE_OFFSET + length];
+      int count = 1;
+
+      frame[0] = (byte) type;
+      type = -1;
+
+      while (count < frame.length) {
+        b = readByte(inputStream);
+
+        if (b == ESCAPE) {
+          b = readByte(inputStream);
+
+          if (b != ESCAPE) {
+            // An undoubled escape byte starts another frame, so this one is abandoned and the
+            // byte read is the type of the next
+            //
+            publishEvent(new IOException("Beast frame cut short"), frame, count);
+            type = b;
+            break;
+          }
+        }
+
+        frame[count++] = (byte) b;
+      }
+
+      if (count == frame.length) {
+        return frame;
+      }
+    }
+  }
+
+  private int readByte(InputStream inputStream) throws IOException {
+    final int b = inputStream.read();
+
+    checkClosure(b);
+
+    return b;
+  }
+
+  @Override
+  public void serialize(byte[] frame, OutputStream outputStream) throws IOException {
+    outputStream.write(ESCAPE);
+    outputStream.write(frame[0]);
+
+    for (int i = 1; i < frame.length; i++) {
+      if ((frame[i] & 0xff) == ESCAPE) {
+        outputStream.write(ESCAPE);
+      }
+
+      outputStream.write(frame[i]);
+    }
+
+    outputStream.flush();
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.integration.ip.tcp.TcpReceivingChannelAdapter;
+import org.springframework.integration.ip.tcp.connection.TcpNetClientConnectionFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * A service that connects to the Beast binary message feed of {@code dump1090}, which carries the
+ * raw Mode S messages from which the BaseStation message feed is generated, with less overhead.
+ *
+ * <p>Each message produced is a frame read by a {@link BeastFrameDeserializer}.
+ */
+@Service
+@ManagedResource(
+    objectName = "org.codebrewer.dump1090processor:type=Control,name=BeastMessageProducerService",
+    description = "A service that connects to the Beast binary message feed")
+public class BeastMessageProducerService {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(BeastMessageProducerService.class);
+
+  private final TcpReceivingChannelAdapter messageProducer;
+
+  /**
+   * Sole constructor for this class.
+   *
+   * @param host the host serving the Beast binary message feed
+   * @param port the port on which the Beast binary message feed is served
+   * @param autoStart whether or not to connect to the feed when the application starts
+   * @param virtualThreads whether or not to read the feed on a virtual thread, if the JVM supports
+   * them
+   */
+  public BeastMessageProducerService(
+      @Value("${dump1090.host:localhost}") String host,
+      @Value("${basestation.beast.port:30005}") int port,
+      @Value("${basestation.beast.start.auto:false}") boolean autoStart,
+      @Value("${basestation.threads.virtual:false}") boolean virtualThreads) {
+    LOGGER.info("BeastMessageProducerService: {}:{}, auto-start: {}", host, port, autoStart);
+
+    final TcpNetClientConnectionFactory clientConnectionFactory =
+        new TcpNetClientConnectionFactory(host, port);
+
+    clientConnectionFactory.setSingleUse(false);
+    clientConnectionFactory.setDeserializer(new BeastFrameDeserializer());
+
+    if (virtualThreads) {
+      clientConnectionFactory.setTaskExecutor(
+          VirtualThreads.threadPerTaskExecutor("beast-feed-reader-", true));
+    }
+
+    messageProducer = new TcpReceivingChannelAdapter();
+    messageProducer.setClientMode(true);
+    messageProducer.setConnectionFactory(clientConnectionFactory);
+    messageProducer.setAutoStartup(autoStart);
+  }
+
+  public TcpReceivingChannelAdapter beastMessageClient() {
+    return messageProducer;
+  }
+
+  /**
+   * Gets whether or not the connection to the Beast binary message feed is currently established.
+   *
+   * @return whether or not the connection to the Beast binary message feed is currently
+   * established.
+   */
+  @ManagedAttribute(
+      description =
+          "Whether or not the connection to the Beast binary message feed is currently established")
+  public boolean isRunning() {
+    return messageProducer.isRunning();
+  }
+
+  /**
+   * Requests connection to the Beast binary message feed.
+   *
+   * <p>Has no effect if already started.
+   */
+  @ManagedOperation(description = "Connect to the feed and start reading Beast binary messages")
+  public void start() {
+    LOGGER.info("'Start' requested for Beast binary message feed");
+    messageProducer.start();
+  }
+
+  /**
+   * Requests disconnection from the Beast binary message feed.
+   *
+   * <p>Has no effect if already stopped.
+   */
+  @ManagedOperation(
+      description = "Stop reading Beast binary messages and disconnect from the feed")
+  public void stop() {
+    LOGGER.info("'Stop' requested for Beast binary message feed");
+    messageProducer.stop();
+  }
+}
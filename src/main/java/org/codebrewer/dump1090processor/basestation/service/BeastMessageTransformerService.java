@@ -0,0 +1,111 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage.INVALID_MESSAGE;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.integration.transformer.AbstractPayloadTransformer;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * Transforms the frames of the Beast binary message feed into BaseStation messages.
+ *
+ * <p>The Mode S message carried by each frame is decoded by a {@link ModeSDecoder} into the same
+ * {@code TransmissionMessage} that {@code dump1090} would write to its BaseStation message feed,
+ * timestamped with the instant at which it was decoded. Frames that cannot be decoded, including
+ * all Mode A/C replies, which carry no aircraft address, are transformed into
+ * {@link BaseStationMessage#INVALID_MESSAGE}.
+ *
+ * <p>Decoding a position depends on earlier messages from the same aircraft, so frames should be
+ * transformed in the order in which they are read. Positions can be decoded from single messages
+ * if the position of the receiver is given by the {@code basestation.receiver.latitude} and
+ * {@code basestation.receiver.longitude} properties.
+ */
+@Service
+@ManagedResource(
+    objectName = "org.codebrewer.dump1090processor:type=Counter,name=BeastTransformerService",
+    description = "Transforms the incoming stream of Beast binary frames into BaseStation messages")
+public class BeastMessageTransformerService
+    extends AbstractPayloadTransformer<byte[], BaseStationMessage> {
+  private final ModeSDecoder decoder;
+  private final AtomicLong decodedFrameCount = new AtomicLong();
+  private final AtomicLong undecodedFrameCount = new AtomicLong();
+
+  /**
+   * Sole constructor for this class.
+   *
+   * @param receiverLatitude the latitude of the receiver in degrees, or NaN if unknown
+   * @param receiverLongitude the longitude of the receiver in degrees, or NaN if unknown
+   */
+  public BeastMessageTransformerService(
+      @Value("${basestation.receiver.latitude:NaN}") double receiverLatitude,
+      @Value("${basestation.receiver.longitude:NaN}") double receiverLongitude) {
+    decoder = new ModeSDecoder(receiverLatitude, receiverLongitude);
+  }
+
+  @Override
+  protected BaseStationMessage transformPayload(byte[] frame) {
+    final BaseStationMessage baseStationMessage =
+        frame.length > BeastFrameDeserializer.MESSAGE_OFFSET
+            && frame[0] != BeastFrameDeserializer.TYPE_MODE_AC
+            ? decoder.decode(
+                frame,
+                BeastFrameDeserializer.MESSAGE_OFFSET,
+                frame.length - BeastFrameDeserializer.MESSAGE_OFFSET,
+                Instant.now())
+            : null;
+
+    if (baseStationMessage == null) {
+      undecodedFrameCount.incrementAndGet();
+
+      return INVALID_MESSAGE;
+    }
+
+    decodedFrameCount.incrementAndGet();
+
+    return baseStationMessage;
+  }
+
+  /**
+   * Gets the total number of frames decoded into BaseStation messages since application startup.
+   *
+   * @return the total number of frames decoded since application startup
+   */
+  @ManagedAttribute(
+      description = "The total number of frames decoded into messages since application startup")
+  public long getDecodedFrameCount() {
+    return decodedFrameCount.get();
+  }
+
+  /**
+   * Gets the total number of frames that could not be decoded since application startup, because
+   * they failed their parity check, came from an unknown aircraft or are of an unsupported type.
+   *
+   * @return the total number of frames that could not be decoded since application startup
+   */
+  @ManagedAttribute(
+      description = "The total number of frames that could not be decoded since startup")
+  public long getUndecodedFrameCount() {
+    return undecodedFrameCount.get();
+  }
+}
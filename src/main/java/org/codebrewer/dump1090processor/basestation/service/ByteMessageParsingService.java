@@ -0,0 +1,616 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+
+import org.codebrewer.dump1090processor.basestation.domain.DomainUtils;
+import org.codebrewer.dump1090processor.basestation.domain.IcaoAddress;
+import org.codebrewer.dump1090processor.basestation.domain.MessageType;
+import org.codebrewer.dump1090processor.basestation.domain.StatusMessageType;
+import org.codebrewer.dump1090processor.basestation.domain.TransmissionType;
+import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
+import org.codebrewer.dump1090processor.basestation.entity.IdMessage;
+import org.codebrewer.dump1090processor.basestation.entity.NewAircraftMessage;
+import org.codebrewer.dump1090processor.basestation.entity.StatusMessage;
+import org.codebrewer.dump1090processor.basestation.entity.TransmissionMessage;
+import org.geolatte.geom.G2D;
+import org.geolatte.geom.Point;
+import org.geolatte.geom.crs.CrsRegistry;
+import org.geolatte.geom.crs.Geographic2DCoordinateReferenceSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * A service that can parse messages received from a BaseStation message feed directly from the
+ * bytes delivered by the TCP connection.
+ *
+ * <p>Whereas {@link MessageParsingService} decodes a message into a {@code String} and splits it
+ * into an array of token strings, this service walks the comma-separated fields of the raw bytes
+ * in a single pass and decodes numbers, booleans and call signs straight from the bytes. Messages
+ * are parsed into the same {@code BaseStationMessage} subclasses, and missing or malformed fields
+ * are treated in the same way as by {@code MessageParsingService}.
+ */
+@Service
+public class ByteMessageParsingService {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ByteMessageParsingService.class);
+  private static final Geographic2DCoordinateReferenceSystem COORDINATE_REFERENCE_SYSTEM =
+      CrsRegistry.getGeographicCoordinateReferenceSystemForEPSG(4326);
+
+  // Cached copies of enum values, since values() returns a new array on every call
+  //
+  private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+  private static final StatusMessageType[] STATUS_MESSAGE_TYPES = StatusMessageType.values();
+  private static final TransmissionType[] TRANSMISSION_TYPES = TransmissionType.values();
+
+  // No message type has more tokens than a transmission message, and any further tokens are ignored
+  //
+  private static final int MAX_TOKEN_COUNT = MessageType.MSG.getMessageTokenCount();
+
+  // The offsets at which tokens start, reused by each parsing thread. Token i occupies the bytes
+  // from element i (inclusive) to element i + 1, less one for the comma (exclusive)
+  //
+  private static final ThreadLocal<int[]> TOKEN_STARTS =
+      ThreadLocal.withInitial(() -> new int[MAX_TOKEN_COUNT + 1]);
+
+  // Values returned by the primitive decoding methods when a token has no valid value
+  //
+  private static final int NO_INT_VALUE = Integer.MIN_VALUE;
+  private static final long NO_INTEGER_VALUE = Long.MIN_VALUE;
+  private static final long NO_FLOAT_VALUE = -1L;
+  private static final long NOT_SIMPLE_DECIMAL = -1L;
+
+  // Dividing an exactly-representable mantissa by an exactly-representable power of ten gives the
+  // correctly-rounded result, the same as Float.parseFloat() or Double.parseDouble() would give
+  //
+  private static final int MAX_EXACT_FLOAT_MANTISSA = 1 << 24;
+  private static final long MAX_EXACT_DOUBLE_MANTISSA = 1L << 53;
+  private static final float[] FLOAT_POWERS_OF_TEN = {
+      1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+  };
+  private static final double[] DOUBLE_POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private final TimestampDecoder timestampDecoder = new TimestampDecoder(ZoneId.systemDefault());
+
+  private static boolean isWhitespace(byte b) {
+    return b >= 0 && Character.isWhitespace(b);
+  }
+
+  private static boolean isDigit(byte b) {
+    return b >= '0' && b <= '9';
+  }
+
+  private static String asString(byte[] bytes, int start, int end) {
+    return new String(bytes, start, end - start, StandardCharsets.US_ASCII);
+  }
+
+  private static boolean tokenEquals(byte[] bytes, int start, int end, String value) {
+    final int length = value.length();
+
+    if (end - start != length) {
+      return false;
+    }
+
+    for (int i = 0; i < length; i++) {
+      if (bytes[start + i] != value.charAt(i)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static MessageType messageTypeAt(byte[] bytes, int start, int end) {
+    for (MessageType messageType : MESSAGE_TYPES) {
+      if (tokenEquals(bytes, start, end, messageType.name())) {
+        return messageType;
+      }
+    }
+
+    // Same outcome as MessageType.valueOf() for an unknown name
+    //
+    throw new IllegalArgumentException(
+        "No enum constant " + MessageType.class.getCanonicalName() + "."
+            + asString(bytes, start, end));
+  }
+
+  private static StatusMessageType statusMessageTypeAt(byte[] bytes, int start, int end) {
+    for (StatusMessageType statusMessageType : STATUS_MESSAGE_TYPES) {
+      if (tokenEquals(bytes, start, end, statusMessageType.name())) {
+        return statusMessageType;
+      }
+    }
+
+    // Same outcome as StatusMessageType.valueOf() for an unknown name
+    //
+    throw new IllegalArgumentException(
+        "No enum constant " + StatusMessageType.class.getCanonicalName() + "."
+            + asString(bytes, start, end));
+  }
+
+  // Returns the integer representation of the address in the fifth field, which starts at
+  // starts[4] and ends before the comma preceding starts[5]
+  //
+  private static int icaoAddressAt(byte[] bytes, int[] starts) {
+    final int icaoAddress = IcaoAddress.parse(bytes, starts[4], starts[5] - 1);
+
+    if (icaoAddress == IcaoAddress.INVALID) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Invalid ICAO address: '%s'", asString(bytes, starts[4], starts[5] - 1)));
+    }
+
+    return icaoAddress;
+  }
+
+  private Instant timestampAt(
+      byte[] bytes, int dateStart, int dateEnd, int timeStart, int timeEnd) {
+    if (dateStart == dateEnd || timeStart == timeEnd) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Date (%s) and time (%s) must be provided",
+              asString(bytes, dateStart, dateEnd),
+              asString(bytes, timeStart, timeEnd)));
+    }
+
+    // The decoder handles the 'yyyy/MM/dd' and 'HH:mm:ss[.SSS...]' forms that dump1090 sends;
+    // anything else is handed to MessageParsingService so that it is treated identically
+    //
+    final Instant timestamp =
+        timestampDecoder.decode(bytes, dateStart, dateEnd, timeStart, timeEnd);
+
+    return timestamp != null
+        ? timestamp
+        : MessageParsingService.parseTimestamp(
+            asString(bytes, dateStart, dateEnd),
+            asString(bytes, timeStart, timeEnd),
+            timestampDecoder.getZoneId());
+  }
+
+  // Decodes a token of the form [+-]digits[.digits] (either group of digits may be empty, but not
+  // both) into its mantissa, sign and scale, packed as (mantissa << 6) | (negative << 5) | scale,
+  // or returns NOT_SIMPLE_DECIMAL if the token has any other form or too many digits to be
+  // converted exactly
+  //
+  private static long simpleDecimalAt(byte[] bytes, int start, int end) {
+    int i = start;
+    boolean negative = false;
+
+    if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+      negative = bytes[i++] == '-';
+    }
+
+    long mantissa = 0;
+    int digitCount = 0;
+    int scale = -1;
+
+    for (; i < end; i++) {
+      final byte b = bytes[i];
+
+      if (isDigit(b)) {
+        mantissa = mantissa * 10 + (b - '0');
+
+        if (++digitCount > 16 || mantissa >= MAX_EXACT_DOUBLE_MANTISSA) {
+          return NOT_SIMPLE_DECIMAL;
+        }
+
+        if (scale >= 0) {
+          scale++;
+        }
+      } else if (b == '.' && scale < 0) {
+        scale = 0;
+      } else {
+        return NOT_SIMPLE_DECIMAL;
+      }
+    }
+
+    if (digitCount == 0 || scale >= DOUBLE_POWERS_OF_TEN.length) {
+      return NOT_SIMPLE_DECIMAL;
+    }
+
+    return (mantissa << 6) | (negative ? 32 : 0) | Math.max(scale, 0);
+  }
+
+  // Returns the raw bits of the float value of a token in the low 32 bits of the result, or
+  // NO_FLOAT_VALUE if the token is not a valid float
+  //
+  private static long floatAt(byte[] bytes, int start, int end) {
+    if (start == end) {
+      return NO_FLOAT_VALUE;
+    }
+
+    final long decimal = simpleDecimalAt(bytes, start, end);
+    final long mantissa = decimal >>> 6;
+    final int scale = (int) (decimal & 31);
+
+    if (decimal != NOT_SIMPLE_DECIMAL
+        && mantissa < MAX_EXACT_FLOAT_MANTISSA && scale < FLOAT_POWERS_OF_TEN.length) {
+      final float value = (float) mantissa / FLOAT_POWERS_OF_TEN[scale];
+
+      return Float.floatToRawIntBits((decimal & 32) == 0 ? value : -value) & 0xFFFFFFFFL;
+    }
+
+    final Float value = MessageParsingService.tokenAsFloat(asString(bytes, start, end));
+
+    return value == null ? NO_FLOAT_VALUE : Float.floatToRawIntBits(value) & 0xFFFFFFFFL;
+  }
+
+  // Returns the value of a token of simple decimal form, or NaN if it has some other form (in
+  // which case the caller should fall back to MessageParsingService)
+  //
+  private static double simpleDoubleAt(byte[] bytes, int start, int end) {
+    final long decimal = simpleDecimalAt(bytes, start, end);
+
+    if (decimal == NOT_SIMPLE_DECIMAL) {
+      return Double.NaN;
+    }
+
+    final double value = (double) (decimal >>> 6) / DOUBLE_POWERS_OF_TEN[(int) (decimal & 31)];
+
+    return (decimal & 32) == 0 ? value : -value;
+  }
+
+  // Returns the value of a token of the form [+-]digits if it lies in the given range, otherwise
+  // NO_INTEGER_VALUE (the same outcome as a NumberFormatException from Short.parseShort() or
+  // Integer.parseInt(), since no other form of token is accepted by those methods)
+  //
+  private static long integerAt(byte[] bytes, int start, int end, long minValue, long maxValue) {
+    int i = start;
+    boolean negative = false;
+
+    if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+      negative = bytes[i++] == '-';
+    }
+
+    if (i == end) {
+      return NO_INTEGER_VALUE;
+    }
+
+    long value = 0;
+
+    for (; i < end; i++) {
+      if (!isDigit(bytes[i])) {
+        return NO_INTEGER_VALUE;
+      }
+
+      value = value * 10 + (bytes[i] - '0');
+
+      if (value > maxValue + 1) {
+        return NO_INTEGER_VALUE;
+      }
+    }
+
+    value = negative ? -value : value;
+
+    return value < minValue || value > maxValue ? NO_INTEGER_VALUE : value;
+  }
+
+  private static int shortAt(byte[] bytes, int start, int end) {
+    final long value = integerAt(bytes, start, end, Short.MIN_VALUE, Short.MAX_VALUE);
+
+    return value == NO_INTEGER_VALUE ? NO_INT_VALUE : (int) value;
+  }
+
+  // Returns 1 for a non-zero int token, 0 for a zero-valued int token, or NO_INT_VALUE
+  //
+  private static int booleanAt(byte[] bytes, int start, int end) {
+    final long value = integerAt(bytes, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+    return value == NO_INTEGER_VALUE ? NO_INT_VALUE : value == 0 ? 0 : 1;
+  }
+
+  private static Point<G2D> positionAt(
+      byte[] bytes, int lonStart, int lonEnd, int latStart, int latEnd) {
+    if (lonStart == lonEnd || latStart == latEnd) {
+      return null;
+    }
+
+    final double lon = simpleDoubleAt(bytes, lonStart, lonEnd);
+    final double lat = simpleDoubleAt(bytes, latStart, latEnd);
+
+    if (Double.isNaN(lon) || Double.isNaN(lat)) {
+      return MessageParsingService.tokensAsPosition(
+          asString(bytes, lonStart, lonEnd), asString(bytes, latStart, latEnd));
+    }
+
+    return new Point<>(new G2D(lon, lat), COORDINATE_REFERENCE_SYSTEM);
+  }
+
+  private static String callSignAt(byte[] bytes, int start, int end) {
+    // Same outcome as DomainUtils.getValidatedCallSign(), which uses String.trim()
+    //
+    while (start < end && bytes[start] >= 0 && bytes[start] <= ' ') {
+      start++;
+    }
+
+    while (end > start && bytes[end - 1] >= 0 && bytes[end - 1] <= ' ') {
+      end--;
+    }
+
+    return asString(bytes, start, Math.min(end, start + 8));
+  }
+
+  // Each of the following sets a transmission message property from its token, if the token has a
+  // valid value, without boxing the value
+  //
+  private static void altitudeAt(
+      TransmissionMessage.Builder builder, byte[] bytes, int[] starts) {
+    final long altitude = floatAt(bytes, starts[11], starts[12] - 1);
+
+    if (altitude != NO_FLOAT_VALUE) {
+      builder.altitude(Float.intBitsToFloat((int) altitude));
+    }
+  }
+
+  private static void groundSpeedAt(
+      TransmissionMessage.Builder builder, byte[] bytes, int[] starts) {
+    final long groundSpeed = floatAt(bytes, starts[12], starts[13] - 1);
+
+    if (groundSpeed != NO_FLOAT_VALUE) {
+      builder.groundSpeed(Float.intBitsToFloat((int) groundSpeed));
+    }
+  }
+
+  private static void trackAt(TransmissionMessage.Builder builder, byte[] bytes, int[] starts) {
+    final long track = floatAt(bytes, starts[13], starts[14] - 1);
+
+    if (track != NO_FLOAT_VALUE) {
+      builder.track(Float.intBitsToFloat((int) track));
+    }
+  }
+
+  private static void positionAt(
+      TransmissionMessage.Builder builder, byte[] bytes, int[] starts) {
+    builder.position(positionAt(bytes, starts[15], starts[16] - 1, starts[14], starts[15] - 1));
+  }
+
+  private static void verticalRateAt(
+      TransmissionMessage.Builder builder, byte[] bytes, int[] starts) {
+    final int verticalRate = shortAt(bytes, starts[16], starts[17] - 1);
+
+    if (verticalRate != NO_INT_VALUE) {
+      builder.verticalRate((short) verticalRate);
+    }
+  }
+
+  private static void squawkAt(TransmissionMessage.Builder builder, byte[] bytes, int[] starts) {
+    final int squawk = shortAt(bytes, starts[17], starts[18] - 1);
+
+    if (squawk != NO_INT_VALUE) {
+      builder.squawk((short) squawk);
+    }
+  }
+
+  private static void alertAt(TransmissionMessage.Builder builder, byte[] bytes, int[] starts) {
+    final int alert = booleanAt(bytes, starts[18], starts[19] - 1);
+
+    if (alert != NO_INT_VALUE) {
+      builder.alert(alert != 0);
+    }
+  }
+
+  private static void emergencyAt(
+      TransmissionMessage.Builder builder, byte[] bytes, int[] starts) {
+    final int emergency = booleanAt(bytes, starts[19], starts[20] - 1);
+
+    if (emergency != NO_INT_VALUE) {
+      builder.emergency(emergency != 0);
+    }
+  }
+
+  private static void identActiveAt(
+      TransmissionMessage.Builder builder, byte[] bytes, int[] starts) {
+    final int identActive = booleanAt(bytes, starts[20], starts[21] - 1);
+
+    if (identActive != NO_INT_VALUE) {
+      builder.identActive(identActive != 0);
+    }
+  }
+
+  private static void onGroundAt(
+      TransmissionMessage.Builder builder, byte[] bytes, int[] starts) {
+    final int onGround = booleanAt(bytes, starts[21], starts[22] - 1);
+
+    if (onGround != NO_INT_VALUE) {
+      builder.onGround(onGround != 0);
+    }
+  }
+
+  public ByteMessageParsingService() {
+  }
+
+  /**
+   * Creates a {@code BaseStationMessage} from the bytes of its comma-separated value text
+   * representation as received on the incoming message feed.
+   *
+   * @param csvMessageBytes the US-ASCII encoded comma-separated value text representation of a
+   * message, null is treated as an empty message
+   *
+   * @return a {@code BaseStationMessage} created by parsing the CSV message bytes
+   *
+   * @throws IllegalArgumentException if parsing fails
+   */
+  public BaseStationMessage parseCsvMessageBytes(byte[] csvMessageBytes) {
+    if (csvMessageBytes == null) {
+      throw new IllegalArgumentException("Message token array has zero length");
+    }
+
+    return parseCsvMessageBytes(csvMessageBytes, 0, csvMessageBytes.length);
+  }
+
+  /**
+   * Creates a {@code BaseStationMessage} from a range of bytes holding its comma-separated value
+   * text representation as received on the incoming message feed.
+   *
+   * @param bytes an array holding the US-ASCII encoded comma-separated value text representation
+   * of a message, not null
+   * @param offset the offset in {@code bytes} of the first byte of the message
+   * @param length the number of bytes in the message
+   *
+   * @return a {@code BaseStationMessage} created by parsing the CSV message bytes
+   *
+   * @throws IllegalArgumentException if parsing fails
+   */
+  public BaseStationMessage parseCsvMessageBytes(byte[] bytes, int offset, int length) {
+    int start = offset;
+    int end = offset + length;
+
+    while (start < end && isWhitespace(bytes[start])) {
+      start++;
+    }
+
+    while (end > start && isWhitespace(bytes[end - 1])) {
+      end--;
+    }
+
+    if (start == end) {
+      throw new IllegalArgumentException("Message token array has zero length");
+    }
+
+    final int[] starts = TOKEN_STARTS.get();
+    int tokenCount = 1;
+
+    starts[0] = start;
+
+    for (int i = start; i < end && tokenCount <= MAX_TOKEN_COUNT; i++) {
+      if (bytes[i] == ',') {
+        starts[tokenCount++] = i + 1;
+      }
+    }
+
+    if (tokenCount <= MAX_TOKEN_COUNT) {
+      starts[tokenCount] = end + 1;
+    }
+
+    final MessageType messageType = messageTypeAt(bytes, starts[0], starts[1] - 1);
+
+    if (!DomainUtils.isExpectedMessageType(messageType)) {
+      throw new IllegalArgumentException(
+          String.format("Unexpected message type: '%s'", messageType));
+    }
+
+    final int requiredTokenCount = messageType.getMessageTokenCount();
+
+    if (tokenCount < requiredTokenCount) {
+      throw new IllegalArgumentException(
+          String.format("Expected %d tokens but found %d", requiredTokenCount, tokenCount));
+    }
+
+    final Instant creationTimestamp =
+        timestampAt(bytes, starts[6], starts[7] - 1, starts[7], starts[8] - 1);
+
+    switch (messageType) {
+      case AIR:
+        return new NewAircraftMessage.Builder(icaoAddressAt(bytes, starts), creationTimestamp)
+            .build();
+      case ID:
+        return new IdMessage.Builder(icaoAddressAt(bytes, starts), creationTimestamp)
+            .callSign(callSignAt(bytes, starts[10], starts[11] - 1))
+            .build();
+      case MSG:
+        final int rawTransmissionType = shortAt(bytes, starts[1], starts[2] - 1);
+
+        if (rawTransmissionType < 1 || rawTransmissionType > TRANSMISSION_TYPES.length) {
+          LOGGER.error(
+              "Unable to parse transmission type: '{}'", asString(bytes, starts[1], starts[2] - 1));
+
+          return null;
+        }
+
+        final TransmissionType transmissionType = TRANSMISSION_TYPES[rawTransmissionType - 1];
+        final TransmissionMessage.Builder transmissionMessageBuilder =
+            new TransmissionMessage.Builder(icaoAddressAt(bytes, starts), creationTimestamp)
+                .transmissionType(transmissionType);
+
+        switch (transmissionType) {
+          case IDENTIFICATION_AND_CATEGORY:
+            transmissionMessageBuilder.callSign(callSignAt(bytes, starts[10], starts[11] - 1));
+            break;
+          case SURFACE_POSITION:
+            altitudeAt(transmissionMessageBuilder, bytes, starts);
+            groundSpeedAt(transmissionMessageBuilder, bytes, starts);
+            trackAt(transmissionMessageBuilder, bytes, starts);
+            positionAt(transmissionMessageBuilder, bytes, starts);
+            onGroundAt(transmissionMessageBuilder, bytes, starts);
+            break;
+          case AIRBORNE_POSITION:
+            altitudeAt(transmissionMessageBuilder, bytes, starts);
+            positionAt(transmissionMessageBuilder, bytes, starts);
+            alertAt(transmissionMessageBuilder, bytes, starts);
+            emergencyAt(transmissionMessageBuilder, bytes, starts);
+            identActiveAt(transmissionMessageBuilder, bytes, starts);
+            onGroundAt(transmissionMessageBuilder, bytes, starts);
+            break;
+          case AIRBORNE_VELOCITY:
+            groundSpeedAt(transmissionMessageBuilder, bytes, starts);
+            trackAt(transmissionMessageBuilder, bytes, starts);
+            verticalRateAt(transmissionMessageBuilder, bytes, starts);
+            break;
+          case SURVEILLANCE_ALTITUDE:
+            altitudeAt(transmissionMessageBuilder, bytes, starts);
+            alertAt(transmissionMessageBuilder, bytes, starts);
+            identActiveAt(transmissionMessageBuilder, bytes, starts);
+            onGroundAt(transmissionMessageBuilder, bytes, starts);
+            break;
+          case SURVEILLANCE_ID:
+            transmissionMessageBuilder.callSign(callSignAt(bytes, starts[10], starts[11] - 1));
+            altitudeAt(transmissionMessageBuilder, bytes, starts);
+            squawkAt(transmissionMessageBuilder, bytes, starts);
+            alertAt(transmissionMessageBuilder, bytes, starts);
+            emergencyAt(transmissionMessageBuilder, bytes, starts);
+            identActiveAt(transmissionMessageBuilder, bytes, starts);
+            onGroundAt(transmissionMessageBuilder, bytes, starts);
+            break;
+          case AIR_TO_AIR:
+            altitudeAt(transmissionMessageBuilder, bytes, starts);
+            onGroundAt(transmissionMessageBuilder, bytes, starts);
+            break;
+          case ALL_CALL_REPLY:
+            onGroundAt(transmissionMessageBuilder, bytes, starts);
+            break;
+          default:
+            throw new IllegalArgumentException(
+                String.format(
+                    "Unexpected transmission message type received: '%s'", transmissionType));
+        }
+
+        return transmissionMessageBuilder.build();
+      case STA:
+        final StatusMessageType statusMessageType =
+            statusMessageTypeAt(bytes, starts[10], starts[11] - 1);
+
+        if (!DomainUtils.isExpectedStatusMessageType(statusMessageType)) {
+          throw new IllegalArgumentException(
+              String.format("Unexpected status message type: '%s'", statusMessageType));
+        }
+
+        return new StatusMessage.Builder(icaoAddressAt(bytes, starts), creationTimestamp)
+            .statusMessageType(statusMessageType)
+            .build();
+      default:
+        throw new IllegalArgumentException(
+            String.format(
+                "Unexpected message type received: '%s'", messageType));
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A read-only view of a range of bytes in an array, which lets a message be handed from stage to
+ * stage of the integration flow without being copied out of the buffer into which it was read.
+ *
+ * <p>The bytes of the range must not be changed while the slice is in use, so the array is
+ * normally a slab that is filled once and then left to be garbage collected when the last slice
+ * referring to it is no longer in use.
+ */
+public final class ByteSlice {
+  private final byte[] array;
+  private final int offset;
+  private final int length;
+
+  /**
+   * Sole constructor for this class.
+   *
+   * @param array the array holding the bytes of the slice, not null
+   * @param offset the offset of the first byte of the slice in the array
+   * @param length the number of bytes in the slice
+   *
+   * @throws IndexOutOfBoundsException if the range is not within the array
+   */
+  public ByteSlice(byte[] array, int offset, int length) {
+    if (offset < 0 || length < 0 || offset > array.length - length) {
+      throw new IndexOutOfBoundsException(
+          String.format("Range [%d, %d) outside array of length %d", offset, offset + length,
+              array.length));
+    }
+
+    this.array = array;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /**
+   * Gets the array holding the bytes of this slice, which must not be modified.
+   *
+   * @return the array holding the bytes of this slice
+   */
+  public byte[] array() {
+    return array;
+  }
+
+  /**
+   * Gets the offset of the first byte of this slice in its array.
+   *
+   * @return the offset of the first byte of this slice in its array
+   */
+  public int offset() {
+    return offset;
+  }
+
+  /**
+   * Gets the number of bytes in this slice.
+   *
+   * @return the number of bytes in this slice
+   */
+  public int length() {
+    return length;
+  }
+
+  /**
+   * Copies the bytes of this slice into a new array.
+   *
+   * @return a new array holding the bytes of this slice
+   */
+  public byte[] toByteArray() {
+    return Arrays.copyOfRange(array, offset, offset + length);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+
+    if (!(o instanceof ByteSlice)) {
+      return false;
+    }
+
+    final ByteSlice other = (ByteSlice) o;
+
+    if (length != other.length) {
+      return false;
+    }
+
+    for (int i = 0; i < length; i++) {
+      if (array[offset + i] != other.array[other.offset + i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 1;
+
+    for (int i = offset; i < offset + length; i++) {
+      hash = 31 * hash + array[i];
+    }
+
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    return new String(array, offset, length, StandardCharsets.US_ASCII);
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import org.springframework.core.serializer.Deserializer;
+import org.springframework.integration.ip.tcp.serializer.SoftEndOfStreamException;
+
+/**
+ * Reads lines of text terminated by LF or CRLF, such as BaseStation messages, from a TCP
+ * connection as {@link ByteSlice}s, without copying each line into an array of its own.
+ *
+ * <p>The deserializer reads from the connection in bulk into a large slab and returns each line as
+ * a slice of the slab, without its line terminator. Once a slab is full, a new slab is allocated
+ * and any partly read line is moved into it; the full slab is never reused, since the slices
+ * referring to it may still be waiting to be handled, and is garbage collected once they have
+ * been. Reading a line thus allocates only its slice, rather than a pooled buffer and a copy of
+ * the line as does {@code ByteArrayCrLfSerializer}.
+ *
+ * <p>Since bytes after the end of a line are read ahead into the slab, an instance must be used to
+ * read from one connection at a time, as is the case for a client connection factory that is not
+ * single-use. Reading from a new connection discards any bytes read ahead from the previous one.
+ */
+public class ByteSliceLineDeserializer implements Deserializer<ByteSlice> {
+  public static final int DEFAULT_SLAB_SIZE = 64 * 1024;
+  public static final int DEFAULT_MAX_MESSAGE_SIZE = 2048;
+
+  private final int slabSize;
+  private final int maxMessageSize;
+  private InputStream inputStream;
+  private byte[] slab;
+  private int start;
+  private int scanned;
+  private int end;
+
+  /**
+   * Creates a deserializer with the default slab and maximum message sizes.
+   */
+  public ByteSliceLineDeserializer() {
+    this(DEFAULT_SLAB_SIZE, DEFAULT_MAX_MESSAGE_SIZE);
+  }
+
+  /**
+   * Creates a deserializer.
+   *
+   * @param slabSize the size in bytes of each slab
+   * @param maxMessageSize the maximum length of a line, which must be less than the slab size
+   *
+   * @throws IllegalArgumentException if the maximum length of a line is not positive or not less
+   * than the slab size
+   */
+  public ByteSliceLineDeserializer(int slabSize, int maxMessageSize) {
+    if (maxMessageSize <= 0 || maxMessageSize >= slabSize) {
+      throw new IllegalArgumentException(
+          String.format("Invalid maximum message size %d for slab size %d", maxMessageSize,
+              slabSize));
+    }
+
+    this.slabSize = slabSize;
+    this.maxMessageSize = maxMessageSize;
+  }
+
+  @Override
+  public synchronized ByteSlice deserialize(InputStream inputStream) throws IOException {
+    if (inputStream != this.inputStream) {
+      this.inputStream = inputStream;
+      slab = new byte[slabSize];
+      start = 0;
+      scanned = 0;
+      end = 0;
+    }
+
+    while (true) {
+      for (; scanned < end; scanned++) {
+        if (slab[scanned] == '\n') {
+          final int lineEnd = scanned > start && slab[scanned - 1] == '\r' ? scanned - 1 : scanned;
+          final int lineStart = start;
+
+          start = ++scanned;
+
+          if (lineEnd - lineStart > maxMessageSize) {
+            throw new IOException("Line longer than max message length: " + maxMessageSize);
+          }
+
+          return new ByteSlice(slab, lineStart, lineEnd - lineStart);
+        }
+      }
+
+      if (end - start > maxMessageSize) {
+        throw new IOException("LF not found before max message length: " + maxMessageSize);
+      }
+
+      if (end == slab.length) {
+        final byte[] nextSlab = new byte[slabSize];
+
+        System.arraycopy(slab, start, nextSlab, 0, end - start);
+        slab = nextSlab;
+        end -= start;
+        scanned = end;
+        start = 0;
+      }
+
+      final int count = inputStream.read(slab, end, slab.length - end);
+
+      if (count < 0) {
+        if (start == end) {
+          throw new SoftEndOfStreamException("Stream closed between payloads");
+        }
+
+        throw new IOException("Socket closed during message assembly");
+      }
+
+      end += count;
+    }
+  }
+}
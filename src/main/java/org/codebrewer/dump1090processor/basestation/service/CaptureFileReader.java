@@ -0,0 +1,201 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the lines of a recorded BaseStation message feed, one message per line.
+ *
+ * <p>An uncompressed capture file is memory-mapped, a region at a time, so that large files are
+ * read without copying through an intermediate buffer. A capture file compressed using gzip,
+ * recognised by its leading magic number rather than its name, is decompressed as it is read.
+ *
+ * <p>Lines are returned without their terminator, which may be either LF or CRLF, and empty lines
+ * are skipped.
+ */
+abstract class CaptureFileReader implements Closeable {
+  /**
+   * The default maximum number of bytes of a capture file that are mapped at once.
+   */
+  static final int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+
+  private static final int GZIP_MAGIC_FIRST_BYTE = 0x1f;
+  private static final int GZIP_MAGIC_SECOND_BYTE = 0x8b;
+
+  /**
+   * Opens a capture file for reading.
+   *
+   * @param captureFile the path of the capture file, not null
+   * @param regionSize the maximum number of bytes of an uncompressed capture file to be mapped at
+   * once, which must exceed the length of its longest line
+   *
+   * @return a reader of the capture file's lines
+   *
+   * @throws IOException if the capture file cannot be opened
+   */
+  static CaptureFileReader open(Path captureFile, int regionSize) throws IOException {
+    final boolean compressed;
+
+    try (InputStream inputStream = Files.newInputStream(captureFile)) {
+      compressed = inputStream.read() == GZIP_MAGIC_FIRST_BYTE
+          && inputStream.read() == GZIP_MAGIC_SECOND_BYTE;
+    }
+
+    return compressed
+        ? new CompressedCaptureFileReader(captureFile)
+        : new MappedCaptureFileReader(captureFile, regionSize);
+  }
+
+  /**
+   * Reads the next line of the capture file.
+   *
+   * @return the bytes of the next non-empty line, without its terminator, or null if the end of
+   * the capture file has been reached
+   *
+   * @throws IOException if the capture file cannot be read
+   */
+  abstract byte[] nextLine() throws IOException;
+
+  private static final class MappedCaptureFileReader extends CaptureFileReader {
+    private final FileChannel fileChannel;
+    private final long size;
+    private final int regionSize;
+    private MappedByteBuffer region;
+    private long regionStart;
+
+    private MappedCaptureFileReader(Path captureFile, int regionSize) throws IOException {
+      this.regionSize = regionSize;
+      fileChannel = FileChannel.open(captureFile, StandardOpenOption.READ);
+      size = fileChannel.size();
+    }
+
+    private void map(long position) throws IOException {
+      regionStart = position;
+      region = fileChannel.map(
+          FileChannel.MapMode.READ_ONLY, position, Math.min(regionSize, size - position));
+    }
+
+    private boolean isLastRegion() {
+      return regionStart + region.limit() >= size;
+    }
+
+    @Override
+    byte[] nextLine() throws IOException {
+      if (region == null) {
+        map(0L);
+      }
+
+      while (true) {
+        final int start = region.position();
+        int end = start;
+
+        while (end < region.limit() && region.get(end) != '\n') {
+          end++;
+        }
+
+        if (end == region.limit() && !isLastRegion()) {
+          // The line continues beyond this region, so map a region starting with the line
+          //
+          if (start == 0) {
+            throw new IOException(
+                "Line at offset " + regionStart + " is longer than " + regionSize + " bytes");
+          }
+
+          map(regionStart + start);
+          continue;
+        }
+
+        if (end == start && end == region.limit()) {
+          return null;
+        }
+
+        final int length =
+            end > start && region.get(end - 1) == '\r' ? end - start - 1 : end - start;
+        final byte[] line = length > 0 ? new byte[length] : null;
+
+        if (line != null) {
+          region.get(line);
+        }
+
+        region.position(Math.min(end + 1, region.limit()));
+
+        if (line != null) {
+          return line;
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      region = null;
+      fileChannel.close();
+    }
+  }
+
+  private static final class CompressedCaptureFileReader extends CaptureFileReader {
+    private final InputStream inputStream;
+    private byte[] buffer = new byte[256];
+
+    private CompressedCaptureFileReader(Path captureFile) throws IOException {
+      inputStream = new BufferedInputStream(new GZIPInputStream(Files.newInputStream(captureFile)));
+    }
+
+    @Override
+    byte[] nextLine() throws IOException {
+      while (true) {
+        int length = 0;
+        int b;
+
+        while ((b = inputStream.read()) != -1 && b != '\n') {
+          if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+          }
+
+          buffer[length++] = (byte) b;
+        }
+
+        if (length > 0 && buffer[length - 1] == '\r') {
+          length--;
+        }
+
+        if (length > 0) {
+          return Arrays.copyOf(buffer, length);
+        }
+
+        if (b == -1) {
+          return null;
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      inputStream.close();
+    }
+  }
+}
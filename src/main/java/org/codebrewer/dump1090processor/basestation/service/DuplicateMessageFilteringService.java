@@ -0,0 +1,204 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.integration.annotation.Filter;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Service;
+
+/**
+ * Filters duplicate messages, heard by more than one receiver, from merged message feeds.
+ *
+ * <p>A message is identified by its message type, transmission type, ICAO address and data
+ * fields, ignoring its session and aircraft ids and its dates and times, which differ between
+ * receivers. A message is a duplicate if an identical message was first read from the feed of a
+ * different receiver, named by the {@link MultiFeedMessageProducer#FEED_ID_HEADER} header, within
+ * the last {@code basestation.dedup.window} milliseconds. Identical messages read from the same
+ * feed are not duplicates, since an aircraft often repeats a message without any change to its
+ * data fields, so a single feed is never filtered.
+ *
+ * <p>Recently seen messages are remembered by fingerprint in an {@link ExpiringFingerprintTable}
+ * holding at most {@code basestation.dedup.capacity} fingerprints.
+ */
+@Service
+@ManagedResource(
+    objectName =
+        "org.codebrewer.dump1090processor:type=Counter,name=DuplicateMessageFilteringService",
+    description = "Filters messages heard by more than one receiver from the incoming stream")
+public class DuplicateMessageFilteringService {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(DuplicateMessageFilteringService.class);
+  private static final String NO_FEED_ID = "";
+  private static final int SEGMENT_COUNT = 64;
+  private static final int ICAO_ADDRESS_FIELD_INDEX = 4;
+  private static final int FIRST_DATA_FIELD_INDEX = 10;
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final ExpiringFingerprintTable fingerprintTable;
+  private final PipelineMetrics pipelineMetrics;
+  private final ConcurrentMap<String, Integer> sources = new ConcurrentHashMap<>();
+  private final AtomicInteger nextSource = new AtomicInteger();
+  private final ConcurrentMap<String, AtomicLong> duplicateCounts = new ConcurrentHashMap<>();
+  private final AtomicLong duplicateMessageCount = new AtomicLong();
+
+  /**
+   * Sole constructor for this class.
+   *
+   * @param windowMillis the number of milliseconds within which an identical message from a
+   * different receiver is a duplicate
+   * @param capacity the maximum number of recently seen messages remembered
+   * @param pipelineMetrics the meters recording the time taken to filter messages
+   */
+  public DuplicateMessageFilteringService(
+      @Value("${basestation.dedup.window:1000}") long windowMillis,
+      @Value("${basestation.dedup.capacity:65536}") int capacity,
+      PipelineMetrics pipelineMetrics) {
+    this.pipelineMetrics = pipelineMetrics;
+    fingerprintTable = new ExpiringFingerprintTable(capacity, SEGMENT_COUNT, windowMillis);
+    LOGGER.info(
+        "Duplicate message window: {}ms, capacity: {}",
+        windowMillis,
+        fingerprintTable.getCapacity());
+  }
+
+  /**
+   * Computes the fingerprint of a message from its message type, transmission type, ICAO address
+   * and data fields.
+   *
+   * @param payload the bytes of a message, not null
+   *
+   * @return the fingerprint of the message
+   */
+  static long fingerprint(byte[] payload) {
+    return fingerprint(payload, 0, payload.length);
+  }
+
+  /**
+   * Computes the fingerprint of a message held in a range of bytes from its message type,
+   * transmission type, ICAO address and data fields.
+   *
+   * @param bytes an array holding the bytes of a message, not null
+   * @param offset the offset of the first byte of the message
+   * @param length the number of bytes in the message
+   *
+   * @return the fingerprint of the message
+   */
+  static long fingerprint(byte[] bytes, int offset, int length) {
+    long hash = FNV_OFFSET_BASIS;
+    int field = 0;
+
+    for (int i = offset; i < offset + length; i++) {
+      final byte b = bytes[i];
+
+      if (field <= 1 || field == ICAO_ADDRESS_FIELD_INDEX || field >= FIRST_DATA_FIELD_INDEX) {
+        hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+      }
+
+      if (b == ',') {
+        field++;
+      }
+    }
+
+    // Mix the bits so that those used to choose a table segment and slot are equally spread
+    //
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+
+    return hash;
+  }
+
+  @Filter
+  Boolean filterDuplicateMessage(
+      Object payload,
+      @Header(name = MultiFeedMessageProducer.FEED_ID_HEADER, required = false) String feedId) {
+    final long startNanos = System.nanoTime();
+
+    try {
+      return !isDuplicate(payload, feedId);
+    } finally {
+      pipelineMetrics.recordStage(PipelineMetrics.Stage.FILTER, startNanos);
+    }
+  }
+
+  private boolean isDuplicate(Object payload, String feedId) {
+    final long fingerprint;
+
+    if (payload instanceof ByteSlice) {
+      final ByteSlice slice = (ByteSlice) payload;
+
+      fingerprint = fingerprint(slice.array(), slice.offset(), slice.length());
+    } else if (payload instanceof byte[]) {
+      fingerprint = fingerprint((byte[]) payload);
+    } else {
+      return false;
+    }
+
+    final String sourceFeedId = feedId == null ? NO_FEED_ID : feedId;
+    final int source =
+        sources.computeIfAbsent(sourceFeedId, key -> nextSource.getAndIncrement());
+
+    if (fingerprintTable.isDuplicate(fingerprint, source, System.currentTimeMillis())) {
+      duplicateMessageCount.incrementAndGet();
+      duplicateCounts.computeIfAbsent(sourceFeedId, key -> new AtomicLong()).incrementAndGet();
+
+      return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * Gets the total number of duplicate messages filtered since application startup.
+   *
+   * @return the total number of duplicate messages filtered since application startup
+   */
+  @ManagedAttribute(
+      description = "The total number of duplicate messages filtered since application startup")
+  public long getDuplicateMessageCount() {
+    return duplicateMessageCount.get();
+  }
+
+  /**
+   * Gets the number of duplicate messages filtered since application startup for each receiver
+   * whose feed they were read from.
+   *
+   * @return the number of duplicate messages filtered since application startup, keyed by
+   * receiver id
+   */
+  @ManagedAttribute(
+      description = "The number of duplicate messages filtered since startup, keyed by receiver")
+  public Map<String, Long> getDuplicateMessageCounts() {
+    final Map<String, Long> counts = new TreeMap<>();
+
+    duplicateCounts.forEach((feedId, count) -> counts.put(feedId, count.get()));
+
+    return counts;
+  }
+}
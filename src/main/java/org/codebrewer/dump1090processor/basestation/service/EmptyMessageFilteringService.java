@@ -30,8 +30,10 @@ public class EmptyMessageFilteringService {
   private final AtomicLong emptyMessageCount = new AtomicLong();
 
   @Filter
-  Boolean filterEmptyMessage(byte[] payload) {
-    if (payload == null || payload.length == 0) {
+  Boolean filterEmptyMessage(Object payload) {
+    if (payload == null
+        || payload instanceof byte[] && ((byte[]) payload).length == 0
+        || payload instanceof ByteSlice && ((ByteSlice) payload).length() == 0) {
       emptyMessageCount.incrementAndGet();
 
       return false;
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+/**
+ * A bounded table of recently seen message fingerprints, each recorded with the source from which
+ * it was first seen, that forgets fingerprints once they are older than a time window.
+ *
+ * <p>The table is an open-addressed hash table of fixed capacity split into independently locked
+ * segments. A fingerprint is looked for in a short run of slots, so that a lookup touches a few
+ * adjacent array elements, and if it is not found it takes the first empty or expired slot in the
+ * run or, failing that, the slot holding the oldest fingerprint. A full table therefore forgets
+ * its oldest fingerprints early rather than growing.
+ *
+ * <p>Instances of this class are thread-safe.
+ */
+final class ExpiringFingerprintTable {
+  private static final int PROBE_LIMIT = 8;
+  private static final long EMPTY = 0L;
+
+  private final Segment[] segments;
+  private final int segmentMask;
+  private final long windowMillis;
+
+  /**
+   * Creates a table.
+   *
+   * @param capacity the number of fingerprints the table can hold, rounded up to a power of two
+   * @param segmentCount the number of independently locked segments, rounded up to a power of two
+   * @param windowMillis the number of milliseconds for which a fingerprint is remembered
+   */
+  ExpiringFingerprintTable(int capacity, int segmentCount, long windowMillis) {
+    final int segments = ceilingPowerOfTwo(Math.max(1, segmentCount));
+    final int segmentCapacity =
+        Math.max(PROBE_LIMIT, ceilingPowerOfTwo(Math.max(1, capacity)) / segments);
+
+    this.segments = new Segment[segments];
+    this.segmentMask = segments - 1;
+    this.windowMillis = windowMillis;
+
+    for (int i = 0; i < segments; i++) {
+      this.segments[i] = new Segment(segmentCapacity);
+    }
+  }
+
+  private static int ceilingPowerOfTwo(int value) {
+    return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+  }
+
+  /**
+   * Records a fingerprint seen from a source, unless it is a duplicate.
+   *
+   * <p>A fingerprint is a duplicate if it was first seen from a different source within the time
+   * window. A fingerprint seen again from the source from which it was first seen, or first seen
+   * before the time window, is recorded afresh.
+   *
+   * @param fingerprint a message fingerprint
+   * @param source the source from which the message was seen
+   * @param nowMillis the number of milliseconds since the epoch at which the message was seen
+   *
+   * @return true if the fingerprint is a duplicate, otherwise false
+   */
+  boolean isDuplicate(long fingerprint, int source, long nowMillis) {
+    final long key = fingerprint == EMPTY ? 1L : fingerprint;
+
+    return segments[(int) (key >>> 40) & segmentMask].isDuplicate(key, source, nowMillis);
+  }
+
+  /**
+   * Gets the number of fingerprints the table can hold.
+   *
+   * @return the number of fingerprints the table can hold
+   */
+  int getCapacity() {
+    return segments.length * segments[0].fingerprints.length;
+  }
+
+  private final class Segment {
+    private final long[] fingerprints;
+    private final long[] timestamps;
+    private final int[] sources;
+    private final int mask;
+
+    private Segment(int capacity) {
+      fingerprints = new long[capacity];
+      timestamps = new long[capacity];
+      sources = new int[capacity];
+      mask = capacity - 1;
+    }
+
+    private synchronized boolean isDuplicate(long key, int source, long nowMillis) {
+      final int start = (int) (key ^ (key >>> 32));
+      int freeSlot = -1;
+      int oldestSlot = -1;
+      long oldestTimestamp = Long.MAX_VALUE;
+
+      for (int i = 0; i < PROBE_LIMIT; i++) {
+        final int slot = (start + i) & mask;
+        final boolean live =
+            fingerprints[slot] != EMPTY && nowMillis - timestamps[slot] <= windowMillis;
+
+        if (fingerprints[slot] == key) {
+          if (live && sources[slot] != source) {
+            return true;
+          }
+
+          freeSlot = slot;
+          break;
+        }
+
+        if (!live) {
+          if (freeSlot < 0) {
+            freeSlot = slot;
+          }
+        } else if (timestamps[slot] < oldestTimestamp) {
+          oldestSlot = slot;
+          oldestTimestamp = timestamps[slot];
+        }
+      }
+
+      final int slot = freeSlot >= 0 ? freeSlot : oldestSlot;
+
+      fingerprints[slot] = key;
+      timestamps[slot] = nowMillis;
+      sources[slot] = source;
+
+      return false;
+    }
+  }
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * Tracks the time taken for a BaseStation message to become visible in the in-memory state of
+ * aircraft, measured from the timestamp given to the message by BaseStation.
+ *
+ * <p>Each message is stamped when it is received from a feed and when it is parsed, and again by
+ * {@code BaseStationMessageEndpoint} when it has been handed to persistence and when the state of
+ * its aircraft has been updated. The latency of each message is recorded by a timer named
+ * {@value #LATENCY_TIMER_NAME}, tagged with the feed from which it was read, whose percentiles
+ * are computed over a rolling window of {@code basestation.latency.window} milliseconds.
+ *
+ * <p>A message whose latency reaches {@code basestation.latency.lag.threshold} milliseconds is
+ * lagging. At most one lagging message every {@code basestation.latency.lag.interval}
+ * milliseconds is sampled, together with the time taken by each stage, and the most recent
+ * {@code basestation.latency.lag.samples} samples are kept.
+ */
+@Service
+@ManagedResource(
+    objectName = "org.codebrewer.dump1090processor:type=Counter,name=IngestLatencyService",
+    description = "Tracks the time taken for BaseStation messages to become visible")
+public class IngestLatencyService {
+  public static final String LATENCY_TIMER_NAME = "basestation.ingest.latency";
+  public static final String DEFAULT_FEED_ID = "default";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(IngestLatencyService.class);
+
+  private final MeterRegistry meterRegistry;
+  private final Duration window;
+  private final long lagThresholdMillis;
+  private final int sampleCapacity;
+  private final long sampleIntervalMillis;
+  private final ConcurrentMap<String, Timer> latencyTimers = new ConcurrentHashMap<>();
+  private final Deque<LaggingMessage> samples = new ArrayDeque<>();
+  private final AtomicLong laggingMessageCount = new AtomicLong();
+  private final AtomicLong lastSampleMillis = new AtomicLong();
+
+  /**
+   * The latency distribution of the messages read from a feed.
+   */
+  public static final class FeedLatency {
+    private final long count;
+    private final double meanMillis;
+    private final double maxMillis;
+    private final double p50Millis;
+    private final double p95Millis;
+    private final double p99Millis;
+
+    FeedLatency(HistogramSnapshot snapshot) {
+      count = snapshot.count();
+      meanMillis = snapshot.mean(TimeUnit.MILLISECONDS);
+      maxMillis = snapshot.max(TimeUnit.MILLISECONDS);
+
+      double p50 = Double.NaN;
+      double p95 = Double.NaN;
+      double p99 = Double.NaN;
+
+      for (ValueAtPercentile valueAtPercentile : snapshot.percentileValues()) {
+        final double value = valueAtPercentile.value(TimeUnit.MILLISECONDS);
+
+        if (valueAtPercentile.percentile() == 0.5) {
+          p50 = value;
+        } else if (valueAtPercentile.percentile() == 0.95) {
+          p95 = value;
+        } else if (valueAtPercentile.percentile() == 0.99) {
+          p99 = value;
+        }
+      }
+
+      p50Millis = p50;
+      p95Millis = p95;
+      p99Millis = p99;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public double getMeanMillis() {
+      return meanMillis;
+    }
+
+    public double getMaxMillis() {
+      return maxMillis;
+    }
+
+    public double getP50Millis() {
+      return p50Millis;
+    }
+
+    public double getP95Millis() {
+      return p95Millis;
+    }
+
+    public double getP99Millis() {
+      return p99Millis;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "count=%d, mean=%.1fms, p50=%.1fms, p95=%.1fms, p99=%.1fms, max=%.1fms",
+          count, meanMillis, p50Millis, p95Millis, p99Millis, maxMillis);
+    }
+  }
+
+  /**
+   * A sampled lagging message, with the time taken by each stage of its processing. The time
+   * taken by a stage is -1 if the stamps from which it is computed are not known.
+   */
+  public static final class LaggingMessage {
+    private final String feedId;
+    private final String icaoAddress;
+    private final String messageType;
+    private final Instant timestamp;
+    private final long receiveMillis;
+    private final long parseMillis;
+    private final long persistMillis;
+    private final long updateMillis;
+    private final long totalMillis;
+
+    LaggingMessage(
+        String feedId,
+        BaseStationMessage baseStationMessage,
+        long persistedMillis,
+        long visibleMillis) {
+      final long timestampMillis = baseStationMessage.getTimestamp().toEpochMilli();
+      final long receivedMillis = baseStationMessage.getReceivedMillis();
+      final long parsedMillis = baseStationMessage.getParsedMillis();
+      final long handedOffMillis = persistedMillis == 0L ? parsedMillis : persistedMillis;
+
+      this.feedId = feedId;
+      icaoAddress = baseStationMessage.getIcaoAddress();
+      messageType = baseStationMessage.getClass().getSimpleName();
+      timestamp = baseStationMessage.getTimestamp();
+      receiveMillis = elapsedMillis(timestampMillis, receivedMillis);
+      parseMillis = elapsedMillis(receivedMillis, parsedMillis);
+      persistMillis = elapsedMillis(parsedMillis, persistedMillis);
+      updateMillis = elapsedMillis(handedOffMillis, visibleMillis);
+      totalMillis = visibleMillis - timestampMillis;
+    }
+
+    private static long elapsedMillis(long fromMillis, long toMillis) {
+      return fromMillis == 0L || toMillis == 0L ? -1L : toMillis - fromMillis;
+    }
+
+    public String getFeedId() {
+      return feedId;
+    }
+
+    public String getIcaoAddress() {
+      return icaoAddress;
+    }
+
+    public String getMessageType() {
+      return messageType;
+    }
+
+    public Instant getTimestamp() {
+      return timestamp;
+    }
+
+    /**
+     * Gets the time from the BaseStation timestamp of the message until it was received.
+     *
+     * @return the number of milliseconds taken to receive the message
+     */
+    public long getReceiveMillis() {
+      return receiveMillis;
+    }
+
+    /**
+     * Gets the time from receiving the message until it was parsed.
+     *
+     * @return the number of milliseconds taken to parse the message
+     */
+    public long getParseMillis() {
+      return parseMillis;
+    }
+
+    /**
+     * Gets the time from parsing the message until it was handed to persistence, including the
+     * time spent waiting to be consumed.
+     *
+     * @return the number of milliseconds taken to hand the message to persistence
+     */
+    public long getPersistMillis() {
+      return persistMillis;
+    }
+
+    /**
+     * Gets the time from handing the message to persistence, or from parsing it if it was not
+     * persisted, until the state of its aircraft was updated.
+     *
+     * @return the number of milliseconds taken to update the state of the aircraft
+     */
+    public long getUpdateMillis() {
+      return updateMillis;
+    }
+
+    /**
+     * Gets the time from the BaseStation timestamp of the message until the state of its aircraft
+     * was updated.
+     *
+     * @return the number of milliseconds taken for the message to become visible
+     */
+    public long getTotalMillis() {
+      return totalMillis;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%s %s %s from %s: total=%dms, receive=%dms, parse=%dms, persist=%dms, update=%dms",
+          timestamp, messageType, icaoAddress, feedId, totalMillis, receiveMillis, parseMillis,
+          persistMillis, updateMillis);
+    }
+  }
+
+  /**
+   * Sole constructor for this class.
+   *
+   * @param meterRegistry the registry in which the latency timers are registered
+   * @param windowMillis the number of milliseconds over which latency percentiles are computed
+   * @param lagThresholdMillis the latency, in milliseconds, at which a message is lagging
+   * @param sampleCapacity the maximum number of sampled lagging messages kept
+   * @param sampleIntervalMillis the minimum number of milliseconds between samples of lagging
+   * messages
+   */
+  public IngestLatencyService(
+      MeterRegistry meterRegistry,
+      @Value("${basestation.latency.window:60000}") long windowMillis,
+      @Value("${basestation.latency.lag.threshold:2000}") long lagThresholdMillis,
+      @Value("${basestation.latency.lag.samples:100}") int sampleCapacity,
+      @Value("${basestation.latency.lag.interval:100}") long sampleIntervalMillis) {
+    LOGGER.info(
+        "Ingest latency window: {}ms, lag threshold: {}ms, samples: {} at most every {}ms",
+        windowMillis, lagThresholdMillis, sampleCapacity, sampleIntervalMillis);
+    this.meterRegistry = meterRegistry;
+    this.window = Duration.ofMillis(windowMillis);
+    this.lagThresholdMillis = lagThresholdMillis;
+    this.sampleCapacity = Math.max(1, sampleCapacity);
+    this.sampleIntervalMillis = sampleIntervalMillis;
+  }
+
+  private Timer latencyTimer(String feedId) {
+    return latencyTimers.computeIfAbsent(
+        feedId,
+        key -> Timer.builder(LATENCY_TIMER_NAME)
+                    .description("The time taken for a BaseStation message to become visible")
+                    .tag("feed", key)
+                    .publishPercentileHistogram()
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .distributionStatisticExpiry(window)
+                    .register(meterRegistry));
+  }
+
+  /**
+   * Records the latency of a message whose aircraft state has been updated.
+   *
+   * @param feedId the id of the feed from which the message was read, or null for the default
+   * feed
+   * @param baseStationMessage the message, stamped when it was received and parsed
+   * @param persistedMillis the number of milliseconds since the epoch at which the message was
+   * handed to persistence, or zero if it was not persisted
+   * @param visibleMillis the number of milliseconds since the epoch at which the state of the
+   * message's aircraft was updated
+   */
+  public void record(
+      String feedId,
+      BaseStationMessage baseStationMessage,
+      long persistedMillis,
+      long visibleMillis) {
+    if (baseStationMessage.getTimestamp() == null) {
+      return;
+    }
+
+    final String sourceFeedId = feedId == null ? DEFAULT_FEED_ID : feedId;
+    final long latencyMillis = visibleMillis - baseStationMessage.getTimestamp().toEpochMilli();
+
+    latencyTimer(sourceFeedId).record(Math.max(0L, latencyMillis), TimeUnit.MILLISECONDS);
+
+    if (latencyMillis >= lagThresholdMillis) {
+      laggingMessageCount.incrementAndGet();
+
+      final long lastMillis = lastSampleMillis.get();
+
+      if (visibleMillis - lastMillis >= sampleIntervalMillis
+          && lastSampleMillis.compareAndSet(lastMillis, visibleMillis)) {
+        final LaggingMessage sample = new LaggingMessage(
+            sourceFeedId, baseStationMessage, persistedMillis, visibleMillis);
+
+        synchronized (samples) {
+          if (samples.size() == sampleCapacity) {
+            samples.removeFirst();
+          }
+
+          samples.addLast(sample);
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the latency distribution over the rolling window of the messages read from each feed.
+   *
+   * @return the latency distribution of the messages read from each feed, keyed by feed id
+   */
+  public Map<String, FeedLatency> getFeedLatencies() {
+    final Map<String, FeedLatency> feedLatencies = new TreeMap<>();
+
+    latencyTimers.forEach(
+        (feedId, timer) -> feedLatencies.put(feedId, new FeedLatency(timer.takeSnapshot())));
+
+    return feedLatencies;
+  }
+
+  /**
+   * Gets the most recently sampled lagging messages, oldest first.
+   *
+   * @return the most recently sampled lagging messages
+   */
+  public List<LaggingMessage> getLaggingMessageSamples() {
+    synchronized (samples) {
+      return Collections.unmodifiableList(new ArrayList<>(samples));
+    }
+  }
+
+  /**
+   * Gets the latency distribution of the messages read from each feed, formatted as text.
+   *
+   * @return the latency distribution of the messages read from each feed, keyed by feed id
+   */
+  @ManagedAttribute(description = "The latency percentiles of the messages read from each feed")
+  public Map<String, String> getLatencyPercentiles() {
+    final Map<String, String> latencyPercentiles = new TreeMap<>();
+
+    getFeedLatencies().forEach(
+        (feedId, latency) -> latencyPercentiles.put(feedId, latency.toString()));
+
+    return latencyPercentiles;
+  }
+
+  /**
+   * Gets the most recently sampled lagging messages, formatted as text.
+   *
+   * @return the most recently sampled lagging messages, oldest first
+   */
+  @ManagedAttribute(description = "The most recently sampled lagging messages")
+  public List<String> getLaggingMessages() {
+    final List<String> laggingMessages = new ArrayList<>();
+
+    getLaggingMessageSamples().forEach(sample -> laggingMessages.add(sample.toString()));
+
+    return laggingMessages;
+  }
+
+  /**
+   * Gets the total number of lagging messages since application startup.
+   *
+   * @return the total number of lagging messages since application startup
+   */
+  @ManagedAttribute(description = "The total number of lagging messages since application startup")
+  public long getLaggingMessageCount() {
+    return laggingMessageCount.get();
+  }
+
+  /**
+   * Gets the latency at which a message is lagging.
+   *
+   * @return the number of milliseconds at which a message is lagging
+   */
+  @ManagedAttribute(description = "The latency, in milliseconds, at which a message is lagging")
+  public long getLagThresholdMillis() {
+    return lagThresholdMillis;
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import java.util.function.Predicate;
+
+/**
+ * A map from primitive {@code int} keys to non-null values, which avoids boxing keys and
+ * allocating an entry object per mapping.
+ *
+ * <p>Mappings are held in parallel arrays of keys and values, open-addressed with linear probing,
+ * which are doubled in size once half full. Removal shifts back later mappings of the same probe
+ * run rather than leaving markers, so lookups never slow down as mappings come and go.
+ *
+ * <p>Instances of this class are not thread-safe.
+ *
+ * @param <V> the type of the values in the map
+ */
+final class IntObjectMap<V> {
+  private static final int MINIMUM_CAPACITY = 16;
+
+  private int[] keys;
+  private Object[] values;
+  private int mask;
+  private int size;
+
+  /**
+   * Creates an empty map.
+   *
+   * @param expectedSize the number of mappings the map is expected to hold before it grows
+   */
+  IntObjectMap(int expectedSize) {
+    final int capacity = Math.max(
+        MINIMUM_CAPACITY, Integer.highestOneBit(Math.max(1, expectedSize * 2 - 1)) << 1);
+
+    keys = new int[capacity];
+    values = new Object[capacity];
+    mask = capacity - 1;
+  }
+
+  private static int hash(int key) {
+    final int hash = key * 0x9e3779b9;
+
+    return hash ^ hash >>> 16;
+  }
+
+  private int slotOf(int key) {
+    int slot = hash(key) & mask;
+
+    while (values[slot] != null && keys[slot] != key) {
+      slot = slot + 1 & mask;
+    }
+
+    return slot;
+  }
+
+  /**
+   * Gets the value to which a key is mapped.
+   *
+   * @param key a key
+   *
+   * @return the value to which the key is mapped, or null if there is none
+   */
+  @SuppressWarnings("unchecked")
+  V get(int key) {
+    return (V) values[slotOf(key)];
+  }
+
+  /**
+   * Maps a key to a value, replacing any value to which the key was mapped.
+   *
+   * @param key a key
+   * @param value a value, not null
+   *
+   * @return the value to which the key was mapped, or null if there was none
+   */
+  @SuppressWarnings("unchecked")
+  V put(int key, V value) {
+    final int slot = slotOf(key);
+    final V previous = (V) values[slot];
+
+    keys[slot] = key;
+    values[slot] = value;
+
+    if (previous == null && ++size > keys.length / 2) {
+      resize();
+    }
+
+    return previous;
+  }
+
+  /**
+   * Removes the mapping for a key.
+   *
+   * @param key a key
+   *
+   * @return the value to which the key was mapped, or null if there was none
+   */
+  @SuppressWarnings("unchecked")
+  V remove(int key) {
+    int slot = slotOf(key);
+    final V previous = (V) values[slot];
+
+    if (previous == null) {
+      return null;
+    }
+
+    values[slot] = null;
+    size--;
+
+    // Move back any later mapping of the probe run that can no longer be reached past the gap
+    //
+    for (int next = slot + 1 & mask; values[next] != null; next = next + 1 & mask) {
+      final int home = hash(keys[next]) & mask;
+
+      if ((next - home & mask) >= (next - slot & mask)) {
+        keys[slot] = keys[next];
+        values[slot] = values[next];
+        values[next] = null;
+        slot = next;
+      }
+    }
+
+    return previous;
+  }
+
+  /**
+   * Removes every mapping whose value satisfies a predicate.
+   *
+   * @param filter a predicate returning true for values to be removed, not null
+   */
+  @SuppressWarnings("unchecked")
+  void removeIf(Predicate<? super V> filter) {
+    final int[] oldKeys = keys;
+    final Object[] oldValues = values;
+
+    keys = new int[oldKeys.length];
+    values = new Object[oldValues.length];
+    size = 0;
+
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldValues[i] != null && !filter.test((V) oldValues[i])) {
+        put(oldKeys[i], (V) oldValues[i]);
+      }
+    }
+  }
+
+  /**
+   * Gets the number of mappings in the map.
+   *
+   * @return the number of mappings in the map
+   */
+  int size() {
+    return size;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void resize() {
+    final int[] oldKeys = keys;
+    final Object[] oldValues = values;
+
+    keys = new int[oldKeys.length * 2];
+    values = new Object[oldValues.length * 2];
+    mask = keys.length - 1;
+    size = 0;
+
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldValues[i] != null) {
+        put(oldKeys[i], (V) oldValues[i]);
+      }
+    }
+  }
+}
@@ -0,0 +1,782 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.codebrewer.dump1090processor.basestation.domain.TransmissionType;
+import org.codebrewer.dump1090processor.basestation.entity.TransmissionMessage;
+import org.geolatte.geom.G2D;
+import org.geolatte.geom.Point;
+import org.geolatte.geom.crs.CrsRegistry;
+import org.geolatte.geom.crs.Geographic2DCoordinateReferenceSystem;
+
+/**
+ * A compact, column-oriented archive of the transmission messages of a closed window of time.
+ *
+ * <p>Messages are sorted by timestamp and each of their properties is written to a column of its
+ * own, which is then compressed:
+ *
+ * <ul>
+ *   <li>timestamps as variable-length differences from the previous timestamp;</li>
+ *   <li>ICAO addresses and callsigns as indexes into dictionaries of the distinct values, ICAO
+ *   address indexes being packed into as few bits as the size of the dictionary needs;</li>
+ *   <li>the transmission type, which properties have a value and the values of flags as 19 bits
+ *   per message;</li>
+ *   <li>numbers only for the messages having a value, floating point numbers as the bits that
+ *   differ from the previous value, which are mostly low-order bits since an aircraft's
+ *   properties change slowly, and integers as variable-length values.</li>
+ * </ul>
+ *
+ * <p>An archive is written by a {@link Writer}, to which messages are added one at a time so that
+ * they need not all be held in memory, each column being compressed as it is written. An archive
+ * is read back into memory still compressed, and its columns are decompressed and decoded only
+ * as it is scanned for messages. A scan creates messages only for the rows it passes to its
+ * consumer, rows outside the range of time or not sent by the aircraft of interest being decoded
+ * just far enough to be skipped.
+ */
+public final class MessageArchive {
+  private static final int MAGIC = 0x42534131; // "BSA1"
+  private static final Geographic2DCoordinateReferenceSystem COORDINATE_REFERENCE_SYSTEM =
+      CrsRegistry.getGeographicCoordinateReferenceSystemForEPSG(4326);
+  private static final TransmissionType[] TRANSMISSION_TYPES = TransmissionType.values();
+
+  // The columns of an archive, in the order in which they are written
+  //
+  private static final int TIMESTAMP = 0;
+  private static final int ICAO_DICTIONARY = 1;
+  private static final int ICAO_INDEX = 2;
+  private static final int HEADER = 3;
+  private static final int CALL_SIGN_DICTIONARY = 4;
+  private static final int CALL_SIGN_INDEX = 5;
+  private static final int ALTITUDE = 6;
+  private static final int GROUND_SPEED = 7;
+  private static final int TRACK = 8;
+  private static final int VERTICAL_RATE = 9;
+  private static final int SQUAWK = 10;
+  private static final int LATITUDE = 11;
+  private static final int LONGITUDE = 12;
+  private static final int COLUMN_COUNT = 13;
+
+  // Bits of the header of a message recording which properties have a value and, for flags, the
+  // values of the flags, following 4 bits holding the transmission type
+  //
+  static final int HAS_ALTITUDE = 1;
+  static final int HAS_GROUND_SPEED = 1 << 1;
+  static final int HAS_TRACK = 1 << 2;
+  static final int HAS_VERTICAL_RATE = 1 << 3;
+  static final int HAS_SQUAWK = 1 << 4;
+  static final int HAS_POSITION = 1 << 5;
+  static final int HAS_CALL_SIGN = 1 << 6;
+  static final int HAS_ALERT = 1 << 7;
+  static final int HAS_EMERGENCY = 1 << 8;
+  static final int HAS_IDENT_ACTIVE = 1 << 9;
+  static final int HAS_ON_GROUND = 1 << 10;
+  static final int ALERT = 1 << 11;
+  static final int EMERGENCY = 1 << 12;
+  static final int IDENT_ACTIVE = 1 << 13;
+  static final int ON_GROUND = 1 << 14;
+  private static final int PROPERTY_BITS = 15;
+  private static final int TRANSMISSION_TYPE_BITS = 4;
+
+  private static final int BUFFER_BYTES = 8192;
+
+  private final int size;
+  private final long firstTimestamp;
+  private final int[] icaoDictionary;
+  private final String[] callSignDictionary;
+  private final byte[][] compressedColumns;
+
+  private MessageArchive(
+      int size,
+      long firstTimestamp,
+      int[] icaoDictionary,
+      String[] callSignDictionary,
+      byte[][] compressedColumns) {
+    this.size = size;
+    this.firstTimestamp = firstTimestamp;
+    this.icaoDictionary = icaoDictionary;
+    this.callSignDictionary = callSignDictionary;
+    this.compressedColumns = compressedColumns;
+  }
+
+  // Writes unsigned and zig-zag encoded variable-length integers, and fixed-width fields of bits,
+  // compressing them as they are written
+  //
+  private static final class ColumnWriter {
+    private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+    private final OutputStream bytes = new BufferedOutputStream(
+        new DeflaterOutputStream(compressed, deflater, BUFFER_BYTES), BUFFER_BYTES);
+    private int length;
+    private long bitBuffer;
+    private int bitCount;
+
+    private void write(int b) {
+      try {
+        bytes.write(b);
+        length++;
+      } catch (IOException e) {
+        // Not thrown when writing to a byte array
+        //
+        throw new IllegalStateException(e);
+      }
+    }
+
+    void writeVarint(long value) {
+      long remaining = value;
+
+      while ((remaining & ~0x7fL) != 0L) {
+        write((int) ((remaining & 0x7f) | 0x80));
+        remaining >>>= 7;
+      }
+
+      write((int) remaining);
+    }
+
+    void writeSigned(long value) {
+      writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    void writeBits(int value, int width) {
+      bitBuffer |= ((long) value & ((1L << width) - 1L)) << bitCount;
+      bitCount += width;
+
+      while (bitCount >= 8) {
+        write((int) (bitBuffer & 0xff));
+        bitBuffer >>>= 8;
+        bitCount -= 8;
+      }
+    }
+
+    void writeString(String value) {
+      final byte[] stringBytes = value.getBytes(StandardCharsets.UTF_8);
+
+      writeVarint(stringBytes.length);
+
+      for (byte b : stringBytes) {
+        write(b);
+      }
+    }
+
+    int length() {
+      return length;
+    }
+
+    byte[] toCompressedByteArray() throws IOException {
+      if (bitCount > 0) {
+        write((int) (bitBuffer & 0xff));
+        bitBuffer = 0L;
+        bitCount = 0;
+      }
+
+      bytes.close();
+      deflater.end();
+
+      return compressed.toByteArray();
+    }
+  }
+
+  // Reads the values written by a ColumnWriter, decompressing them as they are read
+  //
+  private static final class ColumnReader implements AutoCloseable {
+    private final InputStream bytes;
+    private long bitBuffer;
+    private int bitCount;
+
+    ColumnReader(byte[] compressed) {
+      this.bytes = new BufferedInputStream(
+          new InflaterInputStream(new ByteArrayInputStream(compressed)), BUFFER_BYTES);
+    }
+
+    private int nextByte() throws IOException {
+      final int b;
+
+      try {
+        b = bytes.read();
+      } catch (EOFException e) {
+        throw new IOException("Truncated archive column", e);
+      }
+
+      if (b < 0) {
+        throw new IOException("Truncated archive column");
+      }
+
+      return b;
+    }
+
+    long readVarint() throws IOException {
+      long value = 0L;
+      int shift = 0;
+      int b;
+
+      do {
+        if (shift > 63) {
+          throw new IOException("Malformed variable-length integer");
+        }
+
+        b = nextByte();
+        value |= (long) (b & 0x7f) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+
+      return value;
+    }
+
+    long readSigned() throws IOException {
+      final long value = readVarint();
+
+      return (value >>> 1) ^ -(value & 1L);
+    }
+
+    int readBits(int width) throws IOException {
+      while (bitCount < width) {
+        bitBuffer |= (long) nextByte() << bitCount;
+        bitCount += 8;
+      }
+
+      final int value = (int) (bitBuffer & ((1L << width) - 1L));
+
+      bitBuffer >>>= width;
+      bitCount -= width;
+
+      return value;
+    }
+
+    String readString() throws IOException {
+      final int length = (int) readVarint();
+
+      if (length < 0) {
+        throw new IOException("Malformed archive string");
+      }
+
+      final byte[] stringBytes = new byte[length];
+
+      for (int i = 0; i < length; i++) {
+        stringBytes[i] = (byte) nextByte();
+      }
+
+      return new String(stringBytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+      bytes.close();
+    }
+  }
+
+  /**
+   * Writes an archive from messages added to it one at a time, in order of timestamp.
+   *
+   * <p>The messages are not kept, only their properties, compressed, until the archive is written
+   * out.
+   */
+  public static final class Writer {
+    private final int[] icaoDictionary;
+    private final int icaoBits;
+    private final ColumnWriter[] columns = new ColumnWriter[COLUMN_COUNT];
+    private final Map<String, Integer> callSignIndexes = new HashMap<>();
+    private final List<String> callSignValues = new ArrayList<>();
+    private int size;
+    private long firstTimestamp;
+    private long previousTimestamp;
+    private int previousAltitude;
+    private int previousGroundSpeed;
+    private int previousTrack;
+    private long previousLatitude;
+    private long previousLongitude;
+    private boolean written;
+
+    /**
+     * Creates a writer for the messages sent by a set of aircraft.
+     *
+     * @param icaos the addresses of all the transponders that sent the messages to be added, not
+     * null
+     */
+    public Writer(Collection<Integer> icaos) {
+      icaoDictionary = icaos.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+      icaoBits = bitWidth(icaoDictionary.length);
+
+      for (int i = 0; i < COLUMN_COUNT; i++) {
+        columns[i] = new ColumnWriter();
+      }
+    }
+
+    /**
+     * Adds a message to the archive.
+     *
+     * @param message a transmission message sent no earlier than the message last added, not null
+     *
+     * @throws IllegalArgumentException if the message was sent by a transponder not given when
+     * the writer was created, or earlier than the message last added
+     * @throws IllegalStateException if the archive has been written
+     */
+    public void add(TransmissionMessage message) {
+      if (written) {
+        throw new IllegalStateException("Archive already written");
+      }
+
+      final long timestamp = message.getTimestamp().toEpochMilli();
+      final int icaoIndex = Arrays.binarySearch(icaoDictionary, message.getIcao());
+
+      if (icaoIndex < 0) {
+        throw new IllegalArgumentException(
+            String.format("Unexpected ICAO address: %06X", message.getIcao()));
+      }
+
+      if (size == 0) {
+        firstTimestamp = timestamp;
+        previousTimestamp = timestamp;
+      } else if (timestamp < previousTimestamp) {
+        throw new IllegalArgumentException(
+            String.format("Message at %s is out of order", message.getTimestamp()));
+      }
+
+      final int header = header(message);
+      final TransmissionType transmissionType = message.getTransmissionType();
+
+      columns[TIMESTAMP].writeSigned(timestamp - previousTimestamp);
+      previousTimestamp = timestamp;
+      columns[ICAO_INDEX].writeBits(icaoIndex, icaoBits);
+      columns[HEADER].writeBits(
+          transmissionType == null ? 0 : transmissionType.ordinal() + 1, TRANSMISSION_TYPE_BITS);
+      columns[HEADER].writeBits(header, PROPERTY_BITS);
+
+      if ((header & HAS_CALL_SIGN) != 0) {
+        final Integer index = callSignIndexes.computeIfAbsent(message.getCallSign(), callSign -> {
+          callSignValues.add(callSign);
+
+          return callSignValues.size() - 1;
+        });
+
+        columns[CALL_SIGN_INDEX].writeVarint(index);
+      }
+
+      if ((header & HAS_ALTITUDE) != 0) {
+        final int bits = Float.floatToIntBits(message.getAltitude());
+
+        columns[ALTITUDE].writeVarint((bits ^ previousAltitude) & 0xffffffffL);
+        previousAltitude = bits;
+      }
+
+      if ((header & HAS_GROUND_SPEED) != 0) {
+        final int bits = Float.floatToIntBits(message.getGroundSpeed());
+
+        columns[GROUND_SPEED].writeVarint((bits ^ previousGroundSpeed) & 0xffffffffL);
+        previousGroundSpeed = bits;
+      }
+
+      if ((header & HAS_TRACK) != 0) {
+        final int bits = Float.floatToIntBits(message.getTrack());
+
+        columns[TRACK].writeVarint((bits ^ previousTrack) & 0xffffffffL);
+        previousTrack = bits;
+      }
+
+      if ((header & HAS_VERTICAL_RATE) != 0) {
+        columns[VERTICAL_RATE].writeSigned(message.getVerticalRate());
+      }
+
+      if ((header & HAS_SQUAWK) != 0) {
+        columns[SQUAWK].writeSigned(message.getSquawk());
+      }
+
+      if ((header & HAS_POSITION) != 0) {
+        final G2D position = message.getPosition().getPosition();
+        final long latitude = Double.doubleToLongBits(position.getLat());
+        final long longitude = Double.doubleToLongBits(position.getLon());
+
+        columns[LATITUDE].writeVarint(latitude ^ previousLatitude);
+        columns[LONGITUDE].writeVarint(longitude ^ previousLongitude);
+        previousLatitude = latitude;
+        previousLongitude = longitude;
+      }
+
+      size++;
+    }
+
+    /**
+     * Gets the number of messages added to the archive.
+     *
+     * @return the number of messages added to the archive
+     */
+    public int size() {
+      return size;
+    }
+
+    /**
+     * Writes the archive, after which no more messages can be added.
+     *
+     * @param outputStream the stream to which the archive is written, which is not closed
+     *
+     * @return the number of bytes written
+     *
+     * @throws IOException if the archive cannot be written
+     * @throws IllegalStateException if the archive has already been written
+     */
+    public long writeTo(OutputStream outputStream) throws IOException {
+      if (written) {
+        throw new IllegalStateException("Archive already written");
+      }
+
+      written = true;
+      columns[ICAO_DICTIONARY].writeVarint(icaoDictionary.length);
+
+      for (int i = 0; i < icaoDictionary.length; i++) {
+        columns[ICAO_DICTIONARY].writeVarint(
+            i == 0 ? icaoDictionary[0] : icaoDictionary[i] - icaoDictionary[i - 1]);
+      }
+
+      columns[CALL_SIGN_DICTIONARY].writeVarint(callSignValues.size());
+      callSignValues.forEach(columns[CALL_SIGN_DICTIONARY]::writeString);
+
+      final DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+
+      dataOutputStream.writeInt(MAGIC);
+      dataOutputStream.writeInt(size);
+      dataOutputStream.writeLong(firstTimestamp);
+
+      for (ColumnWriter column : columns) {
+        final int length = column.length();
+        final byte[] compressed = column.toCompressedByteArray();
+
+        dataOutputStream.writeInt(length);
+        dataOutputStream.writeInt(compressed.length);
+        dataOutputStream.write(compressed);
+      }
+
+      dataOutputStream.flush();
+
+      return dataOutputStream.size();
+    }
+  }
+
+  private static int bitWidth(int valueCount) {
+    return valueCount <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(valueCount - 1);
+  }
+
+  /**
+   * Gets the bits recording which properties of a transmission message have a value and the
+   * values of its flags.
+   *
+   * @param message a transmission message, not null
+   *
+   * @return the bits recording the properties of the message
+   */
+  static int header(TransmissionMessage message) {
+    int header = 0;
+
+    header |= message.getAltitude() != null ? HAS_ALTITUDE : 0;
+    header |= message.getGroundSpeed() != null ? HAS_GROUND_SPEED : 0;
+    header |= message.getTrack() != null ? HAS_TRACK : 0;
+    header |= message.getVerticalRate() != null ? HAS_VERTICAL_RATE : 0;
+    header |= message.getSquawk() != null ? HAS_SQUAWK : 0;
+    header |= message.getPosition() != null && !message.getPosition().isEmpty() ? HAS_POSITION : 0;
+    header |= message.getCallSign() != null ? HAS_CALL_SIGN : 0;
+    header |= flagBits(message.getAlert(), HAS_ALERT, ALERT);
+    header |= flagBits(message.getEmergency(), HAS_EMERGENCY, EMERGENCY);
+    header |= flagBits(message.getIdentActive(), HAS_IDENT_ACTIVE, IDENT_ACTIVE);
+    header |= flagBits(message.getOnGround(), HAS_ON_GROUND, ON_GROUND);
+
+    return header;
+  }
+
+  private static int flagBits(Boolean flag, int hasFlag, int flagSet) {
+    if (flag == null) {
+      return 0;
+    }
+
+    return flag ? hasFlag | flagSet : hasFlag;
+  }
+
+  static Boolean flag(int header, int hasFlag, int flagSet) {
+    return (header & hasFlag) == 0 ? null : (header & flagSet) != 0;
+  }
+
+  /**
+   * Writes transmission messages to an archive, in order of timestamp.
+   *
+   * @param messages the messages to archive, not null
+   * @param outputStream the stream to which the archive is written, which is not closed
+   *
+   * @return the number of bytes written
+   *
+   * @throws IOException if the archive cannot be written
+   */
+  public static long write(List<TransmissionMessage> messages, OutputStream outputStream)
+      throws IOException {
+    final List<TransmissionMessage> sorted = new ArrayList<>(messages);
+    final List<Integer> icaos = new ArrayList<>(sorted.size());
+
+    sorted.sort(Comparator.comparing(TransmissionMessage::getTimestamp));
+    sorted.forEach(message -> icaos.add(message.getIcao()));
+
+    final Writer writer = new Writer(icaos);
+
+    sorted.forEach(writer::add);
+
+    return writer.writeTo(outputStream);
+  }
+
+  /**
+   * Reads an archive into memory, without decompressing the columns of its messages.
+   *
+   * @param inputStream the stream from which the archive is read, which is not closed
+   *
+   * @return the archive
+   *
+   * @throws IOException if the archive cannot be read or is malformed
+   */
+  public static MessageArchive read(InputStream inputStream) throws IOException {
+    final DataInputStream dataInputStream = new DataInputStream(inputStream);
+
+    if (dataInputStream.readInt() != MAGIC) {
+      throw new IOException("Not a message archive");
+    }
+
+    final int size = dataInputStream.readInt();
+
+    if (size < 0) {
+      throw new IOException(String.format("Invalid message count: %d", size));
+    }
+
+    final long firstTimestamp = dataInputStream.readLong();
+    final byte[][] compressedColumns = new byte[COLUMN_COUNT][];
+
+    for (int i = 0; i < COLUMN_COUNT; i++) {
+      final int length = dataInputStream.readInt();
+      final int compressedLength = dataInputStream.readInt();
+
+      if (length < 0 || compressedLength < 0) {
+        throw new IOException("Invalid archive column length");
+      }
+
+      compressedColumns[i] = new byte[compressedLength];
+      dataInputStream.readFully(compressedColumns[i]);
+    }
+
+    final int[] icaoDictionary;
+    final String[] callSignDictionary;
+
+    try (ColumnReader column = new ColumnReader(compressedColumns[ICAO_DICTIONARY])) {
+      icaoDictionary = new int[(int) column.readVarint()];
+
+      for (int i = 0; i < icaoDictionary.length; i++) {
+        icaoDictionary[i] = (int) column.readVarint() + (i == 0 ? 0 : icaoDictionary[i - 1]);
+      }
+    }
+
+    try (ColumnReader column = new ColumnReader(compressedColumns[CALL_SIGN_DICTIONARY])) {
+      callSignDictionary = new String[(int) column.readVarint()];
+
+      for (int i = 0; i < callSignDictionary.length; i++) {
+        callSignDictionary[i] = column.readString();
+      }
+    }
+
+    return new MessageArchive(
+        size, firstTimestamp, icaoDictionary, callSignDictionary, compressedColumns);
+  }
+
+  /**
+   * Gets the number of messages in this archive.
+   *
+   * @return the number of messages in this archive
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Passes each message held by this archive, in order of timestamp, to a consumer.
+   *
+   * @param consumer the consumer of the messages, not null
+   *
+   * @throws IOException if the archive is malformed
+   */
+  public void scan(Consumer<? super TransmissionMessage> consumer) throws IOException {
+    scan(Instant.ofEpochMilli(Long.MIN_VALUE), Instant.ofEpochMilli(Long.MAX_VALUE),
+        icao -> true, consumer);
+  }
+
+  /**
+   * Passes each message held by this archive that was sent in a range of time, in order of
+   * timestamp, to a consumer.
+   *
+   * @param from the start of the range, inclusive
+   * @param to the end of the range, exclusive
+   * @param consumer the consumer of the messages, not null
+   *
+   * @throws IOException if the archive is malformed
+   */
+  public void scan(Instant from, Instant to, Consumer<? super TransmissionMessage> consumer)
+      throws IOException {
+    scan(from, to, icao -> true, consumer);
+  }
+
+  /**
+   * Passes each message held by this archive that was sent in a range of time by one of a set of
+   * aircraft, in order of timestamp, to a consumer. Messages are created only for the rows that
+   * are passed to the consumer, and no row after the end of the range is decoded.
+   *
+   * @param from the start of the range, inclusive
+   * @param to the end of the range, exclusive
+   * @param icaoFilter a test of the addresses of the transponders whose messages are wanted, in
+   * the integer representation described by {@code IcaoAddress}, not null
+   * @param consumer the consumer of the messages, not null
+   *
+   * @throws IOException if the archive is malformed
+   */
+  public void scan(
+      Instant from,
+      Instant to,
+      IntPredicate icaoFilter,
+      Consumer<? super TransmissionMessage> consumer) throws IOException {
+    final long fromMillis = from.toEpochMilli();
+    final long toMillis = to.toEpochMilli();
+    final ColumnReader[] columns = new ColumnReader[COLUMN_COUNT];
+
+    // Test each aircraft once rather than each message
+    //
+    final boolean[] icaoWanted = new boolean[icaoDictionary.length];
+
+    for (int i = 0; i < icaoDictionary.length; i++) {
+      icaoWanted[i] = icaoFilter.test(icaoDictionary[i]);
+    }
+
+    try {
+      for (int i = 0; i < COLUMN_COUNT; i++) {
+        columns[i] = new ColumnReader(compressedColumns[i]);
+      }
+
+      scan(columns, fromMillis, toMillis, icaoWanted, consumer);
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new IOException("Corrupt archive dictionary index", e);
+    } finally {
+      for (ColumnReader column : columns) {
+        if (column != null) {
+          column.close();
+        }
+      }
+    }
+  }
+
+  // Decodes the rows of an archive, passing those wanted to a consumer. Every row up to the end
+  // of the range is decoded, since the floating point columns hold differences from the previous
+  // value.
+  //
+  private void scan(
+      ColumnReader[] columns,
+      long fromMillis,
+      long toMillis,
+      boolean[] icaoWanted,
+      Consumer<? super TransmissionMessage> consumer) throws IOException {
+    final int icaoBits = bitWidth(icaoDictionary.length);
+    long timestamp = firstTimestamp;
+    int altitude = 0;
+    int groundSpeed = 0;
+    int track = 0;
+    long latitude = 0L;
+    long longitude = 0L;
+
+    for (int i = 0; i < size; i++) {
+      timestamp += columns[TIMESTAMP].readSigned();
+
+      if (timestamp >= toMillis) {
+        return;
+      }
+
+      final int icaoIndex = columns[ICAO_INDEX].readBits(icaoBits);
+      final int transmissionType = columns[HEADER].readBits(TRANSMISSION_TYPE_BITS);
+      final int header = columns[HEADER].readBits(PROPERTY_BITS);
+      final int callSignIndex =
+          (header & HAS_CALL_SIGN) != 0 ? (int) columns[CALL_SIGN_INDEX].readVarint() : -1;
+
+      if ((header & HAS_ALTITUDE) != 0) {
+        altitude ^= (int) columns[ALTITUDE].readVarint();
+      }
+
+      if ((header & HAS_GROUND_SPEED) != 0) {
+        groundSpeed ^= (int) columns[GROUND_SPEED].readVarint();
+      }
+
+      if ((header & HAS_TRACK) != 0) {
+        track ^= (int) columns[TRACK].readVarint();
+      }
+
+      final short verticalRate =
+          (header & HAS_VERTICAL_RATE) != 0 ? (short) columns[VERTICAL_RATE].readSigned() : 0;
+      final short squawk = (header & HAS_SQUAWK) != 0 ? (short) columns[SQUAWK].readSigned() : 0;
+
+      if ((header & HAS_POSITION) != 0) {
+        latitude ^= columns[LATITUDE].readVarint();
+        longitude ^= columns[LONGITUDE].readVarint();
+      }
+
+      if (timestamp < fromMillis || !icaoWanted[icaoIndex]) {
+        continue;
+      }
+
+      final TransmissionMessage.Builder builder = new TransmissionMessage.Builder(
+          icaoDictionary[icaoIndex], Instant.ofEpochMilli(timestamp));
+
+      builder.transmissionType(
+                 transmissionType == 0 ? null : TRANSMISSION_TYPES[transmissionType - 1])
+             .altitude((header & HAS_ALTITUDE) != 0 ? Float.intBitsToFloat(altitude) : null)
+             .groundSpeed(
+                 (header & HAS_GROUND_SPEED) != 0 ? Float.intBitsToFloat(groundSpeed) : null)
+             .track((header & HAS_TRACK) != 0 ? Float.intBitsToFloat(track) : null)
+             .verticalRate((header & HAS_VERTICAL_RATE) != 0 ? verticalRate : null)
+             .squawk((header & HAS_SQUAWK) != 0 ? squawk : null)
+             .alert(flag(header, HAS_ALERT, ALERT))
+             .emergency(flag(header, HAS_EMERGENCY, EMERGENCY))
+             .identActive(flag(header, HAS_IDENT_ACTIVE, IDENT_ACTIVE))
+             .onGround(flag(header, HAS_ON_GROUND, ON_GROUND))
+             .callSign(callSignIndex < 0 ? null : callSignDictionary[callSignIndex]);
+
+      if ((header & HAS_POSITION) != 0) {
+        builder.position(new Point<>(
+            new G2D(Double.longBitsToDouble(longitude), Double.longBitsToDouble(latitude)),
+            COORDINATE_REFERENCE_SYSTEM));
+      }
+
+      consumer.accept(builder.build());
+    }
+  }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.codebrewer.dump1090processor.basestation.entity.TransmissionMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * A service that rolls the transmission messages of each closed partition, as managed by
+ * {@link MessagePartitionService}, into a {@link MessageArchive} file named after the partition.
+ *
+ * <p>Archives are written to {@code basestation.archive.dir} and are kept after the partition
+ * they were made from has been dropped, so that historical messages can be replayed or analysed
+ * long after they have left the database. While archiving is enabled, an expired partition is
+ * not dropped until its archive has been written, so that no messages are lost if archiving
+ * falls behind or fails.
+ *
+ * <p>A partition is read {@code basestation.archive.page.size} messages at a time, and each page
+ * added to the archive's compressed columns before the next is read, so that archiving a large
+ * partition does not need memory for all its messages.
+ */
+@Service
+@ManagedResource(
+    objectName = "org.codebrewer.dump1090processor:type=Control,name=MessageArchiveService",
+    description = "Archives closed partitions of BaseStation messages")
+public class MessageArchiveService {
+  static final String ARCHIVE_SUFFIX = ".bsa";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MessageArchiveService.class);
+
+  private final MessagePartitionService messagePartitionService;
+  private final Path archiveDirectory;
+  private final long checkIntervalMillis;
+  private final int pageSize;
+  private final boolean enabled;
+  private final AtomicLong archivedPartitionCount = new AtomicLong();
+  private final AtomicLong archivedMessageCount = new AtomicLong();
+  private final AtomicLong archivedByteCount = new AtomicLong();
+  private ScheduledExecutorService archiveExecutor;
+
+  /**
+   * Sole constructor for this class.
+   *
+   * @param messagePartitionService the service managing the partitions to archive
+   * @param archiveDirectory the directory to which archives are written
+   * @param checkIntervalMillis the number of milliseconds between checks for partitions to archive
+   * @param pageSize the number of messages read from the database at a time while archiving
+   * @param enabled whether or not closed partitions are archived
+   */
+  public MessageArchiveService(
+      MessagePartitionService messagePartitionService,
+      @Value("${basestation.archive.dir:archive}") String archiveDirectory,
+      @Value("${basestation.archive.check.interval:60000}") long checkIntervalMillis,
+      @Value("${basestation.archive.page.size:10000}") int pageSize,
+      @Value("${basestation.archive.enabled:false}") boolean enabled) {
+    LOGGER.info("Message archives: {}, directory: {}", enabled, archiveDirectory);
+    this.messagePartitionService = messagePartitionService;
+    this.archiveDirectory = Paths.get(archiveDirectory);
+    this.checkIntervalMillis = checkIntervalMillis;
+    this.pageSize = pageSize;
+    this.enabled = enabled;
+  }
+
+  /**
+   * Starts the background thread that archives closed partitions, and holds back the dropping of
+   * expired partitions until they have been archived.
+   */
+  @PostConstruct
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+
+    messagePartitionService.setDropCondition(partition -> Files.exists(archivePath(partition)));
+
+    archiveExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "message-archiver");
+
+      thread.setDaemon(true);
+
+      return thread;
+    });
+    archiveExecutor.scheduleWithFixedDelay(
+        this::archiveClosedPartitions, checkIntervalMillis, checkIntervalMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops the background thread that archives closed partitions.
+   */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    if (archiveExecutor != null) {
+      archiveExecutor.shutdownNow();
+      archiveExecutor.awaitTermination(checkIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  Path archivePath(String partition) {
+    return archiveDirectory.resolve(partition + ARCHIVE_SUFFIX);
+  }
+
+  /**
+   * Archives each closed partition that has not yet been archived.
+   *
+   * @return the number of partitions archived
+   */
+  @ManagedOperation(description = "Archive closed partitions not yet archived")
+  public int archiveClosedPartitions() {
+    int archived = 0;
+
+    try {
+      for (String partition : messagePartitionService.getPartitions()) {
+        if (!Files.exists(archivePath(partition))) {
+          archivePartition(partition);
+          archived++;
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      LOGGER.error("Failed to archive message partitions: {}", e.getMessage());
+    }
+
+    return archived;
+  }
+
+  /**
+   * Writes the transmission messages of a closed partition to an archive, replacing any archive
+   * previously written for the partition.
+   *
+   * @param partition the name of a closed partition
+   *
+   * @return the number of bytes written
+   *
+   * @throws IOException if the archive cannot be written
+   */
+  long archivePartition(String partition) throws IOException {
+    final MessageArchive.Writer writer =
+        new MessageArchive.Writer(messagePartitionService.findTransmissionIcaos(partition));
+    final Path archivePath = archivePath(partition);
+    final Path temporaryPath = archiveDirectory.resolve(partition + ARCHIVE_SUFFIX + ".tmp");
+    final long byteCount;
+    List<TransmissionMessage> page;
+    TransmissionMessage last = null;
+
+    do {
+      page = messagePartitionService.findTransmissionMessages(partition, last, pageSize);
+      page.forEach(writer::add);
+
+      if (!page.isEmpty()) {
+        last = page.get(page.size() - 1);
+      }
+    } while (page.size() == pageSize);
+
+    Files.createDirectories(archiveDirectory);
+
+    // Write to a temporary file first so that an archive is never seen half-written
+    //
+    try (OutputStream outputStream =
+             new BufferedOutputStream(Files.newOutputStream(temporaryPath))) {
+      byteCount = writer.writeTo(outputStream);
+    }
+
+    Files.move(temporaryPath, archivePath, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    archivedPartitionCount.incrementAndGet();
+    archivedMessageCount.addAndGet(writer.size());
+    archivedByteCount.addAndGet(byteCount);
+    LOGGER.info(
+        "Archived {} messages of partition {} in {} bytes", writer.size(), partition, byteCount);
+
+    return byteCount;
+  }
+
+  /**
+   * Reads the archive of a partition, whose messages are decoded only as it is scanned.
+   *
+   * @param partition the name of an archived partition
+   *
+   * @return the archive of the partition
+   *
+   * @throws IOException if the archive does not exist or cannot be read
+   */
+  public MessageArchive readArchive(String partition) throws IOException {
+    try (InputStream inputStream =
+             new BufferedInputStream(Files.newInputStream(archivePath(partition)))) {
+      return MessageArchive.read(inputStream);
+    }
+  }
+
+  /**
+   * Gets the names of the archived partitions, oldest first.
+   *
+   * @return the names of the archived partitions
+   *
+   * @throws IOException if the archive directory cannot be listed
+   */
+  @ManagedAttribute(description = "The names of the archived message partitions, oldest first")
+  public List<String> getArchivedPartitions() throws IOException {
+    if (!Files.isDirectory(archiveDirectory)) {
+      return new ArrayList<>();
+    }
+
+    try (Stream<Path> paths = Files.list(archiveDirectory)) {
+      return paths.map(path -> path.getFileName().toString())
+                  .filter(name -> name.endsWith(ARCHIVE_SUFFIX))
+                  .map(name -> name.substring(0, name.length() - ARCHIVE_SUFFIX.length()))
+                  .sorted()
+                  .collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Gets the total number of partitions archived since application startup.
+   *
+   * @return the total number of partitions archived since application startup
+   */
+  @ManagedAttribute(description = "The total number of partitions archived since startup")
+  public long getArchivedPartitionCount() {
+    return archivedPartitionCount.get();
+  }
+
+  /**
+   * Gets the total number of messages archived since application startup.
+   *
+   * @return the total number of messages archived since application startup
+   */
+  @ManagedAttribute(description = "The total number of messages archived since startup")
+  public long getArchivedMessageCount() {
+    return archivedMessageCount.get();
+  }
+
+  /**
+   * Gets the total number of bytes of archives written since application startup.
+   *
+   * @return the total number of bytes of archives written since application startup
+   */
+  @ManagedAttribute(description = "The total number of bytes of archives written since startup")
+  public long getArchivedByteCount() {
+    return archivedByteCount.get();
+  }
+}
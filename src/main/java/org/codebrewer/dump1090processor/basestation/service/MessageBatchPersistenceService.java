@@ -0,0 +1,570 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
+import org.codebrewer.dump1090processor.basestation.repository.BaseStationMessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * A service that persists BaseStation messages in batches.
+ *
+ * <p>Messages are queued by the thread that consumes them and a background thread saves them to
+ * the repository, one transaction per batch, so that Hibernate can send them to the database as
+ * JDBC batch inserts (see the {@code hibernate.jdbc.batch_size} property). A batch is written once
+ * it holds {@code basestation.persist.batch.size} messages or once its first message has waited
+ * {@code basestation.persist.batch.latency} milliseconds, whichever comes first. At most
+ * {@code basestation.persist.queue.capacity} messages can be waiting, beyond which consumers are
+ * blocked until the background thread catches up.
+ *
+ * <p>By default the background thread writes each batch itself, so only one transaction is open
+ * at a time. If {@code basestation.persist.concurrency} is greater than one, each batch is instead
+ * written on a thread of its own, with at most that many batches being written at once so that
+ * the database is not overwhelmed. These threads are virtual threads if
+ * {@code basestation.threads.virtual} is true and the JVM supports them, so that a batch waiting
+ * for the database does not hold on to an operating system thread.
+ *
+ * <p>A batch that fails for a reason other than a message breaking the constraints of the table,
+ * as when the database is unavailable, is written again after
+ * {@code basestation.persist.retry.interval} milliseconds, up to a total of
+ * {@code basestation.persist.retry.attempts} times, after which its messages are dropped. A batch
+ * rejected by the database is written again one message at a time, so that only the messages
+ * rejected on their own are dropped. Messages are copied before being written again, since those
+ * of the failed transaction were given identifiers that were never committed and would otherwise
+ * be merged rather than inserted.
+ *
+ * <p>Writes can be paused while the table to which messages are written is replaced, as when
+ * {@link MessagePartitionService} rotates message partitions.
+ *
+ * <p>If {@code basestation.log.enabled} is true, messages are not queued here but written first to
+ * the local log of {@link MessageLogService}, which hands them to {@link #writeBatch} itself.
+ */
+@Service
+@ManagedResource(
+    objectName = "org.codebrewer.dump1090processor:type=Counter,name=MessageBatchPersistenceService",
+    description = "Persists BaseStation messages in batches")
+public class MessageBatchPersistenceService {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(MessageBatchPersistenceService.class);
+
+  /**
+   * The outcomes of writing a batch of messages.
+   */
+  enum WriteResult {
+    /**
+     * The messages were persisted.
+     */
+    PERSISTED,
+    /**
+     * The messages were not persisted but might be if written again, as when the database is
+     * unavailable.
+     */
+    FAILED,
+    /**
+     * The messages were not persisted because the database rejected at least one of them, as when
+     * it breaks a constraint, so writing them again would fail in the same way.
+     */
+    REJECTED
+  }
+
+  private final BaseStationMessageRepository repository;
+  private final PipelineMetrics pipelineMetrics;
+  private final int batchSize;
+  private final long maxBatchLatencyNanos;
+  private final BlockingQueue<BaseStationMessage> queue;
+  private final int writeConcurrency;
+  private final int retryAttempts;
+  private final long retryIntervalMillis;
+  private final Semaphore writePermits;
+  private final ThreadFactory batchWriterThreadFactory;
+  private final ReadWriteLock tableLock = new ReentrantReadWriteLock();
+  private final AtomicLong batchCount = new AtomicLong();
+  private final AtomicLong persistedMessageCount = new AtomicLong();
+  private final AtomicLong failedMessageCount = new AtomicLong();
+  private final AtomicLong droppedMessageCount = new AtomicLong();
+  private final AtomicLong totalFlushNanos = new AtomicLong();
+  private volatile int lastBatchSize;
+  private volatile long lastFlushNanos;
+  private final AtomicLong maxFlushNanos = new AtomicLong();
+  private volatile boolean running;
+  private Thread writerThread;
+
+  /**
+   * Sole constructor for this class.
+   *
+   * @param repository a repository to which BaseStation message entities can be persisted
+   * @param batchSize the maximum number of messages persisted in one transaction
+   * @param maxBatchLatencyMillis the maximum number of milliseconds for which a message waits for a
+   * batch to fill before the batch is persisted
+   * @param queueCapacity the maximum number of messages waiting to be persisted
+   * @param writeConcurrency the maximum number of batches written at once, each in its own
+   * transaction
+   * @param retryAttempts the maximum number of times a batch is written before its messages are
+   * dropped
+   * @param retryIntervalMillis the number of milliseconds to wait before writing a failed batch
+   * again
+   * @param virtualThreads whether or not batches written concurrently are written on virtual
+   * threads, if the JVM supports them
+   * @param pipelineMetrics the meters recording the time taken to write batches of messages
+   */
+  public MessageBatchPersistenceService(
+      BaseStationMessageRepository repository,
+      @Value("${basestation.persist.batch.size:500}") int batchSize,
+      @Value("${basestation.persist.batch.latency:250}") long maxBatchLatencyMillis,
+      @Value("${basestation.persist.queue.capacity:10000}") int queueCapacity,
+      @Value("${basestation.persist.concurrency:1}") int writeConcurrency,
+      @Value("${basestation.persist.retry.attempts:3}") int retryAttempts,
+      @Value("${basestation.persist.retry.interval:1000}") long retryIntervalMillis,
+      @Value("${basestation.threads.virtual:false}") boolean virtualThreads,
+      PipelineMetrics pipelineMetrics) {
+    LOGGER.info(
+        "Message batch size: {}, latency: {}ms, queue capacity: {}, concurrency: {}, "
+            + "retry attempts: {}, retry interval: {}ms",
+        batchSize, maxBatchLatencyMillis, queueCapacity, writeConcurrency, retryAttempts,
+        retryIntervalMillis);
+    this.repository = repository;
+    this.pipelineMetrics = pipelineMetrics;
+    this.batchSize = batchSize;
+    this.maxBatchLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchLatencyMillis);
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.writeConcurrency = Math.max(1, writeConcurrency);
+    this.retryAttempts = Math.max(1, retryAttempts);
+    this.retryIntervalMillis = retryIntervalMillis;
+    this.writePermits = new Semaphore(this.writeConcurrency);
+    this.batchWriterThreadFactory = this.writeConcurrency > 1
+        ? VirtualThreads.threadFactory("message-batch-writer-", virtualThreads)
+        : null;
+  }
+
+  /**
+   * Starts the background thread that persists queued messages.
+   */
+  @PostConstruct
+  public void start() {
+    running = true;
+    writerThread = new Thread(this::writeBatches, "message-batch-writer");
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  /**
+   * Stops the background thread once all queued messages have been persisted.
+   */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+
+    if (writerThread != null) {
+      writerThread.join();
+    }
+
+    // Wait for batches still being written on threads of their own
+    //
+    writePermits.acquire(writeConcurrency);
+    writePermits.release(writeConcurrency);
+  }
+
+  /**
+   * Queues a message to be persisted, blocking while the queue is full.
+   *
+   * @param baseStationMessage a BaseStation message, not null
+   *
+   * @throws InterruptedException if interrupted while waiting for space in the queue
+   */
+  public void persist(BaseStationMessage baseStationMessage) throws InterruptedException {
+    queue.put(baseStationMessage);
+  }
+
+  /**
+   * Runs a task while no batch is being written, waiting for batches being written to finish and
+   * holding back further batches until the task has run.
+   *
+   * @param task a task that must not be run while messages are being written, not null
+   */
+  public void runWithWritesPaused(Runnable task) {
+    tableLock.writeLock().lock();
+
+    try {
+      task.run();
+    } finally {
+      tableLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Takes the next batch of messages from the queue, waiting for at most the maximum batch latency
+   * for the first message and then until the batch is full or the first message has waited for
+   * the maximum batch latency.
+   *
+   * @param batch a list to which the messages are added
+   *
+   * @throws InterruptedException if interrupted while waiting for messages
+   */
+  void nextBatch(List<BaseStationMessage> batch) throws InterruptedException {
+    final BaseStationMessage first = queue.poll(maxBatchLatencyNanos, TimeUnit.NANOSECONDS);
+
+    if (first == null) {
+      return;
+    }
+
+    final long deadline = System.nanoTime() + maxBatchLatencyNanos;
+
+    batch.add(first);
+    queue.drainTo(batch, batchSize - batch.size());
+
+    while (batch.size() < batchSize) {
+      final long remainingNanos = deadline - System.nanoTime();
+      final BaseStationMessage next =
+          remainingNanos > 0 ? queue.poll(remainingNanos, TimeUnit.NANOSECONDS) : null;
+
+      if (next == null) {
+        break;
+      }
+
+      batch.add(next);
+      queue.drainTo(batch, batchSize - batch.size());
+    }
+  }
+
+  /**
+   * Persists a batch of messages in a single transaction.
+   *
+   * @param batch the messages to persist
+   *
+   * @return whether the messages were persisted and, if not, whether they were rejected by the
+   * database
+   */
+  WriteResult writeBatch(List<BaseStationMessage> batch) {
+    final long startNanos = System.nanoTime();
+    WriteResult result;
+
+    tableLock.readLock().lock();
+
+    try {
+      repository.saveAll(batch);
+      persistedMessageCount.addAndGet(batch.size());
+      result = WriteResult.PERSISTED;
+    } catch (RuntimeException e) {
+      LOGGER.error("Failed to persist batch of {} messages", batch.size(), e);
+      failedMessageCount.addAndGet(batch.size());
+
+      // Only a message breaking the constraints of the table is certain to fail again, any other
+      // failure possibly being due to the database or the connection to it
+      //
+      result = e instanceof DataIntegrityViolationException
+          ? WriteResult.REJECTED
+          : WriteResult.FAILED;
+    } finally {
+      tableLock.readLock().unlock();
+    }
+
+    final long flushNanos = System.nanoTime() - startNanos;
+
+    batchCount.incrementAndGet();
+    totalFlushNanos.addAndGet(flushNanos);
+    lastBatchSize = batch.size();
+    lastFlushNanos = flushNanos;
+    maxFlushNanos.accumulateAndGet(flushNanos, Math::max);
+    pipelineMetrics.getStageTimer(PipelineMetrics.Stage.PERSIST)
+                   .record(flushNanos, TimeUnit.NANOSECONDS);
+
+    return result;
+  }
+
+  /**
+   * Copies messages without the identifiers given to them by a transaction that failed.
+   *
+   * @param messages the messages to copy
+   *
+   * @return copies of the messages
+   */
+  private static List<BaseStationMessage> copyWithoutIds(List<BaseStationMessage> messages) {
+    final List<BaseStationMessage> copies = new ArrayList<>(messages.size());
+
+    for (BaseStationMessage message : messages) {
+      try {
+        copies.add(MessageLogService.decode(MessageLogService.encode(message)));
+      } catch (IOException e) {
+        // Not thrown when decoding a record that has just been encoded
+        //
+        throw new IllegalStateException(e);
+      }
+    }
+
+    return copies;
+  }
+
+  /**
+   * Persists a batch of messages, writing copies of them again if the batch fails for a reason
+   * other than being rejected by the database until it has been written the maximum number of
+   * times.
+   *
+   * @param batch the messages to persist
+   *
+   * @return the result of the last attempt to write the batch
+   *
+   * @throws InterruptedException if interrupted while waiting to write the batch again
+   */
+  private WriteResult writeWithRetries(List<BaseStationMessage> batch)
+      throws InterruptedException {
+    int attempt = 1;
+    WriteResult result = writeBatch(batch);
+
+    while (result == WriteResult.FAILED && attempt < retryAttempts) {
+      LOGGER.warn("Writing batch of {} messages again in {}ms (attempt {} of {})",
+          batch.size(), retryIntervalMillis, attempt + 1, retryAttempts);
+      Thread.sleep(retryIntervalMillis);
+      attempt++;
+      result = writeBatch(copyWithoutIds(batch));
+    }
+
+    return result;
+  }
+
+  /**
+   * Persists a batch of messages, writing it again if it fails and writing it again one message
+   * at a time if it is rejected by the database, then dropping any messages still not persisted.
+   *
+   * @param batch the messages to persist
+   *
+   * @throws InterruptedException if interrupted while waiting to write the batch again
+   */
+  private void writeBatchWithRetries(List<BaseStationMessage> batch) throws InterruptedException {
+    final WriteResult result = writeWithRetries(batch);
+
+    if (result == WriteResult.FAILED || (result == WriteResult.REJECTED && batch.size() == 1)) {
+      LOGGER.error("Dropping batch of {} messages that could not be persisted", batch.size());
+      droppedMessageCount.addAndGet(batch.size());
+    } else if (result == WriteResult.REJECTED) {
+      int dropped = 0;
+
+      for (BaseStationMessage message : copyWithoutIds(batch)) {
+        if (writeWithRetries(Collections.singletonList(message)) != WriteResult.PERSISTED) {
+          dropped++;
+        }
+      }
+
+      LOGGER.error("Dropping {} of {} messages in a batch rejected by the database",
+          dropped, batch.size());
+      droppedMessageCount.addAndGet(dropped);
+    }
+  }
+
+  /**
+   * Writes a batch of messages on a thread of its own, once fewer than the maximum number of
+   * batches are being written.
+   *
+   * @param batch the messages to persist, which are copied
+   *
+   * @throws InterruptedException if interrupted while waiting for another batch to be written
+   */
+  private void writeBatchConcurrently(List<BaseStationMessage> batch) throws InterruptedException {
+    final List<BaseStationMessage> batchCopy = new ArrayList<>(batch);
+
+    writePermits.acquire();
+
+    try {
+      batchWriterThreadFactory.newThread(() -> {
+        try {
+          writeBatchWithRetries(batchCopy);
+        } catch (InterruptedException e) {
+          LOGGER.warn("Interrupted with {} messages not persisted", batchCopy.size());
+          Thread.currentThread().interrupt();
+        } finally {
+          writePermits.release();
+        }
+      }).start();
+    } catch (RuntimeException e) {
+      writePermits.release();
+
+      throw e;
+    }
+  }
+
+  private void writeBatches() {
+    final List<BaseStationMessage> batch = new ArrayList<>(batchSize);
+
+    try {
+      while (running || !queue.isEmpty()) {
+        nextBatch(batch);
+
+        if (!batch.isEmpty()) {
+          if (batchWriterThreadFactory == null) {
+            writeBatchWithRetries(batch);
+          } else {
+            writeBatchConcurrently(batch);
+          }
+
+          batch.clear();
+        }
+      }
+    } catch (InterruptedException e) {
+      LOGGER.warn("Interrupted with {} messages not persisted", batch.size() + queue.size());
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Gets the number of messages waiting to be persisted.
+   *
+   * @return the number of messages waiting to be persisted
+   */
+  @ManagedAttribute(description = "The number of messages waiting to be persisted")
+  public int getQueuedMessageCount() {
+    return queue.size();
+  }
+
+  /**
+   * Gets the total number of messages persisted since application startup.
+   *
+   * @return the total number of messages persisted since application startup
+   */
+  @ManagedAttribute(description = "The total number of messages persisted since application startup")
+  public long getPersistedMessageCount() {
+    return persistedMessageCount.get();
+  }
+
+  /**
+   * Gets the total number of messages that could not be persisted since application startup.
+   *
+   * @return the total number of messages that could not be persisted since application startup
+   */
+  @ManagedAttribute(
+      description = "The total number of messages that could not be persisted since startup")
+  public long getFailedMessageCount() {
+    return failedMessageCount.get();
+  }
+
+  /**
+   * Gets the total number of messages dropped since application startup, having failed to be
+   * persisted the maximum number of times or having been rejected by the database.
+   *
+   * @return the total number of messages dropped since application startup
+   */
+  @ManagedAttribute(description = "The total number of messages dropped since startup")
+  public long getDroppedMessageCount() {
+    return droppedMessageCount.get();
+  }
+
+  /**
+   * Gets the total number of batches written since application startup.
+   *
+   * @return the total number of batches written since application startup
+   */
+  @ManagedAttribute(description = "The total number of batches written since application startup")
+  public long getBatchCount() {
+    return batchCount.get();
+  }
+
+  /**
+   * Gets the number of messages in the most recently written batch.
+   *
+   * @return the number of messages in the most recently written batch
+   */
+  @ManagedAttribute(description = "The number of messages in the most recently written batch")
+  public int getLastBatchSize() {
+    return lastBatchSize;
+  }
+
+  /**
+   * Gets the mean number of messages per batch since application startup.
+   *
+   * @return the mean number of messages per batch since application startup
+   */
+  @ManagedAttribute(description = "The mean number of messages per batch")
+  public double getMeanBatchSize() {
+    final long batches = batchCount.get();
+
+    return batches == 0
+        ? 0.0
+        : (double) (persistedMessageCount.get() + failedMessageCount.get()) / batches;
+  }
+
+  /**
+   * Gets the time taken to write the most recently written batch.
+   *
+   * @return the time taken to write the most recently written batch, in milliseconds
+   */
+  @ManagedAttribute(description = "The time taken to write the most recent batch, in milliseconds")
+  public double getLastFlushLatencyMillis() {
+    return lastFlushNanos / 1e6;
+  }
+
+  /**
+   * Gets the mean time taken to write a batch since application startup.
+   *
+   * @return the mean time taken to write a batch, in milliseconds
+   */
+  @ManagedAttribute(description = "The mean time taken to write a batch, in milliseconds")
+  public double getMeanFlushLatencyMillis() {
+    final long batches = batchCount.get();
+
+    return batches == 0 ? 0.0 : totalFlushNanos.get() / 1e6 / batches;
+  }
+
+  /**
+   * Gets the longest time taken to write a batch since application startup.
+   *
+   * @return the longest time taken to write a batch, in milliseconds
+   */
+  @ManagedAttribute(description = "The longest time taken to write a batch, in milliseconds")
+  public double getMaxFlushLatencyMillis() {
+    return maxFlushNanos.get() / 1e6;
+  }
+
+  /**
+   * Gets the maximum number of batches written at once.
+   *
+   * @return the maximum number of batches written at once
+   */
+  @ManagedAttribute(description = "The maximum number of batches written at once")
+  public int getWriteConcurrency() {
+    return writeConcurrency;
+  }
+
+  /**
+   * Gets the number of batches currently being written.
+   *
+   * @return the number of batches currently being written
+   */
+  @ManagedAttribute(description = "The number of batches currently being written")
+  public int getActiveWriteCount() {
+    return batchWriterThreadFactory == null
+        ? 0
+        : writeConcurrency - writePermits.availablePermits();
+  }
+}
@@ -0,0 +1,542 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only log of records held in a directory of segment files.
+ *
+ * <p>Each record is written as its length, a CRC-32 checksum of its bytes and the bytes
+ * themselves, to the end of the newest segment. Once a segment would grow beyond its maximum
+ * size it is synced to disk and closed, and a new segment started. Segments are named after the
+ * offset of their first record, an offset being the number of bytes written to the log before a
+ * record since the log was created.
+ *
+ * <p>Appending a record does not wait for it to reach the disk. Instead {@link #sync()} is called
+ * periodically to make all the records appended since it was last called durable at once, and
+ * {@link #read} returns only records that have been synced. When the log is opened, any record
+ * at the end of the newest segment that was only partly written, as when the machine failed
+ * while writing it, is discarded.
+ *
+ * <p>A consumer of the log records the offset up to which it has consumed records as its
+ * checkpoint, which is kept in a file of its own so that consumption resumes from the same point
+ * when the log is reopened. Segments holding only records before the checkpoint are deleted.
+ *
+ * <p>Records that a consumer cannot consume, and the rest of any segment holding a record that has
+ * become corrupt since it was synced, are moved to a dead-letter file in the same directory so
+ * that the consumer can move on without losing them. Each entry of the file holds the offset at
+ * which its bytes were found, their length and the bytes themselves.
+ */
+public final class MessageLog implements Closeable {
+  static final String SEGMENT_SUFFIX = ".log";
+  static final String CHECKPOINT_FILE = "checkpoint";
+  static final String DEAD_LETTER_FILE = "dead-letter";
+  static final int RECORD_HEADER_BYTES = 8;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MessageLog.class);
+  private static final int DEAD_LETTER_HEADER_BYTES = 12;
+  private static final int MAX_RECORD_BYTES = 1 << 20;
+
+  private final Path directory;
+  private final long maxSegmentBytes;
+  private final TreeMap<Long, Path> segments = new TreeMap<>();
+  private final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+  private final CRC32 crc = new CRC32();
+  private FileChannel activeChannel;
+  private long activeBaseOffset;
+  private long endOffset;
+  private volatile long syncedOffset;
+  private volatile long checkpointOffset;
+  private FileChannel deadLetterChannel;
+
+  /**
+   * Thrown when a synced record of the log is found to be corrupt.
+   */
+  public static final class CorruptRecordException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final long offset;
+
+    CorruptRecordException(long offset, Path segment) {
+      super(String.format("Corrupt record at offset %d of %s", offset, segment));
+      this.offset = offset;
+    }
+
+    /**
+     * Gets the offset of the corrupt record.
+     *
+     * @return the offset of the corrupt record
+     */
+    public long getOffset() {
+      return offset;
+    }
+  }
+
+  /**
+   * Opens the log held in a directory, creating it if need be and discarding any record only
+   * partly written to the newest segment.
+   *
+   * @param directory the directory holding the segments of the log
+   * @param maxSegmentBytes the number of bytes beyond which a segment does not grow
+   *
+   * @throws IOException if the log cannot be opened
+   */
+  public MessageLog(Path directory, long maxSegmentBytes) throws IOException {
+    this.directory = directory;
+    this.maxSegmentBytes = maxSegmentBytes;
+    Files.createDirectories(directory);
+
+    try (Stream<Path> paths = Files.list(directory)) {
+      paths.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+           .forEach(path -> segments.put(baseOffset(path), path));
+    }
+
+    checkpointOffset = readCheckpoint();
+
+    if (segments.isEmpty()) {
+      segments.put(checkpointOffset, segmentPath(checkpointOffset));
+    }
+
+    final Map.Entry<Long, Path> newest = segments.lastEntry();
+
+    activeBaseOffset = newest.getKey();
+    activeChannel = FileChannel.open(
+        newest.getValue(),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+    final long validBytes = recover(activeChannel);
+
+    if (validBytes < activeChannel.size()) {
+      LOGGER.warn("Discarding {} bytes of partly written records from {}",
+          activeChannel.size() - validBytes, newest.getValue());
+      activeChannel.truncate(validBytes);
+      activeChannel.force(true);
+    }
+
+    activeChannel.position(validBytes);
+    endOffset = activeBaseOffset + validBytes;
+    syncedOffset = endOffset;
+
+    if (checkpointOffset > endOffset || checkpointOffset < segments.firstKey()) {
+      LOGGER.warn("Checkpoint {} lies outside the log, resetting to {}",
+          checkpointOffset, segments.firstKey());
+      checkpointOffset = segments.firstKey();
+    }
+  }
+
+  private static long baseOffset(Path segment) {
+    final String name = segment.getFileName().toString();
+
+    return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  private Path segmentPath(long baseOffset) {
+    return directory.resolve(String.format("%020d%s", baseOffset, SEGMENT_SUFFIX));
+  }
+
+  private long readCheckpoint() throws IOException {
+    final Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+
+    if (!Files.exists(checkpoint)) {
+      return segments.isEmpty() ? 0L : segments.firstKey();
+    }
+
+    return Long.parseLong(new String(Files.readAllBytes(checkpoint), StandardCharsets.US_ASCII)
+        .trim());
+  }
+
+  // Finds the number of bytes at the start of a segment holding complete, uncorrupted records
+  //
+  private long recover(FileChannel channel) throws IOException {
+    long position = 0L;
+
+    while (true) {
+      final byte[] record = readRecord(channel, position, channel.size());
+
+      if (record == null) {
+        return position;
+      }
+
+      position += RECORD_HEADER_BYTES + record.length;
+    }
+  }
+
+  private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        return false;
+      }
+    }
+
+    buffer.flip();
+
+    return true;
+  }
+
+  // Reads the record at a position of a segment, or returns null if there is no complete record
+  // there whose checksum matches its bytes
+  //
+  private byte[] readRecord(FileChannel channel, long position, long limit) throws IOException {
+    if (limit - position < RECORD_HEADER_BYTES) {
+      return null;
+    }
+
+    final ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+
+    if (!readFully(channel, recordHeader, position)) {
+      return null;
+    }
+
+    final int length = recordHeader.getInt();
+    final int checksum = recordHeader.getInt();
+
+    if (length < 0 || length > MAX_RECORD_BYTES
+        || limit - position - RECORD_HEADER_BYTES < length) {
+      return null;
+    }
+
+    final ByteBuffer record = ByteBuffer.allocate(length);
+
+    if (!readFully(channel, record, position + RECORD_HEADER_BYTES)) {
+      return null;
+    }
+
+    final CRC32 recordCrc = new CRC32();
+
+    recordCrc.update(record.array(), 0, length);
+
+    return (int) recordCrc.getValue() == checksum ? record.array() : null;
+  }
+
+  /**
+   * Appends a record to the end of the log, starting a new segment first if the record would
+   * take the newest segment beyond its maximum size.
+   *
+   * @param record the bytes of the record, not null
+   *
+   * @return the offset of the end of the log after the record
+   *
+   * @throws IOException if the record cannot be written
+   * @throws IllegalArgumentException if the record is too large
+   */
+  public synchronized long append(byte[] record) throws IOException {
+    if (record.length > MAX_RECORD_BYTES) {
+      throw new IllegalArgumentException(
+          String.format("Record of %d bytes is too large", record.length));
+    }
+
+    final long recordBytes = RECORD_HEADER_BYTES + record.length;
+
+    if (endOffset > activeBaseOffset
+        && endOffset - activeBaseOffset + recordBytes > maxSegmentBytes) {
+      roll();
+    }
+
+    crc.reset();
+    crc.update(record, 0, record.length);
+    header.clear();
+    header.putInt(record.length).putInt((int) crc.getValue()).flip();
+
+    final ByteBuffer[] buffers = {header, ByteBuffer.wrap(record)};
+
+    while (buffers[1].hasRemaining()) {
+      activeChannel.write(buffers);
+    }
+
+    endOffset += recordBytes;
+
+    return endOffset;
+  }
+
+  // Syncs and closes the newest segment and starts a new one at the end of the log
+  //
+  private void roll() throws IOException {
+    activeChannel.force(false);
+    syncedOffset = endOffset;
+    activeChannel.close();
+    activeBaseOffset = endOffset;
+
+    final Path segment = segmentPath(activeBaseOffset);
+
+    segments.put(activeBaseOffset, segment);
+    activeChannel = FileChannel.open(
+        segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+  }
+
+  /**
+   * Forces the records appended to the log since it was last synced to the disk, making them
+   * visible to {@link #read}.
+   *
+   * @return the offset of the end of the log up to which records have been synced
+   *
+   * @throws IOException if the records cannot be synced
+   */
+  public long sync() throws IOException {
+    final FileChannel channel;
+    final long offset;
+
+    synchronized (this) {
+      channel = activeChannel;
+      offset = endOffset;
+    }
+
+    // Sync without holding the lock so that appending is not held up, allowing for a segment
+    // being rolled, and so synced, meanwhile
+    //
+    try {
+      channel.force(false);
+    } catch (ClosedChannelException e) {
+      // Synced when the segment was rolled
+    }
+
+    synchronized (this) {
+      syncedOffset = Math.max(syncedOffset, offset);
+
+      return syncedOffset;
+    }
+  }
+
+  /**
+   * Reads synced records from an offset of the log, stopping short of any corrupt record.
+   *
+   * @param offset the offset of the first record to read
+   * @param maxRecords the maximum number of records to read
+   * @param records a list to which the records read are added
+   *
+   * @return the offset following the last record read
+   *
+   * @throws CorruptRecordException if the record at the offset is corrupt
+   * @throws IOException if a record cannot be read
+   */
+  public long read(long offset, int maxRecords, List<byte[]> records) throws IOException {
+    final long limit = syncedOffset;
+    final Map.Entry<Long, Path> segment;
+
+    synchronized (this) {
+      segment = segments.floorEntry(offset);
+    }
+
+    if (segment == null || offset >= limit) {
+      return offset;
+    }
+
+    long position = offset - segment.getKey();
+
+    try (FileChannel channel = FileChannel.open(segment.getValue(), StandardOpenOption.READ)) {
+      final long segmentLimit = Math.min(channel.size(), limit - segment.getKey());
+
+      while (records.size() < maxRecords && position < segmentLimit) {
+        final byte[] record = readRecord(channel, position, segmentLimit);
+
+        if (record == null) {
+          if (segment.getKey() + position == offset) {
+            throw new CorruptRecordException(offset, segment.getValue());
+          }
+
+          break;
+        }
+
+        records.add(record);
+        position += RECORD_HEADER_BYTES + record.length;
+      }
+    }
+
+    return segment.getKey() + position;
+  }
+
+  // Appends an entry to the dead-letter file, returning its channel so the entry's bytes can follow
+  //
+  private FileChannel startDeadLetter(long offset, long length) throws IOException {
+    if (deadLetterChannel == null) {
+      deadLetterChannel = FileChannel.open(directory.resolve(DEAD_LETTER_FILE),
+          StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    final ByteBuffer entryHeader = ByteBuffer.allocate(DEAD_LETTER_HEADER_BYTES);
+
+    entryHeader.putLong(offset).putInt((int) length).flip();
+
+    while (entryHeader.hasRemaining()) {
+      deadLetterChannel.write(entryHeader);
+    }
+
+    return deadLetterChannel;
+  }
+
+  /**
+   * Moves a record that cannot be consumed to the dead-letter file. The record stays in the log
+   * until the checkpoint passes it.
+   *
+   * @param offset the offset of the record
+   * @param record the bytes of the record
+   *
+   * @throws IOException if the record cannot be written to the dead-letter file
+   */
+  public synchronized void deadLetter(long offset, byte[] record) throws IOException {
+    final FileChannel channel = startDeadLetter(offset, record.length);
+    final ByteBuffer buffer = ByteBuffer.wrap(record);
+
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+
+    channel.force(false);
+  }
+
+  /**
+   * Moves the bytes from a corrupt record to the end of its segment to the dead-letter file, since
+   * the records following a corrupt one cannot be found reliably. If the record is in the newest
+   * segment, a new segment is started first, so the records appended to the newest segment but
+   * not yet consumed are moved with it.
+   *
+   * @param offset the offset of the corrupt record
+   *
+   * @return the offset of the segment following the corrupt record, from which records can be
+   * read again
+   *
+   * @throws IOException if the bytes cannot be written to the dead-letter file
+   */
+  public synchronized long skipCorruptRecords(long offset) throws IOException {
+    final Map.Entry<Long, Path> segment = segments.floorEntry(offset);
+
+    if (segment.getKey() == activeBaseOffset) {
+      roll();
+    }
+
+    final long nextOffset = segments.higherKey(segment.getKey());
+    final long length = nextOffset - offset;
+
+    LOGGER.warn("Moving {} bytes from corrupt record at offset {} to the dead-letter file",
+        length, offset);
+
+    try (FileChannel channel = FileChannel.open(segment.getValue(), StandardOpenOption.READ)) {
+      final FileChannel deadLetter = startDeadLetter(offset, length);
+      long position = offset - segment.getKey();
+      final long end = position + length;
+
+      while (position < end) {
+        position += channel.transferTo(position, end - position, deadLetter);
+      }
+
+      deadLetter.force(false);
+    }
+
+    return nextOffset;
+  }
+
+  /**
+   * Records the offset up to which records have been consumed and deletes the segments holding
+   * only records before it.
+   *
+   * @param offset the offset following the last record consumed
+   *
+   * @throws IOException if the checkpoint cannot be written
+   */
+  public void checkpoint(long offset) throws IOException {
+    final Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+    final Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+
+    Files.write(temporary, Long.toString(offset).getBytes(StandardCharsets.US_ASCII));
+
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+      channel.force(true);
+    }
+
+    Files.move(temporary, checkpoint,
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    checkpointOffset = offset;
+
+    synchronized (this) {
+      while (segments.size() > 1 && segments.higherKey(segments.firstKey()) <= offset) {
+        Files.deleteIfExists(segments.pollFirstEntry().getValue());
+      }
+    }
+  }
+
+  /**
+   * Gets the offset up to which records have been consumed.
+   *
+   * @return the offset following the last record consumed
+   */
+  public long getCheckpointOffset() {
+    return checkpointOffset;
+  }
+
+  /**
+   * Gets the offset of the end of the log up to which records have been synced.
+   *
+   * @return the offset following the last synced record
+   */
+  public long getSyncedOffset() {
+    return syncedOffset;
+  }
+
+  /**
+   * Gets the offset of the end of the log.
+   *
+   * @return the offset following the last record appended
+   */
+  public synchronized long getEndOffset() {
+    return endOffset;
+  }
+
+  /**
+   * Gets the number of segments holding the log.
+   *
+   * @return the number of segments holding the log
+   */
+  public synchronized int getSegmentCount() {
+    return segments.size();
+  }
+
+  /**
+   * Syncs and closes the newest segment and the dead-letter file.
+   *
+   * @throws IOException if the segment cannot be synced or closed
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (deadLetterChannel != null) {
+      deadLetterChannel.close();
+      deadLetterChannel = null;
+    }
+
+    if (activeChannel.isOpen()) {
+      activeChannel.force(false);
+      syncedOffset = endOffset;
+      activeChannel.close();
+    }
+  }
+}
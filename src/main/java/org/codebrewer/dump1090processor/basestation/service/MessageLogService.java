@@ -0,0 +1,641 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.codebrewer.dump1090processor.basestation.domain.StatusMessageType;
+import org.codebrewer.dump1090processor.basestation.domain.TransmissionType;
+import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
+import org.codebrewer.dump1090processor.basestation.entity.IdMessage;
+import org.codebrewer.dump1090processor.basestation.entity.NewAircraftMessage;
+import org.codebrewer.dump1090processor.basestation.entity.StatusMessage;
+import org.codebrewer.dump1090processor.basestation.entity.TransmissionMessage;
+import org.geolatte.geom.G2D;
+import org.geolatte.geom.Point;
+import org.geolatte.geom.crs.CrsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * A service that writes BaseStation messages to a local {@link MessageLog} before they are
+ * persisted, so that messages are neither lost nor hold up consumption while the database is slow
+ * or unavailable.
+ *
+ * <p>Consumed messages are appended to the log, which a background thread syncs to disk every
+ * {@code basestation.log.sync.interval} milliseconds. Another background thread drains synced
+ * messages from the log, writing them to the database in batches of at most
+ * {@code basestation.log.drain.batch.size} messages through
+ * {@link MessageBatchPersistenceService}, and advances the log's checkpoint once each batch has
+ * been committed. If a batch cannot be written, it is tried again after
+ * {@code basestation.log.drain.retry.interval} milliseconds, the log growing meanwhile. Messages
+ * not drained when the application stops are drained once it starts again.
+ *
+ * <p>Only failures that might not happen again are retried. A corrupt record, a record that
+ * cannot be decoded and a message the database rejects, as when it breaks a constraint of the
+ * table, are instead moved to the log's dead-letter file so that draining is not held up for good.
+ *
+ * <p>Messages appended to the log but not yet synced may be lost if the machine fails, but not if
+ * only the application does.
+ *
+ * <p>Synced messages are delivered to the database at least once rather than exactly once. The
+ * checkpoint is advanced only after a batch has been committed, so if the application stops
+ * between the two, or the connection fails after the database has committed a batch but before
+ * the commit is acknowledged, the whole batch is written again and its messages are duplicated in
+ * the table. Duplicates can be told apart only by their identifiers, the rest of their columns
+ * being the same.
+ */
+@Service
+@ManagedResource(
+    objectName = "org.codebrewer.dump1090processor:type=Counter,name=MessageLogService",
+    description = "Writes BaseStation messages to a local log ahead of the database")
+public class MessageLogService {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MessageLogService.class);
+
+  // The kinds of message held by the log
+  //
+  private static final byte NEW_AIRCRAFT = 'A';
+  private static final byte ID = 'I';
+  private static final byte STATUS = 'S';
+  private static final byte TRANSMISSION = 'M';
+
+  private final MessageBatchPersistenceService messageBatchPersistenceService;
+  private final String logDirectory;
+  private final long maxSegmentBytes;
+  private final long syncIntervalMillis;
+  private final int drainBatchSize;
+  private final long drainRetryIntervalMillis;
+  private final boolean enabled;
+  private final AtomicLong appendedMessageCount = new AtomicLong();
+  private final AtomicLong drainedMessageCount = new AtomicLong();
+  private final AtomicLong failedDrainCount = new AtomicLong();
+  private final AtomicLong deadLetterCount = new AtomicLong();
+  private volatile boolean running;
+  private MessageLog messageLog;
+  private long drainOffset;
+  private ScheduledExecutorService syncExecutor;
+  private Thread drainThread;
+
+  /**
+   * Sole constructor for this class.
+   *
+   * @param messageBatchPersistenceService the service writing batches of messages to the database
+   * @param logDirectory the directory holding the log
+   * @param maxSegmentBytes the number of bytes beyond which a segment of the log does not grow
+   * @param syncIntervalMillis the number of milliseconds between syncs of the log to disk
+   * @param drainBatchSize the maximum number of messages written to the database in one
+   * transaction
+   * @param drainRetryIntervalMillis the number of milliseconds to wait before trying again to
+   * write a batch that could not be written
+   * @param enabled whether or not messages are written to the log before the database
+   */
+  public MessageLogService(
+      MessageBatchPersistenceService messageBatchPersistenceService,
+      @Value("${basestation.log.dir:message-log}") String logDirectory,
+      @Value("${basestation.log.segment.size:67108864}") long maxSegmentBytes,
+      @Value("${basestation.log.sync.interval:100}") long syncIntervalMillis,
+      @Value("${basestation.log.drain.batch.size:500}") int drainBatchSize,
+      @Value("${basestation.log.drain.retry.interval:5000}") long drainRetryIntervalMillis,
+      @Value("${basestation.log.enabled:false}") boolean enabled) {
+    LOGGER.info("Message log: {}, directory: {}, sync interval: {}ms",
+        enabled, logDirectory, syncIntervalMillis);
+    this.messageBatchPersistenceService = messageBatchPersistenceService;
+    this.logDirectory = logDirectory;
+    this.maxSegmentBytes = maxSegmentBytes;
+    this.syncIntervalMillis = syncIntervalMillis;
+    this.drainBatchSize = drainBatchSize;
+    this.drainRetryIntervalMillis = drainRetryIntervalMillis;
+    this.enabled = enabled;
+  }
+
+  private static void writeString(DataOutputStream dataOutputStream, String value)
+      throws IOException {
+    dataOutputStream.writeBoolean(value != null);
+
+    if (value != null) {
+      dataOutputStream.writeUTF(value);
+    }
+  }
+
+  private static String readString(DataInputStream dataInputStream) throws IOException {
+    return dataInputStream.readBoolean() ? dataInputStream.readUTF() : null;
+  }
+
+  private static void writeTransmission(
+      DataOutputStream dataOutputStream, TransmissionMessage message) throws IOException {
+    final int header = MessageArchive.header(message);
+    final TransmissionType transmissionType = message.getTransmissionType();
+
+    dataOutputStream.writeByte(transmissionType == null ? -1 : transmissionType.ordinal());
+    dataOutputStream.writeShort(header);
+
+    if ((header & MessageArchive.HAS_ALTITUDE) != 0) {
+      dataOutputStream.writeFloat(message.getAltitude());
+    }
+
+    if ((header & MessageArchive.HAS_GROUND_SPEED) != 0) {
+      dataOutputStream.writeFloat(message.getGroundSpeed());
+    }
+
+    if ((header & MessageArchive.HAS_TRACK) != 0) {
+      dataOutputStream.writeFloat(message.getTrack());
+    }
+
+    if ((header & MessageArchive.HAS_VERTICAL_RATE) != 0) {
+      dataOutputStream.writeShort(message.getVerticalRate());
+    }
+
+    if ((header & MessageArchive.HAS_SQUAWK) != 0) {
+      dataOutputStream.writeShort(message.getSquawk());
+    }
+
+    if ((header & MessageArchive.HAS_POSITION) != 0) {
+      dataOutputStream.writeDouble(message.getPosition().getPosition().getLon());
+      dataOutputStream.writeDouble(message.getPosition().getPosition().getLat());
+    }
+
+    writeString(dataOutputStream, message.getCallSign());
+  }
+
+  private static TransmissionMessage readTransmission(
+      DataInputStream dataInputStream, int icao, Instant timestamp) throws IOException {
+    final byte transmissionType = dataInputStream.readByte();
+    final int header = dataInputStream.readShort() & 0xffff;
+    final TransmissionMessage.Builder builder = new TransmissionMessage.Builder(icao, timestamp);
+
+    builder.transmissionType(
+        transmissionType < 0 ? null : TransmissionType.values()[transmissionType]);
+
+    if ((header & MessageArchive.HAS_ALTITUDE) != 0) {
+      builder.altitude(dataInputStream.readFloat());
+    }
+
+    if ((header & MessageArchive.HAS_GROUND_SPEED) != 0) {
+      builder.groundSpeed(dataInputStream.readFloat());
+    }
+
+    if ((header & MessageArchive.HAS_TRACK) != 0) {
+      builder.track(dataInputStream.readFloat());
+    }
+
+    if ((header & MessageArchive.HAS_VERTICAL_RATE) != 0) {
+      builder.verticalRate(dataInputStream.readShort());
+    }
+
+    if ((header & MessageArchive.HAS_SQUAWK) != 0) {
+      builder.squawk(dataInputStream.readShort());
+    }
+
+    if ((header & MessageArchive.HAS_POSITION) != 0) {
+      final double longitude = dataInputStream.readDouble();
+      final double latitude = dataInputStream.readDouble();
+
+      builder.position(new Point<>(new G2D(longitude, latitude),
+          CrsRegistry.getGeographicCoordinateReferenceSystemForEPSG(4326)));
+    }
+
+    builder.alert(MessageArchive.flag(header, MessageArchive.HAS_ALERT, MessageArchive.ALERT))
+           .emergency(MessageArchive.flag(
+               header, MessageArchive.HAS_EMERGENCY, MessageArchive.EMERGENCY))
+           .identActive(MessageArchive.flag(
+               header, MessageArchive.HAS_IDENT_ACTIVE, MessageArchive.IDENT_ACTIVE))
+           .onGround(MessageArchive.flag(
+               header, MessageArchive.HAS_ON_GROUND, MessageArchive.ON_GROUND))
+           .callSign(readString(dataInputStream));
+
+    return builder.build();
+  }
+
+  /**
+   * Encodes a message as a record of the log.
+   *
+   * @param baseStationMessage a BaseStation message, not null
+   *
+   * @return the bytes of the record
+   *
+   * @throws IllegalArgumentException if the message is of a type that is not persisted
+   */
+  static byte[] encode(BaseStationMessage baseStationMessage) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+    final DataOutputStream dataOutputStream = new DataOutputStream(bytes);
+
+    try {
+      if (baseStationMessage instanceof TransmissionMessage) {
+        dataOutputStream.writeByte(TRANSMISSION);
+      } else if (baseStationMessage instanceof IdMessage) {
+        dataOutputStream.writeByte(ID);
+      } else if (baseStationMessage instanceof StatusMessage) {
+        dataOutputStream.writeByte(STATUS);
+      } else if (baseStationMessage instanceof NewAircraftMessage) {
+        dataOutputStream.writeByte(NEW_AIRCRAFT);
+      } else {
+        throw new IllegalArgumentException(
+            String.format("Unsupported message type: %s", baseStationMessage.getClass()));
+      }
+
+      dataOutputStream.writeInt(baseStationMessage.getIcao());
+      dataOutputStream.writeLong(baseStationMessage.getTimestamp().getEpochSecond());
+      dataOutputStream.writeInt(baseStationMessage.getTimestamp().getNano());
+
+      if (baseStationMessage instanceof TransmissionMessage) {
+        writeTransmission(dataOutputStream, (TransmissionMessage) baseStationMessage);
+      } else if (baseStationMessage instanceof IdMessage) {
+        writeString(dataOutputStream, ((IdMessage) baseStationMessage).getCallSign());
+      } else if (baseStationMessage instanceof StatusMessage) {
+        final StatusMessageType statusMessageType =
+            ((StatusMessage) baseStationMessage).getStatusMessageType();
+
+        dataOutputStream.writeByte(statusMessageType == null ? -1 : statusMessageType.ordinal());
+      }
+    } catch (IOException e) {
+      // Not thrown when writing to a byte array
+      //
+      throw new IllegalStateException(e);
+    }
+
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decodes a record of the log as a message.
+   *
+   * @param record the bytes of a record written by {@link #encode}
+   *
+   * @return the message
+   *
+   * @throws IOException if the record is malformed
+   */
+  static BaseStationMessage decode(byte[] record) throws IOException {
+    final DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(record));
+    final byte kind = dataInputStream.readByte();
+    final int icao = dataInputStream.readInt();
+    final Instant timestamp =
+        Instant.ofEpochSecond(dataInputStream.readLong(), dataInputStream.readInt());
+
+    switch (kind) {
+      case TRANSMISSION:
+        return readTransmission(dataInputStream, icao, timestamp);
+      case ID:
+        return new IdMessage.Builder(icao, timestamp)
+            .callSign(readString(dataInputStream))
+            .build();
+      case STATUS:
+        final byte statusMessageType = dataInputStream.readByte();
+
+        return new StatusMessage.Builder(icao, timestamp)
+            .statusMessageType(
+                statusMessageType < 0 ? null : StatusMessageType.values()[statusMessageType])
+            .build();
+      case NEW_AIRCRAFT:
+        return new NewAircraftMessage.Builder(icao, timestamp).build();
+      default:
+        throw new IOException(String.format("Unknown message kind: %d", kind));
+    }
+  }
+
+  /**
+   * Opens the log and starts the background threads that sync it and drain it to the database.
+   *
+   * @throws IOException if the log cannot be opened
+   */
+  @PostConstruct
+  public void start() throws IOException {
+    if (!enabled) {
+      return;
+    }
+
+    openLog();
+    running = true;
+    syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "message-log-sync");
+
+      thread.setDaemon(true);
+
+      return thread;
+    });
+    syncExecutor.scheduleWithFixedDelay(
+        this::sync, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+    drainThread = new Thread(this::drainContinuously, "message-log-drain");
+    drainThread.setDaemon(true);
+    drainThread.start();
+  }
+
+  /**
+   * Opens the log, from whose checkpoint messages are drained.
+   *
+   * @throws IOException if the log cannot be opened
+   */
+  void openLog() throws IOException {
+    messageLog = new MessageLog(Paths.get(logDirectory), maxSegmentBytes);
+    drainOffset = messageLog.getCheckpointOffset();
+    LOGGER.info("Message log holds {} bytes not yet drained",
+        messageLog.getEndOffset() - drainOffset);
+  }
+
+  /**
+   * Stops the background threads and closes the log, leaving messages not yet drained to be
+   * drained once the log is opened again.
+   */
+  @PreDestroy
+  public void stop() throws InterruptedException, IOException {
+    running = false;
+
+    if (drainThread != null) {
+      drainThread.join();
+    }
+
+    if (syncExecutor != null) {
+      syncExecutor.shutdownNow();
+      syncExecutor.awaitTermination(syncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    if (messageLog != null) {
+      messageLog.close();
+    }
+  }
+
+  private void sync() {
+    try {
+      messageLog.sync();
+    } catch (IOException e) {
+      LOGGER.error("Failed to sync message log: {}", e.getMessage());
+    }
+  }
+
+  private void drainContinuously() {
+    try {
+      while (running) {
+        final int drained = drain();
+
+        if (drained < 0) {
+          Thread.sleep(drainRetryIntervalMillis);
+        } else if (drained == 0) {
+          Thread.sleep(syncIntervalMillis);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Indicates whether or not messages are written to the log before the database.
+   *
+   * @return true if messages are written to the log, otherwise false
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Appends a message to the log, from which it will be written to the database.
+   *
+   * @param baseStationMessage a BaseStation message, not null
+   *
+   * @throws IOException if the message cannot be written to the log
+   */
+  public void append(BaseStationMessage baseStationMessage) throws IOException {
+    messageLog.append(encode(baseStationMessage));
+    appendedMessageCount.incrementAndGet();
+  }
+
+  /**
+   * Writes the next batch of synced messages in the log to the database and, once they have been
+   * committed, advances the log's checkpoint past them.
+   *
+   * <p>Messages that can never be written, because their records are corrupt or cannot be decoded
+   * or because the database rejects them, are moved to the log's dead-letter file and the
+   * checkpoint advanced past them too. If the database rejects a batch, its messages are written
+   * one at a time to find those it rejects.
+   *
+   * @return the number of messages written, or -1 if they could not be written or read
+   */
+  int drain() {
+    final List<byte[]> records = new ArrayList<>(drainBatchSize);
+
+    try {
+      final long nextOffset;
+
+      try {
+        nextOffset = messageLog.read(drainOffset, drainBatchSize, records);
+      } catch (MessageLog.CorruptRecordException e) {
+        LOGGER.error("Failed to drain message log: {}", e.getMessage());
+        deadLetterCount.incrementAndGet();
+        checkpoint(messageLog.skipCorruptRecords(e.getOffset()), 0);
+
+        return 0;
+      }
+
+      if (records.isEmpty()) {
+        return 0;
+      }
+
+      final List<BaseStationMessage> messages = new ArrayList<>(records.size());
+      final List<BaseStationMessage> batch = new ArrayList<>(records.size());
+
+      for (byte[] record : records) {
+        final BaseStationMessage message = decodeOrNull(record);
+
+        messages.add(message);
+
+        if (message != null) {
+          batch.add(message);
+        }
+      }
+
+      final MessageBatchPersistenceService.WriteResult result = batch.isEmpty()
+          ? MessageBatchPersistenceService.WriteResult.PERSISTED
+          : messageBatchPersistenceService.writeBatch(batch);
+
+      switch (result) {
+        case PERSISTED:
+          if (batch.size() < records.size()) {
+            deadLetterUndecodable(records, messages);
+          }
+
+          checkpoint(nextOffset, batch.size());
+
+          return batch.size();
+        case REJECTED:
+          return drainOneByOne(records, messages);
+        default:
+          failedDrainCount.incrementAndGet();
+
+          return -1;
+      }
+    } catch (IOException e) {
+      LOGGER.error("Failed to drain message log: {}", e.getMessage());
+      failedDrainCount.incrementAndGet();
+
+      return -1;
+    }
+  }
+
+  private static BaseStationMessage decodeOrNull(byte[] record) {
+    try {
+      return decode(record);
+    } catch (IOException | RuntimeException e) {
+      LOGGER.error("Failed to decode message log record: {}", e.toString());
+
+      return null;
+    }
+  }
+
+  private void checkpoint(long offset, int drainedMessages) throws IOException {
+    drainOffset = offset;
+    messageLog.checkpoint(offset);
+    drainedMessageCount.addAndGet(drainedMessages);
+  }
+
+  private void deadLetter(long offset, byte[] record) throws IOException {
+    messageLog.deadLetter(offset, record);
+    deadLetterCount.incrementAndGet();
+  }
+
+  private void deadLetterUndecodable(List<byte[]> records, List<BaseStationMessage> messages)
+      throws IOException {
+    long offset = drainOffset;
+
+    for (int i = 0; i < records.size(); i++) {
+      if (messages.get(i) == null) {
+        deadLetter(offset, records.get(i));
+      }
+
+      offset += MessageLog.RECORD_HEADER_BYTES + records.get(i).length;
+    }
+  }
+
+  // Writes the messages of a batch rejected by the database one at a time, moving those rejected
+  // on their own to the dead-letter file, and stopping at the first that could not be written for
+  // any other reason. Messages are decoded again, since those of the rejected batch were given
+  // identifiers that were never committed.
+  //
+  private int drainOneByOne(List<byte[]> records, List<BaseStationMessage> messages)
+      throws IOException {
+    long offset = drainOffset;
+    int written = 0;
+
+    for (int i = 0; i < records.size(); i++) {
+      final byte[] record = records.get(i);
+      final MessageBatchPersistenceService.WriteResult result = messages.get(i) == null
+          ? MessageBatchPersistenceService.WriteResult.REJECTED
+          : messageBatchPersistenceService.writeBatch(
+              Collections.singletonList(decode(record)));
+
+      if (result == MessageBatchPersistenceService.WriteResult.FAILED) {
+        checkpoint(offset, written);
+        failedDrainCount.incrementAndGet();
+
+        return -1;
+      }
+
+      if (result == MessageBatchPersistenceService.WriteResult.REJECTED) {
+        deadLetter(offset, record);
+      } else {
+        written++;
+      }
+
+      offset += MessageLog.RECORD_HEADER_BYTES + record.length;
+    }
+
+    checkpoint(offset, written);
+
+    return written;
+  }
+
+  /**
+   * Gets the total number of messages appended to the log since application startup.
+   *
+   * @return the total number of messages appended to the log since application startup
+   */
+  @ManagedAttribute(description = "The total number of messages appended to the log since startup")
+  public long getAppendedMessageCount() {
+    return appendedMessageCount.get();
+  }
+
+  /**
+   * Gets the total number of messages drained from the log to the database since application
+   * startup.
+   *
+   * @return the total number of messages drained from the log since application startup
+   */
+  @ManagedAttribute(description = "The total number of messages drained from the log since startup")
+  public long getDrainedMessageCount() {
+    return drainedMessageCount.get();
+  }
+
+  /**
+   * Gets the total number of times a batch could not be drained from the log since application
+   * startup.
+   *
+   * @return the total number of failed attempts to drain a batch since application startup
+   */
+  @ManagedAttribute(description = "The total number of failed attempts to drain a batch")
+  public long getFailedDrainCount() {
+    return failedDrainCount.get();
+  }
+
+  /**
+   * Gets the total number of records moved to the dead-letter file since application startup, the
+   * bytes skipped after a corrupt record counting as one.
+   *
+   * @return the total number of records moved to the dead-letter file since application startup
+   */
+  @ManagedAttribute(description = "The total number of records moved to the dead-letter file")
+  public long getDeadLetterCount() {
+    return deadLetterCount.get();
+  }
+
+  /**
+   * Gets the number of bytes of messages in the log not yet drained to the database.
+   *
+   * @return the number of bytes of messages not yet drained
+   */
+  @ManagedAttribute(description = "The number of bytes of messages not yet drained from the log")
+  public long getBacklogBytes() {
+    return messageLog == null ? 0L : messageLog.getEndOffset() - messageLog.getCheckpointOffset();
+  }
+
+  /**
+   * Gets the number of segments holding the log.
+   *
+   * @return the number of segments holding the log
+   */
+  @ManagedAttribute(description = "The number of segments holding the log")
+  public int getSegmentCount() {
+    return messageLog == null ? 0 : messageLog.getSegmentCount();
+  }
+}
@@ -25,6 +25,7 @@ import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 
 import org.codebrewer.dump1090processor.basestation.domain.DomainUtils;
+import org.codebrewer.dump1090processor.basestation.domain.IcaoAddress;
 import org.codebrewer.dump1090processor.basestation.domain.MessageType;
 import org.codebrewer.dump1090processor.basestation.domain.StatusMessageType;
 import org.codebrewer.dump1090processor.basestation.domain.TransmissionType;
@@ -53,12 +54,9 @@ public class MessageParsingService {
       CrsRegistry.getGeographicCoordinateReferenceSystemForEPSG(4326);
   private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy/MM/dd");
 
-  private static Instant parseTimestamp(String dateToken, String timeToken) {
-    if (StringUtils.isEmpty(dateToken) || StringUtils.isEmpty(timeToken)) {
-      throw new IllegalArgumentException(
-          String.format("Date (%s) and time (%s) must be provided", dateToken, timeToken));
-    }
+  private final TimestampDecoder timestampDecoder = new TimestampDecoder(ZoneId.systemDefault());
 
+  static Instant parseTimestamp(String dateToken, String timeToken, ZoneId zoneId) {
     // Values such as '2017-12-23T16:01:15.4294967295Z' have been seen, which causes a
     // DateTimeParseException, so truncate after 3 decimals
     //
@@ -71,10 +69,20 @@ public class MessageParsingService {
     final LocalDate localDate = LocalDate.parse(dateToken, DATE_FORMATTER);
     final LocalTime localTime = LocalTime.parse(timeToken);
 
-    return LocalDateTime.of(localDate, localTime).atZone(ZoneId.systemDefault()).toInstant();
+    return LocalDateTime.of(localDate, localTime).atZone(zoneId).toInstant();
+  }
+
+  static int tokenAsIcaoAddress(String token) {
+    final int icaoAddress = IcaoAddress.parse(token);
+
+    if (icaoAddress == IcaoAddress.INVALID) {
+      throw new IllegalArgumentException(String.format("Invalid ICAO address: '%s'", token));
+    }
+
+    return icaoAddress;
   }
 
-  private static Short tokenAsShort(String token) {
+  static Short tokenAsShort(String token) {
     try {
       return Short.parseShort(token);
     } catch (NumberFormatException e) {
@@ -82,7 +90,7 @@ public class MessageParsingService {
     }
   }
 
-  private static Point<G2D> tokensAsPosition(String lon, String lat) {
+  static Point<G2D> tokensAsPosition(String lon, String lat) {
     try {
       return new Point<>(
           new G2D(Double.parseDouble(lon), Double.parseDouble(lat)),
@@ -92,7 +100,7 @@ public class MessageParsingService {
     }
   }
 
-  private static Float tokenAsFloat(String token) {
+  static Float tokenAsFloat(String token) {
     try {
       return Float.parseFloat(token);
     } catch (NumberFormatException e) {
@@ -100,7 +108,7 @@ public class MessageParsingService {
     }
   }
 
-  private static Boolean tokenAsBoolean(String token) {
+  static Boolean tokenAsBoolean(String token) {
     try {
       return Integer.parseInt(token) != 0;
     } catch (NumberFormatException e) {
@@ -111,6 +119,22 @@ public class MessageParsingService {
   public MessageParsingService() {
   }
 
+  Instant parseTimestamp(String dateToken, String timeToken) {
+    if (StringUtils.isEmpty(dateToken) || StringUtils.isEmpty(timeToken)) {
+      throw new IllegalArgumentException(
+          String.format("Date (%s) and time (%s) must be provided", dateToken, timeToken));
+    }
+
+    // The decoder handles the 'yyyy/MM/dd' and 'HH:mm:ss[.SSS...]' forms that dump1090 sends,
+    // leaving anything else to be parsed (or rejected) by java.time
+    //
+    final Instant timestamp = timestampDecoder.decode(dateToken, timeToken);
+
+    return timestamp != null
+        ? timestamp
+        : parseTimestamp(dateToken, timeToken, timestampDecoder.getZoneId());
+  }
+
   /**
    * Creates a {@code BaseStationMessage} from its comma-separated value text representation as
    * received on the incoming message feed.
@@ -145,18 +169,17 @@ public class MessageParsingService {
           String.format("Expected %d tokens but found %d", requiredTokenCount, tokens.length));
     }
 
-    final String icaoAddress = tokens[4];
     final Instant creationTimestamp = parseTimestamp(tokens[6], tokens[7]);
 
     switch (messageType) {
       case AIR:
         final NewAircraftMessage.Builder newAircraftMessageBuilder =
-            new NewAircraftMessage.Builder(icaoAddress, creationTimestamp);
+            new NewAircraftMessage.Builder(tokenAsIcaoAddress(tokens[4]), creationTimestamp);
 
         return newAircraftMessageBuilder.build();
       case ID:
         final IdMessage.Builder idMessageBuilder =
-            new IdMessage.Builder(icaoAddress, creationTimestamp);
+            new IdMessage.Builder(tokenAsIcaoAddress(tokens[4]), creationTimestamp);
 
         return idMessageBuilder.callSign(DomainUtils.getValidatedCallSign(tokens[10])).build();
       case MSG:
@@ -170,7 +193,7 @@ public class MessageParsingService {
         }
 
         final TransmissionMessage.Builder transmissionMessageBuilder =
-            new TransmissionMessage.Builder(icaoAddress, creationTimestamp)
+            new TransmissionMessage.Builder(tokenAsIcaoAddress(tokens[4]), creationTimestamp)
                 .transmissionType(transmissionType);
 
         switch (transmissionType) {
@@ -243,7 +266,7 @@ public class MessageParsingService {
         }
 
         final StatusMessage.Builder statusMessageBuilder =
-            new StatusMessage.Builder(icaoAddress, creationTimestamp)
+            new StatusMessage.Builder(tokenAsIcaoAddress(tokens[4]), creationTimestamp)
                 .statusMessageType(statusMessageType);
 
         return statusMessageBuilder.build();
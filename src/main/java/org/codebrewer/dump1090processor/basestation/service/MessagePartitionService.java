@@ -0,0 +1,636 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
+import org.codebrewer.dump1090processor.basestation.entity.TransmissionMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * A service that partitions the table of BaseStation messages by time, so that old messages can
+ * be removed by dropping whole tables rather than by deleting rows.
+ *
+ * <p>Messages are always written to the table mapped by {@link BaseStationMessage}, the head
+ * partition. At the end of each period, hourly or daily as given by
+ * {@code basestation.partition.period}, writes are paused while the head partition is renamed to
+ * a closed partition named after the period and replaced by a new, empty head partition, created
+ * with the columns, constraints, defaults and indexes of the old one as reported by the database's
+ * metadata. The earliest and latest timestamps of the messages in each closed partition are
+ * recorded in the {@value #CATALOG_TABLE} table, so that a query for messages in a range of time
+ * reads only the closed partitions that overlap the range, and the head partition. Closed
+ * partitions holding no messages later than {@code basestation.partition.retention} milliseconds
+ * ago are dropped, unless a drop condition set by another service, such as archiving being
+ * enabled, holds them back.
+ *
+ * <p>Since a partition is closed when its period ends, not when its messages were sent, it may
+ * hold a few messages sent just before or after its period. Its recorded timestamps are those of
+ * the messages it actually holds, so queries remain correct.
+ */
+@Service
+@ManagedResource(
+    objectName = "org.codebrewer.dump1090processor:type=Control,name=MessagePartitionService",
+    description = "Partitions BaseStation messages by time")
+public class MessagePartitionService {
+  static final String HEAD_TABLE = "base_station_message";
+  static final String CATALOG_TABLE = "base_station_message_partition";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MessagePartitionService.class);
+  private static final String NEXT_HEAD_TABLE = HEAD_TABLE + "_next";
+  private static final String PARTITION_PREFIX = HEAD_TABLE + "_p";
+  private static final DateTimeFormatter HOUR_SUFFIX =
+      DateTimeFormatter.ofPattern("yyyyMMddHH").withZone(ZoneOffset.UTC);
+  private static final DateTimeFormatter DAY_SUFFIX =
+      DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneOffset.UTC);
+
+  // The timestamps of the earliest and latest messages held by a partition, and its size
+  //
+  private static final class PartitionBounds {
+    private final Instant minTimestamp;
+    private final Instant maxTimestamp;
+    private final long messageCount;
+
+    private PartitionBounds(Instant minTimestamp, Instant maxTimestamp, long messageCount) {
+      this.minTimestamp = minTimestamp;
+      this.maxTimestamp = maxTimestamp;
+      this.messageCount = messageCount;
+    }
+  }
+
+  private final JdbcTemplate jdbcTemplate;
+  private final EntityManager entityManager;
+  private final MessageBatchPersistenceService messageBatchPersistenceService;
+  private final ChronoUnit period;
+  private final long retentionMillis;
+  private final long checkIntervalMillis;
+  private final boolean enabled;
+  private final AtomicLong droppedPartitionCount = new AtomicLong();
+  private volatile Predicate<String> dropCondition = partition -> true;
+  private volatile Instant headPeriodStart;
+  private ScheduledExecutorService partitionExecutor;
+
+  /**
+   * Sole constructor for this class.
+   *
+   * @param jdbcTemplate a template for running statements against the database holding messages
+   * @param entityManager an entity manager for reading messages from partitions as entities
+   * @param messageBatchPersistenceService the service writing messages to the head partition
+   * @param period the period covered by each partition, {@code HOURS} or {@code DAYS}
+   * @param retentionMillis the number of milliseconds for which messages are kept
+   * @param checkIntervalMillis the number of milliseconds between checks for the end of a period
+   * and for partitions to drop
+   * @param enabled whether or not messages are partitioned
+   *
+   * @throws IllegalArgumentException if the period is neither hours nor days
+   */
+  public MessagePartitionService(
+      JdbcTemplate jdbcTemplate,
+      EntityManager entityManager,
+      MessageBatchPersistenceService messageBatchPersistenceService,
+      @Value("${basestation.partition.period:HOURS}") ChronoUnit period,
+      @Value("${basestation.partition.retention:604800000}") long retentionMillis,
+      @Value("${basestation.partition.check.interval:60000}") long checkIntervalMillis,
+      @Value("${basestation.partition.enabled:false}") boolean enabled) {
+    if (period != ChronoUnit.HOURS && period != ChronoUnit.DAYS) {
+      throw new IllegalArgumentException(String.format("Invalid partition period: %s", period));
+    }
+
+    LOGGER.info(
+        "Message partitions: {}, period: {}, retention: {}ms", enabled, period, retentionMillis);
+    this.jdbcTemplate = jdbcTemplate;
+    this.entityManager = entityManager;
+    this.messageBatchPersistenceService = messageBatchPersistenceService;
+    this.period = period;
+    this.retentionMillis = retentionMillis;
+    this.checkIntervalMillis = checkIntervalMillis;
+    this.enabled = enabled;
+  }
+
+  private static Calendar utcCalendar() {
+    return Calendar.getInstance(TimeZone.getTimeZone(ZoneOffset.UTC));
+  }
+
+  private static Instant getInstant(ResultSet resultSet, String columnLabel) throws SQLException {
+    final Timestamp timestamp = resultSet.getTimestamp(columnLabel, utcCalendar());
+
+    return timestamp == null ? null : timestamp.toInstant();
+  }
+
+  /**
+   * Creates the partition catalog if need be and starts the background thread that closes and
+   * drops partitions.
+   */
+  @PostConstruct
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+
+    jdbcTemplate.execute(
+        "CREATE TABLE IF NOT EXISTS " + CATALOG_TABLE + " ("
+            + "name VARCHAR(64) NOT NULL PRIMARY KEY, "
+            + "min_timestamp TIMESTAMP NOT NULL, "
+            + "max_timestamp TIMESTAMP NOT NULL, "
+            + "message_count BIGINT NOT NULL)");
+    headPeriodStart = Instant.now().truncatedTo(period);
+    partitionExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "message-partitioner");
+
+      thread.setDaemon(true);
+
+      return thread;
+    });
+    partitionExecutor.scheduleWithFixedDelay(
+        this::maintainPartitions, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops the background thread that closes and drops partitions.
+   */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    if (partitionExecutor != null) {
+      partitionExecutor.shutdownNow();
+      partitionExecutor.awaitTermination(checkIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void maintainPartitions() {
+    try {
+      final Instant now = Instant.now();
+
+      closeHeadPartition(now);
+      dropExpiredPartitions(now);
+    } catch (RuntimeException e) {
+      LOGGER.error("Failed to maintain message partitions: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Gets the name of the partition holding the messages of the period starting at an instant.
+   *
+   * @param periodStart the start of a period
+   *
+   * @return the name of the partition table
+   */
+  String partitionName(Instant periodStart) {
+    return PARTITION_PREFIX
+        + (period == ChronoUnit.HOURS ? HOUR_SUFFIX : DAY_SUFFIX).format(periodStart);
+  }
+
+  // Renders the type of the column described by the current row of a column metadata result set
+  //
+  private static String columnType(ResultSet columns) throws SQLException {
+    final String typeName = columns.getString("TYPE_NAME");
+
+    switch (columns.getInt("DATA_TYPE")) {
+      case Types.CHAR:
+      case Types.VARCHAR:
+      case Types.NCHAR:
+      case Types.NVARCHAR:
+      case Types.BINARY:
+      case Types.VARBINARY:
+        return typeName + "(" + columns.getInt("COLUMN_SIZE") + ")";
+      case Types.DECIMAL:
+      case Types.NUMERIC:
+        return typeName + "(" + columns.getInt("COLUMN_SIZE") + ", "
+            + columns.getInt("DECIMAL_DIGITS") + ")";
+      default:
+        return typeName;
+    }
+  }
+
+  /**
+   * Gets the statements creating an empty table with the same columns, column types, nullability,
+   * defaults, primary key and indexes as the head partition, as reported by the JDBC driver's
+   * metadata for the head partition.
+   *
+   * @param tableName the name of the table to create
+   * @param indexPrefix the prefix of the names of the indexes to create, which must be unique
+   * within the schema
+   *
+   * @return the statements creating the table and its indexes
+   */
+  List<String> headTableDdl(String tableName, String indexPrefix) {
+    return jdbcTemplate.execute((ConnectionCallback<List<String>>) connection -> {
+      final DatabaseMetaData metaData = connection.getMetaData();
+      final String headTable = metaData.storesUpperCaseIdentifiers()
+          ? HEAD_TABLE.toUpperCase(Locale.ROOT)
+          : HEAD_TABLE;
+      final List<String> columnDefinitions = new ArrayList<>();
+      final List<String> primaryKey = new ArrayList<>();
+      final Map<String, List<String>> indexColumns = new LinkedHashMap<>();
+      final Map<String, Boolean> indexUnique = new LinkedHashMap<>();
+      final List<String> ddl = new ArrayList<>();
+
+      try (ResultSet columns = metaData.getColumns(
+          connection.getCatalog(), connection.getSchema(), headTable, null)) {
+        while (columns.next()) {
+          final String columnDefault = columns.getString("COLUMN_DEF");
+          final StringBuilder columnDefinition = new StringBuilder();
+
+          columnDefinition.append(columns.getString("COLUMN_NAME"))
+                          .append(' ')
+                          .append(columnType(columns));
+
+          if (columnDefault != null) {
+            columnDefinition.append(" DEFAULT ").append(columnDefault);
+          }
+
+          if (columns.getInt("NULLABLE") == DatabaseMetaData.columnNoNulls) {
+            columnDefinition.append(" NOT NULL");
+          }
+
+          columnDefinitions.add(columnDefinition.toString());
+        }
+      }
+
+      try (ResultSet primaryKeyColumns = metaData.getPrimaryKeys(
+          connection.getCatalog(), connection.getSchema(), headTable)) {
+        final Map<Short, String> keyColumns = new TreeMap<>();
+
+        while (primaryKeyColumns.next()) {
+          keyColumns.put(
+              primaryKeyColumns.getShort("KEY_SEQ"), primaryKeyColumns.getString("COLUMN_NAME"));
+        }
+
+        primaryKey.addAll(keyColumns.values());
+      }
+
+      if (!primaryKey.isEmpty()) {
+        columnDefinitions.add("PRIMARY KEY (" + String.join(", ", primaryKey) + ")");
+      }
+
+      ddl.add("CREATE TABLE " + tableName + " (" + String.join(", ", columnDefinitions) + ")");
+
+      try (ResultSet indexes = metaData.getIndexInfo(
+          connection.getCatalog(), connection.getSchema(), headTable, false, false)) {
+        while (indexes.next()) {
+          final String indexName = indexes.getString("INDEX_NAME");
+          final String columnName = indexes.getString("COLUMN_NAME");
+
+          if (indexName != null && columnName != null
+              && indexes.getShort("TYPE") != DatabaseMetaData.tableIndexStatistic) {
+            indexColumns.computeIfAbsent(indexName, name -> new ArrayList<>()).add(columnName);
+            indexUnique.put(indexName, !indexes.getBoolean("NON_UNIQUE"));
+          }
+        }
+      }
+
+      int indexNumber = 0;
+
+      for (Map.Entry<String, List<String>> index : indexColumns.entrySet()) {
+        final boolean unique = indexUnique.get(index.getKey());
+
+        // The primary key's index is created along with the primary key
+        //
+        if (unique && index.getValue().equals(primaryKey)) {
+          continue;
+        }
+
+        ddl.add("CREATE " + (unique ? "UNIQUE " : "") + "INDEX " + indexPrefix + "_"
+            + ++indexNumber + " ON " + tableName + " ("
+            + String.join(", ", index.getValue()) + ")");
+      }
+
+      return ddl;
+    });
+  }
+
+  /**
+   * Closes the head partition if the period it covers has ended.
+   *
+   * @param now the current time
+   *
+   * @return the name of the closed partition, or null if the head partition was not closed or
+   * held no messages
+   */
+  String closeHeadPartition(Instant now) {
+    final Instant periodStart = now.truncatedTo(period);
+
+    if (!periodStart.isAfter(headPeriodStart)) {
+      return null;
+    }
+
+    final String partition = partitionName(headPeriodStart);
+
+    messageBatchPersistenceService.runWithWritesPaused(() -> {
+      final List<String> nextHeadTableDdl = headTableDdl(
+          NEXT_HEAD_TABLE,
+          HEAD_TABLE + "_i" + partitionName(periodStart).substring(PARTITION_PREFIX.length()));
+
+      jdbcTemplate.execute("DROP TABLE IF EXISTS " + NEXT_HEAD_TABLE);
+      nextHeadTableDdl.forEach(jdbcTemplate::execute);
+      jdbcTemplate.execute("ALTER TABLE " + HEAD_TABLE + " RENAME TO " + partition);
+      jdbcTemplate.execute("ALTER TABLE " + NEXT_HEAD_TABLE + " RENAME TO " + HEAD_TABLE);
+    });
+    headPeriodStart = periodStart;
+
+    final PartitionBounds bounds = jdbcTemplate.queryForObject(
+        "SELECT MIN(timestamp) AS min_timestamp, MAX(timestamp) AS max_timestamp, "
+            + "COUNT(*) AS message_count FROM " + partition,
+        (resultSet, rowNum) -> new PartitionBounds(
+            getInstant(resultSet, "min_timestamp"),
+            getInstant(resultSet, "max_timestamp"),
+            resultSet.getLong("message_count")));
+
+    if (bounds == null || bounds.messageCount == 0L) {
+      jdbcTemplate.execute("DROP TABLE " + partition);
+      LOGGER.info("Dropped empty message partition {}", partition);
+
+      return null;
+    }
+
+    jdbcTemplate.update(
+        "INSERT INTO " + CATALOG_TABLE
+            + " (name, min_timestamp, max_timestamp, message_count) VALUES (?, ?, ?, ?)",
+        preparedStatement -> {
+          preparedStatement.setString(1, partition);
+          preparedStatement.setTimestamp(2, Timestamp.from(bounds.minTimestamp), utcCalendar());
+          preparedStatement.setTimestamp(3, Timestamp.from(bounds.maxTimestamp), utcCalendar());
+          preparedStatement.setLong(4, bounds.messageCount);
+        });
+    LOGGER.info(
+        "Closed message partition {} holding {} messages", partition, bounds.messageCount);
+
+    return partition;
+  }
+
+  /**
+   * Sets a test that an expired partition must pass before it is dropped, an expired partition
+   * failing the test being kept until it passes, as when {@link MessageArchiveService} has yet to
+   * archive it.
+   *
+   * @param dropCondition a test of the name of an expired partition, not null
+   */
+  public void setDropCondition(Predicate<String> dropCondition) {
+    this.dropCondition = dropCondition;
+  }
+
+  /**
+   * Drops the closed partitions holding no messages later than the retention period and passing
+   * the drop condition.
+   *
+   * @param now the current time
+   *
+   * @return the names of the dropped partitions
+   */
+  List<String> dropExpiredPartitions(Instant now) {
+    final Timestamp cutoff = Timestamp.from(now.minusMillis(retentionMillis));
+    final List<String> expired = jdbcTemplate.query(
+        "SELECT name FROM " + CATALOG_TABLE + " WHERE max_timestamp < ? ORDER BY name",
+        preparedStatement -> preparedStatement.setTimestamp(1, cutoff, utcCalendar()),
+        (resultSet, rowNum) -> resultSet.getString("name"));
+    final List<String> dropped = new ArrayList<>();
+
+    for (String partition : expired) {
+      if (!dropCondition.test(partition)) {
+        LOGGER.warn("Keeping expired message partition {} until it can be dropped", partition);
+        continue;
+      }
+
+      jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+      jdbcTemplate.update("DELETE FROM " + CATALOG_TABLE + " WHERE name = ?", partition);
+      droppedPartitionCount.incrementAndGet();
+      dropped.add(partition);
+      LOGGER.info("Dropped expired message partition {}", partition);
+    }
+
+    return dropped;
+  }
+
+  /**
+   * Gets the tables holding messages sent in a range of time: the closed partitions overlapping
+   * the range, oldest first, followed by the head partition.
+   *
+   * @param from the start of the range, inclusive
+   * @param to the end of the range, exclusive
+   *
+   * @return the names of the tables holding messages sent in the range
+   */
+  List<String> partitionsOverlapping(Instant from, Instant to) {
+    final List<String> partitions = new ArrayList<>();
+
+    if (enabled) {
+      partitions.addAll(jdbcTemplate.query(
+          "SELECT name FROM " + CATALOG_TABLE
+              + " WHERE max_timestamp >= ? AND min_timestamp < ? ORDER BY min_timestamp",
+          preparedStatement -> {
+            preparedStatement.setTimestamp(1, Timestamp.from(from), utcCalendar());
+            preparedStatement.setTimestamp(2, Timestamp.from(to), utcCalendar());
+          },
+          (resultSet, rowNum) -> resultSet.getString("name")));
+    }
+
+    partitions.add(HEAD_TABLE);
+
+    return partitions;
+  }
+
+  private String rangeQuery(List<String> partitions, String columns) {
+    final StringBuilder sql = new StringBuilder();
+
+    for (String partition : partitions) {
+      if (sql.length() > 0) {
+        sql.append(" UNION ALL ");
+      }
+
+      sql.append("SELECT ")
+         .append(columns)
+         .append(" FROM ")
+         .append(partition)
+         .append(" WHERE timestamp >= ?")
+         .append(" AND timestamp < ?");
+    }
+
+    return sql.toString();
+  }
+
+  /**
+   * Finds the messages sent in a range of time, reading only the partitions that overlap it.
+   *
+   * @param from the start of the range, inclusive
+   * @param to the end of the range, exclusive
+   *
+   * @return the messages sent in the range
+   */
+  @SuppressWarnings("unchecked")
+  public List<BaseStationMessage> findMessages(Instant from, Instant to) {
+    final List<String> partitions = partitionsOverlapping(from, to);
+    final Query query =
+        entityManager.createNativeQuery(rangeQuery(partitions, "*"), BaseStationMessage.class);
+
+    for (int i = 0; i < partitions.size(); i++) {
+      query.setParameter(2 * i + 1, from);
+      query.setParameter(2 * i + 2, to);
+    }
+
+    return query.getResultList();
+  }
+
+  private void checkPartition(String partition) {
+    if (!getPartitions().contains(partition)) {
+      throw new IllegalArgumentException(String.format("Unknown partition: %s", partition));
+    }
+  }
+
+  /**
+   * Finds a page of the transmission messages held by a closed partition, in order of timestamp.
+   * Each page follows the last message of the previous page, so that a partition can be read
+   * without holding all its messages in memory.
+   *
+   * @param partition the name of a closed partition
+   * @param after the last message of the previous page, or null for the first page
+   * @param maxResults the maximum number of messages in the page
+   *
+   * @return the transmission messages of the page, in order of timestamp and then identifier
+   *
+   * @throws IllegalArgumentException if there is no closed partition with the given name
+   */
+  @SuppressWarnings("unchecked")
+  public List<TransmissionMessage> findTransmissionMessages(
+      String partition, TransmissionMessage after, int maxResults) {
+    checkPartition(partition);
+
+    final Query query = entityManager.createNativeQuery(
+        "SELECT * FROM " + partition + " WHERE message_type = 'MSG'"
+            + (after == null ? "" : " AND (timestamp > ? OR (timestamp = ? AND id > ?))")
+            + " ORDER BY timestamp, id",
+        TransmissionMessage.class);
+
+    if (after != null) {
+      query.setParameter(1, after.getTimestamp());
+      query.setParameter(2, after.getTimestamp());
+      query.setParameter(3, after.getId());
+    }
+
+    query.setMaxResults(maxResults);
+
+    return query.getResultList();
+  }
+
+  /**
+   * Finds the addresses of the transponders that sent the transmission messages held by a closed
+   * partition.
+   *
+   * @param partition the name of a closed partition
+   *
+   * @return the distinct addresses, in the integer representation described by
+   * {@code IcaoAddress}
+   *
+   * @throws IllegalArgumentException if there is no closed partition with the given name
+   */
+  public List<Integer> findTransmissionIcaos(String partition) {
+    checkPartition(partition);
+
+    return jdbcTemplate.queryForList(
+        "SELECT DISTINCT icao_address FROM " + partition + " WHERE message_type = 'MSG'",
+        Integer.class);
+  }
+
+  /**
+   * Counts the messages sent in a range of time, reading only the partitions that overlap it.
+   *
+   * @param from the start of the range, inclusive
+   * @param to the end of the range, exclusive
+   *
+   * @return the number of messages sent in the range
+   */
+  public long countMessages(Instant from, Instant to) {
+    final List<String> partitions = partitionsOverlapping(from, to);
+    final List<Long> counts = jdbcTemplate.query(
+        rangeQuery(partitions, "COUNT(*) AS message_count"),
+        preparedStatement -> {
+          for (int i = 0; i < partitions.size(); i++) {
+            preparedStatement.setTimestamp(2 * i + 1, Timestamp.from(from), utcCalendar());
+            preparedStatement.setTimestamp(2 * i + 2, Timestamp.from(to), utcCalendar());
+          }
+        },
+        (resultSet, rowNum) -> resultSet.getLong("message_count"));
+
+    return counts.stream().mapToLong(Long::longValue).sum();
+  }
+
+  /**
+   * Drops the closed partitions holding no messages later than the retention period.
+   *
+   * @return the number of partitions dropped
+   */
+  @ManagedOperation(description = "Drop partitions holding only messages older than retention")
+  public int dropExpiredPartitions() {
+    return enabled ? dropExpiredPartitions(Instant.now()).size() : 0;
+  }
+
+  /**
+   * Gets the names of the closed partitions, oldest first.
+   *
+   * @return the names of the closed partitions
+   */
+  @ManagedAttribute(description = "The names of the closed message partitions, oldest first")
+  public List<String> getPartitions() {
+    if (!enabled) {
+      return new ArrayList<>();
+    }
+
+    return jdbcTemplate.query(
+        "SELECT name FROM " + CATALOG_TABLE + " ORDER BY min_timestamp",
+        (resultSet, rowNum) -> resultSet.getString("name"));
+  }
+
+  /**
+   * Gets the total number of partitions dropped since application startup.
+   *
+   * @return the total number of partitions dropped since application startup
+   */
+  @ManagedAttribute(description = "The total number of partitions dropped since startup")
+  public long getDroppedPartitionCount() {
+    return droppedPartitionCount.get();
+  }
+}
@@ -18,58 +18,99 @@ package org.codebrewer.dump1090processor.basestation.service;
 
 import static org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage.INVALID_MESSAGE;
 
-import java.nio.charset.StandardCharsets;
 import java.util.concurrent.atomic.AtomicLong;
 import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.integration.transformer.AbstractPayloadTransformer;
+import org.springframework.integration.transformer.AbstractTransformer;
 import org.springframework.jmx.export.annotation.ManagedAttribute;
 import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.messaging.Message;
 import org.springframework.stereotype.Service;
 
 @Service
 @ManagedResource(
     objectName = "org.codebrewer.dump1090processor:type=Counter,name=TransformerService",
     description = "Transforms the incoming stream of data into BaseStation messages")
-public class MessagePayloadTransformerService
-    extends AbstractPayloadTransformer<Object, BaseStationMessage> {
+public class MessagePayloadTransformerService extends AbstractTransformer {
   private static final Logger LOGGER =
       LoggerFactory.getLogger(MessagePayloadTransformerService.class);
 
   private final MessageParsingService messageParsingService;
+  private final ByteMessageParsingService byteMessageParsingService;
+  private final PipelineMetrics pipelineMetrics;
   private final AtomicLong validMessageCount = new AtomicLong();
 
+  /**
+   * Sole constructor for this class.
+   *
+   * @param messageParsingService a service for parsing message payloads received as text
+   * @param byteMessageParsingService a service for parsing message payloads received as bytes,
+   * which is the form delivered by the TCP connection to the BaseStation message feed
+   * @param pipelineMetrics the meters recording the time taken to parse messages
+   */
   @Autowired
-  public MessagePayloadTransformerService(MessageParsingService messageParsingService) {
+  public MessagePayloadTransformerService(
+      MessageParsingService messageParsingService,
+      ByteMessageParsingService byteMessageParsingService,
+      PipelineMetrics pipelineMetrics) {
     this.messageParsingService = messageParsingService;
+    this.byteMessageParsingService = byteMessageParsingService;
+    this.pipelineMetrics = pipelineMetrics;
   }
 
+  /**
+   * Transforms the payload of a message into a {@code BaseStationMessage}, stamped with when the
+   * message was received, taken from its timestamp header, and when it was parsed.
+   *
+   * @param message a message read from a feed
+   *
+   * @return the parsed message, or {@link BaseStationMessage#INVALID_MESSAGE} if the payload is
+   * not a valid message
+   */
   @Override
-  protected BaseStationMessage transformPayload(Object payload) {
-    if (payload == null) {
-      return INVALID_MESSAGE;
+  protected Object doTransform(Message<?> message) {
+    final BaseStationMessage baseStationMessage = transformPayload(message.getPayload());
+
+    if (baseStationMessage != INVALID_MESSAGE) {
+      final Long receivedMillis = message.getHeaders().getTimestamp();
+
+      baseStationMessage.stampIngest(
+          receivedMillis == null ? 0L : receivedMillis, System.currentTimeMillis());
     }
 
-    final String payloadString;
+    return baseStationMessage;
+  }
 
-    if (payload instanceof byte[]) {
-      payloadString = new String((byte[]) payload, StandardCharsets.US_ASCII);
-    } else if (payload instanceof char[]) {
-      payloadString = new String((char[]) payload);
-    } else {
-      payloadString = payload.toString();
+  BaseStationMessage transformPayload(Object payload) {
+    if (payload == null) {
+      return INVALID_MESSAGE;
     }
 
+    final long startNanos = System.nanoTime();
     BaseStationMessage baseStationMessage = null;
 
     try {
-      baseStationMessage = messageParsingService.parseCsvMessageText(payloadString);
+      if (payload instanceof ByteSlice) {
+        final ByteSlice slice = (ByteSlice) payload;
+
+        baseStationMessage = byteMessageParsingService.parseCsvMessageBytes(
+            slice.array(), slice.offset(), slice.length());
+      } else if (payload instanceof byte[]) {
+        baseStationMessage = byteMessageParsingService.parseCsvMessageBytes((byte[]) payload);
+      } else if (payload instanceof char[]) {
+        baseStationMessage =
+            messageParsingService.parseCsvMessageText(new String((char[]) payload));
+      } else {
+        baseStationMessage = messageParsingService.parseCsvMessageText(payload.toString());
+      }
     } catch (Exception e) {
       LOGGER.error("Failed to parse message payload: {}: {}", e.getClass().getSimpleName(), e.getMessage());
     }
 
+    pipelineMetrics.recordStage(PipelineMetrics.Stage.PARSE, startNanos);
+
     if (baseStationMessage == null) {
       return INVALID_MESSAGE;
     }
@@ -26,6 +26,14 @@ import org.springframework.jmx.export.annotation.ManagedOperation;
 import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 
+/**
+ * A service that connects to the BaseStation message feed.
+ *
+ * <p>The connection is supervised by a {@link SupervisedTcpReceivingChannelAdapter}, which
+ * reconnects with exponential backoff when the feed is closed or cannot be reached, as when
+ * {@code dump1090} restarts, and reconnects when no bytes are read for
+ * {@code basestation.feed.stall.timeout} milliseconds.
+ */
 @Service
 @ManagedResource(
     objectName = "org.codebrewer.dump1090processor:type=Control,name=MessageProducerService",
@@ -34,21 +42,60 @@ public class MessageProducerService {
   private static final Logger LOGGER =
       LoggerFactory.getLogger(MessageProducerService.class);
 
-  private final TcpReceivingChannelAdapter messageProducer;
+  private final SupervisedTcpReceivingChannelAdapter messageProducer;
 
+  /**
+   * Sole constructor for this class.
+   *
+   * @param host the host serving the BaseStation message feed
+   * @param port the port on which the BaseStation message feed is served
+   * @param autoStart whether or not to connect to the feed at startup
+   * @param reconnectInitialMillis the number of milliseconds to wait before the first attempt to
+   * reconnect to the feed
+   * @param reconnectMaximumMillis the maximum number of milliseconds to wait before an attempt to
+   * reconnect to the feed
+   * @param reconnectMultiplier the factor by which the wait grows after each failed attempt
+   * @param reconnectJitter the largest fraction by which each wait is randomly reduced
+   * @param stallTimeoutMillis the number of milliseconds without reading a byte after which the
+   * feed is reconnected, or zero to never reconnect an open feed
+   * @param virtualThreads whether or not to read the feed on a virtual thread, if the JVM supports
+   * them
+   * @param pipelineMetrics the meters recording the time taken to hand off each message read
+   */
   public MessageProducerService(
       @Value("${dump1090.host:localhost}") String host,
       @Value("${basestation.feed.port:30003}") int port,
-      @Value("${basestation.feed.start.auto:true}") boolean autoStart) {
-    LOGGER.info("MessageProducerService: {}:{}, auto-start: {}", host, port, autoStart);
+      @Value("${basestation.feed.start.auto:true}") boolean autoStart,
+      @Value("${basestation.feed.reconnect.initial:1000}") long reconnectInitialMillis,
+      @Value("${basestation.feed.reconnect.max:60000}") long reconnectMaximumMillis,
+      @Value("${basestation.feed.reconnect.multiplier:2.0}") double reconnectMultiplier,
+      @Value("${basestation.feed.reconnect.jitter:0.5}") double reconnectJitter,
+      @Value("${basestation.feed.stall.timeout:60000}") long stallTimeoutMillis,
+      @Value("${basestation.threads.virtual:false}") boolean virtualThreads,
+      PipelineMetrics pipelineMetrics) {
+    LOGGER.info(
+        "MessageProducerService: {}:{}, auto-start: {}, reconnect: {}ms to {}ms, stall: {}ms",
+        host, port, autoStart, reconnectInitialMillis, reconnectMaximumMillis, stallTimeoutMillis);
 
     final TcpNetClientConnectionFactory clientConnectionFactory =
         new TcpNetClientConnectionFactory(host, port);
 
     clientConnectionFactory.setSingleUse(false);
-    messageProducer = new TcpReceivingChannelAdapter();
-    messageProducer.setClientMode(true);
+    clientConnectionFactory.setDeserializer(new ByteSliceLineDeserializer());
+
+    if (virtualThreads) {
+      clientConnectionFactory.setTaskExecutor(
+          VirtualThreads.threadPerTaskExecutor("basestation-feed-reader-", true));
+    }
+
+    messageProducer = new SupervisedTcpReceivingChannelAdapter(
+        reconnectInitialMillis,
+        reconnectMaximumMillis,
+        reconnectMultiplier,
+        reconnectJitter,
+        stallTimeoutMillis);
     messageProducer.setConnectionFactory(clientConnectionFactory);
+    messageProducer.setReadTimer(pipelineMetrics.getStageTimer(PipelineMetrics.Stage.READ));
     messageProducer.setAutoStartup(autoStart);
   }
 
@@ -68,6 +115,51 @@ public class MessageProducerService {
     return messageProducer.isRunning();
   }
 
+  /**
+   * Gets the state of the connection to the BaseStation message feed.
+   *
+   * @return the state of the connection to the BaseStation message feed
+   */
+  @ManagedAttribute(description = "The state of the connection to the BaseStation message feed")
+  public String getFeedState() {
+    return messageProducer.getFeedState().name();
+  }
+
+  /**
+   * Gets the number of attempts made to connect to the BaseStation message feed since application
+   * startup.
+   *
+   * @return the number of attempts made to connect to the BaseStation message feed
+   */
+  @ManagedAttribute(
+      description = "The number of attempts made to connect to the feed since application startup")
+  public long getConnectAttemptCount() {
+    return messageProducer.getConnectAttemptCount();
+  }
+
+  /**
+   * Gets for how long the current connection to the BaseStation message feed has been open.
+   *
+   * @return the number of milliseconds for which the current connection has been open, or zero if
+   * there is none
+   */
+  @ManagedAttribute(
+      description = "The number of milliseconds for which the current connection has been open")
+  public long getUptimeMillis() {
+    return messageProducer.getUptimeMillis();
+  }
+
+  /**
+   * Gets how long ago a byte was last read from the BaseStation message feed.
+   *
+   * @return the number of milliseconds since a byte was last read from the feed, or since the
+   * current connection was opened if later, or -1 if no connection has been opened
+   */
+  @ManagedAttribute(description = "The number of milliseconds since a byte was last read")
+  public long getLastByteAgeMillis() {
+    return messageProducer.getLastByteAgeMillis();
+  }
+
   /**
    * Requests connection to the BaseStation message feed.
    *
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.integration.endpoint.MessageProducerSupport;
+import org.springframework.messaging.support.MessageBuilder;
+
+/**
+ * A message producer that replays a recorded BaseStation message feed from a capture file.
+ *
+ * <p>Each line of the capture file is sent as a message with a {@code byte[]} payload, just as
+ * messages are received from the live feed, so that a replay exercises the same integration flow.
+ * Messages are sent at the speed of the original feed multiplied by a given factor, pacing them
+ * by the date and time at which each was generated, or as fast as possible if the factor is not
+ * positive. Since the flow blocks a producer while its queues are full, the rate at which a
+ * replay as fast as possible sends messages is held to the throughput of the flow.
+ *
+ * <p>A replay runs on a thread of its own and ends when the end of the capture file is reached or
+ * when the producer is stopped, after which the number of messages sent per second is logged.
+ * This send rate is measured when the last message has been sent, not when the flow has finished
+ * with it, so it does not count the time taken to drain messages still queued downstream and
+ * overstates the end-to-end rate of a replay that is short compared with those queues.
+ */
+public class MessageReplayProducer extends MessageProducerSupport {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MessageReplayProducer.class);
+  private static final int DATE_FIELD_INDEX = 6;
+  private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+  private final Path captureFile;
+  private final int regionSize;
+  private final TimestampDecoder timestampDecoder = new TimestampDecoder(ZoneId.systemDefault());
+  private final AtomicLong replayedMessageCount = new AtomicLong();
+  private volatile double speed;
+  private volatile double lastSendRate;
+  private volatile Thread replayThread;
+
+  /**
+   * Creates a producer that replays a capture file.
+   *
+   * @param captureFile the path of the capture file, not null
+   * @param speed the factor by which to multiply the speed of the original feed, or zero to replay
+   * as fast as possible
+   */
+  public MessageReplayProducer(Path captureFile, double speed) {
+    this(captureFile, speed, CaptureFileReader.DEFAULT_REGION_SIZE);
+  }
+
+  MessageReplayProducer(Path captureFile, double speed, int regionSize) {
+    this.captureFile = captureFile;
+    this.speed = speed;
+    this.regionSize = regionSize;
+  }
+
+  /**
+   * Finds the date and time at which a message was generated.
+   *
+   * @return the number of milliseconds since the epoch at which the message was generated, or
+   * {@link #NO_TIMESTAMP} if the message has no valid date and time
+   */
+  private long timestampMillis(byte[] line) {
+    int dateStart = 0;
+    int field = 0;
+
+    while (field < DATE_FIELD_INDEX && dateStart < line.length) {
+      if (line[dateStart++] == ',') {
+        field++;
+      }
+    }
+
+    int dateEnd = dateStart;
+
+    while (dateEnd < line.length && line[dateEnd] != ',') {
+      dateEnd++;
+    }
+
+    int timeEnd = dateEnd + 1;
+
+    while (timeEnd < line.length && line[timeEnd] != ',') {
+      timeEnd++;
+    }
+
+    if (field < DATE_FIELD_INDEX || timeEnd > line.length) {
+      return NO_TIMESTAMP;
+    }
+
+    final Instant timestamp =
+        timestampDecoder.decode(line, dateStart, dateEnd, dateEnd + 1, timeEnd);
+
+    return timestamp == null ? NO_TIMESTAMP : timestamp.toEpochMilli();
+  }
+
+  private void replay() {
+    final double replaySpeed = speed;
+    final long startNanos = System.nanoTime();
+    long firstTimestamp = NO_TIMESTAMP;
+    long firstTimestampNanos = startNanos;
+    long messageCount = 0L;
+
+    LOGGER.info("Replaying {} at speed {}", captureFile, replaySpeed > 0.0 ? replaySpeed : "max");
+
+    try (CaptureFileReader reader = CaptureFileReader.open(captureFile, regionSize)) {
+      byte[] line;
+
+      while (!Thread.currentThread().isInterrupted() && (line = reader.nextLine()) != null) {
+        final long timestamp = replaySpeed > 0.0 ? timestampMillis(line) : NO_TIMESTAMP;
+
+        if (timestamp != NO_TIMESTAMP) {
+          if (firstTimestamp == NO_TIMESTAMP) {
+            firstTimestamp = timestamp;
+            firstTimestampNanos = System.nanoTime();
+          }
+
+          final long dueNanos = firstTimestampNanos
+              + (long) (TimeUnit.MILLISECONDS.toNanos(timestamp - firstTimestamp) / replaySpeed);
+          final long delayNanos = dueNanos - System.nanoTime();
+
+          if (delayNanos > 0L) {
+            TimeUnit.NANOSECONDS.sleep(delayNanos);
+          }
+        }
+
+        sendMessage(MessageBuilder.withPayload(line).build());
+        messageCount++;
+        replayedMessageCount.incrementAndGet();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException | RuntimeException e) {
+      if (!Thread.currentThread().isInterrupted()) {
+        LOGGER.error("Failed to replay {}: {}", captureFile, e.getMessage());
+      }
+    } finally {
+      final long elapsedNanos = Math.max(1L, System.nanoTime() - startNanos);
+
+      lastSendRate = messageCount * (double) TimeUnit.SECONDS.toNanos(1L) / elapsedNanos;
+      LOGGER.info(
+          "Replayed {} messages from {} in {}ms, sent at {} msgs/s",
+          messageCount,
+          captureFile,
+          TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+          String.format("%.1f", lastSendRate));
+    }
+  }
+
+  @Override
+  public String getComponentType() {
+    return "basestation:replay-inbound-channel-adapter";
+  }
+
+  @Override
+  protected void doStart() {
+    replayThread = new Thread(this::replay, "message-replay");
+    replayThread.setDaemon(true);
+    replayThread.start();
+  }
+
+  @Override
+  protected void doStop() {
+    final Thread thread = replayThread;
+
+    if (thread != null && thread != Thread.currentThread()) {
+      thread.interrupt();
+
+      try {
+        thread.join(TimeUnit.SECONDS.toMillis(5L));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Gets whether or not a replay is in progress.
+   *
+   * @return whether or not a replay is in progress
+   */
+  public boolean isReplaying() {
+    final Thread thread = replayThread;
+
+    return thread != null && thread.isAlive();
+  }
+
+  /**
+   * Gets the path of the capture file replayed by this producer.
+   *
+   * @return the path of the capture file replayed by this producer
+   */
+  public Path getCaptureFile() {
+    return captureFile;
+  }
+
+  /**
+   * Gets the factor by which the speed of the original feed is multiplied during a replay.
+   *
+   * @return the factor by which the speed of the original feed is multiplied, or zero if messages
+   * are replayed as fast as possible
+   */
+  public double getSpeed() {
+    return speed;
+  }
+
+  /**
+   * Sets the factor by which the speed of the original feed is multiplied during a replay, which
+   * takes effect from the next replay.
+   *
+   * @param speed the factor by which to multiply the speed of the original feed, or zero to replay
+   * as fast as possible
+   */
+  public void setSpeed(double speed) {
+    this.speed = speed;
+  }
+
+  /**
+   * Gets the total number of messages replayed since application startup.
+   *
+   * @return the total number of messages replayed since application startup
+   */
+  public long getReplayedMessageCount() {
+    return replayedMessageCount.get();
+  }
+
+  /**
+   * Gets the number of messages sent per second by the most recent replay, up to the time its last
+   * message was sent.
+   *
+   * @return the number of messages sent per second by the most recent replay, or zero if there
+   * has been no replay
+   */
+  public double getLastSendRate() {
+    return lastSendRate;
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import java.nio.file.Paths;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * A service that replays a recorded BaseStation message feed, as an alternative to connecting to
+ * a live feed, so that the application can be loaded without a receiver.
+ *
+ * <p>The capture file is given by the {@code basestation.replay.file} property and may be
+ * compressed using gzip. No replay is possible if the property is undefined. The speed of a
+ * replay is given by the {@code basestation.replay.speed} property, which multiplies the speed of
+ * the original feed, with zero meaning as fast as possible.
+ */
+@Service
+@ManagedResource(
+    objectName = "org.codebrewer.dump1090processor:type=Control,name=MessageReplayService",
+    description = "A service that replays a recorded BaseStation message feed")
+public class MessageReplayService {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MessageReplayService.class);
+
+  private final MessageReplayProducer messageProducer;
+
+  /**
+   * Sole constructor for this class.
+   *
+   * @param captureFile the path of the capture file to replay, or an empty string if there is none
+   * @param speed the factor by which to multiply the speed of the original feed, or zero to replay
+   * as fast as possible
+   * @param autoStart whether or not to start replaying the capture file at startup, which has no
+   * effect if there is no capture file
+   */
+  public MessageReplayService(
+      @Value("${basestation.replay.file:}") String captureFile,
+      @Value("${basestation.replay.speed:1.0}") double speed,
+      @Value("${basestation.replay.start.auto:true}") boolean autoStart) {
+    LOGGER.info(
+        "MessageReplayService: {}, speed: {}, auto-start: {}", captureFile, speed, autoStart);
+
+    messageProducer =
+        new MessageReplayProducer(captureFile.isEmpty() ? null : Paths.get(captureFile), speed);
+    messageProducer.setAutoStartup(autoStart && !captureFile.isEmpty());
+  }
+
+  public MessageReplayProducer replayMessageClient() {
+    return messageProducer;
+  }
+
+  /**
+   * Gets whether or not a replay of the capture file is in progress.
+   *
+   * @return whether or not a replay of the capture file is in progress
+   */
+  @ManagedAttribute(description = "Whether or not a replay of the capture file is in progress")
+  public boolean isRunning() {
+    return messageProducer.isReplaying();
+  }
+
+  /**
+   * Gets the factor by which the speed of the original feed is multiplied during a replay.
+   *
+   * @return the factor by which the speed of the original feed is multiplied, or zero if messages
+   * are replayed as fast as possible
+   */
+  @ManagedAttribute(
+      description = "The factor by which the speed of the original feed is multiplied, or zero to "
+          + "replay as fast as possible")
+  public double getSpeed() {
+    return messageProducer.getSpeed();
+  }
+
+  /**
+   * Sets the factor by which the speed of the original feed is multiplied during a replay, which
+   * takes effect from the next replay.
+   *
+   * @param speed the factor by which to multiply the speed of the original feed, or zero to replay
+   * as fast as possible
+   */
+  @ManagedAttribute(
+      description = "The factor by which the speed of the original feed is multiplied, or zero to "
+          + "replay as fast as possible")
+  public void setSpeed(double speed) {
+    LOGGER.info("Replay speed set to {}", speed);
+    messageProducer.setSpeed(speed);
+  }
+
+  /**
+   * Gets the total number of messages replayed since application startup.
+   *
+   * @return the total number of messages replayed since application startup
+   */
+  @ManagedAttribute(description = "The total number of messages replayed since startup")
+  public long getReplayedMessageCount() {
+    return messageProducer.getReplayedMessageCount();
+  }
+
+  /**
+   * Gets the number of messages sent per second by the most recent replay, up to the time its last
+   * message was sent and so not counting the time taken to drain the flow.
+   *
+   * @return the number of messages sent per second by the most recent replay
+   */
+  @ManagedAttribute(description = "The number of messages sent per second by the latest replay, "
+      + "not counting the time taken to drain the flow")
+  public double getLastSendRate() {
+    return messageProducer.getLastSendRate();
+  }
+
+  /**
+   * Requests a replay of the capture file from its beginning.
+   *
+   * <p>Has no effect if a replay is in progress or there is no capture file.
+   */
+  @ManagedOperation(description = "Replay the capture file from its beginning")
+  public void start() {
+    LOGGER.info("'Start' requested for BaseStation message replay");
+
+    if (messageProducer.getCaptureFile() == null) {
+      LOGGER.warn("No capture file to replay: set property basestation.replay.file");
+    } else if (!messageProducer.isReplaying()) {
+      messageProducer.stop();
+      messageProducer.start();
+    }
+  }
+
+  /**
+   * Requests that a replay of the capture file is stopped.
+   *
+   * <p>Has no effect if no replay is in progress.
+   */
+  @ManagedOperation(description = "Stop replaying the capture file")
+  public void stop() {
+    LOGGER.info("'Stop' requested for BaseStation message replay");
+    messageProducer.stop();
+  }
+}
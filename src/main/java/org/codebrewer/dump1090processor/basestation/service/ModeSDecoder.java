@@ -0,0 +1,668 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import java.time.Instant;
+import org.codebrewer.dump1090processor.basestation.domain.DomainUtils;
+import org.codebrewer.dump1090processor.basestation.domain.TransmissionType;
+import org.codebrewer.dump1090processor.basestation.entity.TransmissionMessage;
+import org.geolatte.geom.G2D;
+import org.geolatte.geom.Point;
+import org.geolatte.geom.crs.CrsRegistry;
+import org.geolatte.geom.crs.Geographic2DCoordinateReferenceSystem;
+
+/**
+ * Decodes Mode S messages into the {@code TransmissionMessage}s that {@code dump1090} would write
+ * to its BaseStation feed for them.
+ *
+ * <p>The following messages are decoded:
+ *
+ * <ul>
+ *   <li>DF17, and DF18 with an ICAO address, extended squitters carrying aircraft identification
+ *   (type codes 1 to 4), surface movement (5 to 8), airborne position (9 to 18 and 20 to 22) and
+ *   airborne velocity (19)</li>
+ *   <li>DF4 and DF20 altitude replies and DF0 and DF16 air-to-air surveillance</li>
+ *   <li>DF5 and DF21 identity replies, giving the squawk</li>
+ *   <li>DF11 all-call replies</li>
+ * </ul>
+ *
+ * <p>Messages whose parity does not check are rejected. Replies other than DF11, DF17 and DF18
+ * overlay the aircraft address on their parity, so the address recovered from such a reply cannot
+ * be checked and is accepted only if the same address was seen in a DF11, DF17 or DF18 message in
+ * the last {@value #AIRCRAFT_EXPIRY_MILLIS} milliseconds, as {@code dump1090} does.
+ *
+ * <p>Positions are encoded in Compact Position Reporting (CPR) format. An airborne position is
+ * decoded globally from the latest even and odd encoded positions of an aircraft, if received
+ * within {@value #CPR_PAIR_MILLIS} milliseconds of one another. Otherwise, and for every surface
+ * position, a position is decoded locally, relative to a reference position. The reference is the
+ * last position decoded for the aircraft, if decoded in the last {@value #REFERENCE_MILLIS}
+ * milliseconds, or else the position of the receiver, if known. Local decoding is unambiguous only
+ * within 180NM of the reference for airborne positions and 45NM for surface positions.
+ *
+ * <p>The state kept for each aircraft is held in an {@link IntObjectMap} keyed by ICAO address and
+ * is forgotten once the aircraft has not been heard for {@value #AIRCRAFT_EXPIRY_MILLIS}
+ * milliseconds.
+ *
+ * <p>Instances of this class are thread-safe, but since decoding depends on earlier messages the
+ * messages of a feed should be decoded in the order in which they were received.
+ */
+final class ModeSDecoder {
+  static final long AIRCRAFT_EXPIRY_MILLIS = 60_000L;
+  static final long CPR_PAIR_MILLIS = 10_000L;
+  static final long REFERENCE_MILLIS = 60_000L;
+
+  private static final Geographic2DCoordinateReferenceSystem COORDINATE_REFERENCE_SYSTEM =
+      CrsRegistry.getGeographicCoordinateReferenceSystemForEPSG(4326);
+  private static final int SHORT_MESSAGE_LENGTH = 7;
+  private static final int LONG_MESSAGE_LENGTH = 14;
+  private static final int PARITY_LENGTH = 3;
+  private static final int GENERATOR_POLYNOMIAL = 0xfff409;
+  private static final int[] CRC_TABLE = new int[256];
+  private static final int NO_ALTITUDE = Integer.MIN_VALUE;
+  private static final int CPR_SCALE = 1 << 17;
+  private static final int CPR_LATITUDE_ZONES = 15;
+  private static final double AIRBORNE_CPR_RANGE = 360.0;
+  private static final double SURFACE_CPR_RANGE = 90.0;
+  private static final int SWEEP_INTERVAL = 4096;
+  private static final String CALL_SIGN_CHARACTERS =
+      "#ABCDEFGHIJKLMNOPQRSTUVWXYZ##### ###############0123456789######";
+
+  static {
+    for (int i = 0; i < CRC_TABLE.length; i++) {
+      int crc = i << 16;
+
+      for (int bit = 0; bit < 8; bit++) {
+        crc = (crc & 0x800000) != 0 ? crc << 1 ^ GENERATOR_POLYNOMIAL : crc << 1;
+      }
+
+      CRC_TABLE[i] = crc & 0xffffff;
+    }
+  }
+
+  private final IntObjectMap<AircraftState> aircraft = new IntObjectMap<>(1024);
+  private final double referenceLatitude;
+  private final double referenceLongitude;
+  private int decodeCount;
+
+  /**
+   * Creates a decoder for a receiver whose position is unknown.
+   */
+  ModeSDecoder() {
+    this(Double.NaN, Double.NaN);
+  }
+
+  /**
+   * Creates a decoder for a receiver at a known position.
+   *
+   * @param referenceLatitude the latitude of the receiver in degrees, or NaN if unknown
+   * @param referenceLongitude the longitude of the receiver in degrees, or NaN if unknown
+   */
+  ModeSDecoder(double referenceLatitude, double referenceLongitude) {
+    final boolean known = !Double.isNaN(referenceLatitude) && !Double.isNaN(referenceLongitude);
+
+    this.referenceLatitude = known ? referenceLatitude : Double.NaN;
+    this.referenceLongitude = known ? referenceLongitude : Double.NaN;
+  }
+
+  /**
+   * Computes the Mode S parity of a message, over all but its last three bytes.
+   *
+   * @param message an array holding the message, not null
+   * @param offset the offset of the first byte of the message
+   * @param length the length of the message in bytes
+   *
+   * @return the 24 bit parity of the message
+   */
+  static int parity(byte[] message, int offset, int length) {
+    int crc = 0;
+
+    for (int i = offset; i < offset + length - PARITY_LENGTH; i++) {
+      crc = (crc << 8 ^ CRC_TABLE[(crc >>> 16 ^ message[i]) & 0xff]) & 0xffffff;
+    }
+
+    return crc;
+  }
+
+  // Returns the value of the bits numbered first to last, counting from 1 at the most significant
+  // bit of the first byte of the message, as in ICAO Annex 10; at most 32 bits may be requested
+  //
+  private static int bits(byte[] message, int offset, int first, int last) {
+    final int lastByte = (last - 1) >> 3;
+    long value = 0L;
+
+    for (int i = (first - 1) >> 3; i <= lastByte; i++) {
+      value = value << 8 | message[offset + i] & 0xff;
+    }
+
+    return (int) (value >>> (7 - ((last - 1) & 7)) & (1L << (last - first + 1)) - 1);
+  }
+
+  // Rearranges a 13 bit identity or altitude field, C1 A1 C2 A2 C4 A4 M B1 D1/Q B2 D2 B4 D4, into
+  // the four octal digits A B C D of a Mode A code, one digit per hexadecimal digit
+  //
+  private static int gillhamCode(int field) {
+    return (field & 0x1000) >> 8 | (field & 0x0400) >> 5 | (field & 0x0100) >> 2
+        | (field & 0x0800) << 1 | (field & 0x0200) << 4 | (field & 0x0080) << 7
+        | (field & 0x0020) << 3 | (field & 0x0008) << 6 | (field & 0x0002) << 9
+        | (field & 0x0010) >> 4 | (field & 0x0004) >> 1 | (field & 0x0001) << 2;
+  }
+
+  private static int squawk(int field) {
+    final int code = gillhamCode(field);
+
+    return (code >> 12 & 7) * 1000 + (code >> 8 & 7) * 100 + (code >> 4 & 7) * 10 + (code & 7);
+  }
+
+  // Decodes the altitude, in hundreds of feet, of a Gray-coded Mode C reply, or returns
+  // NO_ALTITUDE if the code is invalid
+  //
+  private static int modeCAltitude(int code) {
+    if ((code & 0xffff8889) != 0 || (code & 0x00f0) == 0) {
+      return NO_ALTITUDE;
+    }
+
+    int hundreds = 0;
+    int fiveHundreds = 0;
+
+    hundreds ^= (code & 0x0010) != 0 ? 7 : 0;
+    hundreds ^= (code & 0x0020) != 0 ? 3 : 0;
+    hundreds ^= (code & 0x0040) != 0 ? 1 : 0;
+
+    if ((hundreds & 5) == 5) {
+      hundreds ^= 2;
+    }
+
+    if (hundreds > 5) {
+      return NO_ALTITUDE;
+    }
+
+    fiveHundreds ^= (code & 0x0002) != 0 ? 0xff : 0;
+    fiveHundreds ^= (code & 0x0004) != 0 ? 0x7f : 0;
+    fiveHundreds ^= (code & 0x1000) != 0 ? 0x3f : 0;
+    fiveHundreds ^= (code & 0x2000) != 0 ? 0x1f : 0;
+    fiveHundreds ^= (code & 0x4000) != 0 ? 0x0f : 0;
+    fiveHundreds ^= (code & 0x0100) != 0 ? 0x07 : 0;
+    fiveHundreds ^= (code & 0x0200) != 0 ? 0x03 : 0;
+    fiveHundreds ^= (code & 0x0400) != 0 ? 0x01 : 0;
+
+    if ((fiveHundreds & 1) != 0) {
+      hundreds = 6 - hundreds;
+    }
+
+    return fiveHundreds * 5 + hundreds - 13;
+  }
+
+  // Decodes the 13 bit altitude field of a surveillance reply, in feet
+  //
+  private static int altitude13(int field) {
+    if (field == 0 || (field & 0x0040) != 0) {
+      // Unavailable, or in metres, which dump1090 does not report either
+      //
+      return NO_ALTITUDE;
+    }
+
+    if ((field & 0x0010) != 0) {
+      return ((field & 0x1f80) >> 2 | (field & 0x0020) >> 1 | field & 0x000f) * 25 - 1000;
+    }
+
+    final int hundreds = modeCAltitude(gillhamCode(field));
+
+    return hundreds == NO_ALTITUDE ? NO_ALTITUDE : hundreds * 100;
+  }
+
+  // Decodes the 12 bit altitude field of an airborne position, which omits the M bit, in feet
+  //
+  private static int altitude12(int field) {
+    return altitude13((field & 0x0fc0) << 1 | field & 0x003f);
+  }
+
+  // Returns the number of longitude zones at a latitude, for a CPR encoding having 15 latitude
+  // zones in each hemisphere
+  //
+  static int longitudeZones(double latitude) {
+    final double absoluteLatitude = Math.abs(latitude);
+
+    if (absoluteLatitude == 0.0) {
+      return 59;
+    } else if (absoluteLatitude == 87.0) {
+      return 2;
+    } else if (absoluteLatitude > 87.0) {
+      return 1;
+    }
+
+    final double a = 1.0 - Math.cos(Math.PI / (2.0 * CPR_LATITUDE_ZONES));
+    final double b = Math.cos(Math.toRadians(absoluteLatitude));
+
+    return (int) Math.floor(2.0 * Math.PI / Math.acos(1.0 - a / (b * b)));
+  }
+
+  private static double modulo(double x, double y) {
+    return x - y * Math.floor(x / y);
+  }
+
+  // Decodes a global airborne position from an even and an odd CPR encoded position, using the
+  // latitude and longitude zones of the latest; returns an array holding the latitude then the
+  // longitude, or null if the encoded positions straddle a boundary between longitude zones
+  //
+  static double[] globalPosition(
+      int evenLatitude, int evenLongitude, int oddLatitude, int oddLongitude, boolean oddLatest) {
+    final double latitudeEven = (double) evenLatitude / CPR_SCALE;
+    final double longitudeEven = (double) evenLongitude / CPR_SCALE;
+    final double latitudeOdd = (double) oddLatitude / CPR_SCALE;
+    final double longitudeOdd = (double) oddLongitude / CPR_SCALE;
+    final double j = Math.floor(59.0 * latitudeEven - 60.0 * latitudeOdd + 0.5);
+    double latitude0 = 360.0 / 60.0 * (modulo(j, 60.0) + latitudeEven);
+    double latitude1 = 360.0 / 59.0 * (modulo(j, 59.0) + latitudeOdd);
+
+    if (latitude0 >= 270.0) {
+      latitude0 -= 360.0;
+    }
+
+    if (latitude1 >= 270.0) {
+      latitude1 -= 360.0;
+    }
+
+    final int zones = longitudeZones(latitude0);
+
+    if (zones != longitudeZones(latitude1) || Math.abs(latitude0) > 90.0) {
+      return null;
+    }
+
+    final double m = Math.floor(longitudeEven * (zones - 1) - longitudeOdd * zones + 0.5);
+    final int n = Math.max(oddLatest ? zones - 1 : zones, 1);
+
+    return new double[] {
+        oddLatest ? latitude1 : latitude0,
+        360.0 / n * (modulo(m, n) + (oddLatest ? longitudeOdd : longitudeEven))
+    };
+  }
+
+  // Decodes an even or odd CPR encoded position locally, relative to a reference position within
+  // half a latitude zone of it; returns an array holding the latitude then the longitude
+  //
+  static double[] localPosition(
+      int encodedLatitude,
+      int encodedLongitude,
+      boolean odd,
+      boolean surface,
+      double referenceLatitude,
+      double referenceLongitude) {
+    final double range = surface ? SURFACE_CPR_RANGE : AIRBORNE_CPR_RANGE;
+    final double fractionLatitude = (double) encodedLatitude / CPR_SCALE;
+    final double fractionLongitude = (double) encodedLongitude / CPR_SCALE;
+    final double latitudeZoneSize = range / (4 * CPR_LATITUDE_ZONES - (odd ? 1 : 0));
+    final double j = Math.floor(referenceLatitude / latitudeZoneSize)
+        + Math.floor(0.5 + modulo(referenceLatitude, latitudeZoneSize) / latitudeZoneSize
+            - fractionLatitude);
+    final double latitude = latitudeZoneSize * (j + fractionLatitude);
+    final double longitudeZoneSize =
+        range / Math.max(longitudeZones(latitude) - (odd ? 1 : 0), 1);
+    final double m = Math.floor(referenceLongitude / longitudeZoneSize)
+        + Math.floor(0.5 + modulo(referenceLongitude, longitudeZoneSize) / longitudeZoneSize
+            - fractionLongitude);
+
+    return new double[] {latitude, longitudeZoneSize * (m + fractionLongitude)};
+  }
+
+  private static boolean isEmergencySquawk(int squawk) {
+    return squawk == 7500 || squawk == 7600 || squawk == 7700;
+  }
+
+  // Decodes the movement field of a surface position, in knots, or returns NaN if unavailable
+  //
+  private static double surfaceSpeed(int movement) {
+    if (movement == 1) {
+      return 0.0;
+    } else if (movement >= 2 && movement <= 8) {
+      return 0.125 + (movement - 2) * 0.125;
+    } else if (movement >= 9 && movement <= 12) {
+      return 1.0 + (movement - 9) * 0.25;
+    } else if (movement >= 13 && movement <= 38) {
+      return 2.0 + (movement - 13) * 0.5;
+    } else if (movement >= 39 && movement <= 93) {
+      return 15.0 + (movement - 39);
+    } else if (movement >= 94 && movement <= 108) {
+      return 70.0 + (movement - 94) * 2.0;
+    } else if (movement >= 109 && movement <= 123) {
+      return 100.0 + (movement - 109) * 5.0;
+    } else if (movement == 124) {
+      return 175.0;
+    }
+
+    return Double.NaN;
+  }
+
+  private static String callSign(byte[] message, int offset) {
+    final char[] characters = new char[8];
+
+    for (int i = 0; i < characters.length; i++) {
+      characters[i] =
+          CALL_SIGN_CHARACTERS.charAt(bits(message, offset, 41 + 6 * i, 46 + 6 * i));
+    }
+
+    return DomainUtils.getValidatedCallSign(new String(characters));
+  }
+
+  /**
+   * Decodes a Mode S message.
+   *
+   * @param message an array holding the message, not null
+   * @param offset the offset of the first byte of the message
+   * @param length the length of the message in bytes, 7 or 14
+   * @param timestamp the instant at which the message was received, not null
+   *
+   * @return the message as a {@code TransmissionMessage}, or null if it is not of a supported type
+   * or cannot be decoded
+   */
+  synchronized TransmissionMessage decode(
+      byte[] message, int offset, int length, Instant timestamp) {
+    final int downlinkFormat = bits(message, offset, 1, 5);
+    final int expectedLength = downlinkFormat >= 16 ? LONG_MESSAGE_LENGTH : SHORT_MESSAGE_LENGTH;
+
+    if (length != expectedLength || offset + length > message.length) {
+      return null;
+    }
+
+    final long nowMillis = timestamp.toEpochMilli();
+    final int syndrome = parity(message, offset, length)
+        ^ bits(message, offset, length * 8 - 23, length * 8);
+
+    if (++decodeCount % SWEEP_INTERVAL == 0) {
+      aircraft.removeIf(state -> nowMillis - state.lastSeenMillis > AIRCRAFT_EXPIRY_MILLIS);
+    }
+
+    switch (downlinkFormat) {
+      case 11:
+        // The parity of an all-call reply may be overlaid with an interrogator identifier
+        //
+        return (syndrome & ~0x7f) == 0
+            ? decodeAllCallReply(message, offset, nowMillis, timestamp)
+            : null;
+      case 17:
+        return syndrome == 0 ? decodeExtendedSquitter(message, offset, nowMillis, timestamp) : null;
+      case 18:
+        // Only control field 0 carries an ICAO address
+        //
+        return syndrome == 0 && bits(message, offset, 6, 8) == 0
+            ? decodeExtendedSquitter(message, offset, nowMillis, timestamp)
+            : null;
+      case 0:
+      case 4:
+      case 5:
+      case 16:
+      case 20:
+      case 21:
+        return isKnownAircraft(syndrome, nowMillis)
+            ? decodeSurveillanceReply(downlinkFormat, syndrome, message, offset, timestamp)
+            : null;
+      default:
+        return null;
+    }
+  }
+
+  private boolean isKnownAircraft(int icaoAddress, long nowMillis) {
+    final AircraftState state = aircraft.get(icaoAddress);
+
+    return state != null && nowMillis - state.lastSeenMillis <= AIRCRAFT_EXPIRY_MILLIS;
+  }
+
+  private AircraftState seen(int icaoAddress, long nowMillis) {
+    AircraftState state = aircraft.get(icaoAddress);
+
+    if (state == null) {
+      state = new AircraftState();
+      aircraft.put(icaoAddress, state);
+    }
+
+    state.lastSeenMillis = nowMillis;
+
+    return state;
+  }
+
+  private TransmissionMessage.Builder builder(
+      TransmissionType transmissionType, int icaoAddress, Instant timestamp) {
+    return new TransmissionMessage.Builder(icaoAddress, timestamp)
+        .transmissionType(transmissionType);
+  }
+
+  private TransmissionMessage decodeAllCallReply(
+      byte[] message, int offset, long nowMillis, Instant timestamp) {
+    final int icaoAddress = bits(message, offset, 9, 32);
+    final int capability = bits(message, offset, 6, 8);
+    final TransmissionMessage.Builder builder =
+        builder(TransmissionType.ALL_CALL_REPLY, icaoAddress, timestamp);
+
+    seen(icaoAddress, nowMillis);
+
+    if (capability == 4 || capability == 5) {
+      builder.onGround(capability == 4);
+    }
+
+    return builder.build();
+  }
+
+  private TransmissionMessage decodeSurveillanceReply(
+      int downlinkFormat, int icaoAddress, byte[] message, int offset, Instant timestamp) {
+    final int field = bits(message, offset, 20, 32);
+
+    if (downlinkFormat == 0 || downlinkFormat == 16) {
+      final TransmissionMessage.Builder builder =
+          builder(TransmissionType.AIR_TO_AIR, icaoAddress, timestamp);
+      final int altitude = altitude13(field);
+
+      if (altitude != NO_ALTITUDE) {
+        builder.altitude(altitude);
+      }
+
+      return builder.onGround(bits(message, offset, 6, 6) != 0).build();
+    }
+
+    final TransmissionMessage.Builder builder;
+
+    if (downlinkFormat == 4 || downlinkFormat == 20) {
+      final int altitude = altitude13(field);
+
+      builder = builder(TransmissionType.SURVEILLANCE_ALTITUDE, icaoAddress, timestamp);
+
+      if (altitude != NO_ALTITUDE) {
+        builder.altitude(altitude);
+      }
+    } else {
+      final int squawk = squawk(field);
+
+      builder = builder(TransmissionType.SURVEILLANCE_ID, icaoAddress, timestamp)
+          .squawk((short) squawk)
+          .emergency(isEmergencySquawk(squawk));
+    }
+
+    // Flight status: 0 and 2 are airborne, 1 and 3 on the ground, 2 to 4 alert and 4 and 5 SPI
+    //
+    final int flightStatus = bits(message, offset, 6, 8);
+
+    if (flightStatus <= 5) {
+      builder.alert(flightStatus >= 2 && flightStatus <= 4)
+          .identActive(flightStatus >= 4);
+
+      if (flightStatus <= 3) {
+        builder.onGround((flightStatus & 1) != 0);
+      }
+    }
+
+    return builder.build();
+  }
+
+  private TransmissionMessage decodeExtendedSquitter(
+      byte[] message, int offset, long nowMillis, Instant timestamp) {
+    final int icaoAddress = bits(message, offset, 9, 32);
+    final int typeCode = bits(message, offset, 33, 37);
+    final AircraftState state = seen(icaoAddress, nowMillis);
+
+    if (typeCode >= 1 && typeCode <= 4) {
+      final TransmissionMessage.Builder builder =
+          builder(TransmissionType.IDENTIFICATION_AND_CATEGORY, icaoAddress, timestamp);
+
+      builder.callSign(callSign(message, offset));
+
+      return builder.build();
+    } else if (typeCode >= 5 && typeCode <= 8) {
+      final TransmissionMessage.Builder builder =
+          builder(TransmissionType.SURFACE_POSITION, icaoAddress, timestamp).onGround(true);
+      final double speed = surfaceSpeed(bits(message, offset, 38, 44));
+
+      if (!Double.isNaN(speed)) {
+        builder.groundSpeed((float) speed);
+      }
+
+      if (bits(message, offset, 45, 45) != 0) {
+        builder.track(bits(message, offset, 46, 52) * 360.0f / 128.0f);
+      }
+
+      return builder.position(position(state, message, offset, true, nowMillis)).build();
+    } else if (typeCode >= 9 && typeCode <= 18 || typeCode >= 20 && typeCode <= 22) {
+      return decodeAirbornePosition(state, message, offset, nowMillis, timestamp, icaoAddress);
+    } else if (typeCode == 19) {
+      return decodeAirborneVelocity(message, offset, icaoAddress, timestamp);
+    }
+
+    return null;
+  }
+
+  private TransmissionMessage decodeAirbornePosition(
+      AircraftState state,
+      byte[] message,
+      int offset,
+      long nowMillis,
+      Instant timestamp,
+      int icaoAddress) {
+    final TransmissionMessage.Builder builder =
+        builder(TransmissionType.AIRBORNE_POSITION, icaoAddress, timestamp).onGround(false);
+    final int altitude = altitude12(bits(message, offset, 41, 52));
+    final int surveillanceStatus = bits(message, offset, 38, 39);
+
+    if (altitude != NO_ALTITUDE) {
+      builder.altitude(altitude);
+    }
+
+    builder.emergency(surveillanceStatus == 1)
+        .alert(surveillanceStatus == 2)
+        .identActive(surveillanceStatus == 3);
+
+    return builder.position(position(state, message, offset, false, nowMillis)).build();
+  }
+
+  private Point<G2D> position(
+      AircraftState state, byte[] message, int offset, boolean surface, long nowMillis) {
+    final boolean odd = bits(message, offset, 54, 54) != 0;
+    final int latitude = bits(message, offset, 55, 71);
+    final int longitude = bits(message, offset, 72, 88);
+    double[] position = null;
+
+    if (!surface) {
+      if (odd) {
+        state.oddLatitude = latitude;
+        state.oddLongitude = longitude;
+        state.oddMillis = nowMillis;
+      } else {
+        state.evenLatitude = latitude;
+        state.evenLongitude = longitude;
+        state.evenMillis = nowMillis;
+      }
+
+      if (state.evenMillis != 0L
+          && state.oddMillis != 0L
+          && Math.abs(state.evenMillis - state.oddMillis) <= CPR_PAIR_MILLIS) {
+        position = globalPosition(
+            state.evenLatitude, state.evenLongitude, state.oddLatitude, state.oddLongitude, odd);
+      }
+    }
+
+    if (position == null) {
+      if (state.positionMillis != 0L && nowMillis - state.positionMillis <= REFERENCE_MILLIS) {
+        position = localPosition(
+            latitude, longitude, odd, surface, state.latitude, state.longitude);
+      } else if (!Double.isNaN(referenceLatitude)) {
+        position = localPosition(
+            latitude, longitude, odd, surface, referenceLatitude, referenceLongitude);
+      } else {
+        return null;
+      }
+    }
+
+    if (position[0] < -90.0 || position[0] > 90.0) {
+      return null;
+    }
+
+    if (position[1] >= 180.0) {
+      position[1] -= 360.0;
+    } else if (position[1] < -180.0) {
+      position[1] += 360.0;
+    }
+
+    state.latitude = position[0];
+    state.longitude = position[1];
+    state.positionMillis = nowMillis;
+
+    return new Point<>(new G2D(position[1], position[0]), COORDINATE_REFERENCE_SYSTEM);
+  }
+
+  private TransmissionMessage decodeAirborneVelocity(
+      byte[] message, int offset, int icaoAddress, Instant timestamp) {
+    final TransmissionMessage.Builder builder =
+        builder(TransmissionType.AIRBORNE_VELOCITY, icaoAddress, timestamp);
+    final int subtype = bits(message, offset, 38, 40);
+
+    if (subtype == 1 || subtype == 2) {
+      final int eastWest = bits(message, offset, 47, 56);
+      final int northSouth = bits(message, offset, 58, 67);
+
+      if (eastWest != 0 && northSouth != 0) {
+        final int scale = subtype == 2 ? 4 : 1;
+        final int east = (eastWest - 1) * scale * (bits(message, offset, 46, 46) != 0 ? -1 : 1);
+        final int north =
+            (northSouth - 1) * scale * (bits(message, offset, 57, 57) != 0 ? -1 : 1);
+        final double track = Math.toDegrees(Math.atan2(east, north));
+
+        builder.groundSpeed((float) Math.hypot(east, north))
+            .track((float) (track < 0.0 ? track + 360.0 : track));
+      }
+    } else if (subtype != 3 && subtype != 4) {
+      return null;
+    }
+
+    final int verticalRate = bits(message, offset, 70, 78);
+
+    if (verticalRate != 0) {
+      builder.verticalRate(
+          (short) ((verticalRate - 1) * 64 * (bits(message, offset, 69, 69) != 0 ? -1 : 1)));
+    }
+
+    return builder.build();
+  }
+
+  private static final class AircraftState {
+    private long lastSeenMillis;
+    private int evenLatitude;
+    private int evenLongitude;
+    private long evenMillis;
+    private int oddLatitude;
+    private int oddLongitude;
+    private long oddMillis;
+    private double latitude;
+    private double longitude;
+    private long positionMillis;
+  }
+}
@@ -0,0 +1,479 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.integration.endpoint.MessageProducerSupport;
+import org.springframework.messaging.support.MessageBuilder;
+
+/**
+ * A message producer that reads the BaseStation message feeds of many receivers, multiplexing
+ * non-blocking connections to them on a small pool of selector threads rather than using a thread
+ * per connection.
+ *
+ * <p>Each line read from a feed is sent as a message with a {@code byte[]} payload, just as
+ * messages are received from a single feed, and with a {@link #FEED_ID_HEADER} header holding the
+ * id of the receiver from which it was read. A connection that fails or is closed by its receiver
+ * is retried after a fixed interval for as long as its feed is started.
+ *
+ * <p>Messages are sent on selector threads, so a flow that blocks its producers while its queues
+ * are full blocks reading from all the feeds handled by a selector thread, which in turn lets TCP
+ * flow control slow the receivers. A message that fails downstream is counted against its feed
+ * and dropped, leaving the connection to the feed open.
+ */
+public class MultiFeedMessageProducer extends MessageProducerSupport {
+  /**
+   * The name of the header holding the id of the receiver from which a message was read.
+   */
+  public static final String FEED_ID_HEADER = "basestation_feedId";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MultiFeedMessageProducer.class);
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+  private static final long SELECT_TIMEOUT_MILLIS = 500L;
+
+  private final Map<String, Feed> feeds = new LinkedHashMap<>();
+  private final List<SelectorLoop> selectorLoops = new ArrayList<>();
+  private final long reconnectIntervalMillis;
+
+  /**
+   * Creates a producer that reads the feeds of a number of receivers.
+   *
+   * @param receivers the addresses of the receivers' feeds, keyed by receiver id, not null
+   * @param selectorCount the number of selector threads across which feeds are spread
+   * @param reconnectIntervalMillis the number of milliseconds to wait before retrying a connection
+   * that fails or is closed
+   */
+  public MultiFeedMessageProducer(
+      Map<String, InetSocketAddress> receivers, int selectorCount, long reconnectIntervalMillis) {
+    this.reconnectIntervalMillis = reconnectIntervalMillis;
+
+    final int loopCount = Math.max(1, Math.min(selectorCount, receivers.size()));
+
+    for (int i = 0; i < loopCount; i++) {
+      selectorLoops.add(new SelectorLoop("feed-selector-" + i));
+    }
+
+    for (Map.Entry<String, InetSocketAddress> receiver : receivers.entrySet()) {
+      final SelectorLoop selectorLoop = selectorLoops.get(feeds.size() % loopCount);
+      final Feed feed = new Feed(receiver.getKey(), receiver.getValue(), selectorLoop);
+
+      feeds.put(feed.id, feed);
+      selectorLoop.feeds.add(feed);
+    }
+  }
+
+  private Feed getFeed(String feedId) {
+    final Feed feed = feeds.get(feedId);
+
+    if (feed == null) {
+      throw new IllegalArgumentException("Unknown feed: " + feedId);
+    }
+
+    return feed;
+  }
+
+  @Override
+  public String getComponentType() {
+    return "basestation:multi-feed-inbound-channel-adapter";
+  }
+
+  @Override
+  protected void doStart() {
+    for (SelectorLoop selectorLoop : selectorLoops) {
+      selectorLoop.start();
+    }
+  }
+
+  @Override
+  protected void doStop() {
+    for (SelectorLoop selectorLoop : selectorLoops) {
+      selectorLoop.stop();
+    }
+  }
+
+  /**
+   * Gets the ids of the receivers whose feeds are read by this producer.
+   *
+   * @return the ids of the receivers whose feeds are read by this producer, in configured order
+   */
+  public List<String> getFeedIds() {
+    return Collections.unmodifiableList(new ArrayList<>(feeds.keySet()));
+  }
+
+  /**
+   * Gets whether or not the connection to a receiver's feed is currently established.
+   *
+   * @param feedId the id of a receiver
+   *
+   * @return whether or not the connection to the receiver's feed is currently established
+   *
+   * @throws IllegalArgumentException if there is no receiver with the given id
+   */
+  public boolean isFeedRunning(String feedId) {
+    return getFeed(feedId).connected;
+  }
+
+  /**
+   * Gets the number of messages read from a receiver's feed since application startup.
+   *
+   * @param feedId the id of a receiver
+   *
+   * @return the number of messages read from the receiver's feed since application startup
+   *
+   * @throws IllegalArgumentException if there is no receiver with the given id
+   */
+  public long getFeedMessageCount(String feedId) {
+    return getFeed(feedId).messageCount.get();
+  }
+
+  /**
+   * Gets the number of messages read from a receiver's feed since application startup that could
+   * not be sent because of a failure downstream.
+   *
+   * @param feedId the id of a receiver
+   *
+   * @return the number of messages read from the receiver's feed that could not be sent
+   *
+   * @throws IllegalArgumentException if there is no receiver with the given id
+   */
+  public long getFeedFailedMessageCount(String feedId) {
+    return getFeed(feedId).failedMessageCount.get();
+  }
+
+  /**
+   * Gets the number of receivers whose feeds are currently connected.
+   *
+   * @return the number of receivers whose feeds are currently connected
+   */
+  public int getConnectedFeedCount() {
+    int connectedFeedCount = 0;
+
+    for (Feed feed : feeds.values()) {
+      if (feed.connected) {
+        connectedFeedCount++;
+      }
+    }
+
+    return connectedFeedCount;
+  }
+
+  /**
+   * Requests connection to the feeds of all receivers, while this producer is running.
+   */
+  public void startFeeds() {
+    feeds.keySet().forEach(this::startFeed);
+  }
+
+  /**
+   * Requests connection to a receiver's feed, while this producer is running.
+   *
+   * <p>Has no effect if the feed is already started.
+   *
+   * @param feedId the id of a receiver
+   *
+   * @throws IllegalArgumentException if there is no receiver with the given id
+   */
+  public void startFeed(String feedId) {
+    final Feed feed = getFeed(feedId);
+
+    feed.started = true;
+    feed.reconnectAtMillis = 0L;
+    feed.selectorLoop.wakeup();
+  }
+
+  /**
+   * Requests disconnection from a receiver's feed.
+   *
+   * <p>Has no effect if the feed is already stopped.
+   *
+   * @param feedId the id of a receiver
+   *
+   * @throws IllegalArgumentException if there is no receiver with the given id
+   */
+  public void stopFeed(String feedId) {
+    final Feed feed = getFeed(feedId);
+
+    feed.started = false;
+    feed.selectorLoop.submit(() -> feed.selectorLoop.disconnect(feed, null));
+  }
+
+  private static final class Feed {
+    private final String id;
+    private final InetSocketAddress address;
+    private final SelectorLoop selectorLoop;
+    private final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final AtomicLong messageCount = new AtomicLong();
+    private final AtomicLong failedMessageCount = new AtomicLong();
+    private volatile boolean started;
+    private volatile boolean connected;
+    private volatile long reconnectAtMillis;
+    private SocketChannel channel;
+    private long failureStreak;
+
+    private Feed(String id, InetSocketAddress address, SelectorLoop selectorLoop) {
+      this.id = id;
+      this.address = address;
+      this.selectorLoop = selectorLoop;
+    }
+  }
+
+  private final class SelectorLoop implements Runnable {
+    private final String name;
+    private final List<Feed> feeds = new ArrayList<>();
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running;
+    private volatile Selector selector;
+    private Thread thread;
+
+    private SelectorLoop(String name) {
+      this.name = name;
+    }
+
+    private void start() {
+      try {
+        selector = Selector.open();
+      } catch (IOException e) {
+        throw new IllegalStateException("Failed to open selector", e);
+      }
+
+      running = true;
+      thread = new Thread(this, name);
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    private void stop() {
+      running = false;
+      wakeup();
+
+      if (thread != null && thread != Thread.currentThread()) {
+        try {
+          thread.join(TimeUnit.SECONDS.toMillis(5L));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    private void submit(Runnable task) {
+      tasks.add(task);
+      wakeup();
+    }
+
+    private void wakeup() {
+      final Selector currentSelector = selector;
+
+      if (currentSelector != null) {
+        currentSelector.wakeup();
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (running) {
+          selector.select(SELECT_TIMEOUT_MILLIS);
+
+          Runnable task;
+
+          while ((task = tasks.poll()) != null) {
+            task.run();
+          }
+
+          final Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+
+          while (selectedKeys.hasNext()) {
+            final SelectionKey key = selectedKeys.next();
+            final Feed feed = (Feed) key.attachment();
+
+            selectedKeys.remove();
+
+            try {
+              if (key.isConnectable()) {
+                finishConnect(feed, key);
+              } else if (key.isReadable()) {
+                read(feed);
+              }
+            } catch (IOException | RuntimeException e) {
+              disconnect(feed, e);
+            }
+          }
+
+          final long now = System.currentTimeMillis();
+
+          for (Feed feed : feeds) {
+            if (feed.started && feed.channel == null && now >= feed.reconnectAtMillis) {
+              connect(feed);
+            }
+          }
+        }
+      } catch (IOException e) {
+        LOGGER.error("Selector {} failed: {}", name, e.getMessage());
+      } finally {
+        feeds.forEach(feed -> disconnect(feed, null));
+
+        try {
+          selector.close();
+        } catch (IOException e) {
+          LOGGER.debug("Failed to close selector {}: {}", name, e.getMessage());
+        }
+      }
+    }
+
+    private void connect(Feed feed) {
+      LOGGER.debug("Connecting to feed '{}' at {}", feed.id, feed.address);
+
+      try {
+        feed.channel = SocketChannel.open();
+        feed.channel.configureBlocking(false);
+        feed.channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+
+        final InetSocketAddress address =
+            new InetSocketAddress(feed.address.getHostString(), feed.address.getPort());
+
+        if (feed.channel.connect(address)) {
+          feed.channel.register(selector, SelectionKey.OP_READ, feed);
+          connected(feed);
+        } else {
+          feed.channel.register(selector, SelectionKey.OP_CONNECT, feed);
+        }
+      } catch (IOException | RuntimeException e) {
+        disconnect(feed, e);
+      }
+    }
+
+    private void finishConnect(Feed feed, SelectionKey key) throws IOException {
+      if (feed.channel.finishConnect()) {
+        key.interestOps(SelectionKey.OP_READ);
+        connected(feed);
+      }
+    }
+
+    private void connected(Feed feed) {
+      LOGGER.info("Connected to feed '{}' at {}", feed.id, feed.address);
+      feed.buffer.clear();
+      feed.connected = true;
+    }
+
+    private void disconnect(Feed feed, Exception cause) {
+      if (feed.channel == null) {
+        return;
+      }
+
+      try {
+        feed.channel.close();
+      } catch (IOException e) {
+        LOGGER.debug("Failed to close feed '{}': {}", feed.id, e.getMessage());
+      }
+
+      if (cause == null) {
+        LOGGER.info("Disconnected from feed '{}'", feed.id);
+      } else if (feed.connected) {
+        LOGGER.warn("Lost connection to feed '{}': {}", feed.id, cause.getMessage());
+      } else {
+        LOGGER.debug("Failed to connect to feed '{}': {}", feed.id, cause.getMessage());
+      }
+
+      feed.channel = null;
+      feed.connected = false;
+      feed.reconnectAtMillis = System.currentTimeMillis() + reconnectIntervalMillis;
+    }
+
+    // Sends a line read from a feed, so that a failure downstream loses only that line rather than
+    // the connection to the feed. Only the first failure of a run is logged as a warning, so that
+    // the log is not flooded at the rate of the feed while the failure lasts.
+    //
+    private void send(Feed feed, byte[] line) {
+      try {
+        sendMessage(MessageBuilder.withPayload(line).setHeader(FEED_ID_HEADER, feed.id).build());
+        feed.messageCount.incrementAndGet();
+
+        if (feed.failureStreak > 0) {
+          LOGGER.info("Resumed sending messages from feed '{}' after {} failed",
+              feed.id, feed.failureStreak);
+          feed.failureStreak = 0;
+        }
+      } catch (RuntimeException e) {
+        feed.failedMessageCount.incrementAndGet();
+
+        if (feed.failureStreak++ == 0) {
+          LOGGER.warn("Failed to send message from feed '{}': {}", feed.id, e.getMessage());
+        }
+
+        LOGGER.debug("Failed to send message from feed '{}'", feed.id, e);
+      }
+    }
+
+    private void read(Feed feed) throws IOException {
+      final ByteBuffer buffer = feed.buffer;
+
+      if (feed.channel.read(buffer) < 0) {
+        throw new EOFException("Connection closed by receiver");
+      }
+
+      buffer.flip();
+
+      int lineStart = buffer.position();
+
+      for (int i = lineStart; i < buffer.limit(); i++) {
+        if (buffer.get(i) == '\n') {
+          final int lineEnd = i > lineStart && buffer.get(i - 1) == '\r' ? i - 1 : i;
+
+          if (lineEnd > lineStart) {
+            final byte[] line = new byte[lineEnd - lineStart];
+
+            buffer.position(lineStart);
+            buffer.get(line);
+            send(feed, line);
+          }
+
+          lineStart = i + 1;
+        }
+      }
+
+      buffer.position(lineStart);
+      buffer.compact();
+
+      if (!buffer.hasRemaining()) {
+        LOGGER.warn(
+            "Discarding {} bytes without a line terminator from feed '{}'",
+            buffer.position(),
+            feed.id);
+        buffer.clear();
+      }
+    }
+  }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedOperationParameter;
+import org.springframework.jmx.export.annotation.ManagedOperationParameters;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+/**
+ * A service that connects to the BaseStation message feeds of many receivers, as an alternative
+ * or in addition to the single feed connected to by {@link MessageProducerService}.
+ *
+ * <p>Receivers are listed by the {@code basestation.feeds} property as comma-separated entries of
+ * the form {@code id=host[:port]}, the port defaulting to 30003. No feeds are read if the property
+ * is undefined. Connections are spread across {@code basestation.feeds.selectors} selector
+ * threads, so that one instance of the application can read dozens of feeds.
+ */
+@Service
+@ManagedResource(
+    objectName = "org.codebrewer.dump1090processor:type=Control,name=MultiFeedService",
+    description = "A service that connects to the BaseStation message feeds of many receivers")
+public class MultiFeedService {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MultiFeedService.class);
+  private static final int DEFAULT_PORT = 30003;
+
+  private final MultiFeedMessageProducer messageProducer;
+
+  /**
+   * Sole constructor for this class.
+   *
+   * @param receivers the receivers whose feeds are read, as comma-separated entries of the form
+   * {@code id=host[:port]}, or an empty string if there are none
+   * @param selectorCount the number of selector threads across which feeds are spread
+   * @param reconnectIntervalMillis the number of milliseconds to wait before retrying a connection
+   * that fails or is closed
+   * @param autoStart whether or not to connect to the feeds at startup, which has no effect if
+   * there are no receivers
+   *
+   * @throws IllegalArgumentException if the receivers are not listed in the expected form
+   */
+  public MultiFeedService(
+      @Value("${basestation.feeds:}") String receivers,
+      @Value("${basestation.feeds.selectors:2}") int selectorCount,
+      @Value("${basestation.feeds.reconnect.interval:5000}") long reconnectIntervalMillis,
+      @Value("${basestation.feeds.start.auto:true}") boolean autoStart) {
+    final Map<String, InetSocketAddress> receiverAddresses = parseReceivers(receivers);
+
+    LOGGER.info(
+        "MultiFeedService: {}, {} selectors, auto-start: {}",
+        receiverAddresses, selectorCount, autoStart);
+
+    messageProducer = new MultiFeedMessageProducer(
+        receiverAddresses, selectorCount, reconnectIntervalMillis);
+    messageProducer.setAutoStartup(autoStart && !receiverAddresses.isEmpty());
+
+    if (autoStart) {
+      messageProducer.startFeeds();
+    }
+  }
+
+  /**
+   * Parses a list of receivers.
+   *
+   * @param receivers comma-separated entries of the form {@code id=host[:port]}, not null
+   *
+   * @return the unresolved addresses of the receivers' feeds, keyed by receiver id, in the order
+   * listed
+   *
+   * @throws IllegalArgumentException if an entry is not of the expected form or an id is repeated
+   */
+  static Map<String, InetSocketAddress> parseReceivers(String receivers) {
+    final Map<String, InetSocketAddress> receiverAddresses = new LinkedHashMap<>();
+
+    for (String receiver : StringUtils.commaDelimitedListToStringArray(receivers)) {
+      final String trimmedReceiver = receiver.trim();
+
+      if (trimmedReceiver.isEmpty()) {
+        continue;
+      }
+
+      final int equalsPosition = trimmedReceiver.indexOf('=');
+      final int colonPosition = trimmedReceiver.lastIndexOf(':');
+
+      if (equalsPosition <= 0 || equalsPosition == trimmedReceiver.length() - 1) {
+        throw new IllegalArgumentException(
+            String.format("Expected receiver of the form id=host[:port] but found '%s'", receiver));
+      }
+
+      final String id = trimmedReceiver.substring(0, equalsPosition).trim();
+      final String host;
+      final int port;
+
+      try {
+        if (colonPosition > equalsPosition) {
+          host = trimmedReceiver.substring(equalsPosition + 1, colonPosition).trim();
+          port = Integer.parseInt(trimmedReceiver.substring(colonPosition + 1).trim());
+        } else {
+          host = trimmedReceiver.substring(equalsPosition + 1).trim();
+          port = DEFAULT_PORT;
+        }
+
+        if (receiverAddresses.put(id, InetSocketAddress.createUnresolved(host, port)) != null) {
+          throw new IllegalArgumentException(String.format("Repeated receiver id '%s'", id));
+        }
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException(
+            String.format("Invalid port for receiver '%s'", receiver), e);
+      }
+    }
+
+    return receiverAddresses;
+  }
+
+  public MultiFeedMessageProducer multiFeedMessageClient() {
+    return messageProducer;
+  }
+
+  /**
+   * Gets the ids of the receivers whose feeds are read.
+   *
+   * @return the ids of the receivers whose feeds are read
+   */
+  @ManagedAttribute(description = "The ids of the receivers whose feeds are read")
+  public List<String> getFeedIds() {
+    return messageProducer.getFeedIds();
+  }
+
+  /**
+   * Gets the number of receivers whose feeds are currently connected.
+   *
+   * @return the number of receivers whose feeds are currently connected
+   */
+  @ManagedAttribute(description = "The number of receivers whose feeds are currently connected")
+  public int getConnectedFeedCount() {
+    return messageProducer.getConnectedFeedCount();
+  }
+
+  /**
+   * Gets whether or not the connection to a receiver's feed is currently established.
+   *
+   * @param feedId the id of a receiver
+   *
+   * @return whether or not the connection to the receiver's feed is currently established
+   */
+  @ManagedOperation(
+      description = "Whether or not the connection to a receiver's feed is currently established")
+  @ManagedOperationParameters(
+      @ManagedOperationParameter(name = "feedId", description = "The id of a receiver"))
+  public boolean isFeedRunning(String feedId) {
+    return messageProducer.isFeedRunning(feedId);
+  }
+
+  /**
+   * Gets the number of messages read from a receiver's feed since application startup.
+   *
+   * @param feedId the id of a receiver
+   *
+   * @return the number of messages read from the receiver's feed since application startup
+   */
+  @ManagedOperation(description = "The number of messages read from a receiver's feed")
+  @ManagedOperationParameters(
+      @ManagedOperationParameter(name = "feedId", description = "The id of a receiver"))
+  public long getFeedMessageCount(String feedId) {
+    return messageProducer.getFeedMessageCount(feedId);
+  }
+
+  /**
+   * Gets the number of messages read from a receiver's feed since application startup that could
+   * not be sent because of a failure downstream.
+   *
+   * @param feedId the id of a receiver
+   *
+   * @return the number of messages read from the receiver's feed that could not be sent
+   */
+  @ManagedOperation(
+      description = "The number of messages read from a receiver's feed that could not be sent")
+  @ManagedOperationParameters(
+      @ManagedOperationParameter(name = "feedId", description = "The id of a receiver"))
+  public long getFeedFailedMessageCount(String feedId) {
+    return messageProducer.getFeedFailedMessageCount(feedId);
+  }
+
+  /**
+   * Requests connection to a receiver's feed.
+   *
+   * <p>Has no effect if already started.
+   *
+   * @param feedId the id of a receiver
+   */
+  @ManagedOperation(description = "Connect to a receiver's feed and start reading messages")
+  @ManagedOperationParameters(
+      @ManagedOperationParameter(name = "feedId", description = "The id of a receiver"))
+  public void startFeed(String feedId) {
+    LOGGER.info("'Start' requested for BaseStation message feed '{}'", feedId);
+    messageProducer.startFeed(feedId);
+
+    if (!messageProducer.isRunning()) {
+      messageProducer.start();
+    }
+  }
+
+  /**
+   * Requests disconnection from a receiver's feed.
+   *
+   * <p>Has no effect if already stopped.
+   *
+   * @param feedId the id of a receiver
+   */
+  @ManagedOperation(description = "Stop reading messages and disconnect from a receiver's feed")
+  @ManagedOperationParameters(
+      @ManagedOperationParameter(name = "feedId", description = "The id of a receiver"))
+  public void stopFeed(String feedId) {
+    LOGGER.info("'Stop' requested for BaseStation message feed '{}'", feedId);
+    messageProducer.stopFeed(feedId);
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.codebrewer.dump1090processor.basestation.domain.MessageType;
+import org.codebrewer.dump1090processor.basestation.domain.TransmissionType;
+import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
+import org.codebrewer.dump1090processor.basestation.entity.IdMessage;
+import org.codebrewer.dump1090processor.basestation.entity.NewAircraftMessage;
+import org.codebrewer.dump1090processor.basestation.entity.StatusMessage;
+import org.codebrewer.dump1090processor.basestation.entity.TransmissionMessage;
+import org.springframework.stereotype.Component;
+
+/**
+ * Micrometer meters for the stages of BaseStation message processing, exported through the
+ * {@code /actuator/metrics} and {@code /actuator/prometheus} endpoints.
+ *
+ * <p>The time taken by each {@link Stage} is recorded by a timer named {@value #STAGE_TIMER_NAME}
+ * tagged with the stage, publishing a percentile histogram for aggregation by Prometheus and the
+ * 50th, 95th and 99th percentiles computed in the application. Messages consumed are counted by a
+ * counter named {@value #MESSAGE_COUNTER_NAME} tagged with their message type and, for
+ * transmission messages, their transmission type, from which message rates can be derived.
+ */
+@Component
+public class PipelineMetrics {
+  public static final String STAGE_TIMER_NAME = "basestation.pipeline.stage";
+  public static final String MESSAGE_COUNTER_NAME = "basestation.pipeline.messages";
+
+  private static final String NO_TRANSMISSION_TYPE = "NONE";
+  private static final TransmissionType[] TRANSMISSION_TYPES = TransmissionType.values();
+
+  /**
+   * The timed stages of BaseStation message processing.
+   */
+  public enum Stage {
+    /**
+     * Handing a message read from the BaseStation message feed off to the parsing stage, on the
+     * thread reading the feed.
+     */
+    READ,
+
+    /**
+     * Parsing a message into a {@link BaseStationMessage}.
+     */
+    PARSE,
+
+    /**
+     * Filtering out a message heard by more than one receiver.
+     */
+    FILTER,
+
+    /**
+     * Writing a batch of messages to the database.
+     */
+    PERSIST,
+
+    /**
+     * Applying a message to the in-memory state of aircraft.
+     */
+    AIRCRAFT_UPDATE
+  }
+
+  private final MeterRegistry meterRegistry;
+  private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+  private final Counter[][] messageCounters;
+
+  /**
+   * Sole constructor for this class.
+   *
+   * @param meterRegistry the registry in which meters are registered
+   */
+  public PipelineMetrics(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+
+    for (Stage stage : Stage.values()) {
+      stageTimers.put(
+          stage,
+          Timer.builder(STAGE_TIMER_NAME)
+               .description("The time taken by a stage of BaseStation message processing")
+               .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+               .publishPercentileHistogram()
+               .publishPercentiles(0.5, 0.95, 0.99)
+               .register(meterRegistry));
+    }
+
+    messageCounters = new Counter[MessageType.values().length][TRANSMISSION_TYPES.length + 1];
+  }
+
+  private static MessageType messageTypeOf(BaseStationMessage baseStationMessage) {
+    if (baseStationMessage instanceof TransmissionMessage) {
+      return MessageType.MSG;
+    } else if (baseStationMessage instanceof IdMessage) {
+      return MessageType.ID;
+    } else if (baseStationMessage instanceof StatusMessage) {
+      return MessageType.STA;
+    } else if (baseStationMessage instanceof NewAircraftMessage) {
+      return MessageType.AIR;
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Gets the timer recording the time taken by a stage.
+   *
+   * @param stage a stage of message processing, not null
+   *
+   * @return the timer recording the time taken by the stage
+   */
+  public Timer getStageTimer(Stage stage) {
+    return stageTimers.get(stage);
+  }
+
+  /**
+   * Records the time taken by a stage.
+   *
+   * @param stage a stage of message processing, not null
+   * @param startNanos the value of {@link System#nanoTime()} when the stage started
+   */
+  public void recordStage(Stage stage, long startNanos) {
+    stageTimers.get(stage).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Counts a consumed message by its message type and transmission type.
+   *
+   * @param baseStationMessage a consumed message, not null
+   */
+  public void countMessage(BaseStationMessage baseStationMessage) {
+    final MessageType messageType = messageTypeOf(baseStationMessage);
+
+    if (messageType == null) {
+      return;
+    }
+
+    final TransmissionType transmissionType = baseStationMessage instanceof TransmissionMessage
+        ? ((TransmissionMessage) baseStationMessage).getTransmissionType()
+        : null;
+    final int transmissionIndex = transmissionType == null ? 0 : transmissionType.ordinal() + 1;
+    Counter counter = messageCounters[messageType.ordinal()][transmissionIndex];
+
+    // Registering the same counter twice returns the one registered first, so a race here is benign
+    //
+    if (counter == null) {
+      counter = Counter.builder(MESSAGE_COUNTER_NAME)
+                       .description("The number of BaseStation messages consumed")
+                       .tag("type", messageType.name())
+                       .tag(
+                           "transmission",
+                           transmissionType == null ? NO_TRANSMISSION_TYPE : transmissionType.name())
+                       .register(meterRegistry);
+      messageCounters[messageType.ordinal()][transmissionIndex] = counter;
+    }
+
+    counter.increment();
+  }
+}
@@ -0,0 +1,428 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import io.micrometer.core.instrument.Timer;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.integration.ip.tcp.TcpReceivingChannelAdapter;
+import org.springframework.integration.ip.tcp.connection.AbstractClientConnectionFactory;
+import org.springframework.integration.ip.tcp.connection.AbstractConnectionFactory;
+import org.springframework.integration.ip.tcp.connection.TcpConnection;
+import org.springframework.integration.ip.tcp.connection.TcpNetClientConnectionFactory;
+import org.springframework.integration.ip.tcp.connection.TcpNetConnection;
+import org.springframework.messaging.Message;
+
+/**
+ * A {@link TcpReceivingChannelAdapter} whose connection to a feed is kept open by a supervisor,
+ * rather than being retried at a fixed interval as in client mode.
+ *
+ * <p>While the adapter is running, a dedicated supervisor thread connects to the feed and watches
+ * the connection. When a connection attempt fails or the connection is closed, the next attempt
+ * is made after an exponentially increasing delay, reduced by a random fraction so that the
+ * supervisors of many feeds interrupted together do not reconnect in step. When no bytes are
+ * read from an open connection for the stall timeout, the connection is closed and reopened.
+ * Since each feed has its own supervisor and reader threads, a feed that cannot be reached never
+ * delays the processing of another.
+ *
+ * <p>Bytes are only timed on connections made by a {@link TcpNetClientConnectionFactory}, whose
+ * connection support is replaced when it is given to the adapter.
+ */
+public class SupervisedTcpReceivingChannelAdapter extends TcpReceivingChannelAdapter {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(SupervisedTcpReceivingChannelAdapter.class);
+  private static final long MAXIMUM_CHECK_INTERVAL_MILLIS = 1000L;
+
+  /**
+   * The states through which the connection to a feed passes.
+   */
+  public enum FeedState {
+    /**
+     * The adapter is not running.
+     */
+    STOPPED,
+
+    /**
+     * A connection attempt is in progress.
+     */
+    CONNECTING,
+
+    /**
+     * The connection is open and bytes are being read.
+     */
+    CONNECTED,
+
+    /**
+     * The connection is open but no bytes have been read within the stall timeout, so it is
+     * being closed.
+     */
+    STALLED,
+
+    /**
+     * The connection attempt failed or the connection was closed, and the next attempt is
+     * waiting for its delay to pass.
+     */
+    BACKOFF
+  }
+
+  private final long initialDelayMillis;
+  private final long maximumDelayMillis;
+  private final double multiplier;
+  private final double jitter;
+  private final long stallTimeoutMillis;
+  private final AtomicLong connectAttemptCount = new AtomicLong();
+  private volatile FeedState state = FeedState.STOPPED;
+  private volatile long connectedMillis;
+  private volatile long lastByteMillis;
+  private volatile Thread supervisor;
+  private volatile Timer readTimer;
+
+  /**
+   * Sole constructor for this class.
+   *
+   * @param initialDelayMillis the number of milliseconds to wait before the first reconnection
+   * attempt, greater than zero
+   * @param maximumDelayMillis the maximum number of milliseconds to wait before a reconnection
+   * attempt, not less than the initial delay
+   * @param multiplier the factor by which the delay grows after each failed attempt, not less than
+   * one
+   * @param jitter the largest fraction by which each delay is randomly reduced, from zero to one
+   * @param stallTimeoutMillis the number of milliseconds without reading a byte after which an
+   * open connection is reopened, or zero to never reopen a connection
+   *
+   * @throws IllegalArgumentException if any argument is out of range
+   */
+  public SupervisedTcpReceivingChannelAdapter(
+      long initialDelayMillis,
+      long maximumDelayMillis,
+      double multiplier,
+      double jitter,
+      long stallTimeoutMillis) {
+    if (initialDelayMillis <= 0L || maximumDelayMillis < initialDelayMillis) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Invalid reconnection delays: %dms to %dms", initialDelayMillis, maximumDelayMillis));
+    }
+
+    if (multiplier < 1.0 || jitter < 0.0 || jitter > 1.0 || stallTimeoutMillis < 0L) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Invalid reconnection multiplier %s, jitter %s or stall timeout %dms",
+              multiplier, jitter, stallTimeoutMillis));
+    }
+
+    this.initialDelayMillis = initialDelayMillis;
+    this.maximumDelayMillis = maximumDelayMillis;
+    this.multiplier = multiplier;
+    this.jitter = jitter;
+    this.stallTimeoutMillis = stallTimeoutMillis;
+  }
+
+  /**
+   * Computes the delay before a reconnection attempt.
+   *
+   * @param failures the number of consecutive failed attempts, or connections closed before
+   * reading a byte, since a connection last read a byte
+   * @param initialDelayMillis the delay before the first attempt
+   * @param maximumDelayMillis the maximum delay
+   * @param multiplier the factor by which the delay grows after each failure
+   * @param jitter the largest fraction by which the delay is reduced
+   * @param random a random number from zero (inclusive) to one (exclusive)
+   *
+   * @return the number of milliseconds to wait before the attempt
+   */
+  static long backoffDelayMillis(
+      int failures,
+      long initialDelayMillis,
+      long maximumDelayMillis,
+      double multiplier,
+      double jitter,
+      double random) {
+    final double delayMillis = Math.min(
+        maximumDelayMillis, initialDelayMillis * Math.pow(multiplier, failures));
+
+    return Math.round(delayMillis * (1.0 - jitter * random));
+  }
+
+  /**
+   * Sets a timer recording the time taken by the thread reading the feed to hand each message
+   * read off to the output channel.
+   *
+   * @param readTimer a timer, or null to record nothing
+   */
+  public void setReadTimer(Timer readTimer) {
+    this.readTimer = readTimer;
+  }
+
+  @Override
+  public boolean onMessage(Message<?> message) {
+    final Timer timer = readTimer;
+
+    if (timer == null) {
+      return super.onMessage(message);
+    }
+
+    final long startNanos = System.nanoTime();
+
+    try {
+      return super.onMessage(message);
+    } finally {
+      timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  @Override
+  public void setConnectionFactory(AbstractConnectionFactory connectionFactory) {
+    if (connectionFactory instanceof TcpNetClientConnectionFactory) {
+      ((TcpNetClientConnectionFactory) connectionFactory)
+          .setTcpNetConnectionSupport(this::createConnection);
+    }
+
+    super.setConnectionFactory(connectionFactory);
+  }
+
+  private TcpNetConnection createConnection(
+      Socket socket,
+      boolean server,
+      boolean lookupHost,
+      ApplicationEventPublisher applicationEventPublisher,
+      String connectionFactoryName) {
+    return new TimedConnection(
+        socket, server, lookupHost, applicationEventPublisher, connectionFactoryName);
+  }
+
+  @Override
+  protected void doStart() {
+    super.doStart();
+
+    if (getClientConnectionFactory() instanceof AbstractClientConnectionFactory
+        && supervisor == null) {
+      final AbstractClientConnectionFactory connectionFactory =
+          (AbstractClientConnectionFactory) getClientConnectionFactory();
+
+      supervisor =
+          new Thread(() -> supervise(connectionFactory), "feed-supervisor-" + getComponentName());
+      supervisor.setDaemon(true);
+      supervisor.start();
+    }
+  }
+
+  @Override
+  protected void doStop() {
+    final Thread stoppingSupervisor = supervisor;
+
+    supervisor = null;
+
+    if (stoppingSupervisor != null) {
+      stoppingSupervisor.interrupt();
+    }
+
+    super.doStop();
+  }
+
+  private void supervise(AbstractClientConnectionFactory connectionFactory) {
+    final long checkIntervalMillis = stallTimeoutMillis == 0L
+        ? MAXIMUM_CHECK_INTERVAL_MILLIS
+        : Math.max(1L, Math.min(MAXIMUM_CHECK_INTERVAL_MILLIS, stallTimeoutMillis / 4L));
+    int failures = 0;
+
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        final TcpConnection connection = connect(connectionFactory);
+
+        if (connection != null) {
+          if (Thread.currentThread().isInterrupted()) {
+            // Stopped while connecting, after the connection factory closed its connections
+            //
+            connection.close();
+            break;
+          }
+
+          watch(connection, checkIntervalMillis);
+
+          if (lastByteMillis > connectedMillis) {
+            failures = 0;
+          }
+
+          connectedMillis = 0L;
+        }
+
+        final long delayMillis = backoffDelayMillis(
+            failures++,
+            initialDelayMillis,
+            maximumDelayMillis,
+            multiplier,
+            jitter,
+            ThreadLocalRandom.current().nextDouble());
+
+        LOGGER.info("Reconnecting to {} in {}ms", getComponentName(), delayMillis);
+        state = FeedState.BACKOFF;
+        Thread.sleep(delayMillis);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      connectedMillis = 0L;
+      state = FeedState.STOPPED;
+    }
+  }
+
+  private TcpConnection connect(AbstractClientConnectionFactory connectionFactory)
+      throws InterruptedException {
+    state = FeedState.CONNECTING;
+    connectAttemptCount.incrementAndGet();
+
+    try {
+      final TcpConnection connection = connectionFactory.getConnection();
+      final long nowMillis = System.currentTimeMillis();
+
+      connectedMillis = nowMillis;
+      lastByteMillis = nowMillis;
+      state = FeedState.CONNECTED;
+
+      return connection;
+    } catch (InterruptedException e) {
+      throw e;
+    } catch (Exception e) {
+      LOGGER.warn("Failed to connect to {}: {}", getComponentName(), e.getMessage());
+
+      return null;
+    }
+  }
+
+  private void watch(TcpConnection connection, long checkIntervalMillis)
+      throws InterruptedException {
+    while (connection.isOpen()) {
+      Thread.sleep(checkIntervalMillis);
+
+      if (stallTimeoutMillis > 0L
+          && System.currentTimeMillis() - lastByteMillis > stallTimeoutMillis
+          && connection.isOpen()) {
+        LOGGER.warn(
+            "No bytes read from {} for {}ms, reconnecting", getComponentName(), stallTimeoutMillis);
+        state = FeedState.STALLED;
+        connection.close();
+      }
+    }
+  }
+
+  /**
+   * Gets the state of the connection to the feed.
+   *
+   * @return the state of the connection to the feed
+   */
+  public FeedState getFeedState() {
+    return state;
+  }
+
+  /**
+   * Gets the number of attempts made to connect to the feed since the adapter was created.
+   *
+   * @return the number of attempts made to connect to the feed
+   */
+  public long getConnectAttemptCount() {
+    return connectAttemptCount.get();
+  }
+
+  /**
+   * Gets for how long the current connection to the feed has been open.
+   *
+   * @return the number of milliseconds for which the current connection has been open, or zero if
+   * there is none
+   */
+  public long getUptimeMillis() {
+    final long connectedMillis = this.connectedMillis;
+
+    return connectedMillis == 0L ? 0L : System.currentTimeMillis() - connectedMillis;
+  }
+
+  /**
+   * Gets how long ago a byte was last read from the feed, or the current connection was opened
+   * if later.
+   *
+   * @return the number of milliseconds since a byte was last read from the feed, or -1 if no
+   * connection has been opened
+   */
+  public long getLastByteAgeMillis() {
+    final long lastByteMillis = this.lastByteMillis;
+
+    return lastByteMillis == 0L ? -1L : System.currentTimeMillis() - lastByteMillis;
+  }
+
+  /**
+   * A connection that notes the time at which bytes are read from its socket.
+   */
+  private final class TimedConnection extends TcpNetConnection {
+    private InputStream inputStream;
+
+    TimedConnection(
+        Socket socket,
+        boolean server,
+        boolean lookupHost,
+        ApplicationEventPublisher applicationEventPublisher,
+        String connectionFactoryName) {
+      super(socket, server, lookupHost, applicationEventPublisher, connectionFactoryName);
+    }
+
+    @Override
+    protected InputStream inputStream() throws IOException {
+      // The same stream is returned every time, since deserializers may keep state per stream
+      //
+      if (inputStream == null) {
+        inputStream = new TimedInputStream(super.inputStream());
+      }
+
+      return inputStream;
+    }
+  }
+
+  private final class TimedInputStream extends FilterInputStream {
+    TimedInputStream(InputStream inputStream) {
+      super(inputStream);
+    }
+
+    @Override
+    public int read() throws IOException {
+      final int b = super.read();
+
+      if (b >= 0) {
+        lastByteMillis = System.currentTimeMillis();
+      }
+
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      final int count = super.read(b, off, len);
+
+      if (count > 0) {
+        lastByteMillis = System.currentTimeMillis();
+      }
+
+      return count;
+    }
+  }
+}
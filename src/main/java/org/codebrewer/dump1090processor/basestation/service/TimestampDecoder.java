@@ -0,0 +1,297 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Objects;
+
+/**
+ * Decodes the date and time tokens of BaseStation messages into instants.
+ *
+ * <p>Messages carry a local date ('yyyy/MM/dd') and time ('HH:mm:ss.SSS') and nearly every message
+ * in a burst has the same date, so the epoch-second of local midnight and the zone offset(s)
+ * applying on that date are cached and the instant is built from the time digits with plain
+ * arithmetic. On a date with a zone offset transition (such as a daylight saving change), local
+ * times falling in the gap or overlap are resolved by {@code java.time} in exactly the way that
+ * {@code LocalDateTime.atZone()} does, so results always match those of {@code java.time}.
+ *
+ * <p>The two most recently seen dates are cached so that messages arriving slightly out of order
+ * around midnight do not cause the cache to be rebuilt repeatedly. Instances are thread-safe.
+ */
+public final class TimestampDecoder {
+  private static final int SECONDS_PER_DAY = 86_400;
+  private static final int MAX_OFFSET_SECONDS = 18 * 3_600;
+  private static final int[] NANOS_PER_FRACTION_DIGIT = {0, 100_000_000, 10_000_000, 1_000_000};
+
+  /**
+   * The epoch-second of local midnight for a date, and the offsets applying on that date.
+   */
+  private static final class CachedDate {
+    private final int packedDate;
+    private final long localMidnightEpochSecond;
+    private final int offsetBeforeTransition;
+    private final int offsetAfterTransition;
+    // Seconds of the day in [transitionStart, transitionEnd) fall in a gap or overlap (or in a day
+    // having more than one transition) and are resolved by java.time
+    //
+    private final int transitionStart;
+    private final int transitionEnd;
+
+    private CachedDate(int packedDate, LocalDate date, ZoneRules rules) {
+      this.packedDate = packedDate;
+      localMidnightEpochSecond = date.toEpochDay() * SECONDS_PER_DAY;
+
+      // Every instant at which a local time on this date can occur lies in this window
+      //
+      final Instant windowStart =
+          Instant.ofEpochSecond(localMidnightEpochSecond - MAX_OFFSET_SECONDS);
+      final long windowEnd = localMidnightEpochSecond + SECONDS_PER_DAY + MAX_OFFSET_SECONDS;
+      final ZoneOffsetTransition transition = rules.nextTransition(windowStart);
+
+      offsetBeforeTransition = rules.getOffset(windowStart).getTotalSeconds();
+
+      if (transition == null || transition.toEpochSecond() > windowEnd) {
+        offsetAfterTransition = offsetBeforeTransition;
+        transitionStart = SECONDS_PER_DAY;
+        transitionEnd = SECONDS_PER_DAY;
+      } else {
+        final ZoneOffsetTransition nextTransition = rules.nextTransition(transition.getInstant());
+
+        offsetAfterTransition = transition.getOffsetAfter().getTotalSeconds();
+
+        if (nextTransition != null && nextTransition.toEpochSecond() <= windowEnd) {
+          transitionStart = 0;
+          transitionEnd = SECONDS_PER_DAY;
+        } else {
+          final long before = secondOfDay(transition.getDateTimeBefore());
+          final long after = secondOfDay(transition.getDateTimeAfter());
+
+          transitionStart = clampToDay(Math.min(before, after));
+          transitionEnd = clampToDay(Math.max(before, after));
+        }
+      }
+    }
+
+    private long secondOfDay(LocalDateTime localDateTime) {
+      return localDateTime.toEpochSecond(ZoneOffset.UTC) - localMidnightEpochSecond;
+    }
+
+    private static int clampToDay(long secondOfDay) {
+      return (int) Math.max(0, Math.min(SECONDS_PER_DAY, secondOfDay));
+    }
+  }
+
+  private final ZoneId zoneId;
+  private final ZoneRules zoneRules;
+  private volatile CachedDate currentDate;
+  private volatile CachedDate previousDate;
+
+  /**
+   * Sole constructor for this class.
+   *
+   * @param zoneId the time-zone in which message dates and times are expressed, not null
+   */
+  public TimestampDecoder(ZoneId zoneId) {
+    this.zoneId = Objects.requireNonNull(zoneId, "Zone ID is required");
+    zoneRules = zoneId.getRules();
+  }
+
+  private static int digitsAt(byte[] bytes, int start, int count) {
+    int value = 0;
+
+    for (int i = start; i < start + count; i++) {
+      final int digit = bytes[i] - '0';
+
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+
+      value = value * 10 + digit;
+    }
+
+    return value;
+  }
+
+  private static int digitsAt(CharSequence chars, int start, int count) {
+    int value = 0;
+
+    for (int i = start; i < start + count; i++) {
+      final int digit = chars.charAt(i) - '0';
+
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+
+      value = value * 10 + digit;
+    }
+
+    return value;
+  }
+
+  /**
+   * Gets the time-zone in which message dates and times are expressed.
+   *
+   * @return the time-zone in which message dates and times are expressed
+   */
+  public ZoneId getZoneId() {
+    return zoneId;
+  }
+
+  /**
+   * Decodes date and time tokens held in a byte array.
+   *
+   * <p>Only the first three decimals of the time's fraction-of-second are significant and any
+   * further characters are ignored.
+   *
+   * @param bytes an array holding US-ASCII encoded date and time tokens, not null
+   * @param dateStart the offset of the first byte of the date token
+   * @param dateEnd the offset after the last byte of the date token
+   * @param timeStart the offset of the first byte of the time token
+   * @param timeEnd the offset after the last byte of the time token
+   *
+   * @return the instant represented by the tokens, or null if they are not of the form
+   * 'yyyy/MM/dd' and 'HH:mm:ss[.S...]' or do not represent a valid date and time
+   */
+  public Instant decode(byte[] bytes, int dateStart, int dateEnd, int timeStart, int timeEnd) {
+    final int timeLength = timeEnd - timeStart;
+
+    if (dateEnd - dateStart != 10 || bytes[dateStart + 4] != '/' || bytes[dateStart + 7] != '/'
+        || timeLength < 8 || bytes[timeStart + 2] != ':' || bytes[timeStart + 5] != ':') {
+      return null;
+    }
+
+    int nanos = 0;
+
+    if (timeLength > 8) {
+      final int fractionDigits = Math.min(timeLength - 9, 3);
+
+      if (bytes[timeStart + 8] != '.' || fractionDigits == 0) {
+        return null;
+      }
+
+      nanos = digitsAt(bytes, timeStart + 9, fractionDigits)
+          * NANOS_PER_FRACTION_DIGIT[fractionDigits];
+    }
+
+    return decode(
+        digitsAt(bytes, dateStart, 4),
+        digitsAt(bytes, dateStart + 5, 2),
+        digitsAt(bytes, dateStart + 8, 2),
+        digitsAt(bytes, timeStart, 2),
+        digitsAt(bytes, timeStart + 3, 2),
+        digitsAt(bytes, timeStart + 6, 2),
+        nanos);
+  }
+
+  /**
+   * Decodes date and time tokens.
+   *
+   * <p>Only the first three decimals of the time's fraction-of-second are significant and any
+   * further characters are ignored.
+   *
+   * @param date a date token, not null
+   * @param time a time token, not null
+   *
+   * @return the instant represented by the tokens, or null if they are not of the form
+   * 'yyyy/MM/dd' and 'HH:mm:ss[.S...]' or do not represent a valid date and time
+   */
+  public Instant decode(CharSequence date, CharSequence time) {
+    final int timeLength = time.length();
+
+    if (date.length() != 10 || date.charAt(4) != '/' || date.charAt(7) != '/'
+        || timeLength < 8 || time.charAt(2) != ':' || time.charAt(5) != ':') {
+      return null;
+    }
+
+    int nanos = 0;
+
+    if (timeLength > 8) {
+      final int fractionDigits = Math.min(timeLength - 9, 3);
+
+      if (time.charAt(8) != '.' || fractionDigits == 0) {
+        return null;
+      }
+
+      nanos = digitsAt(time, 9, fractionDigits) * NANOS_PER_FRACTION_DIGIT[fractionDigits];
+    }
+
+    return decode(
+        digitsAt(date, 0, 4),
+        digitsAt(date, 5, 2),
+        digitsAt(date, 8, 2),
+        digitsAt(time, 0, 2),
+        digitsAt(time, 3, 2),
+        digitsAt(time, 6, 2),
+        nanos);
+  }
+
+  /**
+   * Decodes the fields of a local date and time. Any negative field is treated as invalid.
+   *
+   * @return the instant represented by the fields, or null if they do not represent a valid date
+   * and time
+   */
+  Instant decode(int year, int month, int day, int hour, int minute, int second, int nanos) {
+    if (year < 1 || month < 1 || month > 12 || day < 1 || day > 31
+        || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59
+        || nanos < 0) {
+      return null;
+    }
+
+    final int packedDate = (year * 100 + month) * 100 + day;
+    CachedDate cachedDate = currentDate;
+
+    if (cachedDate == null || cachedDate.packedDate != packedDate) {
+      cachedDate = previousDate;
+
+      if (cachedDate == null || cachedDate.packedDate != packedDate) {
+        if (day > Month.of(month).length(Year.isLeap(year))) {
+          return null;
+        }
+
+        cachedDate = new CachedDate(packedDate, LocalDate.of(year, month, day), zoneRules);
+      }
+
+      previousDate = currentDate;
+      currentDate = cachedDate;
+    }
+
+    final int secondOfDay = (hour * 60 + minute) * 60 + second;
+    final int offset;
+
+    if (secondOfDay < cachedDate.transitionStart) {
+      offset = cachedDate.offsetBeforeTransition;
+    } else if (secondOfDay >= cachedDate.transitionEnd) {
+      offset = cachedDate.offsetAfterTransition;
+    } else {
+      return LocalDateTime.of(year, month, day, hour, minute, second, nanos)
+                          .atZone(zoneId)
+                          .toInstant();
+    }
+
+    return Instant.ofEpochSecond(
+        cachedDate.localMidnightEpochSecond + secondOfDay - offset, nanos);
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates threads for blocking stages of message processing, which are virtual threads when asked
+ * for and when the running JVM supports them.
+ *
+ * <p>The application is compiled for Java 8, so virtual threads, introduced by Java 21, are
+ * created reflectively. On a JVM without them, platform threads are created instead. A virtual
+ * thread blocked on I/O, such as reading a feed or waiting for the database, does not hold on to
+ * an operating system thread, so many more blocking tasks can run at once than there are platform
+ * threads to run them.
+ */
+final class VirtualThreads {
+  private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreads.class);
+  private static final Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+  private static final Method NAME = findMethod(
+      "java.lang.Thread$Builder", "name", String.class, long.class);
+  private static final Method FACTORY = findMethod("java.lang.Thread$Builder", "factory");
+
+  private VirtualThreads() {
+  }
+
+  private static Method findMethod(String className, String name, Class<?>... parameterTypes) {
+    try {
+      return findMethod(Class.forName(className), name, parameterTypes);
+    } catch (ClassNotFoundException e) {
+      return null;
+    }
+  }
+
+  private static Method findMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+    try {
+      return type.getMethod(name, parameterTypes);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Gets whether or not the running JVM supports virtual threads.
+   *
+   * @return whether or not the running JVM supports virtual threads
+   */
+  static boolean isAvailable() {
+    return OF_VIRTUAL != null && NAME != null && FACTORY != null;
+  }
+
+  /**
+   * Creates a factory of threads, which are named by a prefix followed by a number counting from
+   * zero.
+   *
+   * @param namePrefix the prefix of the names of the threads, not null
+   * @param virtual whether or not to create virtual threads, if the running JVM supports them
+   *
+   * @return a factory of virtual threads if asked for and supported, otherwise of platform daemon
+   * threads
+   */
+  static ThreadFactory threadFactory(String namePrefix, boolean virtual) {
+    if (virtual) {
+      if (isAvailable()) {
+        try {
+          return (ThreadFactory) FACTORY.invoke(
+              NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 0L));
+        } catch (ReflectiveOperationException e) {
+          LOGGER.warn("Failed to create virtual threads, using platform threads", e);
+        }
+      } else {
+        LOGGER.warn(
+            "Virtual threads are not supported by Java {}, using platform threads",
+            System.getProperty("java.version"));
+      }
+    }
+
+    final AtomicLong threadCount = new AtomicLong();
+
+    return runnable -> {
+      final Thread thread = new Thread(runnable, namePrefix + threadCount.getAndIncrement());
+
+      thread.setDaemon(true);
+
+      return thread;
+    };
+  }
+
+  /**
+   * Creates an executor that runs each task on a new thread.
+   *
+   * @param namePrefix the prefix of the names of the threads, not null
+   * @param virtual whether or not to run tasks on virtual threads, if the running JVM supports
+   * them
+   *
+   * @return an executor that runs each task on a new thread
+   */
+  static Executor threadPerTaskExecutor(String namePrefix, boolean virtual) {
+    final ThreadFactory threadFactory = threadFactory(namePrefix, virtual);
+
+    return task -> threadFactory.newThread(task).start();
+  }
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.simulator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * A service that simulates the BaseStation message feed of {@code dump1090}, serving synthetic
+ * traffic from a {@link TrafficGenerator} to clients connecting to a local TCP port.
+ *
+ * <p>Pointing {@code dump1090.host} and {@code basestation.feed.port} at the simulator gives a
+ * repeatable soak-test environment without a receiver. Each client is sent its own stream of
+ * messages for {@code basestation.simulator.aircraft} aircraft, generated from the same seed, at
+ * {@code basestation.simulator.rate} messages per second, or as fast as the client reads them if
+ * the rate is zero.
+ */
+@Service
+@ManagedResource(
+    objectName = "org.codebrewer.dump1090processor:type=Control,name=FeedSimulatorService",
+    description = "A service that simulates the BaseStation message feed")
+public class FeedSimulatorService {
+  private static final Logger LOGGER = LoggerFactory.getLogger(FeedSimulatorService.class);
+  private static final int MESSAGES_PER_WRITE = 512;
+  private static final long PACING_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+  private final int port;
+  private final int aircraftCount;
+  private final long seed;
+  private final double centreLatitude;
+  private final double centreLongitude;
+  private final boolean autoStart;
+  private final List<SocketChannel> clients = new CopyOnWriteArrayList<>();
+  private final AtomicInteger clientNumber = new AtomicInteger();
+  private final AtomicLong sentMessageCount = new AtomicLong();
+  private volatile int rate;
+  private volatile ServerSocketChannel serverSocketChannel;
+
+  /**
+   * Sole constructor for this class.
+   *
+   * @param port the local TCP port on which to serve simulated traffic, or zero for any free port
+   * @param aircraftCount the number of aircraft simulated for each client
+   * @param rate the number of messages sent to each client per second, or zero for no limit
+   * @param seed the seed of the simulated traffic
+   * @param centreLatitude the latitude, in degrees, around which simulated aircraft fly
+   * @param centreLongitude the longitude, in degrees, around which simulated aircraft fly
+   * @param autoStart whether or not to start serving simulated traffic at startup
+   */
+  public FeedSimulatorService(
+      @Value("${basestation.simulator.port:30003}") int port,
+      @Value("${basestation.simulator.aircraft:200}") int aircraftCount,
+      @Value("${basestation.simulator.rate:1000}") int rate,
+      @Value("${basestation.simulator.seed:1090}") long seed,
+      @Value("${basestation.simulator.latitude:51.4775}") double centreLatitude,
+      @Value("${basestation.simulator.longitude:-0.4614}") double centreLongitude,
+      @Value("${basestation.simulator.start.auto:false}") boolean autoStart) {
+    LOGGER.info(
+        "FeedSimulatorService: port {}, {} aircraft, {} msgs/s, auto-start: {}",
+        port, aircraftCount, rate, autoStart);
+    this.port = port;
+    this.aircraftCount = aircraftCount;
+    this.rate = rate;
+    this.seed = seed;
+    this.centreLatitude = centreLatitude;
+    this.centreLongitude = centreLongitude;
+    this.autoStart = autoStart;
+  }
+
+  @PostConstruct
+  void autoStart() {
+    if (autoStart) {
+      start();
+    }
+  }
+
+  private void accept(ServerSocketChannel server) {
+    while (server.isOpen()) {
+      try {
+        final SocketChannel client = server.accept();
+        final Thread thread = new Thread(
+            () -> serve(client), "feed-simulator-" + clientNumber.incrementAndGet());
+
+        LOGGER.info("Simulated feed client connected: {}", client.getRemoteAddress());
+        clients.add(client);
+        thread.setDaemon(true);
+        thread.start();
+      } catch (IOException e) {
+        if (server.isOpen()) {
+          LOGGER.error("Failed to accept simulated feed client: {}", e.getMessage());
+        }
+      }
+    }
+  }
+
+  private void serve(SocketChannel client) {
+    final TrafficGenerator trafficGenerator = new TrafficGenerator(
+        aircraftCount, seed, ZoneId.systemDefault(), centreLatitude, centreLongitude);
+    final byte[] bytes = new byte[MESSAGES_PER_WRITE * TrafficGenerator.MAX_MESSAGE_LENGTH];
+    final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    int pacedRate = rate;
+    long pacingStartNanos = System.nanoTime();
+    long pacedMessageCount = 0L;
+
+    try {
+      while (client.isOpen()) {
+        int messageCount = MESSAGES_PER_WRITE;
+
+        if (rate != pacedRate) {
+          pacedRate = rate;
+          pacingStartNanos = System.nanoTime();
+          pacedMessageCount = 0L;
+        }
+
+        if (pacedRate > 0) {
+          final double elapsedSeconds = (System.nanoTime() - pacingStartNanos) / 1e9;
+          final long dueMessageCount = (long) (elapsedSeconds * pacedRate) - pacedMessageCount;
+
+          // Don't try to catch up with more than a second's worth of messages if the client has
+          // fallen behind
+          //
+          if (dueMessageCount > pacedRate) {
+            pacingStartNanos = System.nanoTime();
+            pacedMessageCount = 0L;
+          }
+
+          messageCount = (int) Math.min(messageCount, Math.min(dueMessageCount, pacedRate));
+
+          if (messageCount <= 0) {
+            LockSupport.parkNanos(PACING_INTERVAL_NANOS);
+            continue;
+          }
+        }
+
+        final long epochMillis = System.currentTimeMillis();
+        int length = 0;
+
+        for (int i = 0; i < messageCount; i++) {
+          length = trafficGenerator.writeMessage(bytes, length, epochMillis);
+        }
+
+        buffer.clear().limit(length);
+
+        while (buffer.hasRemaining()) {
+          client.write(buffer);
+        }
+
+        pacedMessageCount += messageCount;
+        sentMessageCount.addAndGet(messageCount);
+      }
+    } catch (IOException e) {
+      LOGGER.info("Simulated feed client disconnected: {}", e.getMessage());
+    } finally {
+      clients.remove(client);
+      close(client);
+    }
+  }
+
+  private static void close(Closeable closeable) {
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      LOGGER.debug("Failed to close simulated feed channel: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Gets whether or not simulated traffic is being served.
+   *
+   * @return whether or not simulated traffic is being served
+   */
+  @ManagedAttribute(description = "Whether or not simulated traffic is being served")
+  public boolean isRunning() {
+    final ServerSocketChannel server = serverSocketChannel;
+
+    return server != null && server.isOpen();
+  }
+
+  /**
+   * Gets the local TCP port on which simulated traffic is served.
+   *
+   * @return the local TCP port on which simulated traffic is served, or the configured port if
+   * not running
+   */
+  @ManagedAttribute(description = "The local TCP port on which simulated traffic is served")
+  public int getPort() {
+    final ServerSocketChannel server = serverSocketChannel;
+
+    try {
+      return server != null && server.isOpen()
+          ? ((InetSocketAddress) server.getLocalAddress()).getPort()
+          : port;
+    } catch (IOException e) {
+      return port;
+    }
+  }
+
+  /**
+   * Gets the number of clients being served simulated traffic.
+   *
+   * @return the number of clients being served simulated traffic
+   */
+  @ManagedAttribute(description = "The number of clients being served simulated traffic")
+  public int getClientCount() {
+    return clients.size();
+  }
+
+  /**
+   * Gets the number of messages sent to each client per second.
+   *
+   * @return the number of messages sent to each client per second, or zero if there is no limit
+   */
+  @ManagedAttribute(
+      description = "The number of messages sent to each client per second, or zero for no limit")
+  public int getRate() {
+    return rate;
+  }
+
+  /**
+   * Sets the number of messages sent to each client per second, which takes effect immediately.
+   *
+   * @param rate the number of messages sent to each client per second, or zero for no limit
+   */
+  @ManagedAttribute(
+      description = "The number of messages sent to each client per second, or zero for no limit")
+  public void setRate(int rate) {
+    LOGGER.info("Simulated feed rate set to {} msgs/s", rate);
+    this.rate = rate;
+  }
+
+  /**
+   * Gets the total number of simulated messages sent since application startup.
+   *
+   * @return the total number of simulated messages sent since application startup
+   */
+  @ManagedAttribute(description = "The total number of simulated messages sent since startup")
+  public long getSentMessageCount() {
+    return sentMessageCount.get();
+  }
+
+  /**
+   * Starts serving simulated traffic on the local TCP port.
+   *
+   * <p>Has no effect if already started.
+   */
+  @ManagedOperation(description = "Start serving simulated BaseStation messages")
+  public synchronized void start() {
+    LOGGER.info("'Start' requested for simulated BaseStation message feed");
+
+    if (isRunning()) {
+      return;
+    }
+
+    try {
+      final ServerSocketChannel server = ServerSocketChannel.open();
+
+      server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+      serverSocketChannel = server;
+
+      final Thread thread = new Thread(() -> accept(server), "feed-simulator-acceptor");
+
+      thread.setDaemon(true);
+      thread.start();
+      LOGGER.info("Serving simulated BaseStation messages on port {}", getPort());
+    } catch (IOException e) {
+      LOGGER.error("Failed to serve simulated feed on port {}: {}", port, e.getMessage());
+    }
+  }
+
+  /**
+   * Stops serving simulated traffic and disconnects all clients.
+   *
+   * <p>Has no effect if already stopped.
+   */
+  @PreDestroy
+  @ManagedOperation(description = "Stop serving simulated BaseStation messages")
+  public synchronized void stop() {
+    LOGGER.info("'Stop' requested for simulated BaseStation message feed");
+
+    final ServerSocketChannel server = serverSocketChannel;
+
+    if (server != null) {
+      close(server);
+      serverSocketChannel = null;
+    }
+
+    clients.forEach(FeedSimulatorService::close);
+    clients.clear();
+  }
+}
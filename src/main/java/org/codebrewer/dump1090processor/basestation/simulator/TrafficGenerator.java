@@ -0,0 +1,458 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.simulator;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates synthetic BaseStation messages, as sent by {@code dump1090}, for a fixed number of
+ * simulated aircraft.
+ *
+ * <p>Each aircraft flies a plausible track around a centre point, climbing, cruising or descending
+ * and turning now and again, or taxies on the surface. An aircraft is announced by an {@code AIR}
+ * message and an {@code ID} message before sending a mix of {@code MSG} messages of every
+ * transmission type, in roughly the proportions seen from a real receiver, and is eventually
+ * removed by a {@code STA} message and replaced by a new aircraft.
+ *
+ * <p>Messages are written as US-ASCII bytes terminated by CRLF, without creating any intermediate
+ * objects, so that a generator can produce hundreds of thousands of messages per second. Given the
+ * same seed, a generator produces the same sequence of messages, apart from their timestamps.
+ *
+ * <p>Instances of this class are not thread-safe.
+ */
+public class TrafficGenerator {
+  /**
+   * The maximum number of bytes written for a message, including its terminator.
+   */
+  public static final int MAX_MESSAGE_LENGTH = 160;
+
+  private static final DateTimeFormatter MINUTE_FORMATTER =
+      DateTimeFormatter.ofPattern("yyyy/MM/dd,HH:mm:");
+  private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+  private static final long MILLIS_PER_MINUTE = 60_000L;
+  private static final double MILLIS_PER_HOUR = 3_600_000.0;
+  private static final double NAUTICAL_MILES_PER_DEGREE = 60.0;
+  private static final double MAXIMUM_RANGE_DEGREES = 2.0;
+  private static final double MINIMUM_ALTITUDE = 1000.0;
+  private static final double MAXIMUM_ALTITUDE = 41000.0;
+  private static final int ALTITUDE_INCREMENT = 25;
+  private static final int MINIMUM_MESSAGES_PER_AIRCRAFT = 200;
+  private static final int MAXIMUM_MESSAGES_PER_AIRCRAFT = 5000;
+  private static final double SURFACE_FRACTION = 0.05;
+  private static final long MINIMUM_MANOEUVRE_INTERVAL_MILLIS = 30_000L;
+  private static final int MANOEUVRE_INTERVAL_RANGE = 90_000;
+  private static final String[] AIRLINE_DESIGNATORS = {
+      "BAW", "EZY", "RYR", "DLH", "KLM", "AFR", "VIR", "SHT", "EXS", "TOM", "UAE", "AAL"
+  };
+
+  // The transmission types sent by airborne aircraft and by aircraft on the surface, each followed
+  // by its weight
+  //
+  private static final int[] AIRBORNE_TRANSMISSION_TYPES =
+      {1, 3, 3, 26, 4, 24, 5, 18, 6, 5, 7, 14, 8, 9};
+  private static final int[] SURFACE_TRANSMISSION_TYPES = {1, 10, 2, 60, 8, 30};
+
+  private final Random random;
+  private final ZoneId zoneId;
+  private final double centreLatitude;
+  private final double centreLongitude;
+  private final SimulatedAircraft[] aircraft;
+  private final Set<Integer> icaoAddresses = new HashSet<>();
+  private byte[] minutePrefix;
+  private long minuteStartMillis = Long.MIN_VALUE;
+  private int nextAircraftIndex;
+  private byte[] buffer;
+  private int position;
+
+  /**
+   * Creates a generator of messages for a number of aircraft.
+   *
+   * @param aircraftCount the number of aircraft to simulate at once, at least one
+   * @param seed the seed of the generator's sequence of messages
+   * @param zoneId the time-zone in which message dates and times are expressed, not null
+   * @param centreLatitude the latitude, in degrees, around which aircraft fly
+   * @param centreLongitude the longitude, in degrees, around which aircraft fly
+   */
+  public TrafficGenerator(
+      int aircraftCount, long seed, ZoneId zoneId, double centreLatitude, double centreLongitude) {
+    if (aircraftCount < 1) {
+      throw new IllegalArgumentException("At least one aircraft is required");
+    }
+
+    this.random = new Random(seed);
+    this.zoneId = zoneId;
+    this.centreLatitude = centreLatitude;
+    this.centreLongitude = centreLongitude;
+    aircraft = new SimulatedAircraft[aircraftCount];
+
+    for (int i = 0; i < aircraftCount; i++) {
+      aircraft[i] = newAircraft();
+    }
+  }
+
+  private static int chooseWeighted(Random random, int[] weightedValues) {
+    int totalWeight = 0;
+
+    for (int i = 1; i < weightedValues.length; i += 2) {
+      totalWeight += weightedValues[i];
+    }
+
+    int choice = random.nextInt(totalWeight);
+    int i = 0;
+
+    while (choice >= weightedValues[i + 1]) {
+      choice -= weightedValues[i + 1];
+      i += 2;
+    }
+
+    return weightedValues[i];
+  }
+
+  private int newVerticalRate() {
+    return (random.nextInt(3) - 1) * (500 + random.nextInt(20) * 100);
+  }
+
+  private SimulatedAircraft newAircraft() {
+    final SimulatedAircraft newAircraft = new SimulatedAircraft();
+    final double bearing = random.nextDouble() * 2.0 * Math.PI;
+    final double range = Math.sqrt(random.nextDouble()) * MAXIMUM_RANGE_DEGREES;
+
+    do {
+      newAircraft.icaoAddress = 0x010000 + random.nextInt(0xEF0000);
+    } while (!icaoAddresses.add(newAircraft.icaoAddress));
+
+    newAircraft.callSign = AIRLINE_DESIGNATORS[random.nextInt(AIRLINE_DESIGNATORS.length)]
+        + (1 + random.nextInt(9999));
+    newAircraft.squawk = random.nextInt(8) * 1000 + random.nextInt(8) * 100
+        + random.nextInt(8) * 10 + random.nextInt(8);
+    newAircraft.latitude = centreLatitude + range * Math.cos(bearing);
+    newAircraft.longitude = centreLongitude
+        + range * Math.sin(bearing) / Math.cos(Math.toRadians(centreLatitude));
+    newAircraft.track = random.nextDouble() * 360.0;
+    newAircraft.onGround = random.nextDouble() < SURFACE_FRACTION;
+
+    if (newAircraft.onGround) {
+      newAircraft.groundSpeed = 5.0 + random.nextDouble() * 20.0;
+    } else {
+      newAircraft.altitude = 2000 + random.nextInt(38) * 1000;
+      newAircraft.groundSpeed = 200.0 + random.nextDouble() * 300.0;
+      newAircraft.verticalRate = newVerticalRate();
+    }
+
+    newAircraft.remainingMessageCount = MINIMUM_MESSAGES_PER_AIRCRAFT
+        + random.nextInt(MAXIMUM_MESSAGES_PER_AIRCRAFT - MINIMUM_MESSAGES_PER_AIRCRAFT);
+
+    return newAircraft;
+  }
+
+  private void move(SimulatedAircraft simulatedAircraft, long epochMillis) {
+    final double elapsedHours = simulatedAircraft.lastMovedMillis == 0L
+        ? 0.0
+        : (epochMillis - simulatedAircraft.lastMovedMillis) / MILLIS_PER_HOUR;
+
+    simulatedAircraft.lastMovedMillis = epochMillis;
+
+    if (elapsedHours > 0.0) {
+      final double distance =
+          simulatedAircraft.groundSpeed * elapsedHours / NAUTICAL_MILES_PER_DEGREE;
+      final double trackRadians = Math.toRadians(simulatedAircraft.track);
+
+      simulatedAircraft.latitude += distance * Math.cos(trackRadians);
+      simulatedAircraft.longitude += distance * Math.sin(trackRadians)
+          / Math.cos(Math.toRadians(simulatedAircraft.latitude));
+
+      if (!simulatedAircraft.onGround) {
+        simulatedAircraft.altitude += simulatedAircraft.verticalRate * elapsedHours * 60.0;
+        simulatedAircraft.altitude =
+            Math.max(MINIMUM_ALTITUDE, Math.min(MAXIMUM_ALTITUDE, simulatedAircraft.altitude));
+      }
+    }
+
+    // Every so often, turn back towards the centre point if straying too far from it or otherwise
+    // turn a little, and level off or start climbing or descending
+    //
+    if (epochMillis >= simulatedAircraft.nextManoeuvreMillis) {
+      final boolean firstMove = simulatedAircraft.nextManoeuvreMillis == 0L;
+
+      simulatedAircraft.nextManoeuvreMillis =
+          epochMillis + MINIMUM_MANOEUVRE_INTERVAL_MILLIS + random.nextInt(MANOEUVRE_INTERVAL_RANGE);
+
+      if (firstMove) {
+        return;
+      }
+
+      final double northing = centreLatitude - simulatedAircraft.latitude;
+      final double easting = centreLongitude - simulatedAircraft.longitude;
+
+      if (Math.hypot(northing, easting) > MAXIMUM_RANGE_DEGREES) {
+        simulatedAircraft.track = (Math.toDegrees(Math.atan2(easting, northing)) + 360.0) % 360.0;
+      } else {
+        simulatedAircraft.track =
+            (simulatedAircraft.track + random.nextGaussian() * 15.0 + 360.0) % 360.0;
+      }
+
+      if (!simulatedAircraft.onGround) {
+        if (simulatedAircraft.altitude <= MINIMUM_ALTITUDE
+            || simulatedAircraft.altitude >= MAXIMUM_ALTITUDE) {
+          simulatedAircraft.verticalRate = 0;
+        } else if (random.nextInt(4) == 0) {
+          simulatedAircraft.verticalRate = newVerticalRate();
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the next message of the simulated traffic.
+   *
+   * @param buffer an array to which to write the message, not null
+   * @param offset the offset at which to write the message, which must leave room for at least
+   * {@link #MAX_MESSAGE_LENGTH} bytes
+   * @param epochMillis the number of milliseconds since the epoch at which the message is sent
+   *
+   * @return the offset after the last byte written
+   */
+  public int writeMessage(byte[] buffer, int offset, long epochMillis) {
+    final int index = nextAircraftIndex;
+    final SimulatedAircraft simulatedAircraft = aircraft[index];
+
+    nextAircraftIndex = (index + 1) % aircraft.length;
+    this.buffer = buffer;
+    position = offset;
+
+    if (simulatedAircraft.remainingMessageCount == 0) {
+      writeHeader("STA", 0, simulatedAircraft.icaoAddress, epochMillis);
+      append(",RM");
+      icaoAddresses.remove(simulatedAircraft.icaoAddress);
+      aircraft[index] = newAircraft();
+    } else if (!simulatedAircraft.announced) {
+      writeHeader("AIR", 0, simulatedAircraft.icaoAddress, epochMillis);
+      simulatedAircraft.announced = true;
+    } else if (!simulatedAircraft.identified) {
+      writeHeader("ID", 0, simulatedAircraft.icaoAddress, epochMillis);
+      append(',');
+      append(simulatedAircraft.callSign);
+      simulatedAircraft.identified = true;
+    } else {
+      move(simulatedAircraft, epochMillis);
+      simulatedAircraft.remainingMessageCount--;
+      writeTransmission(simulatedAircraft, epochMillis);
+    }
+
+    append('\r');
+    append('\n');
+    this.buffer = null;
+
+    return position;
+  }
+
+  private void writeTransmission(SimulatedAircraft simulatedAircraft, long epochMillis) {
+    final int transmissionType = chooseWeighted(
+        random,
+        simulatedAircraft.onGround ? SURFACE_TRANSMISSION_TYPES : AIRBORNE_TRANSMISSION_TYPES);
+    final int onGround = simulatedAircraft.onGround ? -1 : 0;
+
+    writeHeader("MSG", transmissionType, simulatedAircraft.icaoAddress, epochMillis);
+
+    switch (transmissionType) {
+      case 1:
+        append(',');
+        append(simulatedAircraft.callSign);
+        append(",,,,,,,,,,,");
+        break;
+      case 2:
+        append(",,");
+        appendAltitude(simulatedAircraft.altitude);
+        append(',');
+        appendFixed(simulatedAircraft.groundSpeed, 1);
+        append(',');
+        appendFixed(simulatedAircraft.track, 1);
+        append(',');
+        appendFixed(simulatedAircraft.latitude, 5);
+        append(',');
+        appendFixed(simulatedAircraft.longitude, 5);
+        append(",,,,,,");
+        appendInt(onGround, 1);
+        break;
+      case 3:
+        append(",,");
+        appendAltitude(simulatedAircraft.altitude);
+        append(",,,");
+        appendFixed(simulatedAircraft.latitude, 5);
+        append(',');
+        appendFixed(simulatedAircraft.longitude, 5);
+        append(",,,0,0,0,");
+        appendInt(onGround, 1);
+        break;
+      case 4:
+        append(",,,");
+        appendFixed(simulatedAircraft.groundSpeed, 1);
+        append(',');
+        appendFixed(simulatedAircraft.track, 1);
+        append(",,,");
+        appendInt(simulatedAircraft.verticalRate, 1);
+        append(",,,,,");
+        appendInt(onGround, 1);
+        break;
+      case 5:
+        append(",,");
+        appendAltitude(simulatedAircraft.altitude);
+        append(",,,,,,,0,,0,");
+        appendInt(onGround, 1);
+        break;
+      case 6:
+        append(",,");
+        appendAltitude(simulatedAircraft.altitude);
+        append(",,,,,,");
+        appendInt(simulatedAircraft.squawk, 4);
+        append(",0,0,0,");
+        appendInt(onGround, 1);
+        break;
+      case 7:
+        append(",,");
+        appendAltitude(simulatedAircraft.altitude);
+        append(",,,,,,,,,,");
+        appendInt(onGround, 1);
+        break;
+      default:
+        append(",,,,,,,,,,,,");
+        appendInt(onGround, 1);
+        break;
+    }
+  }
+
+  private void writeHeader(
+      String messageType, int transmissionType, int icaoAddress, long epochMillis) {
+    append(messageType);
+    append(',');
+
+    if (transmissionType > 0) {
+      appendInt(transmissionType, 1);
+    }
+
+    append(",1,1,");
+
+    for (int shift = 20; shift >= 0; shift -= 4) {
+      append(HEX_DIGITS[(icaoAddress >>> shift) & 0xF]);
+    }
+
+    append(",1,");
+    appendTimestamp(epochMillis);
+    append(',');
+    appendTimestamp(epochMillis);
+  }
+
+  private void appendTimestamp(long epochMillis) {
+    if (epochMillis < minuteStartMillis || epochMillis >= minuteStartMillis + MILLIS_PER_MINUTE) {
+      minuteStartMillis = epochMillis - Math.floorMod(epochMillis, MILLIS_PER_MINUTE);
+      minutePrefix = MINUTE_FORMATTER.format(Instant.ofEpochMilli(minuteStartMillis).atZone(zoneId))
+                                     .getBytes(StandardCharsets.US_ASCII);
+    }
+
+    final int millisOfMinute = (int) (epochMillis - minuteStartMillis);
+
+    System.arraycopy(minutePrefix, 0, buffer, position, minutePrefix.length);
+    position += minutePrefix.length;
+    appendInt(millisOfMinute / 1000, 2);
+    append('.');
+    appendInt(millisOfMinute % 1000, 3);
+  }
+
+  private void append(byte b) {
+    buffer[position++] = b;
+  }
+
+  private void append(char c) {
+    buffer[position++] = (byte) c;
+  }
+
+  private void append(String s) {
+    for (int i = 0; i < s.length(); i++) {
+      buffer[position++] = (byte) s.charAt(i);
+    }
+  }
+
+  private void appendInt(int value, int minimumDigits) {
+    long magnitude = value;
+
+    if (magnitude < 0) {
+      append('-');
+      magnitude = -magnitude;
+    }
+
+    int digitCount = 1;
+
+    for (long remainder = magnitude / 10; remainder > 0; remainder /= 10) {
+      digitCount++;
+    }
+
+    digitCount = Math.max(digitCount, minimumDigits);
+
+    for (int i = position + digitCount - 1; i >= position; i--) {
+      buffer[i] = (byte) ('0' + magnitude % 10);
+      magnitude /= 10;
+    }
+
+    position += digitCount;
+  }
+
+  private void appendAltitude(double altitude) {
+    appendInt((int) Math.round(altitude / ALTITUDE_INCREMENT) * ALTITUDE_INCREMENT, 1);
+  }
+
+  private void appendFixed(double value, int decimals) {
+    int scale = 1;
+
+    for (int i = 0; i < decimals; i++) {
+      scale *= 10;
+    }
+
+    final long scaled = Math.round(Math.abs(value) * scale);
+
+    if (value < 0.0 && scaled != 0) {
+      append('-');
+    }
+
+    appendInt((int) (scaled / scale), 1);
+    append('.');
+    appendInt((int) (scaled % scale), decimals);
+  }
+
+  private static final class SimulatedAircraft {
+    private int icaoAddress;
+    private String callSign;
+    private int squawk;
+    private double latitude;
+    private double longitude;
+    private double altitude;
+    private double groundSpeed;
+    private double track;
+    private int verticalRate;
+    private boolean onGround;
+    private boolean announced;
+    private boolean identified;
+    private int remainingMessageCount;
+    private long lastMovedMillis;
+    private long nextManoeuvreMillis;
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.domain;
+
+import java.nio.charset.StandardCharsets;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class IcaoAddressTest {
+  private static int parseBytes(String text) {
+    final byte[] bytes = ("," + text + ",").getBytes(StandardCharsets.US_ASCII);
+
+    return IcaoAddress.parse(bytes, 1, bytes.length - 1);
+  }
+
+  private static void assertParses(String text, int expected) {
+    Assertions.assertThat(IcaoAddress.parse(text)).isEqualTo(expected);
+    Assertions.assertThat(parseBytes(text)).isEqualTo(expected);
+  }
+
+  @Test
+  void shouldParseIcaoAddresses() {
+    assertParses("000000", 0);
+    assertParses("4CA2D6", 0x4CA2D6);
+    assertParses("4ca2d6", 0x4CA2D6);
+    assertParses("FFFFFF", 0xFFFFFF);
+  }
+
+  @Test
+  void shouldParseNonIcaoAddresses() {
+    assertParses("~000000", IcaoAddress.NON_ICAO_FLAG);
+    assertParses("~4CA2D6", IcaoAddress.NON_ICAO_FLAG | 0x4CA2D6);
+    Assertions.assertThat(IcaoAddress.isNonIcao(IcaoAddress.parse("~4CA2D6"))).isTrue();
+    Assertions.assertThat(IcaoAddress.isNonIcao(IcaoAddress.parse("4CA2D6"))).isFalse();
+  }
+
+  @Test
+  void shouldNotParseInvalidAddresses() {
+    Assertions.assertThat(IcaoAddress.parse(null)).isEqualTo(IcaoAddress.INVALID);
+    assertParses("", IcaoAddress.INVALID);
+    assertParses("4CA2D", IcaoAddress.INVALID);
+    assertParses("4CA2D60", IcaoAddress.INVALID);
+    assertParses("4CA2DG", IcaoAddress.INVALID);
+    assertParses(" 4CA2D", IcaoAddress.INVALID);
+    assertParses("~4CA2D", IcaoAddress.INVALID);
+    assertParses("~~4CA2D", IcaoAddress.INVALID);
+    assertParses("-4CA2D", IcaoAddress.INVALID);
+  }
+
+  @Test
+  void shouldFormatAddresses() {
+    Assertions.assertThat(IcaoAddress.format(0)).isEqualTo("000000");
+    Assertions.assertThat(IcaoAddress.format(0x4CA2D6)).isEqualTo("4CA2D6");
+    Assertions.assertThat(IcaoAddress.format(IcaoAddress.NON_ICAO_FLAG | 0x00A2D6))
+              .isEqualTo("~00A2D6");
+  }
+
+  @Test
+  void shouldNotFormatInvalidAddresses() {
+    Assertions.assertThatIllegalArgumentException()
+              .isThrownBy(() -> IcaoAddress.format(IcaoAddress.INVALID));
+    Assertions.assertThatIllegalArgumentException()
+              .isThrownBy(() -> IcaoAddress.format(1 << 25));
+  }
+}
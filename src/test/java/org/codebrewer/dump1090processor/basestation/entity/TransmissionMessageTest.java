@@ -0,0 +1,144 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.entity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import org.codebrewer.dump1090processor.basestation.domain.TransmissionType;
+import org.junit.jupiter.api.Test;
+
+class TransmissionMessageTest {
+  private static TransmissionMessage.Builder newBuilder() {
+    return new TransmissionMessage.Builder(0x4CA2D6, Instant.now())
+        .transmissionType(TransmissionType.SURVEILLANCE_ID);
+  }
+
+  @Test
+  void shouldHaveNoValuesForPropertiesNotSet() {
+    final TransmissionMessage transmissionMessage = newBuilder().build();
+
+    assertThat(transmissionMessage.getAltitude()).isNull();
+    assertThat(transmissionMessage.getGroundSpeed()).isNull();
+    assertThat(transmissionMessage.getTrack()).isNull();
+    assertThat(transmissionMessage.getVerticalRate()).isNull();
+    assertThat(transmissionMessage.getSquawk()).isNull();
+    assertThat(transmissionMessage.getAlert()).isNull();
+    assertThat(transmissionMessage.getEmergency()).isNull();
+    assertThat(transmissionMessage.getIdentActive()).isNull();
+    assertThat(transmissionMessage.getOnGround()).isNull();
+  }
+
+  @Test
+  void shouldHaveValuesForPropertiesSetFromPrimitives() {
+    final TransmissionMessage transmissionMessage =
+        newBuilder().altitude(37000.0f)
+                    .groundSpeed(0.0f)
+                    .track(-12.5f)
+                    .verticalRate((short) -64)
+                    .squawk((short) 7421)
+                    .alert(true)
+                    .emergency(false)
+                    .identActive(true)
+                    .onGround(false)
+                    .build();
+
+    assertThat(transmissionMessage.getAltitude()).isEqualTo(37000.0f);
+    assertThat(transmissionMessage.getGroundSpeed()).isEqualTo(0.0f);
+    assertThat(transmissionMessage.getTrack()).isEqualTo(-12.5f);
+    assertThat(transmissionMessage.getVerticalRate()).isEqualTo((short) -64);
+    assertThat(transmissionMessage.getSquawk()).isEqualTo((short) 7421);
+    assertThat(transmissionMessage.getAlert()).isTrue();
+    assertThat(transmissionMessage.getEmergency()).isFalse();
+    assertThat(transmissionMessage.getIdentActive()).isTrue();
+    assertThat(transmissionMessage.getOnGround()).isFalse();
+  }
+
+  @Test
+  void shouldHaveValuesForPropertiesSetFromWrappers() {
+    final TransmissionMessage transmissionMessage =
+        newBuilder().altitude(Float.valueOf(1500.0f))
+                    .groundSpeed(Float.valueOf(123.4f))
+                    .track(Float.valueOf(359.9f))
+                    .verticalRate(Short.valueOf((short) 2048))
+                    .squawk(Short.valueOf((short) 0))
+                    .alert(Boolean.FALSE)
+                    .emergency(Boolean.TRUE)
+                    .identActive(Boolean.FALSE)
+                    .onGround(Boolean.TRUE)
+                    .build();
+
+    assertThat(transmissionMessage.getAltitude()).isEqualTo(1500.0f);
+    assertThat(transmissionMessage.getGroundSpeed()).isEqualTo(123.4f);
+    assertThat(transmissionMessage.getTrack()).isEqualTo(359.9f);
+    assertThat(transmissionMessage.getVerticalRate()).isEqualTo((short) 2048);
+    assertThat(transmissionMessage.getSquawk()).isEqualTo((short) 0);
+    assertThat(transmissionMessage.getAlert()).isFalse();
+    assertThat(transmissionMessage.getEmergency()).isTrue();
+    assertThat(transmissionMessage.getIdentActive()).isFalse();
+    assertThat(transmissionMessage.getOnGround()).isTrue();
+  }
+
+  @Test
+  void shouldHaveNoValuesForPropertiesResetFromNullWrappers() {
+    final TransmissionMessage transmissionMessage =
+        newBuilder().altitude(1500.0f)
+                    .altitude((Float) null)
+                    .groundSpeed(123.4f)
+                    .groundSpeed((Float) null)
+                    .track(359.9f)
+                    .track((Float) null)
+                    .verticalRate((short) 2048)
+                    .verticalRate((Short) null)
+                    .squawk((short) 1200)
+                    .squawk((Short) null)
+                    .alert(true)
+                    .alert((Boolean) null)
+                    .emergency(true)
+                    .emergency((Boolean) null)
+                    .identActive(true)
+                    .identActive((Boolean) null)
+                    .onGround(true)
+                    .onGround((Boolean) null)
+                    .build();
+
+    assertThat(transmissionMessage.getAltitude()).isNull();
+    assertThat(transmissionMessage.getGroundSpeed()).isNull();
+    assertThat(transmissionMessage.getTrack()).isNull();
+    assertThat(transmissionMessage.getVerticalRate()).isNull();
+    assertThat(transmissionMessage.getSquawk()).isNull();
+    assertThat(transmissionMessage.getAlert()).isNull();
+    assertThat(transmissionMessage.getEmergency()).isNull();
+    assertThat(transmissionMessage.getIdentActive()).isNull();
+    assertThat(transmissionMessage.getOnGround()).isNull();
+  }
+
+  @Test
+  void shouldKeepFlagsIndependentOfEachOther() {
+    final TransmissionMessage transmissionMessage =
+        newBuilder().alert(true)
+                    .emergency(true)
+                    .emergency(false)
+                    .onGround(true)
+                    .build();
+
+    assertThat(transmissionMessage.getAlert()).isTrue();
+    assertThat(transmissionMessage.getEmergency()).isFalse();
+    assertThat(transmissionMessage.getIdentActive()).isNull();
+    assertThat(transmissionMessage.getOnGround()).isTrue();
+  }
+}
@@ -16,13 +16,23 @@
 
 package org.codebrewer.dump1090processor.basestation.integration;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.nio.file.Paths;
+import org.codebrewer.dump1090processor.basestation.service.AvrMessageProducerService;
+import org.codebrewer.dump1090processor.basestation.service.AvrMessageTransformerService;
+import org.codebrewer.dump1090processor.basestation.service.BeastMessageProducerService;
+import org.codebrewer.dump1090processor.basestation.service.BeastMessageTransformerService;
+import org.codebrewer.dump1090processor.basestation.service.DuplicateMessageFilteringService;
 import org.codebrewer.dump1090processor.basestation.service.EmptyMessageFilteringService;
 import org.codebrewer.dump1090processor.basestation.service.InvalidMessageFilteringService;
 import org.codebrewer.dump1090processor.basestation.service.MessagePayloadTransformerService;
 import org.codebrewer.dump1090processor.basestation.service.MessageProducerService;
+import org.codebrewer.dump1090processor.basestation.service.MessageReplayProducer;
+import org.codebrewer.dump1090processor.basestation.service.MessageReplayService;
+import org.codebrewer.dump1090processor.basestation.service.MultiFeedService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -30,17 +40,31 @@ import org.springframework.integration.ip.tcp.TcpReceivingChannelAdapter;
 
 class BaseStationIntegrationConfigurationTest {
   private MessageProducerService producerService;
+  private MessageReplayService replayService;
+  private MultiFeedService multiFeedService;
+  private BeastMessageProducerService beastProducerService;
+  private AvrMessageProducerService avrProducerService;
   private EmptyMessageFilteringService emptyMessageFilteringService;
+  private DuplicateMessageFilteringService duplicateMessageFilteringService;
   private MessagePayloadTransformerService transformerService;
   private InvalidMessageFilteringService invalidMessageFilteringService;
+  private BeastMessageTransformerService beastTransformerService;
+  private AvrMessageTransformerService avrTransformerService;
   private TcpReceivingChannelAdapter channelAdapter;
 
   @BeforeEach
   void setUp() {
     producerService = Mockito.mock(MessageProducerService.class);
+    replayService = Mockito.mock(MessageReplayService.class);
+    multiFeedService = Mockito.mock(MultiFeedService.class);
+    beastProducerService = Mockito.mock(BeastMessageProducerService.class);
+    avrProducerService = Mockito.mock(AvrMessageProducerService.class);
     emptyMessageFilteringService = Mockito.mock(EmptyMessageFilteringService.class);
+    duplicateMessageFilteringService = Mockito.mock(DuplicateMessageFilteringService.class);
     transformerService = Mockito.mock(MessagePayloadTransformerService.class);
     invalidMessageFilteringService = Mockito.mock(InvalidMessageFilteringService.class);
+    beastTransformerService = Mockito.mock(BeastMessageTransformerService.class);
+    avrTransformerService = Mockito.mock(AvrMessageTransformerService.class);
     channelAdapter = Mockito.mock(TcpReceivingChannelAdapter.class);
   }
 
@@ -49,12 +73,125 @@ class BaseStationIntegrationConfigurationTest {
     final BaseStationIntegrationConfiguration configuration =
         new BaseStationIntegrationConfiguration(
             producerService,
+            replayService,
+            multiFeedService,
+            beastProducerService,
+            avrProducerService,
             emptyMessageFilteringService,
+            duplicateMessageFilteringService,
             transformerService,
-            invalidMessageFilteringService);
+            invalidMessageFilteringService,
+            beastTransformerService,
+            avrTransformerService,
+            2,
+            16,
+            64,
+            RingBufferChannel.WaitStrategy.BLOCKING);
 
     when(producerService.tcpMessageClient()).thenReturn(channelAdapter);
     configuration.tcpMessageClient();
     verify(producerService, Mockito.times(1)).tcpMessageClient();
   }
+
+  @Test
+  void shouldCreateReplayIntegrationFlow() {
+    final BaseStationIntegrationConfiguration configuration =
+        new BaseStationIntegrationConfiguration(
+            producerService,
+            replayService,
+            multiFeedService,
+            beastProducerService,
+            avrProducerService,
+            emptyMessageFilteringService,
+            duplicateMessageFilteringService,
+            transformerService,
+            invalidMessageFilteringService,
+            beastTransformerService,
+            avrTransformerService,
+            2,
+            16,
+            64,
+            RingBufferChannel.WaitStrategy.BLOCKING);
+
+    when(replayService.replayMessageClient())
+        .thenReturn(new MessageReplayProducer(Paths.get("capture.txt"), 1.0));
+    configuration.replayMessageClient();
+    verify(replayService, Mockito.times(1)).replayMessageClient();
+  }
+
+  @Test
+  void shouldCreateBeastIntegrationFlow() {
+    final BaseStationIntegrationConfiguration configuration =
+        new BaseStationIntegrationConfiguration(
+            producerService,
+            replayService,
+            multiFeedService,
+            beastProducerService,
+            avrProducerService,
+            emptyMessageFilteringService,
+            duplicateMessageFilteringService,
+            transformerService,
+            invalidMessageFilteringService,
+            beastTransformerService,
+            avrTransformerService,
+            2,
+            16,
+            64,
+            RingBufferChannel.WaitStrategy.BLOCKING);
+
+    when(beastProducerService.beastMessageClient()).thenReturn(channelAdapter);
+    configuration.beastMessageClient();
+    verify(beastProducerService, Mockito.times(1)).beastMessageClient();
+  }
+
+  @Test
+  void shouldCreateAvrIntegrationFlow() {
+    final BaseStationIntegrationConfiguration configuration =
+        new BaseStationIntegrationConfiguration(
+            producerService,
+            replayService,
+            multiFeedService,
+            beastProducerService,
+            avrProducerService,
+            emptyMessageFilteringService,
+            duplicateMessageFilteringService,
+            transformerService,
+            invalidMessageFilteringService,
+            beastTransformerService,
+            avrTransformerService,
+            2,
+            16,
+            64,
+            RingBufferChannel.WaitStrategy.BLOCKING);
+
+    when(avrProducerService.avrMessageClient()).thenReturn(channelAdapter);
+    configuration.avrMessageClient();
+    verify(avrProducerService, Mockito.times(1)).avrMessageClient();
+  }
+
+  @Test
+  void shouldCreatePartitionedChannels() {
+    final BaseStationIntegrationConfiguration configuration =
+        new BaseStationIntegrationConfiguration(
+            producerService,
+            replayService,
+            multiFeedService,
+            beastProducerService,
+            avrProducerService,
+            emptyMessageFilteringService,
+            duplicateMessageFilteringService,
+            transformerService,
+            invalidMessageFilteringService,
+            beastTransformerService,
+            avrTransformerService,
+            0,
+            16,
+            64,
+            RingBufferChannel.WaitStrategy.BLOCKING);
+
+    assertThat(configuration.baseStationParseChannel().getPartitionCount())
+        .isEqualTo(Runtime.getRuntime().availableProcessors());
+    assertThat(configuration.baseStationMessageChannel().getQueueCapacity()).isEqualTo(16);
+    assertThat(configuration.baseStationFeedChannel().getRingSize()).isEqualTo(64);
+  }
 }
@@ -17,60 +17,133 @@
 package org.codebrewer.dump1090processor.basestation.integration;
 
 import static org.codebrewer.dump1090processor.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
 import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
-import org.codebrewer.dump1090processor.basestation.repository.AircraftRepository;
-import org.codebrewer.dump1090processor.basestation.repository.BaseStationMessageRepository;
+import org.codebrewer.dump1090processor.basestation.service.AircraftStateService;
+import org.codebrewer.dump1090processor.basestation.service.IngestLatencyService;
+import org.codebrewer.dump1090processor.basestation.service.MessageBatchPersistenceService;
+import org.codebrewer.dump1090processor.basestation.service.MessageLogService;
+import org.codebrewer.dump1090processor.basestation.service.PipelineMetrics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
 class BaseStationMessageEndpointTest {
   private BaseStationMessage baseStationMessage;
-  private BaseStationMessageRepository repository;
-  private AircraftRepository aircraftRepository;
+  private MessageBatchPersistenceService persistenceService;
+  private AircraftStateService aircraftStateService;
+  private PipelineMetrics pipelineMetrics;
+  private IngestLatencyService ingestLatencyService;
+  private MessageLogService messageLogService;
   private BaseStationMessageEndpoint endpoint;
 
   @BeforeEach
   void setUp() {
     baseStationMessage = Mockito.mock(BaseStationMessage.class);
-    repository = Mockito.mock(BaseStationMessageRepository.class);
-    aircraftRepository = Mockito.mock(AircraftRepository.class);
+    persistenceService = Mockito.mock(MessageBatchPersistenceService.class);
+    aircraftStateService = Mockito.mock(AircraftStateService.class);
+    pipelineMetrics = new PipelineMetrics(new SimpleMeterRegistry());
+    ingestLatencyService = Mockito.mock(IngestLatencyService.class);
+    messageLogService = Mockito.mock(MessageLogService.class);
   }
 
   @Test
   void shouldNotPersistBaseStationMessagesIfMessagePersistenceDisabled() {
-    endpoint = new BaseStationMessageEndpoint(repository, aircraftRepository, false);
-    endpoint.consume(baseStationMessage);
-    verifyNoInteractions(repository);
+    endpoint = new BaseStationMessageEndpoint(
+        persistenceService, aircraftStateService, false, pipelineMetrics, ingestLatencyService,
+        messageLogService);
+    endpoint.consume(baseStationMessage, null);
+    verifyNoInteractions(persistenceService);
   }
 
   @Test
-  void shouldPersistBaseStationMessagesIfMessagePersistenceEnabled() {
-    endpoint = new BaseStationMessageEndpoint(repository, aircraftRepository, true);
-    endpoint.consume(baseStationMessage);
-    verify(repository, Mockito.times(1)).save(Mockito.eq(baseStationMessage));
+  void shouldPersistBaseStationMessagesIfMessagePersistenceEnabled() throws InterruptedException {
+    endpoint = new BaseStationMessageEndpoint(
+        persistenceService, aircraftStateService, true, pipelineMetrics, ingestLatencyService,
+        messageLogService);
+    endpoint.consume(baseStationMessage, null);
+    verify(persistenceService, Mockito.times(1)).persist(Mockito.eq(baseStationMessage));
   }
 
   @Test
   void shouldAllowMessagePersistenceToBeDisabled() {
-    endpoint = new BaseStationMessageEndpoint(repository, aircraftRepository, true);
+    endpoint = new BaseStationMessageEndpoint(
+        persistenceService, aircraftStateService, true, pipelineMetrics, ingestLatencyService,
+        messageLogService);
     assertThat(endpoint).isPersistMessages();
     endpoint.setPersistMessages(false);
     assertThat(endpoint).isNotPersistMessages();
-    endpoint.consume(baseStationMessage);
-    verifyNoInteractions(repository);
+    endpoint.consume(baseStationMessage, null);
+    verifyNoInteractions(persistenceService);
   }
 
   @Test
-  void shouldAllowMessagePersistenceToBeEnabled() {
-    endpoint = new BaseStationMessageEndpoint(repository, aircraftRepository, false);
+  void shouldAllowMessagePersistenceToBeEnabled() throws InterruptedException {
+    endpoint = new BaseStationMessageEndpoint(
+        persistenceService, aircraftStateService, false, pipelineMetrics, ingestLatencyService,
+        messageLogService);
     assertThat(endpoint).isNotPersistMessages();
     endpoint.setPersistMessages(true);
     assertThat(endpoint).isPersistMessages();
-    endpoint.consume(baseStationMessage);
-    verify(repository, Mockito.times(1)).save(Mockito.eq(baseStationMessage));
+    endpoint.consume(baseStationMessage, null);
+    verify(persistenceService, Mockito.times(1)).persist(Mockito.eq(baseStationMessage));
+  }
+
+  @Test
+  void shouldUpdateAircraftStateIfMessagePersistenceDisabled() {
+    endpoint = new BaseStationMessageEndpoint(
+        persistenceService, aircraftStateService, false, pipelineMetrics, ingestLatencyService,
+        messageLogService);
+    endpoint.consume(baseStationMessage, null);
+    verify(aircraftStateService, Mockito.times(1)).update(Mockito.eq(baseStationMessage));
+  }
+
+  @Test
+  void shouldUpdateAircraftStateIfMessagePersistenceEnabled() {
+    endpoint = new BaseStationMessageEndpoint(
+        persistenceService, aircraftStateService, true, pipelineMetrics, ingestLatencyService,
+        messageLogService);
+    endpoint.consume(baseStationMessage, null);
+    verify(aircraftStateService, Mockito.times(1)).update(Mockito.eq(baseStationMessage));
+  }
+
+  @Test
+  void shouldRecordLatencyOfMessageWithItsFeed() {
+    endpoint = new BaseStationMessageEndpoint(
+        persistenceService, aircraftStateService, false, pipelineMetrics, ingestLatencyService,
+        messageLogService);
+    endpoint.consume(baseStationMessage, "north");
+    verify(ingestLatencyService, Mockito.times(1))
+        .record(eq("north"), eq(baseStationMessage), eq(0L), anyLong());
+  }
+
+  @Test
+  void shouldWriteMessageToLogInsteadOfQueueIfLogEnabled() throws Exception {
+    when(messageLogService.isEnabled()).thenReturn(true);
+    endpoint = new BaseStationMessageEndpoint(
+        persistenceService, aircraftStateService, true, pipelineMetrics, ingestLatencyService,
+        messageLogService);
+    endpoint.consume(baseStationMessage, null);
+    verify(messageLogService, Mockito.times(1)).append(Mockito.eq(baseStationMessage));
+    verifyNoInteractions(persistenceService);
+  }
+
+  @Test
+  void shouldQueueMessageIfLogCannotBeWritten() throws Exception {
+    when(messageLogService.isEnabled()).thenReturn(true);
+    doThrow(new IOException("disk full")).when(messageLogService).append(baseStationMessage);
+    endpoint = new BaseStationMessageEndpoint(
+        persistenceService, aircraftStateService, true, pipelineMetrics, ingestLatencyService,
+        messageLogService);
+    endpoint.consume(baseStationMessage, null);
+    verify(persistenceService, Mockito.times(1)).persist(Mockito.eq(baseStationMessage));
   }
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.integration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import org.codebrewer.dump1090processor.basestation.domain.IcaoAddress;
+import org.codebrewer.dump1090processor.basestation.entity.IdMessage;
+import org.codebrewer.dump1090processor.basestation.service.ByteSlice;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.support.MessageBuilder;
+
+class IcaoAddressPartitionKeyTest {
+  private static final String MESSAGE_TEXT =
+      "ID,111,11111,111111,4CA2D6,111111,2020/01/01,00:00:00.000,2020/01/01,00:00:00.000,BAW123";
+
+  @Test
+  void shouldComputeKeyFromMessageBytes() {
+    assertThat(
+        IcaoAddressPartitionKey.of(
+            MessageBuilder.withPayload(MESSAGE_TEXT.getBytes(StandardCharsets.US_ASCII)).build()))
+        .isEqualTo(0x4CA2D6);
+  }
+
+  @Test
+  void shouldComputeKeyFromMessageByteSlice() {
+    final byte[] bytes =
+        ("MSG,3,1,1,000001\r\n" + MESSAGE_TEXT).getBytes(StandardCharsets.US_ASCII);
+
+    assertThat(
+        IcaoAddressPartitionKey.of(
+            MessageBuilder.withPayload(new ByteSlice(bytes, 18, MESSAGE_TEXT.length())).build()))
+        .isEqualTo(0x4CA2D6);
+  }
+
+  @Test
+  void shouldComputeKeyFromMessageString() {
+    assertThat(IcaoAddressPartitionKey.of(MessageBuilder.withPayload(MESSAGE_TEXT).build()))
+        .isEqualTo(0x4CA2D6);
+  }
+
+  @Test
+  void shouldComputeKeyFromBaseStationMessage() {
+    assertThat(
+        IcaoAddressPartitionKey.of(
+            MessageBuilder.withPayload(new IdMessage.Builder(0x4CA2D6, Instant.now()).build())
+                          .build()))
+        .isEqualTo(0x4CA2D6);
+  }
+
+  @Test
+  void shouldComputeInvalidKeyFromTruncatedMessage() {
+    assertThat(IcaoAddressPartitionKey.of(MessageBuilder.withPayload("ID,111,11111").build()))
+        .isEqualTo(IcaoAddress.INVALID);
+    assertThat(
+        IcaoAddressPartitionKey.of(
+            MessageBuilder.withPayload("ID,111,11111,111111,4CA2D6".getBytes()).build()))
+        .isEqualTo(IcaoAddress.INVALID);
+    assertThat(IcaoAddressPartitionKey.of(MessageBuilder.withPayload(42).build()))
+        .isEqualTo(IcaoAddress.INVALID);
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.integration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.management.MalformedObjectNameException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+class PartitionedChannelTest {
+  private static final int PARTITION_COUNT = 4;
+
+  private PartitionedChannel channel;
+
+  private static int keyOf(Message<?> message) {
+    return ((int[]) message.getPayload())[0];
+  }
+
+  private static Message<int[]> newMessage(int key, int sequence) {
+    return MessageBuilder.withPayload(new int[] {key, sequence}).build();
+  }
+
+  private void createChannel(int queueCapacity) {
+    channel = new PartitionedChannel(PARTITION_COUNT, queueCapacity, PartitionedChannelTest::keyOf);
+    channel.setBeanName("testChannel");
+    channel.afterPropertiesSet();
+  }
+
+  @AfterEach
+  void tearDown() {
+    if (channel != null) {
+      channel.destroy();
+    }
+  }
+
+  @Test
+  void shouldHandleMessagesWithSameKeyInOrderOnOneThread() throws InterruptedException {
+    final int keyCount = 32;
+    final int messagesPerKey = 100;
+    final Map<Integer, List<Integer>> sequencesByKey = new ConcurrentHashMap<>();
+    final Map<Integer, String> threadNamesByKey = new ConcurrentHashMap<>();
+    final List<String> threadNames = Collections.synchronizedList(new ArrayList<>());
+    final CountDownLatch latch = new CountDownLatch(keyCount * messagesPerKey);
+
+    createChannel(16);
+    channel.subscribe(message -> {
+      final int[] payload = (int[]) message.getPayload();
+      final String threadName = Thread.currentThread().getName();
+
+      sequencesByKey.computeIfAbsent(payload[0], key -> new ArrayList<>()).add(payload[1]);
+      assertThat(threadNamesByKey.computeIfAbsent(payload[0], key -> threadName))
+          .isEqualTo(threadName);
+      threadNames.add(threadName);
+      latch.countDown();
+    });
+
+    for (int sequence = 0; sequence < messagesPerKey; sequence++) {
+      for (int key = 0; key < keyCount; key++) {
+        assertThat(channel.send(newMessage(key, sequence))).isTrue();
+      }
+    }
+
+    assertThat(latch.await(10L, TimeUnit.SECONDS)).isTrue();
+    assertThat(sequencesByKey).hasSize(keyCount);
+    sequencesByKey.values().forEach(sequences -> assertThat(sequences).isSorted());
+    assertThat(threadNames.stream().distinct()).hasSize(PARTITION_COUNT)
+                                               .allMatch(name -> name.startsWith("testChannel-"));
+    assertThat(channel.getDispatchedMessageCount()).isEqualTo(keyCount * messagesPerKey);
+    assertThat(channel.getQueueDepth()).isZero();
+  }
+
+  @Test
+  void shouldBlockSenderWhilePartitionQueueIsFull() throws InterruptedException {
+    final CountDownLatch handling = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    createChannel(1);
+    channel.subscribe(message -> {
+      handling.countDown();
+
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    channel.send(newMessage(1, 0));
+    assertThat(handling.await(1L, TimeUnit.SECONDS)).isTrue();
+    channel.send(newMessage(1, 1));
+
+    final Thread sender = new Thread(() -> channel.send(newMessage(1, 2)));
+
+    sender.start();
+    sender.join(200L);
+
+    assertThat(sender.isAlive()).isTrue();
+    assertThat(channel.getQueueDepth()).isEqualTo(1);
+    assertThat(channel.getPartitionQueueDepths()).containsOnlyOnce(1);
+
+    release.countDown();
+    sender.join(1_000L);
+
+    assertThat(sender.isAlive()).isFalse();
+  }
+
+  @Test
+  void shouldCountMessagesWhoseHandlingFailed() throws InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(2);
+
+    createChannel(16);
+    channel.subscribe(message -> {
+      latch.countDown();
+
+      if (keyOf(message) == 0) {
+        throw new IllegalStateException();
+      }
+    });
+    channel.send(newMessage(0, 0));
+    channel.send(newMessage(0, 1));
+
+    assertThat(latch.await(1L, TimeUnit.SECONDS)).isTrue();
+
+    channel.destroy();
+
+    assertThat(channel.getFailedMessageCount()).isEqualTo(2L);
+    assertThat(channel.getDispatchedMessageCount()).isZero();
+  }
+
+  @Test
+  void shouldBeNamedForBean() throws MalformedObjectNameException {
+    createChannel(16);
+
+    assertThat(channel.getObjectName().getKeyProperty("name")).isEqualTo("testChannel");
+    assertThat(channel.getPartitionCount()).isEqualTo(PARTITION_COUNT);
+  }
+
+  @Test
+  void shouldMapKeysToPartitions() {
+    for (int key = -1000; key < 1000; key++) {
+      assertThat(PartitionedChannel.partitionOf(key, PARTITION_COUNT))
+          .isBetween(0, PARTITION_COUNT - 1);
+    }
+  }
+}
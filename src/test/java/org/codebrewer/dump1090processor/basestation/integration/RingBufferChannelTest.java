@@ -0,0 +1,237 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.integration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.management.MalformedObjectNameException;
+import org.codebrewer.dump1090processor.basestation.integration.RingBufferChannel.WaitStrategy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+class RingBufferChannelTest {
+  private static final int PARTITION_COUNT = 4;
+
+  private RingBufferChannel channel;
+
+  private static int keyOf(Message<?> message) {
+    return ((int[]) message.getPayload())[0];
+  }
+
+  private static Message<int[]> newMessage(int key, int sequence) {
+    return MessageBuilder.withPayload(new int[] {key, sequence}).build();
+  }
+
+  private void createChannel(int ringSize, WaitStrategy waitStrategy) {
+    channel = new RingBufferChannel(
+        PARTITION_COUNT, ringSize, waitStrategy, RingBufferChannelTest::keyOf);
+    channel.setBeanName("testChannel");
+    channel.afterPropertiesSet();
+  }
+
+  @AfterEach
+  void tearDown() {
+    if (channel != null) {
+      channel.destroy();
+    }
+  }
+
+  @ParameterizedTest
+  @EnumSource(WaitStrategy.class)
+  void shouldHandleMessagesWithSameKeyInOrderOnOneThread(WaitStrategy waitStrategy)
+      throws InterruptedException {
+    final int keyCount = 32;
+    final int messagesPerKey = 100;
+    final Map<Integer, List<Integer>> sequencesByKey = new ConcurrentHashMap<>();
+    final Map<Integer, String> threadNamesByKey = new ConcurrentHashMap<>();
+    final List<String> threadNames = Collections.synchronizedList(new ArrayList<>());
+    final CountDownLatch latch = new CountDownLatch(keyCount * messagesPerKey);
+
+    createChannel(16, waitStrategy);
+    channel.subscribe(message -> {
+      final int[] payload = (int[]) message.getPayload();
+      final String threadName = Thread.currentThread().getName();
+
+      sequencesByKey.computeIfAbsent(payload[0], key -> new ArrayList<>()).add(payload[1]);
+      assertThat(threadNamesByKey.computeIfAbsent(payload[0], key -> threadName))
+          .isEqualTo(threadName);
+      threadNames.add(threadName);
+      latch.countDown();
+    });
+
+    for (int sequence = 0; sequence < messagesPerKey; sequence++) {
+      for (int key = 0; key < keyCount; key++) {
+        assertThat(channel.send(newMessage(key, sequence))).isTrue();
+      }
+    }
+
+    assertThat(latch.await(10L, TimeUnit.SECONDS)).isTrue();
+    assertThat(sequencesByKey).hasSize(keyCount);
+    sequencesByKey.values().forEach(sequences -> assertThat(sequences).isSorted());
+    assertThat(threadNames.stream().distinct()).hasSize(PARTITION_COUNT)
+                                               .allMatch(name -> name.startsWith("testChannel-"));
+
+    channel.destroy();
+
+    assertThat(channel.getDispatchedMessageCount()).isEqualTo(keyCount * messagesPerKey);
+    assertThat(channel.getBacklog()).isZero();
+  }
+
+  @Test
+  void shouldBlockSenderWhileRingIsFull() throws InterruptedException {
+    final CountDownLatch handling = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    createChannel(2, WaitStrategy.BLOCKING);
+    channel.subscribe(message -> {
+      handling.countDown();
+
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    channel.send(newMessage(1, 0));
+    assertThat(handling.await(1L, TimeUnit.SECONDS)).isTrue();
+    channel.send(newMessage(1, 1));
+
+    final Thread sender = new Thread(() -> channel.send(newMessage(1, 2)));
+
+    sender.start();
+    sender.join(200L);
+
+    assertThat(sender.isAlive()).isTrue();
+    assertThat(channel.getBacklog()).isEqualTo(2L);
+
+    release.countDown();
+    sender.join(1_000L);
+
+    assertThat(sender.isAlive()).isFalse();
+  }
+
+  @Test
+  void shouldCountMessagesWhoseHandlingFailed() throws InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(2);
+
+    createChannel(16, WaitStrategy.YIELD);
+    channel.subscribe(message -> {
+      latch.countDown();
+
+      if (keyOf(message) == 0) {
+        throw new IllegalStateException();
+      }
+    });
+    channel.send(newMessage(0, 0));
+    channel.send(newMessage(0, 1));
+
+    assertThat(latch.await(1L, TimeUnit.SECONDS)).isTrue();
+
+    channel.destroy();
+
+    assertThat(channel.getFailedMessageCount()).isEqualTo(2L);
+    assertThat(channel.getDispatchedMessageCount()).isZero();
+  }
+
+  @Test
+  void shouldClearSlotsPassedByEveryWorker() throws InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(8);
+
+    createChannel(16, WaitStrategy.BLOCKING);
+    channel.subscribe(message -> latch.countDown());
+
+    for (int sequence = 0; sequence < 8; sequence++) {
+      channel.send(newMessage(sequence, sequence));
+    }
+
+    assertThat(latch.await(1L, TimeUnit.SECONDS)).isTrue();
+
+    // Wait for every worker to publish its progress past the handled messages
+    //
+    while (channel.getBacklog() > 0L) {
+      Thread.sleep(1L);
+    }
+
+    channel.send(newMessage(8, 8));
+
+    assertThat(channel.getOccupiedSlotCount()).isBetween(0, 1);
+
+    channel.destroy();
+
+    assertThat(channel.getOccupiedSlotCount()).isZero();
+  }
+
+  @Test
+  void shouldInterruptWorkerStillRunningAfterShutdownTimeout() throws InterruptedException {
+    final CountDownLatch handling = new CountDownLatch(1);
+    final CountDownLatch interrupted = new CountDownLatch(1);
+
+    createChannel(16, WaitStrategy.BLOCKING);
+    channel.setShutdownTimeout(100L);
+    channel.subscribe(message -> {
+      handling.countDown();
+
+      try {
+        new CountDownLatch(1).await();
+      } catch (InterruptedException e) {
+        interrupted.countDown();
+        Thread.currentThread().interrupt();
+      }
+    });
+    channel.send(newMessage(0, 0));
+    channel.send(newMessage(0, 1));
+
+    assertThat(handling.await(1L, TimeUnit.SECONDS)).isTrue();
+
+    final long startNanos = System.nanoTime();
+
+    channel.destroy();
+
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)).isLessThan(1_000L);
+    assertThat(interrupted.await(1L, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  void shouldBeNamedForBean() throws MalformedObjectNameException {
+    createChannel(16, WaitStrategy.BUSY_SPIN);
+
+    assertThat(channel.getObjectName().getKeyProperty("name")).isEqualTo("testChannel");
+    assertThat(channel.getPartitionCount()).isEqualTo(PARTITION_COUNT);
+    assertThat(channel.getRingSize()).isEqualTo(16);
+    assertThat(channel.getWaitStrategy()).isEqualTo("BUSY_SPIN");
+  }
+
+  @Test
+  void shouldRejectRingSizeNotPowerOfTwo() {
+    assertThatThrownBy(
+        () -> new RingBufferChannel(
+            PARTITION_COUNT, 12, WaitStrategy.BLOCKING, RingBufferChannelTest::keyOf))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
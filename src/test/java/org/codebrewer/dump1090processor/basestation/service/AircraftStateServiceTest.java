@@ -0,0 +1,309 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.codebrewer.dump1090processor.basestation.domain.TransmissionType;
+import org.codebrewer.dump1090processor.basestation.entity.Aircraft;
+import org.codebrewer.dump1090processor.basestation.entity.IdMessage;
+import org.codebrewer.dump1090processor.basestation.entity.TransmissionMessage;
+import org.codebrewer.dump1090processor.basestation.repository.AircraftRepository;
+import org.geolatte.geom.G2D;
+import org.geolatte.geom.Point;
+import org.geolatte.geom.crs.CrsRegistry;
+import org.geolatte.geom.crs.Geographic2DCoordinateReferenceSystem;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+class AircraftStateServiceTest {
+  private static final int ICAO = 0x4CA2D6;
+  private static final Instant TIMESTAMP = Instant.ofEpochMilli(1_600_000_000_000L);
+
+  private static final Geographic2DCoordinateReferenceSystem COORDINATE_REFERENCE_SYSTEM =
+      CrsRegistry.getGeographicCoordinateReferenceSystemForEPSG(4326);
+
+  private static TransmissionMessage positionMessage(int icao, Instant timestamp, double lat) {
+    return new TransmissionMessage.Builder(icao, timestamp)
+        .transmissionType(TransmissionType.AIRBORNE_POSITION)
+        .altitude(37000.0f)
+        .position(new Point<>(new G2D(-1.5, lat), COORDINATE_REFERENCE_SYSTEM))
+        .build();
+  }
+
+  private AircraftRepository aircraftRepository;
+  private AircraftStateService aircraftStateService;
+
+  @SuppressWarnings("unchecked")
+  private List<Aircraft> captureSavedAircraft() {
+    final ArgumentCaptor<Iterable<Aircraft>> captor = ArgumentCaptor.forClass(Iterable.class);
+    final List<Aircraft> savedAircraft = new ArrayList<>();
+
+    verify(aircraftRepository, times(1)).saveAll(captor.capture());
+    captor.getValue().forEach(savedAircraft::add);
+
+    return savedAircraft;
+  }
+
+  @BeforeEach
+  void setUp() {
+    aircraftRepository = Mockito.mock(AircraftRepository.class);
+    aircraftStateService = new AircraftStateService(aircraftRepository, 60_000L, 600_000L, true);
+  }
+
+  @Test
+  void shouldAddAircraftFromAirbornePositionMessage() {
+    aircraftStateService.update(positionMessage(ICAO, TIMESTAMP, 51.5));
+
+    final List<Aircraft> aircraft = aircraftStateService.getAircraftSeenSince(0L);
+
+    assertThat(aircraft).hasSize(1);
+    assertThat(aircraft.get(0).getIcaoAddress()).isEqualTo("4CA2D6");
+    assertThat(aircraft.get(0).getLatitude()).isEqualTo(51.5);
+    assertThat(aircraft.get(0).getLongitude()).isEqualTo(-1.5);
+    assertThat(aircraft.get(0).getAltitude()).isEqualTo(37000.0f);
+    assertThat(aircraft.get(0).getTov()).isEqualTo(TIMESTAMP.toEpochMilli());
+    verify(aircraftRepository, never()).save(Mockito.any());
+    verify(aircraftRepository, never()).saveAll(anyIterable());
+  }
+
+  @Test
+  void shouldNotAddAircraftFromOtherMessages() {
+    aircraftStateService.update(
+        new TransmissionMessage.Builder(ICAO, TIMESTAMP)
+            .transmissionType(TransmissionType.AIRBORNE_VELOCITY)
+            .groundSpeed(450.0f)
+            .build());
+    aircraftStateService.update(new IdMessage.Builder(ICAO, TIMESTAMP).callSign("BAW123").build());
+
+    assertThat(aircraftStateService.getAircraftCount()).isZero();
+    assertThat(aircraftStateService.getChangedAircraftCount()).isZero();
+  }
+
+  @Test
+  void shouldUpdateKnownAircraftFromOtherMessages() {
+    aircraftStateService.update(positionMessage(ICAO, TIMESTAMP, 51.5));
+    aircraftStateService.update(
+        new TransmissionMessage.Builder(ICAO, TIMESTAMP)
+            .transmissionType(TransmissionType.AIRBORNE_VELOCITY)
+            .groundSpeed(450.0f)
+            .track(270.0f)
+            .build());
+    aircraftStateService.update(
+        new TransmissionMessage.Builder(ICAO, TIMESTAMP)
+            .transmissionType(TransmissionType.SURVEILLANCE_ID)
+            .squawk((short) 7421)
+            .build());
+    aircraftStateService.update(new IdMessage.Builder(ICAO, TIMESTAMP).callSign("BAW123").build());
+
+    final Aircraft aircraft = aircraftStateService.getAircraftSeenSince(0L).get(0);
+
+    assertThat(aircraft.getGroundSpeed()).isEqualTo(450.0f);
+    assertThat(aircraft.getTrack()).isEqualTo(270.0f);
+    assertThat(aircraft.getSquawk()).isEqualTo((short) 7421);
+    assertThat(aircraft.getCallSign()).isEqualTo("BAW123");
+    assertThat(aircraft.getAltitude()).isEqualTo(37000.0f);
+  }
+
+  @Test
+  void shouldOnlyGetAircraftSeenSinceTimeGiven() {
+    aircraftStateService.update(positionMessage(ICAO, TIMESTAMP, 51.5));
+    aircraftStateService.update(positionMessage(ICAO + 1, TIMESTAMP.plusSeconds(60L), 51.5));
+
+    assertThat(aircraftStateService.getAircraftSeenSince(TIMESTAMP.toEpochMilli()))
+        .extracting(Aircraft::getIcao)
+        .containsExactly(ICAO + 1);
+  }
+
+  @Test
+  void shouldFlushCoalescedChanges() {
+    aircraftStateService.update(positionMessage(ICAO, TIMESTAMP, 51.5));
+    aircraftStateService.update(positionMessage(ICAO, TIMESTAMP.plusSeconds(1L), 51.6));
+    aircraftStateService.update(positionMessage(ICAO + 1, TIMESTAMP, 52.0));
+
+    assertThat(aircraftStateService.getChangedAircraftCount()).isEqualTo(2);
+    assertThat(aircraftStateService.flush()).isEqualTo(2);
+
+    final List<Aircraft> savedAircraft = captureSavedAircraft();
+
+    assertThat(savedAircraft).extracting(Aircraft::getIcao)
+                             .containsExactlyInAnyOrder(ICAO, ICAO + 1);
+    assertThat(savedAircraft).filteredOn(aircraft -> aircraft.getIcao() == ICAO)
+                             .extracting(Aircraft::getLatitude)
+                             .containsExactly(51.6);
+    assertThat(aircraftStateService.getChangedAircraftCount()).isZero();
+    assertThat(aircraftStateService.getFlushedAircraftCount()).isEqualTo(2L);
+    assertThat(aircraftStateService.flush()).isZero();
+  }
+
+  @Test
+  void shouldNotFlushIfAircraftPersistenceDisabled() {
+    aircraftStateService.setPersistAircraft(false);
+    aircraftStateService.update(positionMessage(ICAO, TIMESTAMP, 51.5));
+
+    assertThat(aircraftStateService.isPersistAircraft()).isFalse();
+    assertThat(aircraftStateService.flush()).isZero();
+    assertThat(aircraftStateService.getChangedAircraftCount()).isZero();
+    verify(aircraftRepository, never()).saveAll(anyIterable());
+  }
+
+  @Test
+  void shouldKeepChangesIfFlushFails() {
+    when(aircraftRepository.saveAll(anyIterable())).thenThrow(new IllegalStateException());
+    aircraftStateService.update(positionMessage(ICAO, TIMESTAMP, 51.5));
+
+    assertThatIllegalStateException().isThrownBy(() -> aircraftStateService.flush());
+    assertThat(aircraftStateService.getChangedAircraftCount()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldOnlyEvictFlushedAircraftNotSeenSinceTimeGiven() {
+    aircraftStateService.update(positionMessage(ICAO, TIMESTAMP, 51.5));
+    aircraftStateService.update(positionMessage(ICAO + 1, TIMESTAMP.plusSeconds(60L), 51.5));
+
+    assertThat(aircraftStateService.evictAircraftNotSeenSince(TIMESTAMP.toEpochMilli())).isZero();
+
+    aircraftStateService.flush();
+
+    assertThat(aircraftStateService.evictAircraftNotSeenSince(TIMESTAMP.toEpochMilli()))
+        .isEqualTo(1);
+    assertThat(aircraftStateService.getAircraftSeenSince(0L))
+        .extracting(Aircraft::getIcao)
+        .containsExactly(ICAO + 1);
+  }
+
+  @Test
+  void shouldGetAllAircraftAsFullChangesSinceVersionZero() {
+    aircraftStateService.update(positionMessage(ICAO, TIMESTAMP, 51.5));
+    aircraftStateService.update(positionMessage(ICAO + 1, TIMESTAMP, 52.0));
+
+    final AircraftChanges changes = aircraftStateService.getChangesSince(0L);
+
+    assertThat(changes.isFull()).isTrue();
+    assertThat(changes.getUpdated()).extracting(Aircraft::getIcao)
+                                    .containsExactlyInAnyOrder(ICAO, ICAO + 1);
+    assertThat(changes.getRemoved()).isEmpty();
+    assertThat(changes.getVersion()).isEqualTo(aircraftStateService.getVersion());
+  }
+
+  @Test
+  void shouldOnlyGetAircraftChangedSinceVersionGiven() {
+    aircraftStateService.update(positionMessage(ICAO, TIMESTAMP, 51.5));
+    aircraftStateService.update(positionMessage(ICAO + 1, TIMESTAMP, 52.0));
+
+    final long version = aircraftStateService.getChangesSince(0L).getVersion();
+
+    aircraftStateService.update(new IdMessage.Builder(ICAO, TIMESTAMP).callSign("BAW123").build());
+
+    final AircraftChanges changes = aircraftStateService.getChangesSince(version);
+
+    assertThat(changes.isFull()).isFalse();
+    assertThat(changes.getUpdated()).extracting(Aircraft::getCallSign).containsExactly("BAW123");
+    assertThat(changes.getVersion()).isGreaterThan(version);
+    assertThat(aircraftStateService.getChangesSince(changes.getVersion()).isEmpty()).isTrue();
+  }
+
+  @Test
+  void shouldNotChangeVersionForRepeatedValues() {
+    aircraftStateService.update(positionMessage(ICAO, TIMESTAMP, 51.5));
+    aircraftStateService.update(new IdMessage.Builder(ICAO, TIMESTAMP).callSign("BAW123").build());
+
+    final long version = aircraftStateService.getVersion();
+
+    aircraftStateService.update(new IdMessage.Builder(ICAO, TIMESTAMP).callSign("BAW123").build());
+    aircraftStateService.update(
+        new TransmissionMessage.Builder(ICAO, TIMESTAMP)
+            .transmissionType(TransmissionType.SURVEILLANCE_ID)
+            .altitude(37000.0f)
+            .build());
+
+    assertThat(aircraftStateService.getVersion()).isEqualTo(version);
+    assertThat(aircraftStateService.getChangesSince(version).isEmpty()).isTrue();
+  }
+
+  @Test
+  void shouldGetEvictedAircraftAsRemovedUntilTombstonePruned() {
+    aircraftStateService.update(positionMessage(ICAO, TIMESTAMP, 51.5));
+    aircraftStateService.flush();
+
+    final long version = aircraftStateService.getVersion();
+
+    aircraftStateService.evictAircraftNotSeenSince(TIMESTAMP.toEpochMilli());
+
+    final AircraftChanges changes = aircraftStateService.getChangesSince(version);
+
+    assertThat(changes.getUpdated()).isEmpty();
+    assertThat(changes.getRemoved()).containsExactly("4CA2D6");
+    assertThat(aircraftStateService.getChangesSince(changes.getVersion()).isEmpty()).isTrue();
+    assertThat(aircraftStateService.pruneTombstonesBefore(Long.MAX_VALUE)).isEqualTo(1);
+    assertThat(aircraftStateService.getChangesSince(version).isFull()).isTrue();
+    assertThat(aircraftStateService.getChangesSince(changes.getVersion()).isFull()).isFalse();
+  }
+
+  @Test
+  void shouldNotGetReaddedAircraftAsRemoved() {
+    aircraftStateService.update(positionMessage(ICAO, TIMESTAMP, 51.5));
+    aircraftStateService.flush();
+
+    final long version = aircraftStateService.getVersion();
+
+    aircraftStateService.evictAircraftNotSeenSince(TIMESTAMP.toEpochMilli());
+    aircraftStateService.update(positionMessage(ICAO, TIMESTAMP.plusSeconds(60L), 51.6));
+
+    final AircraftChanges changes = aircraftStateService.getChangesSince(version);
+
+    assertThat(changes.getUpdated()).extracting(Aircraft::getLatitude).containsExactly(51.6);
+    assertThat(changes.getRemoved()).isEmpty();
+  }
+
+  @Test
+  void shouldGetFullChangesForVersionNotIssued() {
+    aircraftStateService.update(positionMessage(ICAO, TIMESTAMP, 51.5));
+
+    assertThat(aircraftStateService.getChangesSince(Long.MAX_VALUE).isFull()).isTrue();
+    assertThat(aircraftStateService.getAircraft(ICAO)).isNotNull();
+    assertThat(aircraftStateService.getAircraft(ICAO + 1)).isNull();
+  }
+
+  @Test
+  void shouldLoadRecentlySeenAircraftOnStart() throws InterruptedException {
+    when(aircraftRepository.findAllByTovGreaterThan(Mockito.anyLong()))
+        .thenReturn(
+            Collections.singletonList(
+                new Aircraft(ICAO, 51.5, -1.5, System.currentTimeMillis())));
+
+    aircraftStateService.start();
+
+    try {
+      assertThat(aircraftStateService.getAircraftCount()).isEqualTo(1);
+    } finally {
+      aircraftStateService.stop();
+    }
+  }
+}
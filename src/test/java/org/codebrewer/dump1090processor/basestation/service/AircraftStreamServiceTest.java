@@ -0,0 +1,124 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Instant;
+import org.codebrewer.dump1090processor.basestation.domain.TransmissionType;
+import org.codebrewer.dump1090processor.basestation.entity.TransmissionMessage;
+import org.codebrewer.dump1090processor.basestation.repository.AircraftRepository;
+import org.geolatte.geom.G2D;
+import org.geolatte.geom.Point;
+import org.geolatte.geom.crs.CrsRegistry;
+import org.geolatte.geom.crs.Geographic2DCoordinateReferenceSystem;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class AircraftStreamServiceTest {
+  private static final int ICAO = 0x4CA2D6;
+  private static final Instant TIMESTAMP = Instant.ofEpochMilli(1_600_000_000_000L);
+
+  private static final Geographic2DCoordinateReferenceSystem COORDINATE_REFERENCE_SYSTEM =
+      CrsRegistry.getGeographicCoordinateReferenceSystemForEPSG(4326);
+
+  private static TransmissionMessage positionMessage(int icao, Instant timestamp, double lat) {
+    return new TransmissionMessage.Builder(icao, timestamp)
+        .transmissionType(TransmissionType.AIRBORNE_POSITION)
+        .position(new Point<>(new G2D(-1.5, lat), COORDINATE_REFERENCE_SYSTEM))
+        .build();
+  }
+
+  private AircraftStateService aircraftStateService;
+  private AircraftStreamService aircraftStreamService;
+
+  @BeforeEach
+  void setUp() {
+    aircraftStateService = new AircraftStateService(
+        Mockito.mock(AircraftRepository.class), 60_000L, 600_000L, false);
+    aircraftStreamService = new AircraftStreamService(
+        aircraftStateService, new ObjectMapper(), 60_000L, 2, Runnable::run);
+    aircraftStreamService.start();
+  }
+
+  @AfterEach
+  void tearDown() {
+    aircraftStreamService.stop();
+  }
+
+  @Test
+  void shouldAddSubscriberAndSendSnapshot() {
+    aircraftStateService.update(positionMessage(ICAO, TIMESTAMP, 51.5));
+
+    assertThat(aircraftStreamService.subscribe()).isNotNull();
+    assertThat(aircraftStreamService.getSubscriberCount()).isEqualTo(1);
+    assertThat(aircraftStreamService.getSentEventCount()).isEqualTo(1L);
+
+    aircraftStreamService.publishChanges();
+
+    assertThat(aircraftStreamService.getPublishedChangesCount()).isEqualTo(1L);
+    assertThat(aircraftStreamService.getSentEventCount()).isEqualTo(2L);
+
+    aircraftStreamService.publishChanges();
+
+    assertThat(aircraftStreamService.getPublishedChangesCount()).isEqualTo(1L);
+  }
+
+  @Test
+  void shouldNotPublishIfNothingChanged() {
+    aircraftStreamService.subscribe();
+    aircraftStreamService.publishChanges();
+
+    assertThat(aircraftStreamService.getPublishedChangesCount()).isZero();
+    assertThat(aircraftStreamService.getSentEventCount()).isEqualTo(1L);
+  }
+
+  @Test
+  void shouldCompleteSubscribersWhenStopped() {
+    aircraftStreamService.subscribe();
+    aircraftStreamService.stop();
+
+    assertThat(aircraftStreamService.getSubscriberCount()).isZero();
+  }
+
+  @Test
+  void shouldDropSubscriberThatFallsBehind() {
+    aircraftStreamService.stop();
+
+    // Events are queued but never sent
+    //
+    aircraftStreamService = new AircraftStreamService(
+        aircraftStateService, new ObjectMapper(), 60_000L, 2, task -> { });
+    aircraftStreamService.start();
+    aircraftStreamService.subscribe();
+
+    aircraftStateService.update(positionMessage(ICAO, TIMESTAMP, 51.5));
+    aircraftStreamService.publishChanges();
+
+    assertThat(aircraftStreamService.getSubscriberCount()).isEqualTo(1);
+
+    aircraftStateService.update(positionMessage(ICAO, TIMESTAMP.plusSeconds(1L), 51.6));
+    aircraftStreamService.publishChanges();
+
+    assertThat(aircraftStreamService.getSubscriberCount()).isZero();
+    assertThat(aircraftStreamService.getDroppedSubscriberCount()).isEqualTo(1L);
+    assertThat(aircraftStreamService.getSentEventCount()).isZero();
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
+import org.codebrewer.dump1090processor.basestation.entity.CallSignMessage;
+import org.junit.jupiter.api.Test;
+
+class AvrMessageTransformerServiceTest {
+  private final AvrMessageTransformerService transformerService =
+      new AvrMessageTransformerService(Double.NaN, Double.NaN);
+
+  private static byte[] bytes(String line) {
+    return line.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  @Test
+  void shouldTransformMessageWithAndWithoutTimestamp() {
+    final BaseStationMessage message =
+        transformerService.transformPayload(bytes("*8D4840D6202CC371C32CE0576098;"));
+    final BaseStationMessage timestampedMessage =
+        transformerService.transformPayload(bytes("@0123456789ab8d4840d6202cc371c32ce0576098;\r"));
+
+    assertThat(((CallSignMessage) message).getCallSign()).isEqualTo("KLM1023");
+    assertThat(((CallSignMessage) timestampedMessage).getCallSign()).isEqualTo("KLM1023");
+    assertThat(transformerService.getDecodedMessageCount()).isEqualTo(2L);
+  }
+
+  @Test
+  void shouldTransformMalformedAndUndecodableMessagesToInvalidMessage() {
+    assertThat(transformerService.transformPayload(bytes("*8D4840D6202CC371C32CE0576098")))
+        .isSameAs(BaseStationMessage.INVALID_MESSAGE);
+    assertThat(transformerService.transformPayload(bytes("*8D4840D6202CC371C32CE05760X8;")))
+        .isSameAs(BaseStationMessage.INVALID_MESSAGE);
+    assertThat(transformerService.transformPayload(bytes("*8D4840D6202CC371C32CE0576099;")))
+        .isSameAs(BaseStationMessage.INVALID_MESSAGE);
+    assertThat(transformerService.transformPayload(bytes("*7700;")))
+        .isSameAs(BaseStationMessage.INVALID_MESSAGE);
+    assertThat(transformerService.transformPayload(bytes("")))
+        .isSameAs(BaseStationMessage.INVALID_MESSAGE);
+    assertThat(transformerService.getUndecodedMessageCount()).isEqualTo(5L);
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.ip.tcp.serializer.SoftEndOfStreamException;
+
+class BeastFrameDeserializerTest {
+  private static final byte[] LONG_FRAME = ModeSDecoderTest.bytes(
+      "33001a2b3c4d5ea28D4840D6202CC371C32CE0576098");
+  private static final byte[] SHORT_FRAME =
+      ModeSDecoderTest.bytes("32000000000001ff5d4ca2d61a2b3c");
+
+  private final BeastFrameDeserializer deserializer = new BeastFrameDeserializer();
+
+  private byte[] serialize(byte[]... frames) throws IOException {
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+    for (byte[] frame : frames) {
+      deserializer.serialize(frame, outputStream);
+    }
+
+    return outputStream.toByteArray();
+  }
+
+  @Test
+  void shouldEscapeAndUnescapeFrames() throws IOException {
+    final byte[] bytes = serialize(LONG_FRAME, SHORT_FRAME);
+    final InputStream inputStream = new ByteArrayInputStream(bytes);
+
+    // Each frame gains a leading escape byte and doubles the escape byte it holds
+    //
+    assertThat(bytes).hasSize(LONG_FRAME.length + 2 + SHORT_FRAME.length + 2);
+    assertThat(deserializer.deserialize(inputStream)).isEqualTo(LONG_FRAME);
+    assertThat(deserializer.deserialize(inputStream)).isEqualTo(SHORT_FRAME);
+    assertThatThrownBy(() -> deserializer.deserialize(inputStream))
+        .isInstanceOf(SoftEndOfStreamException.class);
+  }
+
+  @Test
+  void shouldDecodeTimestampAndSignalLevel() {
+    assertThat(BeastFrameDeserializer.getTimestamp(LONG_FRAME)).isEqualTo(0x001a2b3c4d5eL);
+    assertThat(BeastFrameDeserializer.getSignalLevel(LONG_FRAME)).isEqualTo(0xa2);
+    assertThat(LONG_FRAME[BeastFrameDeserializer.MESSAGE_OFFSET]).isEqualTo((byte) 0x8d);
+  }
+
+  @Test
+  void shouldSkipBytesBetweenFramesAndFramesCutShort() throws IOException {
+    final byte[] frames = serialize(LONG_FRAME, SHORT_FRAME);
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+    // Garbage, a frame of an unsupported type, then the first half of a frame
+    //
+    outputStream.write(new byte[] {0x00, 0x1a, 0x1a, 0x42, 0x1a, '5', 0x01});
+    outputStream.write(frames, 0, 10);
+    outputStream.write(frames);
+
+    final InputStream inputStream = new ByteArrayInputStream(outputStream.toByteArray());
+
+    assertThat(deserializer.deserialize(inputStream)).isEqualTo(LONG_FRAME);
+    assertThat(deserializer.deserialize(inputStream)).isEqualTo(SHORT_FRAME);
+  }
+}
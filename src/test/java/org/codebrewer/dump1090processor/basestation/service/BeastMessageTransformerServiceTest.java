@@ -0,0 +1,50 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
+import org.codebrewer.dump1090processor.basestation.entity.CallSignMessage;
+import org.junit.jupiter.api.Test;
+
+class BeastMessageTransformerServiceTest {
+  private final BeastMessageTransformerService transformerService =
+      new BeastMessageTransformerService(Double.NaN, Double.NaN);
+
+  @Test
+  void shouldTransformModeSFrame() {
+    final BaseStationMessage message = transformerService.transformPayload(
+        ModeSDecoderTest.bytes("33001a2b3c4d5ea28D4840D6202CC371C32CE0576098"));
+
+    assertThat(message).isInstanceOf(CallSignMessage.class);
+    assertThat(((CallSignMessage) message).getCallSign()).isEqualTo("KLM1023");
+    assertThat(transformerService.getDecodedFrameCount()).isEqualTo(1L);
+    assertThat(transformerService.getUndecodedFrameCount()).isZero();
+  }
+
+  @Test
+  void shouldTransformUndecodableFramesToInvalidMessage() {
+    assertThat(transformerService.transformPayload(ModeSDecoderTest.bytes("3100000000000180a0b0")))
+        .isSameAs(BaseStationMessage.INVALID_MESSAGE);
+    assertThat(transformerService.transformPayload(
+        ModeSDecoderTest.bytes("33001a2b3c4d5ea28D4840D6202CC371C32CE0576099")))
+        .isSameAs(BaseStationMessage.INVALID_MESSAGE);
+    assertThat(transformerService.getDecodedFrameCount()).isZero();
+    assertThat(transformerService.getUndecodedFrameCount()).isEqualTo(2L);
+  }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import org.codebrewer.dump1090processor.Assertions;
+import org.codebrewer.dump1090processor.basestation.domain.MessageType;
+import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
+import org.codebrewer.dump1090processor.basestation.entity.CallSignMessage;
+import org.codebrewer.dump1090processor.basestation.entity.StatusMessage;
+import org.codebrewer.dump1090processor.basestation.entity.TransmissionMessage;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class ByteMessageParsingServiceTest {
+  private static final Instant DUMMY_MESSAGE_TIMESTAMP_INSTANT = Instant.now();
+
+  private static String DUMMY_MESSAGE_TIMESTAMP_STRING;
+
+  private static String getCsvMessageWithDummyTimestamp(String csvMessagePattern) {
+    return String.format(csvMessagePattern, DUMMY_MESSAGE_TIMESTAMP_STRING, ",");
+  }
+
+  private static byte[] bytes(String csvMessage) {
+    return csvMessage.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  @BeforeAll
+  static void setUp() {
+    final DateTimeFormatter dateTimeFormatter =
+        DateTimeFormatter.ofPattern("yyyy/MM/dd,HH:mm:ss.SSS");
+
+    final LocalDateTime dummyMessageTimestamp =
+        LocalDateTime.ofInstant(DUMMY_MESSAGE_TIMESTAMP_INSTANT, ZoneId.systemDefault());
+
+    DUMMY_MESSAGE_TIMESTAMP_STRING = dateTimeFormatter.format(dummyMessageTimestamp);
+  }
+
+  private final MessageParsingService messageParsingService = new MessageParsingService();
+  private final ByteMessageParsingService byteMessageParsingService =
+      new ByteMessageParsingService();
+
+  // Checks that parsing the bytes of a message gives the same result as parsing its text
+  //
+  private void assertParsesLikeMessageText(String csvMessage) {
+    final BaseStationMessage expected = messageParsingService.parseCsvMessageText(csvMessage);
+    final BaseStationMessage actual =
+        byteMessageParsingService.parseCsvMessageBytes(bytes(csvMessage));
+
+    if (expected == null) {
+      Assertions.assertThat(actual).isNull();
+
+      return;
+    }
+
+    Assertions.assertThat(actual)
+              .isExactlyInstanceOf(expected.getClass())
+              .hasId(expected.getId())
+              .hasIcaoAddress(expected.getIcaoAddress());
+    org.assertj.core.api.Assertions.assertThat(actual.getTimestamp())
+                                   .isEqualTo(expected.getTimestamp());
+
+    if (expected instanceof CallSignMessage) {
+      Assertions.assertThat(actual).hasCallSign(((CallSignMessage) expected).getCallSign());
+    }
+
+    if (expected instanceof StatusMessage) {
+      Assertions.assertThat(actual)
+                .hasStatusMessageType(((StatusMessage) expected).getStatusMessageType());
+    }
+
+    if (expected instanceof TransmissionMessage) {
+      final TransmissionMessage transmissionMessage = (TransmissionMessage) expected;
+
+      Assertions.assertThat(actual)
+                .hasTransmissionType(transmissionMessage.getTransmissionType())
+                .hasAltitude(transmissionMessage.getAltitude())
+                .hasGroundSpeed(transmissionMessage.getGroundSpeed())
+                .hasTrack(transmissionMessage.getTrack())
+                .hasPosition(transmissionMessage.getPosition())
+                .hasVerticalRate(transmissionMessage.getVerticalRate())
+                .hasSquawk(transmissionMessage.getSquawk())
+                .hasAlert(transmissionMessage.getAlert())
+                .hasEmergency(transmissionMessage.getEmergency())
+                .hasIdentActive(transmissionMessage.getIdentActive())
+                .hasOnGround(transmissionMessage.getOnGround());
+    }
+  }
+
+  @Test
+  void shouldThrowIllegalArgumentExceptionIfCsvMessageBytesIsNull() {
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> byteMessageParsingService.parseCsvMessageBytes(null))
+        .withMessage("Message token array has zero length");
+  }
+
+  @Test
+  void shouldThrowIllegalArgumentExceptionIfCsvMessageBytesIsWhitespace() {
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> byteMessageParsingService.parseCsvMessageBytes(bytes(" \r\n")))
+        .withMessage("Message token array has zero length");
+  }
+
+  @Test
+  void shouldThrowIllegalArgumentExceptionIfMessageTypeIsUnexpected() {
+    assertThatIllegalArgumentException()
+        .isThrownBy(
+            () -> byteMessageParsingService.parseCsvMessageBytes(bytes(MessageType.CLK.name())))
+        .withMessage("Unexpected message type: 'CLK'");
+  }
+
+  @Test
+  void shouldThrowIllegalArgumentExceptionIfMessageTypeIsUnknown() {
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> byteMessageParsingService.parseCsvMessageBytes(bytes("XYZ,1,2")))
+        .withMessage("No enum constant " + MessageType.class.getCanonicalName() + ".XYZ");
+  }
+
+  @Test
+  void shouldThrowIllegalArgumentExceptionIfStatusMessageTypeIsUnexpected() {
+    final String csvMessage =
+        getCsvMessageWithDummyTimestamp("STA,,333,510,4CA7B9,610,%s,,,AD");
+
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> byteMessageParsingService.parseCsvMessageBytes(bytes(csvMessage)))
+        .withMessage("Unexpected status message type: 'AD'");
+  }
+
+  @Test
+  void shouldThrowIllegalArgumentExceptionIfIcaoAddressIsInvalid() {
+    final String csvMessage =
+        getCsvMessageWithDummyTimestamp("MSG,3,333,380,4075FG,480,%s,%s,,37000,,,,,,,,,,");
+
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> byteMessageParsingService.parseCsvMessageBytes(bytes(csvMessage)))
+        .withMessage("Invalid ICAO address: '4075FG'");
+  }
+
+  @Test
+  void shouldParseNonIcaoAddressLikeMessageText() {
+    assertParsesLikeMessageText(
+        getCsvMessageWithDummyTimestamp("MSG,5,333,380,~4075FD,480,%s,%s,,37000,,,,,,,0,,0,0"));
+  }
+
+  @Test
+  void shouldThrowIllegalArgumentExceptionIfCsvMessageBytesHasTooFewTokens() {
+    assertThatIllegalArgumentException()
+        .isThrownBy(
+            () -> byteMessageParsingService.parseCsvMessageBytes(bytes(MessageType.STA.name())))
+        .withMessage(
+            String
+                .format("Expected %d tokens but found 1", MessageType.STA.getMessageTokenCount()));
+  }
+
+  @Test
+  void shouldThrowIllegalArgumentExceptionIfCsvMessageBytesHasMissingDateToken() {
+    final String csvMessage = "AIR,,333,297,400981,397,,22:27:09.480,2019/05/11,22:27:09.480";
+
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> byteMessageParsingService.parseCsvMessageBytes(bytes(csvMessage)))
+        .withMessage("Date () and time (22:27:09.480) must be provided");
+  }
+
+  @Test
+  void shouldThrowIllegalArgumentExceptionIfCsvMessageBytesHasMissingTimeToken() {
+    final String csvMessage = "AIR,,333,297,400981,397,2019/05/11,,2019/05/11,22:27:09.480";
+
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> byteMessageParsingService.parseCsvMessageBytes(bytes(csvMessage)))
+        .withMessage("Date (2019/05/11) and time () must be provided");
+  }
+
+  @Test
+  void shouldParseEachMessageTypeLikeMessageParsingService() {
+    assertParsesLikeMessageText(getCsvMessageWithDummyTimestamp("AIR,,333,380,4075FD,480,%s,%s"));
+    assertParsesLikeMessageText(
+        getCsvMessageWithDummyTimestamp("ID,,333,378,48C22B,478,%s,,,RYR6LF"));
+    assertParsesLikeMessageText(
+        getCsvMessageWithDummyTimestamp("STA,,333,510,4CA7B9,610,%s,,,SL"));
+    assertParsesLikeMessageText(
+        getCsvMessageWithDummyTimestamp("STA,,333,510,4CA7B9,610,%s,,,RM"));
+  }
+
+  @Test
+  void shouldParseEachTransmissionTypeLikeMessageParsingService() {
+    assertParsesLikeMessageText(
+        getCsvMessageWithDummyTimestamp("MSG,1,333,365,40066B,465,%s,,,BCS2135,,,,,,,,,,,"));
+    assertParsesLikeMessageText(
+        getCsvMessageWithDummyTimestamp(
+            "MSG,2,333,410,405637,510,%s,,,,0,,,55.95252,-3.36499,,,,,,-1"));
+    assertParsesLikeMessageText(
+        getCsvMessageWithDummyTimestamp(
+            "MSG,3,333,417,45D967,517,%s,,,,39000,,,56.37831,-2.75441,,,0,0,0,0"));
+    assertParsesLikeMessageText(
+        getCsvMessageWithDummyTimestamp(
+            "MSG,4,333,417,45D967,517,%s,,,,,465.0,41.1,,,-64,,,,,"));
+    assertParsesLikeMessageText(
+        getCsvMessageWithDummyTimestamp("MSG,5,333,445,405FD4,545,%s,,,,8375,,,,,,,0,,0,0"));
+    assertParsesLikeMessageText(
+        getCsvMessageWithDummyTimestamp(
+            "MSG,6,333,445,405FD4,545,%s,,,,16475,,,,,,2726,0,0,0,0"));
+    assertParsesLikeMessageText(
+        getCsvMessageWithDummyTimestamp("MSG,7,333,445,405FD4,545,%s,,,,16475,,,,,,,,,,0"));
+    assertParsesLikeMessageText(
+        getCsvMessageWithDummyTimestamp("MSG,8,333,434,39C494,534,%s,,,,,,,,,,,,,,0"));
+  }
+
+  @Test
+  void shouldReturnNullMessageLikeMessageParsingServiceForMissingOrInvalidTransmissionType() {
+    assertParsesLikeMessageText(getCsvMessageWithDummyTimestamp("MSG,,,,,,%s,,,,,,,,,,,,,,"));
+    assertParsesLikeMessageText(getCsvMessageWithDummyTimestamp("MSG,9,,,,,%s,,,,,,,,,,,,,,"));
+  }
+
+  @Test
+  void shouldParseUnparseableAndUnusualFieldValuesLikeMessageParsingService() {
+    assertParsesLikeMessageText(
+        getCsvMessageWithDummyTimestamp(
+            "MSG,3,333,417,45D967,517,%s,,,,39000,,,,-2.75441,,,0,0,0,0"));
+    assertParsesLikeMessageText(
+        getCsvMessageWithDummyTimestamp(
+            "MSG,3,333,417,45D967,517,%s,,,,39000,,,56.37831,,,,0,0,0,0"));
+    assertParsesLikeMessageText(
+        getCsvMessageWithDummyTimestamp("MSG,8,333,434,39C494,534,%s,,,,,,,,,,,,,,X"));
+    assertParsesLikeMessageText(
+        getCsvMessageWithDummyTimestamp(
+            "MSG,4,333,417,45D967,517,%s,,,,, 465.5 ,4.11e1,,,+064,,,,,"));
+    assertParsesLikeMessageText(
+        getCsvMessageWithDummyTimestamp(
+            "MSG,4,333,417,45D967,517,%s,,,,,-0,.5,,,40000,,,,,"));
+    assertParsesLikeMessageText(
+        getCsvMessageWithDummyTimestamp(
+            "MSG,3,333,417,45D967,517,%s,,,,1234567890123,,,56.378312345678,-2.7544,,,-1,2,"
+                + "99999999999,-2147483648"));
+  }
+
+  @Test
+  void shouldTruncateCsvMessageTimeTokenAtThreeDecimalPlaces() {
+    final String csvMessage =
+        String.format(
+            "STA,,333,510,4CA7B9,610,%s,,,SL",
+            DUMMY_MESSAGE_TIMESTAMP_STRING + "987");
+
+    assertParsesLikeMessageText(csvMessage);
+  }
+
+  @Test
+  void shouldParseTimeTokensWithFewerThanThreeDecimalPlacesLikeMessageParsingService() {
+    assertParsesLikeMessageText("STA,,333,510,4CA7B9,610,2019/05/11,22:27:09.4,,,SL");
+    assertParsesLikeMessageText("STA,,333,510,4CA7B9,610,2019/05/11,22:27:09.48,,,SL");
+    assertParsesLikeMessageText("STA,,333,510,4CA7B9,610,2019/02/29,22:27:09.480,,,SL");
+  }
+
+  @Test
+  void shouldTrimCallSignOfLeadingAndTrailingWhitespace() {
+    final String csvMessage =
+        getCsvMessageWithDummyTimestamp("ID,,333,378,48C22B,478,%s,,,  ABCD  ");
+
+    Assertions.assertThat(byteMessageParsingService.parseCsvMessageBytes(bytes(csvMessage)))
+              .hasCallSign("ABCD");
+  }
+
+  @Test
+  void shouldTruncateCallSignAtEightCharacters() {
+    final String csvMessage =
+        getCsvMessageWithDummyTimestamp("ID,,333,378,48C22B,478,%s,,,123456789");
+
+    Assertions.assertThat(byteMessageParsingService.parseCsvMessageBytes(bytes(csvMessage)))
+              .hasCallSign("12345678");
+  }
+
+  @Test
+  void shouldParseMessageFromRangeOfLargerByteArray() {
+    final String csvMessage =
+        getCsvMessageWithDummyTimestamp(
+            "MSG,3,333,417,45D967,517,%s,,,,39000,,,56.37831,-2.75441,,,0,0,0,0");
+    final byte[] buffer = bytes("MSG,8,1,1,000000\r\n" + csvMessage + "\r\nMSG,8");
+    final BaseStationMessage parsedMessage =
+        byteMessageParsingService.parseCsvMessageBytes(buffer, 18, csvMessage.length());
+
+    Assertions.assertThat(parsedMessage)
+              .isExactlyInstanceOf(TransmissionMessage.class)
+              .hasIcaoAddress("45D967")
+              .hasTimestamp(DUMMY_MESSAGE_TIMESTAMP_INSTANT)
+              .hasAltitude(39000f)
+              .hasOnGround(false);
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.ip.tcp.serializer.SoftEndOfStreamException;
+
+class ByteSliceLineDeserializerTest {
+  private static final String MESSAGE_TEXT =
+      "MSG,5,1,1,4CA2D6,1,2020/01/01,00:00:00.000,2020/01/01,00:00:00.000,,39000,,,,,,,0,,0,0";
+
+  private static InputStream inputStream(String text) {
+    return new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  @Test
+  void shouldReadLinesAsSlicesOfOneSlab() throws IOException {
+    final ByteSliceLineDeserializer deserializer = new ByteSliceLineDeserializer();
+    final InputStream inputStream = inputStream(MESSAGE_TEXT + "\r\n\r\nSTA,,5,179,400AE7\n");
+    final ByteSlice first = deserializer.deserialize(inputStream);
+    final ByteSlice second = deserializer.deserialize(inputStream);
+    final ByteSlice third = deserializer.deserialize(inputStream);
+
+    assertThat(first.toString()).isEqualTo(MESSAGE_TEXT);
+    assertThat(second.length()).isZero();
+    assertThat(third.toString()).isEqualTo("STA,,5,179,400AE7");
+    assertThat(third.array()).isSameAs(first.array());
+    assertThat(third.offset()).isEqualTo(MESSAGE_TEXT.length() + 4);
+    assertThatThrownBy(() -> deserializer.deserialize(inputStream))
+        .isInstanceOf(SoftEndOfStreamException.class);
+  }
+
+  @Test
+  void shouldMoveLineCrossingEndOfSlabToNewSlabLeavingEarlierLinesIntact() throws IOException {
+    final ByteSliceLineDeserializer deserializer = new ByteSliceLineDeserializer(128, 100);
+    final InputStream inputStream = inputStream(MESSAGE_TEXT + "\r\n" + MESSAGE_TEXT + "\r\n");
+    final ByteSlice first = deserializer.deserialize(inputStream);
+    final ByteSlice second = deserializer.deserialize(inputStream);
+
+    assertThat(second.array()).isNotSameAs(first.array());
+    assertThat(first.toString()).isEqualTo(MESSAGE_TEXT);
+    assertThat(second.toString()).isEqualTo(MESSAGE_TEXT);
+  }
+
+  @Test
+  void shouldRejectOverlongAndTruncatedLines() {
+    final ByteSliceLineDeserializer deserializer = new ByteSliceLineDeserializer(128, 16);
+
+    assertThatThrownBy(() -> deserializer.deserialize(inputStream(MESSAGE_TEXT + "\r\n")))
+        .isInstanceOf(IOException.class)
+        .isNotInstanceOf(SoftEndOfStreamException.class);
+    assertThatThrownBy(() -> deserializer.deserialize(inputStream("STA,,5")))
+        .isInstanceOf(IOException.class)
+        .isNotInstanceOf(SoftEndOfStreamException.class);
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DuplicateMessageFilteringServiceTest {
+  private static final byte[] POSITION_FROM_NORTH = bytes(
+      "MSG,3,1,1,4CA2D6,1,2020/01/01,00:00:00.000,2020/01/01,00:00:00.000,,39000,,,56.37831,-2.75441,,,0,0,0,0");
+  private static final byte[] POSITION_FROM_SOUTH = bytes(
+      "MSG,3,5,9,4CA2D6,7,2020/01/01,00:00:00.150,2020/01/01,00:00:00.150,,39000,,,56.37831,-2.75441,,,0,0,0,0");
+  private static final byte[] NEXT_POSITION_FROM_SOUTH = bytes(
+      "MSG,3,5,9,4CA2D6,7,2020/01/01,00:00:00.650,2020/01/01,00:00:00.650,,39025,,,56.37902,-2.75388,,,0,0,0,0");
+  private static final byte[] ALTITUDE_FROM_SOUTH = bytes(
+      "MSG,5,5,9,4CA2D6,7,2020/01/01,00:00:00.150,2020/01/01,00:00:00.150,,39000,,,,,,,0,,0,0");
+
+  private DuplicateMessageFilteringService filteringService;
+
+  private static byte[] bytes(String messageText) {
+    return messageText.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  @BeforeEach
+  void setUp() {
+    filteringService = new DuplicateMessageFilteringService(
+        60_000L, 1024, new PipelineMetrics(new SimpleMeterRegistry()));
+  }
+
+  @Test
+  void shouldIgnoreDatesTimesAndIdsWhenFingerprinting() {
+    assertThat(DuplicateMessageFilteringService.fingerprint(POSITION_FROM_NORTH))
+        .isEqualTo(DuplicateMessageFilteringService.fingerprint(POSITION_FROM_SOUTH))
+        .isNotEqualTo(DuplicateMessageFilteringService.fingerprint(NEXT_POSITION_FROM_SOUTH))
+        .isNotEqualTo(DuplicateMessageFilteringService.fingerprint(ALTITUDE_FROM_SOUTH));
+  }
+
+  @Test
+  void shouldFilterMessageHeardByAnotherReceiver() {
+    assertThat(filteringService.filterDuplicateMessage(POSITION_FROM_NORTH, "north")).isTrue();
+    assertThat(filteringService.filterDuplicateMessage(POSITION_FROM_SOUTH, "south")).isFalse();
+    assertThat(filteringService.filterDuplicateMessage(POSITION_FROM_SOUTH, "east")).isFalse();
+    assertThat(filteringService.filterDuplicateMessage(NEXT_POSITION_FROM_SOUTH, "south")).isTrue();
+    assertThat(filteringService.filterDuplicateMessage(ALTITUDE_FROM_SOUTH, "south")).isTrue();
+
+    assertThat(filteringService.getDuplicateMessageCount()).isEqualTo(2L);
+    assertThat(filteringService.getDuplicateMessageCounts())
+        .containsEntry("south", 1L)
+        .containsEntry("east", 1L)
+        .doesNotContainKey("north");
+  }
+
+  @Test
+  void shouldFingerprintByteSliceAsItsBytes() {
+    final byte[] bytes = new byte[POSITION_FROM_NORTH.length + 2];
+
+    System.arraycopy(POSITION_FROM_NORTH, 0, bytes, 1, POSITION_FROM_NORTH.length);
+
+    assertThat(filteringService.filterDuplicateMessage(POSITION_FROM_NORTH, "north")).isTrue();
+    assertThat(
+        filteringService.filterDuplicateMessage(
+            new ByteSlice(bytes, 1, POSITION_FROM_NORTH.length), "south"))
+        .isFalse();
+  }
+
+  @Test
+  void shouldNotFilterMessageRepeatedBySameReceiver() {
+    assertThat(filteringService.filterDuplicateMessage(POSITION_FROM_NORTH, null)).isTrue();
+    assertThat(filteringService.filterDuplicateMessage(POSITION_FROM_NORTH, null)).isTrue();
+    assertThat(filteringService.filterDuplicateMessage(NEXT_POSITION_FROM_SOUTH, "south")).isTrue();
+    assertThat(filteringService.filterDuplicateMessage(NEXT_POSITION_FROM_SOUTH, "south")).isTrue();
+
+    assertThat(filteringService.getDuplicateMessageCount()).isZero();
+  }
+
+  @Test
+  void shouldForgetFingerprintsOutsideWindow() {
+    final ExpiringFingerprintTable table = new ExpiringFingerprintTable(16, 1, 100L);
+
+    assertThat(table.isDuplicate(42L, 0, 1_000L)).isFalse();
+    assertThat(table.isDuplicate(42L, 1, 1_100L)).isTrue();
+    assertThat(table.isDuplicate(42L, 1, 1_101L)).isFalse();
+    assertThat(table.isDuplicate(42L, 0, 1_150L)).isTrue();
+  }
+
+  @Test
+  void shouldEvictOldestFingerprintsWhenFull() {
+    final ExpiringFingerprintTable table = new ExpiringFingerprintTable(8, 1, 60_000L);
+
+    assertThat(table.getCapacity()).isEqualTo(8);
+
+    for (long fingerprint = 1L; fingerprint <= 9L; fingerprint++) {
+      assertThat(table.isDuplicate(fingerprint, 0, fingerprint)).isFalse();
+    }
+
+    assertThat(table.isDuplicate(9L, 1, 10L)).isTrue();
+    assertThat(table.isDuplicate(1L, 1, 10L)).isFalse();
+  }
+}
@@ -43,6 +43,15 @@ class EmptyMessageFilteringServiceTest {
     assertThat(filteringService.getEmptyMessageCount()).isEqualTo(1L);
   }
 
+  @Test
+  void shouldReturnFalseForZeroLengthByteSlicePayload() {
+    assertThat(filteringService.filterEmptyMessage(new ByteSlice(new byte[] { 0 }, 1, 0)))
+        .isFalse();
+    assertThat(filteringService.filterEmptyMessage(new ByteSlice(new byte[] { 0 }, 0, 1)))
+        .isTrue();
+    assertThat(filteringService.getEmptyMessageCount()).isEqualTo(1L);
+  }
+
   @Test
   void shouldReturnTrueForNonZeroLengthPayload() {
     assertThat(filteringService.getEmptyMessageCount()).isEqualTo(0L);
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
+import org.codebrewer.dump1090processor.basestation.service.IngestLatencyService.FeedLatency;
+import org.codebrewer.dump1090processor.basestation.service.IngestLatencyService.LaggingMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class IngestLatencyServiceTest {
+  private static final String POSITION_MESSAGE =
+      "MSG,3,1,1,4CA2D6,1,2021/01/01,12:00:00.000,2021/01/01,12:00:00.000,,39000,,,"
+          + "56.37831,-2.75441,,,0,0,0,0";
+
+  private SimpleMeterRegistry meterRegistry;
+  private IngestLatencyService latencyService;
+  private long timestampMillis;
+
+  private BaseStationMessage newMessage(long receiveMillis, long parseMillis) {
+    final BaseStationMessage baseStationMessage =
+        new MessageParsingService().parseCsvMessageText(POSITION_MESSAGE);
+
+    timestampMillis = baseStationMessage.getTimestamp().toEpochMilli();
+    baseStationMessage.stampIngest(
+        timestampMillis + receiveMillis, timestampMillis + receiveMillis + parseMillis);
+
+    return baseStationMessage;
+  }
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    latencyService = new IngestLatencyService(meterRegistry, 60_000L, 2_000L, 2, 100L);
+  }
+
+  @Test
+  void shouldRecordLatencyForEachFeed() {
+    final BaseStationMessage baseStationMessage = newMessage(10L, 1L);
+
+    latencyService.record(null, baseStationMessage, 0L, timestampMillis + 20L);
+    latencyService.record("north", baseStationMessage, 0L, timestampMillis + 40L);
+    latencyService.record("north", baseStationMessage, 0L, timestampMillis + 60L);
+
+    final FeedLatency defaultLatency =
+        latencyService.getFeedLatencies().get(IngestLatencyService.DEFAULT_FEED_ID);
+    final FeedLatency northLatency = latencyService.getFeedLatencies().get("north");
+
+    assertThat(defaultLatency.getCount()).isEqualTo(1L);
+    assertThat(defaultLatency.getMaxMillis()).isEqualTo(20.0);
+    assertThat(northLatency.getCount()).isEqualTo(2L);
+    assertThat(northLatency.getMeanMillis()).isEqualTo(50.0);
+    assertThat(northLatency.getP99Millis()).isGreaterThan(0.0);
+    assertThat(meterRegistry.find(IngestLatencyService.LATENCY_TIMER_NAME)
+                            .tag("feed", "north")
+                            .timer()).isNotNull();
+    assertThat(latencyService.getLatencyPercentiles()).containsKeys("default", "north");
+    assertThat(latencyService.getLaggingMessageCount()).isZero();
+    assertThat(latencyService.getLaggingMessageSamples()).isEmpty();
+  }
+
+  @Test
+  void shouldSampleLaggingMessageWithStageBreakdown() {
+    final BaseStationMessage baseStationMessage = newMessage(1_500L, 100L);
+
+    latencyService.record("north", baseStationMessage, timestampMillis + 1_900L,
+        timestampMillis + 2_000L);
+
+    final List<LaggingMessage> samples = latencyService.getLaggingMessageSamples();
+
+    assertThat(latencyService.getLaggingMessageCount()).isEqualTo(1L);
+    assertThat(samples).hasSize(1);
+    assertThat(samples.get(0).getFeedId()).isEqualTo("north");
+    assertThat(samples.get(0).getIcaoAddress()).isEqualTo("4CA2D6");
+    assertThat(samples.get(0).getReceiveMillis()).isEqualTo(1_500L);
+    assertThat(samples.get(0).getParseMillis()).isEqualTo(100L);
+    assertThat(samples.get(0).getPersistMillis()).isEqualTo(300L);
+    assertThat(samples.get(0).getUpdateMillis()).isEqualTo(100L);
+    assertThat(samples.get(0).getTotalMillis()).isEqualTo(2_000L);
+    assertThat(latencyService.getLaggingMessages()).hasSize(1);
+  }
+
+  @Test
+  void shouldMarkUnknownStagesOfUnpersistedMessage() {
+    final BaseStationMessage baseStationMessage = newMessage(1_000L, 100L);
+
+    baseStationMessage.stampIngest(0L, timestampMillis + 1_100L);
+    latencyService.record(null, baseStationMessage, 0L, timestampMillis + 3_000L);
+
+    final LaggingMessage sample = latencyService.getLaggingMessageSamples().get(0);
+
+    assertThat(sample.getReceiveMillis()).isEqualTo(-1L);
+    assertThat(sample.getParseMillis()).isEqualTo(-1L);
+    assertThat(sample.getPersistMillis()).isEqualTo(-1L);
+    assertThat(sample.getUpdateMillis()).isEqualTo(1_900L);
+  }
+
+  @Test
+  void shouldLimitRateAndNumberOfSamples() {
+    final BaseStationMessage baseStationMessage = newMessage(10L, 1L);
+
+    latencyService.record(null, baseStationMessage, 0L, timestampMillis + 5_000L);
+    latencyService.record(null, baseStationMessage, 0L, timestampMillis + 5_050L);
+    latencyService.record(null, baseStationMessage, 0L, timestampMillis + 5_100L);
+    latencyService.record(null, baseStationMessage, 0L, timestampMillis + 5_200L);
+
+    final List<LaggingMessage> samples = latencyService.getLaggingMessageSamples();
+
+    assertThat(latencyService.getLaggingMessageCount()).isEqualTo(4L);
+    assertThat(samples).extracting(LaggingMessage::getTotalMillis)
+                       .containsExactly(5_100L, 5_200L);
+  }
+}
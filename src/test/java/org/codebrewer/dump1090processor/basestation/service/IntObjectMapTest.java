@@ -0,0 +1,74 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class IntObjectMapTest {
+  @Test
+  void shouldPutGetAndRemoveMappings() {
+    final IntObjectMap<String> map = new IntObjectMap<>(4);
+
+    assertThat(map.put(0x4ca2d6, "a")).isNull();
+    assertThat(map.put(0x4ca2d6, "b")).isEqualTo("a");
+    assertThat(map.put(0, "zero")).isNull();
+    assertThat(map.get(0x4ca2d6)).isEqualTo("b");
+    assertThat(map.get(0)).isEqualTo("zero");
+    assertThat(map.get(1)).isNull();
+    assertThat(map.size()).isEqualTo(2);
+    assertThat(map.remove(0x4ca2d6)).isEqualTo("b");
+    assertThat(map.remove(0x4ca2d6)).isNull();
+    assertThat(map.get(0x4ca2d6)).isNull();
+    assertThat(map.size()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldKeepMappingsReachableAsMapGrowsAndShrinks() {
+    final IntObjectMap<Integer> map = new IntObjectMap<>(1);
+
+    for (int key = 0; key < 10_000; key++) {
+      map.put(key * 16, key);
+    }
+
+    for (int key = 0; key < 10_000; key += 2) {
+      assertThat(map.remove(key * 16)).isEqualTo(key);
+    }
+
+    assertThat(map.size()).isEqualTo(5_000);
+
+    for (int key = 0; key < 10_000; key++) {
+      assertThat(map.get(key * 16)).isEqualTo(key % 2 == 0 ? null : key);
+    }
+  }
+
+  @Test
+  void shouldRemoveMappingsSatisfyingPredicate() {
+    final IntObjectMap<Integer> map = new IntObjectMap<>(16);
+
+    for (int key = 0; key < 100; key++) {
+      map.put(key, key);
+    }
+
+    map.removeIf(value -> value >= 10);
+
+    assertThat(map.size()).isEqualTo(10);
+    assertThat(map.get(9)).isEqualTo(9);
+    assertThat(map.get(10)).isNull();
+  }
+}
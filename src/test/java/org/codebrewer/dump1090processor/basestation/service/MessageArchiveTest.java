@@ -0,0 +1,220 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.codebrewer.dump1090processor.basestation.domain.TransmissionType;
+import org.codebrewer.dump1090processor.basestation.entity.TransmissionMessage;
+import org.geolatte.geom.G2D;
+import org.geolatte.geom.Point;
+import org.geolatte.geom.crs.CrsRegistry;
+import org.junit.jupiter.api.Test;
+
+class MessageArchiveTest {
+  private static final Instant T0 = Instant.parse("2021-01-01T10:00:00Z");
+
+  private static Point<G2D> position(double longitude, double latitude) {
+    return new Point<>(new G2D(longitude, latitude),
+        CrsRegistry.getGeographicCoordinateReferenceSystemForEPSG(4326));
+  }
+
+  private static MessageArchive roundTrip(List<TransmissionMessage> messages) throws IOException {
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+    MessageArchive.write(messages, outputStream);
+
+    return MessageArchive.read(new ByteArrayInputStream(outputStream.toByteArray()));
+  }
+
+  private static List<TransmissionMessage> scan(MessageArchive archive) throws IOException {
+    final List<TransmissionMessage> scanned = new ArrayList<>();
+
+    archive.scan(scanned::add);
+
+    return scanned;
+  }
+
+  // A few aircraft flying straight and level, each sending a message every half second or so
+  //
+  private static List<TransmissionMessage> flights(int messageCount) {
+    final List<TransmissionMessage> messages = new ArrayList<>();
+
+    for (int i = 0; i < messageCount; i++) {
+      final int aircraft = i % 8;
+      final TransmissionMessage.Builder builder =
+          new TransmissionMessage.Builder(0x400000 + aircraft * 37, T0.plusMillis(i * 60L));
+
+      builder.transmissionType(TransmissionType.AIRBORNE_POSITION)
+             .altitude(30_000.0f + aircraft * 1_000)
+             .position(position(-2.5 + aircraft * 0.1 + i * 0.00001, 56.0 + i * 0.00001))
+             .alert(false)
+             .emergency(false)
+             .identActive(false)
+             .onGround(false);
+      messages.add(builder.build());
+    }
+
+    return messages;
+  }
+
+  @Test
+  void shouldRoundTripMessagesInOrderOfTimestamp() throws IOException {
+    final TransmissionMessage later = ((TransmissionMessage.Builder)
+        new TransmissionMessage.Builder(0x4ca2d6, T0.plusSeconds(5L))
+            .transmissionType(TransmissionType.IDENTIFICATION_AND_CATEGORY)
+            .callSign("RYR1234"))
+        .build();
+    final TransmissionMessage earlier =
+        new TransmissionMessage.Builder(0xffffff, T0)
+            .transmissionType(TransmissionType.AIRBORNE_VELOCITY)
+            .groundSpeed(450.5f)
+            .track(271.25f)
+            .verticalRate((short) -640)
+            .squawk((short) 7_700)
+            .emergency(true)
+            .onGround(false)
+            .build();
+    final TransmissionMessage bare = new TransmissionMessage.Builder(1, T0.plusSeconds(9L)).build();
+
+    final List<TransmissionMessage> scanned = scan(roundTrip(Arrays.asList(later, bare, earlier)));
+
+    assertThat(scanned).hasSize(3);
+    assertThat(scanned.get(0).getTimestamp()).isEqualTo(T0);
+    assertThat(scanned.get(1).getIcao()).isEqualTo(0x4ca2d6);
+    assertThat(scanned.get(2).getTransmissionType()).isNull();
+
+    final TransmissionMessage first = scanned.get(0);
+
+    assertThat(first.getIcao()).isEqualTo(0xffffff);
+    assertThat(first.getTransmissionType()).isEqualTo(TransmissionType.AIRBORNE_VELOCITY);
+    assertThat(first.getGroundSpeed()).isEqualTo(450.5f);
+    assertThat(first.getTrack()).isEqualTo(271.25f);
+    assertThat(first.getVerticalRate()).isEqualTo((short) -640);
+    assertThat(first.getSquawk()).isEqualTo((short) 7_700);
+    assertThat(first.getEmergency()).isTrue();
+    assertThat(first.getOnGround()).isFalse();
+    assertThat(first.getAlert()).isNull();
+    assertThat(first.getAltitude()).isNull();
+    assertThat(first.getPosition()).isNull();
+    assertThat(first.getCallSign()).isNull();
+    assertThat(scanned.get(1).getCallSign()).isEqualTo("RYR1234");
+    assertThat(scanned.get(2).getTimestamp()).isEqualTo(T0.plusSeconds(9L));
+  }
+
+  @Test
+  void shouldRoundTripPositionsExactly() throws IOException {
+    final List<TransmissionMessage> messages = flights(100);
+    final List<TransmissionMessage> scanned = scan(roundTrip(messages));
+
+    for (int i = 0; i < messages.size(); i++) {
+      assertThat(scanned.get(i).getPosition()).isEqualTo(messages.get(i).getPosition());
+      assertThat(scanned.get(i).getAltitude()).isEqualTo(messages.get(i).getAltitude());
+    }
+  }
+
+  @Test
+  void shouldWriteFewBytesPerMessage() throws IOException {
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    final long byteCount = MessageArchive.write(flights(10_000), outputStream);
+
+    // A BaseStation message is about 100 characters of text and more as a database row
+    //
+    assertThat(byteCount).isEqualTo(outputStream.size());
+    assertThat(byteCount / 10_000.0).isLessThan(10.0);
+  }
+
+  @Test
+  void shouldScanMessagesInRangeOfTime() throws IOException {
+    final MessageArchive archive = roundTrip(flights(100));
+    final List<TransmissionMessage> scanned = new ArrayList<>();
+
+    archive.scan(T0.plusMillis(600L), T0.plusMillis(1_200L), scanned::add);
+
+    assertThat(scanned).extracting(TransmissionMessage::getTimestamp)
+                       .containsExactly(
+                           T0.plusMillis(600L), T0.plusMillis(660L), T0.plusMillis(720L),
+                           T0.plusMillis(780L), T0.plusMillis(840L), T0.plusMillis(900L),
+                           T0.plusMillis(960L), T0.plusMillis(1_020L), T0.plusMillis(1_080L),
+                           T0.plusMillis(1_140L));
+
+    scanned.clear();
+    archive.scan(scanned::add);
+
+    assertThat(scanned).hasSize(100);
+  }
+
+  @Test
+  void shouldScanMessagesOfSomeAircraftOnly() throws IOException {
+    final List<TransmissionMessage> messages = flights(100);
+    final MessageArchive archive = roundTrip(messages);
+    final List<TransmissionMessage> scanned = new ArrayList<>();
+
+    archive.scan(T0, T0.plusSeconds(60L), icao -> icao == 0x400000 + 3 * 37, scanned::add);
+
+    // Values held as differences from the previous message are decoded correctly for the
+    // messages of one aircraft too
+    //
+    assertThat(scanned).hasSize(13)
+                       .allMatch(message -> message.getIcao() == 0x400000 + 3 * 37);
+    assertThat(scanned.get(1).getPosition()).isEqualTo(messages.get(11).getPosition());
+    assertThat(scanned.get(1).getAltitude()).isEqualTo(messages.get(11).getAltitude());
+  }
+
+  @Test
+  void shouldWriteMessagesAddedOneAtATime() throws IOException {
+    final List<TransmissionMessage> messages = flights(20);
+    final MessageArchive.Writer writer = new MessageArchive.Writer(
+        messages.stream().map(TransmissionMessage::getIcao).collect(Collectors.toList()));
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+    messages.forEach(writer::add);
+
+    assertThatThrownBy(() -> writer.add(messages.get(0)))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> writer.add(new TransmissionMessage.Builder(1, T0.plusSeconds(60L))
+        .build()))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThat(writer.writeTo(outputStream)).isEqualTo(outputStream.size());
+    assertThat(scan(MessageArchive.read(new ByteArrayInputStream(outputStream.toByteArray()))))
+        .extracting(TransmissionMessage::getTimestamp)
+        .containsExactlyElementsOf(
+            messages.stream().map(TransmissionMessage::getTimestamp).collect(Collectors.toList()));
+  }
+
+  @Test
+  void shouldRoundTripEmptyArchive() throws IOException {
+    final MessageArchive archive = roundTrip(new ArrayList<>());
+
+    assertThat(archive.size()).isZero();
+  }
+
+  @Test
+  void shouldRejectStreamThatIsNotAnArchive() {
+    assertThatThrownBy(() -> MessageArchive.read(new ByteArrayInputStream(new byte[16])))
+        .isInstanceOf(IOException.class);
+  }
+}
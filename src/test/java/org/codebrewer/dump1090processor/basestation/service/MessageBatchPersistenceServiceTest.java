@@ -0,0 +1,252 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.codebrewer.dump1090processor.basestation.domain.TransmissionType;
+import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
+import org.codebrewer.dump1090processor.basestation.entity.TransmissionMessage;
+import org.codebrewer.dump1090processor.basestation.repository.BaseStationMessageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.DataIntegrityViolationException;
+
+class MessageBatchPersistenceServiceTest {
+  private BaseStationMessageRepository repository;
+  private MessageBatchPersistenceService persistenceService;
+
+  private List<BaseStationMessage> persistMessages(int count) throws InterruptedException {
+    final List<BaseStationMessage> messages = new ArrayList<>();
+
+    for (int i = 0; i < count; i++) {
+      final BaseStationMessage message = Mockito.mock(BaseStationMessage.class);
+
+      messages.add(message);
+      persistenceService.persist(message);
+    }
+
+    return messages;
+  }
+
+  private void persistTransmissionMessages(int count) throws InterruptedException {
+    for (int i = 0; i < count; i++) {
+      persistenceService.persist(
+          new TransmissionMessage.Builder(i, Instant.parse("2021-01-01T10:00:00Z"))
+              .transmissionType(TransmissionType.AIRBORNE_POSITION)
+              .altitude(39_000.0f)
+              .build());
+    }
+  }
+
+  @BeforeEach
+  void setUp() {
+    repository = Mockito.mock(BaseStationMessageRepository.class);
+    persistenceService = new MessageBatchPersistenceService(
+        repository, 3, 50L, 10, 1, 2, 10L, false, new PipelineMetrics(new SimpleMeterRegistry()));
+  }
+
+  @Test
+  void shouldLimitBatchesToBatchSize() throws InterruptedException {
+    final List<BaseStationMessage> messages = persistMessages(5);
+    final List<BaseStationMessage> batch = new ArrayList<>();
+
+    persistenceService.nextBatch(batch);
+
+    assertThat(batch).containsExactlyElementsOf(messages.subList(0, 3));
+    assertThat(persistenceService.getQueuedMessageCount()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldReturnPartialBatchAfterMaximumLatency() throws InterruptedException {
+    final List<BaseStationMessage> messages = persistMessages(2);
+    final List<BaseStationMessage> batch = new ArrayList<>();
+
+    persistenceService.nextBatch(batch);
+
+    assertThat(batch).containsExactlyElementsOf(messages);
+    assertThat(persistenceService.getQueuedMessageCount()).isZero();
+  }
+
+  @Test
+  void shouldReturnEmptyBatchIfNoMessagesQueued() throws InterruptedException {
+    final List<BaseStationMessage> batch = new ArrayList<>();
+
+    persistenceService.nextBatch(batch);
+
+    assertThat(batch).isEmpty();
+  }
+
+  @Test
+  void shouldCountPersistedBatches() throws InterruptedException {
+    final List<BaseStationMessage> messages = persistMessages(3);
+
+    assertThat(persistenceService.writeBatch(messages.subList(0, 2)))
+        .isEqualTo(MessageBatchPersistenceService.WriteResult.PERSISTED);
+    assertThat(persistenceService.writeBatch(messages.subList(2, 3)))
+        .isEqualTo(MessageBatchPersistenceService.WriteResult.PERSISTED);
+
+    verify(repository, Mockito.times(2)).saveAll(anyIterable());
+    assertThat(persistenceService.getBatchCount()).isEqualTo(2L);
+    assertThat(persistenceService.getPersistedMessageCount()).isEqualTo(3L);
+    assertThat(persistenceService.getFailedMessageCount()).isZero();
+    assertThat(persistenceService.getLastBatchSize()).isEqualTo(1);
+    assertThat(persistenceService.getMeanBatchSize()).isEqualTo(1.5);
+    assertThat(persistenceService.getMaxFlushLatencyMillis())
+        .isGreaterThanOrEqualTo(persistenceService.getLastFlushLatencyMillis());
+  }
+
+  @Test
+  void shouldCountMessagesThatCouldNotBePersisted() throws InterruptedException {
+    when(repository.saveAll(anyIterable())).thenThrow(new IllegalStateException());
+
+    assertThat(persistenceService.writeBatch(persistMessages(2)))
+        .isEqualTo(MessageBatchPersistenceService.WriteResult.FAILED);
+
+    assertThat(persistenceService.getBatchCount()).isEqualTo(1L);
+    assertThat(persistenceService.getPersistedMessageCount()).isZero();
+    assertThat(persistenceService.getFailedMessageCount()).isEqualTo(2L);
+  }
+
+  @Test
+  void shouldReportBatchBreakingConstraintsAsRejected() throws InterruptedException {
+    when(repository.saveAll(anyIterable()))
+        .thenThrow(new DataIntegrityViolationException("NULL not allowed"));
+
+    assertThat(persistenceService.writeBatch(persistMessages(2)))
+        .isEqualTo(MessageBatchPersistenceService.WriteResult.REJECTED);
+    assertThat(persistenceService.getFailedMessageCount()).isEqualTo(2L);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldWriteCopiesOfFailedBatchAgain() throws InterruptedException {
+    final List<List<BaseStationMessage>> writes = new ArrayList<>();
+
+    when(repository.saveAll(anyIterable())).thenAnswer(invocation -> {
+      final List<BaseStationMessage> batch = new ArrayList<>();
+
+      ((Iterable<BaseStationMessage>) invocation.getArgument(0)).forEach(batch::add);
+      writes.add(batch);
+
+      if (writes.size() == 1) {
+        throw new IllegalStateException();
+      }
+
+      return batch;
+    });
+    persistenceService.start();
+    persistTransmissionMessages(2);
+    persistenceService.stop();
+
+    assertThat(writes).hasSize(2);
+    assertThat(writes.get(1)).extracting(BaseStationMessage::getIcao).containsExactly(0, 1);
+    assertThat(writes.get(1)).doesNotContainAnyElementsOf(writes.get(0));
+    assertThat(persistenceService.getPersistedMessageCount()).isEqualTo(2L);
+    assertThat(persistenceService.getFailedMessageCount()).isEqualTo(2L);
+    assertThat(persistenceService.getDroppedMessageCount()).isZero();
+  }
+
+  @Test
+  void shouldDropBatchAfterMaximumAttempts() throws InterruptedException {
+    when(repository.saveAll(anyIterable())).thenThrow(new IllegalStateException());
+    persistenceService.start();
+    persistTransmissionMessages(2);
+    persistenceService.stop();
+
+    verify(repository, Mockito.times(2)).saveAll(anyIterable());
+    assertThat(persistenceService.getPersistedMessageCount()).isZero();
+    assertThat(persistenceService.getDroppedMessageCount()).isEqualTo(2L);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldWriteRejectedBatchOneMessageAtATime() throws InterruptedException {
+    when(repository.saveAll(anyIterable())).thenAnswer(invocation -> {
+      final Iterable<BaseStationMessage> batch = invocation.getArgument(0);
+
+      for (BaseStationMessage message : batch) {
+        if (message.getIcao() == 1) {
+          throw new DataIntegrityViolationException("NULL not allowed");
+        }
+      }
+
+      return batch;
+    });
+    persistenceService.start();
+    persistTransmissionMessages(3);
+    persistenceService.stop();
+
+    // The batch is rejected, then each of its messages is written once on its own
+    //
+    verify(repository, Mockito.times(4)).saveAll(anyIterable());
+    assertThat(persistenceService.getPersistedMessageCount()).isEqualTo(2L);
+    assertThat(persistenceService.getDroppedMessageCount()).isEqualTo(1L);
+  }
+
+  @Test
+  void shouldPersistQueuedMessagesBeforeStopping() throws InterruptedException {
+    persistenceService.start();
+    persistMessages(7);
+    persistenceService.stop();
+
+    verify(repository, timeout(1_000L).atLeast(3)).saveAll(anyIterable());
+    verify(repository, never()).save(Mockito.any());
+    assertThat(persistenceService.getPersistedMessageCount()).isEqualTo(7L);
+    assertThat(persistenceService.getQueuedMessageCount()).isZero();
+  }
+
+  @Test
+  void shouldWriteBatchesConcurrentlyUpToConcurrency() throws InterruptedException {
+    final CountDownLatch writing = new CountDownLatch(2);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    persistenceService = new MessageBatchPersistenceService(
+        repository, 3, 50L, 10, 2, 2, 10L, true, new PipelineMetrics(new SimpleMeterRegistry()));
+    when(repository.saveAll(anyIterable())).thenAnswer(invocation -> {
+      writing.countDown();
+      release.await();
+
+      return invocation.getArgument(0);
+    });
+    persistenceService.start();
+    persistMessages(9);
+
+    assertThat(writing.await(1L, TimeUnit.SECONDS)).isTrue();
+    assertThat(persistenceService.getActiveWriteCount()).isEqualTo(2);
+    assertThat(persistenceService.getWriteConcurrency()).isEqualTo(2);
+
+    release.countDown();
+    persistenceService.stop();
+
+    verify(repository, Mockito.atLeast(3)).saveAll(anyIterable());
+    assertThat(persistenceService.getPersistedMessageCount()).isEqualTo(9L);
+    assertThat(persistenceService.getActiveWriteCount()).isZero();
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import org.codebrewer.dump1090processor.basestation.domain.StatusMessageType;
+import org.codebrewer.dump1090processor.basestation.domain.TransmissionType;
+import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
+import org.codebrewer.dump1090processor.basestation.entity.IdMessage;
+import org.codebrewer.dump1090processor.basestation.entity.NewAircraftMessage;
+import org.codebrewer.dump1090processor.basestation.entity.StatusMessage;
+import org.codebrewer.dump1090processor.basestation.entity.TransmissionMessage;
+import org.codebrewer.dump1090processor.basestation.service.MessageBatchPersistenceService.WriteResult;
+import org.geolatte.geom.G2D;
+import org.geolatte.geom.Point;
+import org.geolatte.geom.crs.CrsRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+class MessageLogServiceTest {
+  private static final Instant T0 = Instant.parse("2021-01-01T10:00:00.123456789Z");
+
+  @TempDir
+  Path directory;
+
+  private MessageBatchPersistenceService persistenceService;
+  private MessageLogService messageLogService;
+
+  private static TransmissionMessage transmissionMessage() {
+    return new TransmissionMessage.Builder(0x4ca2d6, T0)
+        .transmissionType(TransmissionType.AIRBORNE_POSITION)
+        .altitude(39_000.0f)
+        .position(new Point<>(new G2D(-2.75441, 56.37831),
+            CrsRegistry.getGeographicCoordinateReferenceSystemForEPSG(4326)))
+        .squawk((short) 7_000)
+        .onGround(false)
+        .emergency(true)
+        .build();
+  }
+
+  // Opens the log without starting the background threads, so that it is drained only by tests
+  //
+  private void openService() throws IOException {
+    messageLogService = new MessageLogService(
+        persistenceService, directory.toString(), 1_024L, 100L, 2, 60_000L, true);
+    messageLogService.openLog();
+  }
+
+  @BeforeEach
+  void setUp() {
+    persistenceService = Mockito.mock(MessageBatchPersistenceService.class);
+  }
+
+  @AfterEach
+  void tearDown() throws InterruptedException, IOException {
+    if (messageLogService != null) {
+      messageLogService.stop();
+    }
+  }
+
+  @Test
+  void shouldEncodeAndDecodeTransmissionMessage() throws IOException {
+    final TransmissionMessage decoded = (TransmissionMessage)
+        MessageLogService.decode(MessageLogService.encode(transmissionMessage()));
+
+    assertThat(decoded.getIcao()).isEqualTo(0x4ca2d6);
+    assertThat(decoded.getTimestamp()).isEqualTo(T0);
+    assertThat(decoded.getTransmissionType()).isEqualTo(TransmissionType.AIRBORNE_POSITION);
+    assertThat(decoded.getAltitude()).isEqualTo(39_000.0f);
+    assertThat(decoded.getPosition()).isEqualTo(transmissionMessage().getPosition());
+    assertThat(decoded.getSquawk()).isEqualTo((short) 7_000);
+    assertThat(decoded.getOnGround()).isFalse();
+    assertThat(decoded.getEmergency()).isTrue();
+    assertThat(decoded.getAlert()).isNull();
+    assertThat(decoded.getGroundSpeed()).isNull();
+    assertThat(decoded.getCallSign()).isNull();
+  }
+
+  @Test
+  void shouldEncodeAndDecodeOtherMessageTypes() throws IOException {
+    final IdMessage idMessage = (IdMessage) MessageLogService.decode(MessageLogService.encode(
+        new IdMessage.Builder(1, T0).callSign("BAW123").build()));
+    final StatusMessage statusMessage = (StatusMessage) MessageLogService.decode(
+        MessageLogService.encode(new StatusMessage.Builder(2, T0)
+            .statusMessageType(StatusMessageType.RM)
+            .build()));
+    final BaseStationMessage newAircraftMessage = MessageLogService.decode(
+        MessageLogService.encode(new NewAircraftMessage.Builder(3, T0).build()));
+
+    assertThat(idMessage.getCallSign()).isEqualTo("BAW123");
+    assertThat(statusMessage.getIcao()).isEqualTo(2);
+    assertThat(statusMessage.getStatusMessageType()).isEqualTo(StatusMessageType.RM);
+    assertThat(newAircraftMessage).isInstanceOf(NewAircraftMessage.class);
+    assertThat(newAircraftMessage.getTimestamp()).isEqualTo(T0);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldDrainSyncedMessagesInBatchesAndAdvanceCheckpoint()
+      throws IOException, InterruptedException {
+    final ArgumentCaptor<List<BaseStationMessage>> batch = ArgumentCaptor.forClass(List.class);
+
+    openService();
+    when(persistenceService.writeBatch(anyList())).thenReturn(WriteResult.PERSISTED);
+
+    for (int i = 0; i < 3; i++) {
+      messageLogService.append(transmissionMessage());
+    }
+
+    // Nothing is drained before the log has been synced
+    //
+    assertThat(messageLogService.drain()).isZero();
+
+    messageLogService.stop();
+    openService();
+
+    assertThat(messageLogService.getBacklogBytes()).isPositive();
+    assertThat(messageLogService.drain()).isEqualTo(2);
+    assertThat(messageLogService.drain()).isEqualTo(1);
+    assertThat(messageLogService.drain()).isZero();
+    assertThat(messageLogService.getDrainedMessageCount()).isEqualTo(3L);
+    assertThat(messageLogService.getBacklogBytes()).isZero();
+    verify(persistenceService, Mockito.times(2)).writeBatch(batch.capture());
+    assertThat(batch.getAllValues().get(0)).hasSize(2)
+                                           .allMatch(TransmissionMessage.class::isInstance);
+  }
+
+  @Test
+  void shouldKeepMessagesInLogIfBatchCannotBeWritten() throws IOException, InterruptedException {
+    openService();
+    when(persistenceService.writeBatch(anyList())).thenReturn(WriteResult.FAILED);
+    messageLogService.append(transmissionMessage());
+    messageLogService.stop();
+    openService();
+
+    assertThat(messageLogService.drain()).isEqualTo(-1);
+    assertThat(messageLogService.getFailedDrainCount()).isEqualTo(1L);
+    assertThat(messageLogService.getBacklogBytes()).isPositive();
+
+    // Once the database is available again, the same message is written
+    //
+    when(persistenceService.writeBatch(anyList())).thenReturn(WriteResult.PERSISTED);
+
+    assertThat(messageLogService.drain()).isEqualTo(1);
+    assertThat(messageLogService.getBacklogBytes()).isZero();
+  }
+
+  @Test
+  void shouldMoveMessagesRejectedByDatabaseToDeadLetterFile()
+      throws IOException, InterruptedException {
+    openService();
+    messageLogService.append(transmissionMessage());
+    messageLogService.append(transmissionMessage());
+    messageLogService.stop();
+    openService();
+
+    // The batch is rejected, then its first message is written on its own and its second rejected
+    //
+    when(persistenceService.writeBatch(anyList()))
+        .thenReturn(WriteResult.REJECTED, WriteResult.PERSISTED, WriteResult.REJECTED);
+
+    assertThat(messageLogService.drain()).isEqualTo(1);
+    assertThat(messageLogService.getDrainedMessageCount()).isEqualTo(1L);
+    assertThat(messageLogService.getDeadLetterCount()).isEqualTo(1L);
+    assertThat(messageLogService.getFailedDrainCount()).isZero();
+    assertThat(messageLogService.getBacklogBytes()).isZero();
+    assertThat(directory.resolve(MessageLog.DEAD_LETTER_FILE)).exists();
+    verify(persistenceService, Mockito.times(3)).writeBatch(anyList());
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MessageLogTest {
+  @TempDir
+  Path directory;
+
+  private static byte[] record(int i) {
+    return String.format("record-%03d", i).getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static List<String> read(MessageLog messageLog, long offset) throws IOException {
+    final List<byte[]> records = new ArrayList<>();
+    long nextOffset = offset;
+    long previousOffset;
+
+    do {
+      previousOffset = nextOffset;
+      nextOffset = messageLog.read(nextOffset, 100, records);
+    } while (nextOffset != previousOffset);
+
+    return records.stream()
+                  .map(record -> new String(record, StandardCharsets.US_ASCII))
+                  .collect(Collectors.toList());
+  }
+
+  private List<Path> segments() throws IOException {
+    try (Stream<Path> paths = Files.list(directory)) {
+      return paths.filter(path -> path.toString().endsWith(MessageLog.SEGMENT_SUFFIX))
+                  .sorted()
+                  .collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  void shouldReadOnlySyncedRecords() throws IOException {
+    try (MessageLog messageLog = new MessageLog(directory, 1_024L)) {
+      messageLog.append(record(0));
+      messageLog.append(record(1));
+
+      assertThat(read(messageLog, 0L)).isEmpty();
+
+      messageLog.sync();
+
+      assertThat(read(messageLog, 0L)).containsExactly("record-000", "record-001");
+      assertThat(messageLog.getSyncedOffset()).isEqualTo(messageLog.getEndOffset());
+    }
+  }
+
+  @Test
+  void shouldRollSegmentsAndReadAcrossThem() throws IOException {
+    try (MessageLog messageLog = new MessageLog(directory, 64L)) {
+      for (int i = 0; i < 10; i++) {
+        messageLog.append(record(i));
+      }
+
+      messageLog.sync();
+
+      // Each record takes 18 bytes, so 3 fit in a segment
+      //
+      assertThat(messageLog.getSegmentCount()).isEqualTo(4);
+      assertThat(segments()).hasSize(4);
+      assertThat(read(messageLog, 0L)).hasSize(10).startsWith("record-000").endsWith("record-009");
+      assertThat(read(messageLog, 54L)).hasSize(7).startsWith("record-003");
+    }
+  }
+
+  @Test
+  void shouldDeleteSegmentsBeforeCheckpointAndResumeFromIt() throws IOException {
+    try (MessageLog messageLog = new MessageLog(directory, 64L)) {
+      for (int i = 0; i < 10; i++) {
+        messageLog.append(record(i));
+      }
+
+      messageLog.checkpoint(126L);
+
+      assertThat(segments()).hasSize(2);
+    }
+
+    try (MessageLog messageLog = new MessageLog(directory, 64L)) {
+      assertThat(messageLog.getCheckpointOffset()).isEqualTo(126L);
+      assertThat(read(messageLog, messageLog.getCheckpointOffset()))
+          .containsExactly("record-007", "record-008", "record-009");
+
+      messageLog.append(record(10));
+      messageLog.sync();
+
+      assertThat(read(messageLog, 162L)).containsExactly("record-009", "record-010");
+    }
+  }
+
+  @Test
+  void shouldDiscardPartlyWrittenRecordWhenOpened() throws IOException {
+    try (MessageLog messageLog = new MessageLog(directory, 1_024L)) {
+      messageLog.append(record(0));
+      messageLog.append(record(1));
+    }
+
+    // Simulate a failure part way through writing a third record
+    //
+    try (FileChannel channel = FileChannel.open(segments().get(0), StandardOpenOption.APPEND)) {
+      channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 10, 1, 2, 3, 4, 'r', 'e'}));
+    }
+
+    try (MessageLog messageLog = new MessageLog(directory, 1_024L)) {
+      assertThat(messageLog.getEndOffset()).isEqualTo(36L);
+      assertThat(Files.size(segments().get(0))).isEqualTo(36L);
+
+      messageLog.append(record(2));
+      messageLog.sync();
+
+      assertThat(read(messageLog, 0L))
+          .containsExactly("record-000", "record-001", "record-002");
+    }
+  }
+
+  @Test
+  void shouldDiscardRecordWithBadChecksumWhenOpened() throws IOException {
+    try (MessageLog messageLog = new MessageLog(directory, 1_024L)) {
+      messageLog.append(record(0));
+      messageLog.append(record(1));
+    }
+
+    try (FileChannel channel = FileChannel.open(segments().get(0), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {'X'}), 30L);
+    }
+
+    try (MessageLog messageLog = new MessageLog(directory, 1_024L)) {
+      assertThat(read(messageLog, 0L)).containsExactly("record-000");
+    }
+  }
+
+  @Test
+  void shouldMoveRestOfSegmentAfterCorruptRecordToDeadLetterFile() throws IOException {
+    try (MessageLog messageLog = new MessageLog(directory, 1_024L)) {
+      messageLog.append(record(0));
+      messageLog.append(record(1));
+      messageLog.append(record(2));
+      messageLog.sync();
+
+      try (FileChannel channel = FileChannel.open(segments().get(0), StandardOpenOption.WRITE)) {
+        channel.write(ByteBuffer.wrap(new byte[] {'X'}), 30L);
+      }
+
+      // Records before the corrupt one are read, after which it cannot be read past
+      //
+      final List<byte[]> records = new ArrayList<>();
+
+      assertThat(messageLog.read(0L, 100, records)).isEqualTo(18L);
+      assertThat(records).hasSize(1);
+      assertThatThrownBy(() -> messageLog.read(18L, 100, new ArrayList<>()))
+          .isInstanceOfSatisfying(MessageLog.CorruptRecordException.class,
+              e -> assertThat(e.getOffset()).isEqualTo(18L));
+
+      assertThat(messageLog.skipCorruptRecords(18L)).isEqualTo(54L);
+      assertThat(segments()).hasSize(2);
+      assertThat(Files.size(directory.resolve(MessageLog.DEAD_LETTER_FILE))).isEqualTo(12L + 36L);
+
+      messageLog.append(record(3));
+      messageLog.sync();
+
+      assertThat(read(messageLog, 54L)).containsExactly("record-003");
+    }
+  }
+}
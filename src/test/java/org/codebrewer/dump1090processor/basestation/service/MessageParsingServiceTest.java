@@ -115,6 +115,24 @@ class MessageParsingServiceTest {
         .withMessage("Date (2019/05/11) and time () must be provided");
   }
 
+  @Test
+  void shouldThrowIllegalArgumentExceptionIfCsvMessageTextHasInvalidIcaoAddress() {
+    final String csvMessage = getCsvMessageWithDummyTimestamp("AIR,,333,380,4075F,480,%s,%s");
+
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> messageParsingService.parseCsvMessageText(csvMessage))
+        .withMessage("Invalid ICAO address: '4075F'");
+  }
+
+  @Test
+  void shouldReturnMessageWithNonIcaoAddressFromCsvMessageText() {
+    final String csvMessage = getCsvMessageWithDummyTimestamp("AIR,,333,380,~4075FD,480,%s,%s");
+    final BaseStationMessage baseStationMessage =
+        messageParsingService.parseCsvMessageText(csvMessage);
+
+    Assertions.assertThat(baseStationMessage).hasIcaoAddress("~4075FD");
+  }
+
   @Test
   void shouldReturnNewAircraftMessageMessageFromNewAircraftCsvMessageText() {
     final String csvMessage =
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.UUID;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
+import org.codebrewer.dump1090processor.basestation.entity.TransmissionMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+class MessagePartitionServiceTest {
+  private static final Instant T0 = Instant.parse("2021-01-01T10:15:00Z");
+  private static final long DAY_MILLIS = 86_400_000L;
+
+  private JdbcTemplate jdbcTemplate;
+  private EntityManager entityManager;
+  private MessagePartitionService partitionService;
+  private long nextId;
+
+  private void insertMessage(Instant timestamp) {
+    jdbcTemplate.update(
+        "INSERT INTO base_station_message (id, message_type, icao_address, timestamp)"
+            + " VALUES (?, 'MSG', 5022422, ?)",
+        preparedStatement -> {
+          preparedStatement.setLong(1, nextId++);
+          preparedStatement.setTimestamp(
+              2,
+              Timestamp.from(timestamp),
+              Calendar.getInstance(TimeZone.getTimeZone(ZoneOffset.UTC)));
+        });
+  }
+
+  private long headCount() {
+    return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM base_station_message", Long.class);
+  }
+
+  private boolean tableExists(String name) {
+    return jdbcTemplate.queryForObject(
+        "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE LOWER(TABLE_NAME) = ?",
+        Long.class,
+        name) == 1L;
+  }
+
+  private Instant nextPeriod() {
+    return Instant.now().truncatedTo(ChronoUnit.HOURS).plus(1L, ChronoUnit.HOURS);
+  }
+
+  @BeforeEach
+  void setUp() {
+    final MessageBatchPersistenceService persistenceService =
+        Mockito.mock(MessageBatchPersistenceService.class);
+
+    doAnswer(invocation -> {
+      invocation.getArgument(0, Runnable.class).run();
+
+      return null;
+    }).when(persistenceService).runWithWritesPaused(any(Runnable.class));
+    jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+        "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1"));
+    jdbcTemplate.execute(
+        "CREATE TABLE base_station_message (id BIGINT NOT NULL PRIMARY KEY, "
+            + "message_type VARCHAR(3) DEFAULT 'MSG' NOT NULL, icao_address INT NOT NULL, "
+            + "timestamp TIMESTAMP NOT NULL, altitude REAL)");
+    jdbcTemplate.execute(
+        "CREATE INDEX base_station_message_timestamp ON base_station_message (timestamp)");
+    entityManager = Mockito.mock(EntityManager.class);
+    partitionService = new MessagePartitionService(
+        jdbcTemplate, entityManager, persistenceService, ChronoUnit.HOURS, DAY_MILLIS, 60_000L,
+        true);
+    partitionService.start();
+  }
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    partitionService.stop();
+    jdbcTemplate.execute("SHUTDOWN");
+  }
+
+  @Test
+  void shouldNotCloseHeadPartitionBeforeEndOfPeriod() {
+    insertMessage(T0);
+
+    assertThat(partitionService.closeHeadPartition(Instant.now())).isNull();
+    assertThat(headCount()).isEqualTo(1L);
+    assertThat(partitionService.getPartitions()).isEmpty();
+  }
+
+  @Test
+  void shouldMoveMessagesToClosedPartitionAtEndOfPeriod() {
+    final String expectedName =
+        partitionService.partitionName(Instant.now().truncatedTo(ChronoUnit.HOURS));
+
+    insertMessage(T0);
+    insertMessage(T0.plusSeconds(60L));
+
+    assertThat(partitionService.closeHeadPartition(nextPeriod())).isEqualTo(expectedName);
+    assertThat(headCount()).isZero();
+    assertThat(partitionService.getPartitions()).containsExactly(expectedName);
+    assertThat(jdbcTemplate.queryForObject(
+        "SELECT message_count FROM base_station_message_partition", Long.class)).isEqualTo(2L);
+
+    // The new head partition accepts messages with the same identifiers as before
+    //
+    nextId = 0L;
+    insertMessage(T0);
+
+    assertThat(headCount()).isEqualTo(1L);
+  }
+
+  @Test
+  void shouldKeepConstraintsDefaultsAndIndexesOfHeadPartitionWhenClosed() {
+    insertMessage(T0);
+    partitionService.closeHeadPartition(nextPeriod());
+
+    assertThat(jdbcTemplate.queryForList(
+        "SELECT LOWER(COLUMN_NAME) FROM INFORMATION_SCHEMA.COLUMNS"
+            + " WHERE TABLE_NAME = 'BASE_STATION_MESSAGE' AND IS_NULLABLE = 'NO'",
+        String.class)).containsExactlyInAnyOrder("id", "message_type", "icao_address", "timestamp");
+    assertThat(jdbcTemplate.queryForObject(
+        "SELECT COLUMN_DEFAULT FROM INFORMATION_SCHEMA.COLUMNS"
+            + " WHERE TABLE_NAME = 'BASE_STATION_MESSAGE' AND COLUMN_NAME = 'MESSAGE_TYPE'",
+        String.class)).isEqualTo("'MSG'");
+    assertThat(jdbcTemplate.queryForList(
+        "SELECT LOWER(COLUMN_NAME) FROM INFORMATION_SCHEMA.INDEXES"
+            + " WHERE TABLE_NAME = 'BASE_STATION_MESSAGE'",
+        String.class)).containsExactlyInAnyOrder("id", "timestamp");
+    assertThatThrownBy(() -> jdbcTemplate.update(
+        "INSERT INTO base_station_message (id, icao_address) VALUES (1, 1)"))
+        .isInstanceOf(DataIntegrityViolationException.class);
+
+    // A message with the default message type can still be inserted
+    //
+    jdbcTemplate.update(
+        "INSERT INTO base_station_message (id, icao_address, timestamp)"
+            + " VALUES (1, 1, CURRENT_TIMESTAMP)");
+
+    assertThat(jdbcTemplate.queryForObject(
+        "SELECT message_type FROM base_station_message", String.class)).isEqualTo("MSG");
+
+    // Closing the new head partition creates indexes with names of their own
+    //
+    partitionService.closeHeadPartition(nextPeriod().plus(1L, ChronoUnit.HOURS));
+
+    assertThat(headCount()).isZero();
+  }
+
+  @Test
+  void shouldDropEmptyHeadPartitionWhenClosed() {
+    final String name =
+        partitionService.partitionName(Instant.now().truncatedTo(ChronoUnit.HOURS));
+
+    assertThat(partitionService.closeHeadPartition(nextPeriod())).isNull();
+    assertThat(tableExists(name)).isFalse();
+    assertThat(partitionService.getPartitions()).isEmpty();
+  }
+
+  @Test
+  void shouldReadOnlyPartitionsOverlappingTimeRange() {
+    insertMessage(T0);
+    insertMessage(T0.plusSeconds(600L));
+
+    final String closed = partitionService.closeHeadPartition(nextPeriod());
+
+    insertMessage(T0.plus(2L, ChronoUnit.HOURS));
+
+    assertThat(partitionService.partitionsOverlapping(T0, T0.plusSeconds(1L)))
+        .containsExactly(closed, MessagePartitionService.HEAD_TABLE);
+    assertThat(partitionService.partitionsOverlapping(
+        T0.plus(1L, ChronoUnit.HOURS), T0.plus(3L, ChronoUnit.HOURS)))
+        .containsExactly(MessagePartitionService.HEAD_TABLE);
+    assertThat(partitionService.countMessages(T0, T0.plus(3L, ChronoUnit.HOURS))).isEqualTo(3L);
+    assertThat(partitionService.countMessages(T0.plusSeconds(1L), T0.plus(1L, ChronoUnit.HOURS)))
+        .isEqualTo(1L);
+  }
+
+  @Test
+  void shouldFindMessagesAsEntitiesFromOverlappingPartitions() {
+    final Query query = Mockito.mock(Query.class);
+    final ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+
+    insertMessage(T0);
+
+    final String closed = partitionService.closeHeadPartition(nextPeriod());
+
+    when(entityManager.createNativeQuery(anyString(), eq(BaseStationMessage.class)))
+        .thenReturn(query);
+    partitionService.findMessages(T0, T0.plusSeconds(1L));
+
+    verify(entityManager).createNativeQuery(sql.capture(), eq(BaseStationMessage.class));
+    assertThat(sql.getValue()).contains("FROM " + closed + " WHERE")
+                              .contains(" UNION ALL ")
+                              .contains("FROM base_station_message WHERE");
+    verify(query).setParameter(1, T0);
+    verify(query).setParameter(4, T0.plusSeconds(1L));
+  }
+
+  @Test
+  void shouldFindTransmissionMessagesOfClosedPartitionOnly() {
+    final Query query = Mockito.mock(Query.class);
+    final ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+
+    insertMessage(T0);
+
+    final String closed = partitionService.closeHeadPartition(nextPeriod());
+
+    when(entityManager.createNativeQuery(anyString(), eq(TransmissionMessage.class)))
+        .thenReturn(query);
+    partitionService.findTransmissionMessages(closed, null, 100);
+
+    verify(entityManager).createNativeQuery(sql.capture(), eq(TransmissionMessage.class));
+    assertThat(sql.getValue()).contains("FROM " + closed + " WHERE message_type = 'MSG'");
+    verify(query).setMaxResults(100);
+    assertThat(partitionService.findTransmissionIcaos(closed)).containsExactly(5022422);
+    assertThatThrownBy(() -> partitionService.findTransmissionMessages(
+        MessagePartitionService.HEAD_TABLE, null, 100))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(
+        () -> partitionService.findTransmissionIcaos(MessagePartitionService.HEAD_TABLE))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void shouldDropPartitionsOlderThanRetention() {
+    insertMessage(T0);
+
+    final String closed = partitionService.closeHeadPartition(nextPeriod());
+
+    assertThat(partitionService.dropExpiredPartitions(T0.plusMillis(DAY_MILLIS))).isEmpty();
+    assertThat(partitionService.dropExpiredPartitions(T0.plusMillis(DAY_MILLIS + 1L)))
+        .containsExactly(closed);
+    assertThat(tableExists(closed)).isFalse();
+    assertThat(partitionService.getPartitions()).isEmpty();
+    assertThat(partitionService.getDroppedPartitionCount()).isEqualTo(1L);
+  }
+
+  @Test
+  void shouldKeepExpiredPartitionsFailingDropCondition() {
+    insertMessage(T0);
+
+    final String closed = partitionService.closeHeadPartition(nextPeriod());
+
+    partitionService.setDropCondition(partition -> false);
+
+    assertThat(partitionService.dropExpiredPartitions(T0.plusMillis(DAY_MILLIS + 1L))).isEmpty();
+    assertThat(tableExists(closed)).isTrue();
+    assertThat(partitionService.getPartitions()).containsExactly(closed);
+
+    partitionService.setDropCondition(closed::equals);
+
+    assertThat(partitionService.dropExpiredPartitions(T0.plusMillis(DAY_MILLIS + 1L)))
+        .containsExactly(closed);
+    assertThat(tableExists(closed)).isFalse();
+  }
+
+  @Test
+  void shouldNameDailyPartitionsByDay() {
+    final MessagePartitionService dailyService = new MessagePartitionService(
+        jdbcTemplate, entityManager, null, ChronoUnit.DAYS, DAY_MILLIS, 60_000L, true);
+
+    assertThat(dailyService.partitionName(T0.truncatedTo(ChronoUnit.DAYS)))
+        .isEqualTo("base_station_message_p20210101");
+    assertThat(partitionService.partitionName(T0.truncatedTo(ChronoUnit.HOURS)))
+        .isEqualTo("base_station_message_p2021010110");
+  }
+
+  @Test
+  void shouldRejectPeriodOtherThanHoursOrDays() {
+    assertThatThrownBy(
+        () -> new MessagePartitionService(
+            jdbcTemplate, entityManager, null, ChronoUnit.MINUTES, DAY_MILLIS, 60_000L, true))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
@@ -18,21 +18,27 @@ package org.codebrewer.dump1090processor.basestation.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage.INVALID_MESSAGE;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.nio.charset.StandardCharsets;
 import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
 import org.codebrewer.dump1090processor.basestation.entity.IdMessage;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
 
 class MessagePayloadTransformerServiceTest {
   private MessageParsingService parsingService;
+  private ByteMessageParsingService byteParsingService;
   private MessagePayloadTransformerService transformerService;
 
   private BaseStationMessage sendNullMessage() {
@@ -42,7 +48,9 @@ class MessagePayloadTransformerServiceTest {
   @BeforeEach
   void setUp() {
     parsingService = Mockito.mock(MessageParsingService.class);
-    transformerService = new MessagePayloadTransformerService(parsingService);
+    byteParsingService = Mockito.mock(ByteMessageParsingService.class);
+    transformerService = new MessagePayloadTransformerService(
+        parsingService, byteParsingService, new PipelineMetrics(new SimpleMeterRegistry()));
   }
 
   @Test
@@ -50,6 +58,7 @@ class MessagePayloadTransformerServiceTest {
     assertThat(transformerService.getValidMessageCount()).isEqualTo(0L);
     assertThat(sendNullMessage()).isSameAs(INVALID_MESSAGE);
     verifyNoInteractions(parsingService);
+    verifyNoInteractions(byteParsingService);
     assertThat(transformerService.getValidMessageCount()).isEqualTo(0L);
   }
 
@@ -59,13 +68,40 @@ class MessagePayloadTransformerServiceTest {
     final String messageText = "Test message";
     final byte[] messagePayload = messageText.getBytes(StandardCharsets.US_ASCII);
 
-    when(parsingService.parseCsvMessageText(eq(messageText))).thenReturn(baseStationMessage);
+    when(byteParsingService.parseCsvMessageBytes(eq(messagePayload)))
+        .thenReturn(baseStationMessage);
     assertThat(transformerService.getValidMessageCount()).isEqualTo(0L);
     assertThat(transformerService.transformPayload(messagePayload)).isSameAs(baseStationMessage);
-    verify(parsingService, Mockito.times(1)).parseCsvMessageText(eq(messageText));
+    verify(byteParsingService, Mockito.times(1)).parseCsvMessageBytes(eq(messagePayload));
+    verifyNoInteractions(parsingService);
+    assertThat(transformerService.getValidMessageCount()).isEqualTo(1L);
+  }
+
+  @Test
+  void shouldReturnMessageForByteSlicePayload() {
+    final BaseStationMessage baseStationMessage = Mockito.mock(IdMessage.class);
+    final byte[] bytes = "\r\nTest message\r\n".getBytes(StandardCharsets.US_ASCII);
+    final ByteSlice messagePayload = new ByteSlice(bytes, 2, 12);
+
+    when(byteParsingService.parseCsvMessageBytes(same(bytes), eq(2), eq(12)))
+        .thenReturn(baseStationMessage);
+    assertThat(transformerService.transformPayload(messagePayload)).isSameAs(baseStationMessage);
+    verify(byteParsingService, Mockito.times(1)).parseCsvMessageBytes(same(bytes), eq(2), eq(12));
+    verifyNoInteractions(parsingService);
     assertThat(transformerService.getValidMessageCount()).isEqualTo(1L);
   }
 
+  @Test
+  void shouldReturnInvalidMessageConstantWhenByteParsingServiceThrowsException() {
+    final byte[] messagePayload = "Test message".getBytes(StandardCharsets.US_ASCII);
+
+    when(byteParsingService.parseCsvMessageBytes(any(byte[].class)))
+        .thenThrow(IllegalArgumentException.class);
+    assertThat(transformerService.transformPayload(messagePayload)).isSameAs(INVALID_MESSAGE);
+    verify(byteParsingService, Mockito.times(1)).parseCsvMessageBytes(eq(messagePayload));
+    assertThat(transformerService.getValidMessageCount()).isEqualTo(0L);
+  }
+
   @Test
   void shouldReturnMessageForCharArrayPayload() {
     final BaseStationMessage baseStationMessage = Mockito.mock(IdMessage.class);
@@ -94,7 +130,8 @@ class MessagePayloadTransformerServiceTest {
     final String messageText = "Test message";
     final byte[] messagePayload = messageText.getBytes(StandardCharsets.US_ASCII);
 
-    when(parsingService.parseCsvMessageText(eq(messageText))).thenReturn(baseStationMessage);
+    when(byteParsingService.parseCsvMessageBytes(eq(messagePayload)))
+        .thenReturn(baseStationMessage);
     assertThat(transformerService.getValidMessageCount()).isEqualTo(0L);
     sendNullMessage();
     sendNullMessage();
@@ -105,4 +142,21 @@ class MessagePayloadTransformerServiceTest {
     sendNullMessage();
     assertThat(transformerService.getValidMessageCount()).isEqualTo(3L);
   }
+
+  @Test
+  void shouldStampMessageWithTimesReceivedAndParsed() {
+    final byte[] messagePayload = ("MSG,3,1,1,4CA2D6,1,2021/01/01,12:00:00.000,2021/01/01,"
+        + "12:00:00.000,,39000,,,56.37831,-2.75441,,,0,0,0,0").getBytes(StandardCharsets.US_ASCII);
+    final BaseStationMessage baseStationMessage =
+        new ByteMessageParsingService().parseCsvMessageBytes(messagePayload);
+    final Message<byte[]> message = MessageBuilder.withPayload(messagePayload).build();
+
+    when(byteParsingService.parseCsvMessageBytes(eq(messagePayload)))
+        .thenReturn(baseStationMessage);
+    assertThat(transformerService.transform(message).getPayload()).isSameAs(baseStationMessage);
+    assertThat(baseStationMessage.getReceivedMillis())
+        .isEqualTo(message.getHeaders().getTimestamp());
+    assertThat(baseStationMessage.getParsedMillis())
+        .isGreaterThanOrEqualTo(baseStationMessage.getReceivedMillis());
+  }
 }
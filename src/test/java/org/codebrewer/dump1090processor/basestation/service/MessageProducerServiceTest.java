@@ -19,6 +19,7 @@ package org.codebrewer.dump1090processor.basestation.service;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.integration.ip.tcp.TcpReceivingChannelAdapter;
@@ -30,7 +31,9 @@ class MessageProducerServiceTest {
   @Test
   void shouldCreateTcpReceivingChannelAdapter() {
     final MessageProducerService messageProducerService =
-        new MessageProducerService("localhost", 5000, false);
+        new MessageProducerService(
+            "localhost", 5000, false, 1000L, 60000L, 2.0, 0.5, 60000L, false,
+            new PipelineMetrics(new SimpleMeterRegistry()));
 
     assertNotNull(messageProducerService.tcpMessageClient());
   }
@@ -38,7 +41,9 @@ class MessageProducerServiceTest {
   @Test
   void shouldStartAndStop() {
     final MessageProducerService messageProducerService =
-        new MessageProducerService("localhost", 5000, false);
+        new MessageProducerService(
+            "localhost", 5000, false, 1000L, 60000L, 2.0, 0.5, 60000L, false,
+            new PipelineMetrics(new SimpleMeterRegistry()));
     final AbstractServerConnectionFactory connectionFactory = new TcpNetServerConnectionFactory(0);
     final TcpReceivingChannelAdapter adapter = messageProducerService.tcpMessageClient();
     final ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
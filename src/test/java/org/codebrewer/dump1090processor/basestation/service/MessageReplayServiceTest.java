@@ -0,0 +1,132 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.messaging.Message;
+
+class MessageReplayServiceTest {
+  private static final String[] MESSAGE_TEXTS = {
+      "MSG,5,111,11111,4CA2D6,111111,2020/01/01,00:00:00.000,2020/01/01,00:00:00.000,,8375,,,,,,,0,,0,0",
+      "MSG,8,111,11111,400981,111111,2020/01/01,00:00:01.000,2020/01/01,00:00:01.000,,,,,,,,,,,,0",
+      "MSG,7,111,11111,48C22B,111111,2020/01/01,00:00:02.000,2020/01/01,00:00:02.000,,16475,,,,,,,,,,0"
+  };
+
+  @TempDir
+  Path tempDir;
+
+  private static byte[] captureBytes() {
+    return (MESSAGE_TEXTS[0] + "\r\n" + MESSAGE_TEXTS[1] + "\r\n\r\n" + MESSAGE_TEXTS[2])
+        .getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static List<String> replay(MessageReplayProducer producer) throws InterruptedException {
+    final QueueChannel outputChannel = new QueueChannel();
+    final List<String> messageTexts = new ArrayList<>();
+
+    producer.setOutputChannel(outputChannel);
+    producer.afterPropertiesSet();
+    producer.start();
+
+    while (producer.isReplaying()) {
+      Thread.sleep(10L);
+    }
+
+    Message<?> message;
+
+    while ((message = outputChannel.receive(0L)) != null) {
+      messageTexts.add(new String((byte[]) message.getPayload(), StandardCharsets.US_ASCII));
+    }
+
+    producer.stop();
+
+    return messageTexts;
+  }
+
+  @Test
+  void shouldReplayCaptureFileAsFastAsPossible() throws IOException, InterruptedException {
+    final Path captureFile = Files.write(tempDir.resolve("capture.txt"), captureBytes());
+    final MessageReplayProducer producer = new MessageReplayProducer(captureFile, 0.0);
+
+    assertThat(replay(producer)).containsExactly(MESSAGE_TEXTS);
+    assertThat(producer.getReplayedMessageCount()).isEqualTo(MESSAGE_TEXTS.length);
+    assertThat(producer.getLastSendRate()).isPositive();
+  }
+
+  @Test
+  void shouldReplayLinesSpanningMappedRegions() throws IOException, InterruptedException {
+    final Path captureFile = Files.write(tempDir.resolve("capture.txt"), captureBytes());
+
+    assertThat(replay(new MessageReplayProducer(captureFile, 0.0, 128)))
+        .containsExactly(MESSAGE_TEXTS);
+  }
+
+  @Test
+  void shouldReplayCompressedCaptureFile() throws IOException, InterruptedException {
+    final Path captureFile = tempDir.resolve("capture.gz");
+
+    try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(captureFile))) {
+      outputStream.write(captureBytes());
+    }
+
+    assertThat(replay(new MessageReplayProducer(captureFile, 0.0)))
+        .containsExactly(MESSAGE_TEXTS);
+  }
+
+  @Test
+  void shouldReplayAtMultipleOfOriginalSpeed() throws IOException, InterruptedException {
+    final Path captureFile = Files.write(tempDir.resolve("capture.txt"), captureBytes());
+    final long startMillis = System.currentTimeMillis();
+
+    assertThat(replay(new MessageReplayProducer(captureFile, 10.0)))
+        .containsExactly(MESSAGE_TEXTS);
+    assertThat(System.currentTimeMillis() - startMillis).isGreaterThanOrEqualTo(200L);
+  }
+
+  @Test
+  void shouldNotStartWithoutCaptureFile() {
+    final MessageReplayService messageReplayService = new MessageReplayService("", 1.0, true);
+
+    assertThat(messageReplayService.replayMessageClient().isAutoStartup()).isFalse();
+    messageReplayService.start();
+    assertThat(messageReplayService.isRunning()).isFalse();
+    assertThat(messageReplayService.getReplayedMessageCount()).isZero();
+  }
+
+  @Test
+  void shouldSetSpeed() {
+    final MessageReplayService messageReplayService =
+        new MessageReplayService("capture.txt", 1.0, false);
+
+    messageReplayService.setSpeed(0.0);
+
+    assertThat(messageReplayService.getSpeed()).isZero();
+    assertThat(messageReplayService.replayMessageClient().isAutoStartup()).isFalse();
+  }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.time.Instant;
+import org.codebrewer.dump1090processor.basestation.domain.TransmissionType;
+import org.codebrewer.dump1090processor.basestation.entity.TransmissionMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ModeSDecoderTest {
+  private static final Instant NOW = Instant.parse("2021-02-01T12:00:00Z");
+  private static final int ICAO_ADDRESS = 0x4ca2d6;
+
+  private ModeSDecoder decoder;
+
+  static byte[] bytes(String hex) {
+    final byte[] bytes = new byte[hex.length() / 2];
+
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+    }
+
+    return bytes;
+  }
+
+  // Builds a short reply whose 13 bit field follows the downlink format and flight status, with
+  // the address overlaid on its parity
+  //
+  private static byte[] surveillanceReply(int downlinkFormat, int flightStatus, int field) {
+    final byte[] message = new byte[7];
+    final int word = downlinkFormat << 27 | flightStatus << 24 | field;
+
+    for (int i = 0; i < 4; i++) {
+      message[i] = (byte) (word >>> 24 - 8 * i);
+    }
+
+    final int addressParity = ModeSDecoder.parity(message, 0, message.length) ^ ICAO_ADDRESS;
+
+    for (int i = 0; i < 3; i++) {
+      message[4 + i] = (byte) (addressParity >>> 16 - 8 * i);
+    }
+
+    return message;
+  }
+
+  private static byte[] allCallReply(int icaoAddress) {
+    final byte[] message = new byte[7];
+    final int word = 11 << 27 | 5 << 24 | icaoAddress;
+
+    for (int i = 0; i < 4; i++) {
+      message[i] = (byte) (word >>> 24 - 8 * i);
+    }
+
+    final int parity = ModeSDecoder.parity(message, 0, message.length);
+
+    for (int i = 0; i < 3; i++) {
+      message[4 + i] = (byte) (parity >>> 16 - 8 * i);
+    }
+
+    return message;
+  }
+
+  private TransmissionMessage decode(String hex, Instant timestamp) {
+    final byte[] message = bytes(hex);
+
+    return decoder.decode(message, 0, message.length, timestamp);
+  }
+
+  private TransmissionMessage decode(byte[] message) {
+    return decoder.decode(message, 0, message.length, NOW);
+  }
+
+  @BeforeEach
+  void setUp() {
+    decoder = new ModeSDecoder();
+  }
+
+  @Test
+  void shouldDecodeIdentification() {
+    final TransmissionMessage message = decode("8D4840D6202CC371C32CE0576098", NOW);
+
+    assertThat(message.getTransmissionType())
+        .isEqualTo(TransmissionType.IDENTIFICATION_AND_CATEGORY);
+    assertThat(message.getIcaoAddress()).isEqualTo("4840D6");
+    assertThat(message.getCallSign()).isEqualTo("KLM1023");
+    assertThat(message.getTimestamp()).isEqualTo(NOW);
+  }
+
+  @Test
+  void shouldDecodeAirbornePositionFromEvenAndOddPositions() {
+    final TransmissionMessage odd = decode("8D40621D58C386435CC412692AD6", NOW);
+    final TransmissionMessage even =
+        decode("8D40621D58C382D690C8AC2863A7", NOW.plusSeconds(2L));
+
+    assertThat(odd.getTransmissionType()).isEqualTo(TransmissionType.AIRBORNE_POSITION);
+    assertThat(odd.getAltitude()).isEqualTo(38000.0f);
+    assertThat(odd.getPosition()).isNull();
+    assertThat(even.getAltitude()).isEqualTo(38000.0f);
+    assertThat(even.getOnGround()).isFalse();
+    assertThat(even.getPosition().getPosition().getLat()).isCloseTo(52.25720, within(1e-5));
+    assertThat(even.getPosition().getPosition().getLon()).isCloseTo(3.91937, within(1e-5));
+  }
+
+  @Test
+  void shouldNotPairPositionsTooFarApartInTime() {
+    decode("8D40621D58C386435CC412692AD6", NOW);
+
+    final TransmissionMessage even = decode(
+        "8D40621D58C382D690C8AC2863A7", NOW.plusMillis(ModeSDecoder.CPR_PAIR_MILLIS + 1L));
+
+    assertThat(even.getPosition()).isNull();
+  }
+
+  @Test
+  void shouldDecodeAirbornePositionRelativeToReceiver() {
+    decoder = new ModeSDecoder(52.258, 3.918);
+
+    final TransmissionMessage even = decode("8D40621D58C382D690C8AC2863A7", NOW);
+
+    assertThat(even.getPosition().getPosition().getLat()).isCloseTo(52.25720, within(1e-5));
+    assertThat(even.getPosition().getPosition().getLon()).isCloseTo(3.91937, within(1e-5));
+  }
+
+  @Test
+  void shouldDecodeAirbornePositionRelativeToLastPosition() {
+    decode("8D40621D58C382D690C8AC2863A7", NOW);
+    decode("8D40621D58C386435CC412692AD6", NOW.plusSeconds(1L));
+
+    // Too long after the even position to pair with it, but close enough to the decoded position
+    //
+    final TransmissionMessage odd = decode(
+        "8D40621D58C386435CC412692AD6", NOW.plusMillis(ModeSDecoder.CPR_PAIR_MILLIS + 1000L));
+
+    assertThat(odd.getPosition().getPosition().getLat()).isCloseTo(52.26578, within(1e-5));
+    assertThat(odd.getPosition().getPosition().getLon()).isCloseTo(3.93891, within(1e-5));
+  }
+
+  @Test
+  void shouldDecodeSurfacePositionRelativeToReceiver() {
+    decoder = new ModeSDecoder(51.990, 4.375);
+
+    final TransmissionMessage surface = decode("8C4841753A9A153237AEF0F275BE", NOW);
+
+    assertThat(surface.getTransmissionType()).isEqualTo(TransmissionType.SURFACE_POSITION);
+    assertThat(surface.getOnGround()).isTrue();
+    assertThat(surface.getGroundSpeed()).isEqualTo(17.0f);
+    assertThat(surface.getTrack()).isCloseTo(92.8f, within(0.1f));
+    assertThat(surface.getPosition().getPosition().getLat()).isCloseTo(52.32056, within(1e-5));
+    assertThat(surface.getPosition().getPosition().getLon()).isCloseTo(4.73574, within(1e-5));
+  }
+
+  @Test
+  void shouldNotDecodeSurfacePositionWithoutReference() {
+    assertThat(decode("8C4841753A9A153237AEF0F275BE", NOW).getPosition()).isNull();
+  }
+
+  @Test
+  void shouldDecodeAirborneVelocity() {
+    final TransmissionMessage groundSpeed = decode("8D485020994409940838175B284F", NOW);
+    final TransmissionMessage airspeed = decode("8DA05F219B06B6AF189400CBC33F", NOW);
+
+    assertThat(groundSpeed.getTransmissionType()).isEqualTo(TransmissionType.AIRBORNE_VELOCITY);
+    assertThat(groundSpeed.getGroundSpeed()).isCloseTo(159.20f, within(0.01f));
+    assertThat(groundSpeed.getTrack()).isCloseTo(182.88f, within(0.01f));
+    assertThat(groundSpeed.getVerticalRate()).isEqualTo((short) -832);
+    assertThat(airspeed.getGroundSpeed()).isNull();
+    assertThat(airspeed.getVerticalRate()).isEqualTo((short) -2304);
+  }
+
+  @Test
+  void shouldRejectMessageFailingParityCheck() {
+    final byte[] message = bytes("8D4840D6202CC371C32CE0576098");
+
+    message[5] ^= 0x10;
+
+    assertThat(decoder.decode(message, 0, message.length, NOW)).isNull();
+  }
+
+  @Test
+  void shouldDecodeRepliesOnlyFromKnownAircraft() {
+    // The Q bit is set and the remaining bits give 1560 25ft increments above -1000ft
+    //
+    final byte[] altitudeReply = surveillanceReply(4, 0, 0x1838);
+
+    assertThat(decode(altitudeReply)).isNull();
+
+    final TransmissionMessage allCallReply = decode(allCallReply(ICAO_ADDRESS));
+
+    assertThat(allCallReply.getTransmissionType()).isEqualTo(TransmissionType.ALL_CALL_REPLY);
+    assertThat(allCallReply.getOnGround()).isFalse();
+
+    final TransmissionMessage altitude = decode(altitudeReply);
+
+    assertThat(altitude.getTransmissionType()).isEqualTo(TransmissionType.SURVEILLANCE_ALTITUDE);
+    assertThat(altitude.getIcao()).isEqualTo(ICAO_ADDRESS);
+    assertThat(altitude.getAltitude()).isEqualTo(38000.0f);
+    assertThat(altitude.getOnGround()).isFalse();
+    assertThat(altitude.getAlert()).isFalse();
+  }
+
+  @Test
+  void shouldDecodeSquawk() {
+    decode(allCallReply(ICAO_ADDRESS));
+
+    final TransmissionMessage emergency = decode(surveillanceReply(5, 2, 0x0aaa));
+    final TransmissionMessage conspicuity = decode(surveillanceReply(5, 1, 0x0808));
+
+    assertThat(emergency.getTransmissionType()).isEqualTo(TransmissionType.SURVEILLANCE_ID);
+    assertThat(emergency.getSquawk()).isEqualTo((short) 7700);
+    assertThat(emergency.getEmergency()).isTrue();
+    assertThat(emergency.getAlert()).isTrue();
+    assertThat(conspicuity.getSquawk()).isEqualTo((short) 1200);
+    assertThat(conspicuity.getEmergency()).isFalse();
+    assertThat(conspicuity.getOnGround()).isTrue();
+  }
+
+  @Test
+  void shouldDecodeGrayCodedAltitude() {
+    decode(allCallReply(ICAO_ADDRESS));
+
+    // The Gillham code having only C2, B1 and B2 set is 1000ft
+    //
+    final TransmissionMessage altitude = decode(surveillanceReply(0, 0, 0x0428));
+
+    assertThat(altitude.getTransmissionType()).isEqualTo(TransmissionType.AIR_TO_AIR);
+    assertThat(altitude.getAltitude()).isEqualTo(1000.0f);
+  }
+
+  @Test
+  void shouldCountLongitudeZones() {
+    assertThat(ModeSDecoder.longitudeZones(0.0)).isEqualTo(59);
+    assertThat(ModeSDecoder.longitudeZones(52.25720)).isEqualTo(36);
+    assertThat(ModeSDecoder.longitudeZones(-87.0)).isEqualTo(2);
+    assertThat(ModeSDecoder.longitudeZones(88.0)).isEqualTo(1);
+  }
+}
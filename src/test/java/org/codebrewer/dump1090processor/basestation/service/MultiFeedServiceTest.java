@@ -0,0 +1,170 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.net.InetSocketAddress;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import org.codebrewer.dump1090processor.basestation.simulator.FeedSimulatorService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.messaging.Message;
+
+class MultiFeedServiceTest {
+  private final FeedSimulatorService[] simulators = new FeedSimulatorService[2];
+  private MultiFeedService multiFeedService;
+
+  private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+    for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+      Thread.sleep(10L);
+    }
+
+    assertThat(condition.getAsBoolean()).isTrue();
+  }
+
+  @AfterEach
+  void tearDown() {
+    if (multiFeedService != null) {
+      multiFeedService.multiFeedMessageClient().stop();
+    }
+
+    for (FeedSimulatorService simulator : simulators) {
+      if (simulator != null) {
+        simulator.stop();
+      }
+    }
+  }
+
+  @Test
+  void shouldParseReceivers() {
+    final Map<String, InetSocketAddress> receivers =
+        MultiFeedService.parseReceivers(" north=rx1.local:30103, south = 192.168.0.36 ,");
+
+    assertThat(receivers).containsOnlyKeys("north", "south");
+    assertThat(receivers.get("north").getHostString()).isEqualTo("rx1.local");
+    assertThat(receivers.get("north").getPort()).isEqualTo(30103);
+    assertThat(receivers.get("south").getHostString()).isEqualTo("192.168.0.36");
+    assertThat(receivers.get("south").getPort()).isEqualTo(30003);
+    assertThat(MultiFeedService.parseReceivers("")).isEmpty();
+  }
+
+  @Test
+  void shouldRejectInvalidReceivers() {
+    assertThatThrownBy(() -> MultiFeedService.parseReceivers("rx1.local:30003"))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> MultiFeedService.parseReceivers("north=rx1.local:port"))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> MultiFeedService.parseReceivers("north=rx1,north=rx2"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void shouldReadFeedsOfManyReceiversOnOneSelector() throws InterruptedException {
+    final QueueChannel outputChannel = new QueueChannel();
+    final Set<Object> feedIds = new HashSet<>();
+
+    for (int i = 0; i < simulators.length; i++) {
+      simulators[i] = new FeedSimulatorService(0, 10, 2000, i, 51.4775, -0.4614, false);
+      simulators[i].start();
+    }
+
+    multiFeedService = new MultiFeedService(
+        "north=localhost:" + simulators[0].getPort() + ",south=localhost:"
+            + simulators[1].getPort(),
+        1,
+        100L,
+        false);
+
+    final MultiFeedMessageProducer producer = multiFeedService.multiFeedMessageClient();
+
+    assertThat(producer.isAutoStartup()).isFalse();
+    producer.setOutputChannel(outputChannel);
+    producer.afterPropertiesSet();
+    multiFeedService.startFeed("north");
+    multiFeedService.startFeed("south");
+    awaitCondition(() -> multiFeedService.getConnectedFeedCount() == 2);
+
+    for (int i = 0; i < 1000 && feedIds.size() < 2; i++) {
+      final Message<?> message = outputChannel.receive(1000L);
+
+      assertThat(message).isNotNull();
+      assertThat(message.getPayload()).isInstanceOf(byte[].class);
+      feedIds.add(message.getHeaders().get(MultiFeedMessageProducer.FEED_ID_HEADER));
+    }
+
+    assertThat(feedIds).containsExactlyInAnyOrder("north", "south");
+
+    multiFeedService.stopFeed("north");
+    awaitCondition(() -> !multiFeedService.isFeedRunning("north"));
+
+    assertThat(multiFeedService.isFeedRunning("south")).isTrue();
+    assertThat(multiFeedService.getFeedMessageCount("south")).isPositive();
+    assertThat(multiFeedService.getFeedIds()).containsExactly("north", "south");
+  }
+
+  @Test
+  void shouldKeepFeedConnectedWhenMessagesFailDownstream() throws InterruptedException {
+    simulators[0] = new FeedSimulatorService(0, 10, 2000, 0L, 51.4775, -0.4614, false);
+    simulators[0].start();
+    multiFeedService =
+        new MultiFeedService("north=localhost:" + simulators[0].getPort(), 1, 100L, false);
+
+    final MultiFeedMessageProducer producer = multiFeedService.multiFeedMessageClient();
+
+    producer.setOutputChannel((message, timeout) -> {
+      throw new IllegalStateException("Downstream failure");
+    });
+    producer.afterPropertiesSet();
+    multiFeedService.startFeed("north");
+    awaitCondition(() -> multiFeedService.getFeedFailedMessageCount("north") > 1);
+
+    assertThat(multiFeedService.isFeedRunning("north")).isTrue();
+    assertThat(multiFeedService.getFeedMessageCount("north")).isZero();
+  }
+
+  @Test
+  void shouldReconnectToFeedWhenReceiverRestarts() throws InterruptedException {
+    final QueueChannel outputChannel = new QueueChannel();
+
+    simulators[0] = new FeedSimulatorService(0, 10, 1000, 0L, 51.4775, -0.4614, false);
+    simulators[0].start();
+
+    final int port = simulators[0].getPort();
+
+    multiFeedService = new MultiFeedService("north=localhost:" + port, 2, 100L, true);
+
+    final MultiFeedMessageProducer producer = multiFeedService.multiFeedMessageClient();
+
+    producer.setOutputChannel(outputChannel);
+    producer.afterPropertiesSet();
+    producer.start();
+    awaitCondition(() -> multiFeedService.isFeedRunning("north"));
+
+    simulators[0].stop();
+    awaitCondition(() -> !multiFeedService.isFeedRunning("north"));
+
+    simulators[0] = new FeedSimulatorService(port, 10, 1000, 0L, 51.4775, -0.4614, false);
+    simulators[0].start();
+    awaitCondition(() -> multiFeedService.isFeedRunning("north"));
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.TimeUnit;
+import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PipelineMetricsTest {
+  private static final String POSITION_MESSAGE =
+      "MSG,3,1,1,4CA2D6,1,2021/01/01,12:00:00.000,2021/01/01,12:00:00.000,,39000,,,"
+          + "56.37831,-2.75441,,,0,0,0,0";
+  private static final String NEW_AIRCRAFT_MESSAGE =
+      "AIR,,1,1,4CA2D6,1,2021/01/01,12:00:00.000,2021/01/01,12:00:00.000";
+
+  private SimpleMeterRegistry meterRegistry;
+  private PipelineMetrics pipelineMetrics;
+
+  private static BaseStationMessage parse(String messageText) {
+    return new MessageParsingService().parseCsvMessageText(messageText);
+  }
+
+  private Counter messageCounter(String type, String transmission) {
+    return meterRegistry.find(PipelineMetrics.MESSAGE_COUNTER_NAME)
+                        .tag("type", type)
+                        .tag("transmission", transmission)
+                        .counter();
+  }
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    pipelineMetrics = new PipelineMetrics(meterRegistry);
+  }
+
+  @Test
+  void shouldRegisterTimerForEachStage() {
+    for (PipelineMetrics.Stage stage : PipelineMetrics.Stage.values()) {
+      assertThat(meterRegistry.find(PipelineMetrics.STAGE_TIMER_NAME)
+                              .tag("stage", stage.name().toLowerCase())
+                              .timer())
+          .isSameAs(pipelineMetrics.getStageTimer(stage));
+    }
+  }
+
+  @Test
+  void shouldRecordTimeTakenByStage() {
+    final long startNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5L);
+
+    pipelineMetrics.recordStage(PipelineMetrics.Stage.PARSE, startNanos);
+
+    final Timer timer = pipelineMetrics.getStageTimer(PipelineMetrics.Stage.PARSE);
+
+    assertThat(timer.count()).isEqualTo(1L);
+    assertThat(timer.totalTime(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(5.0);
+    assertThat(pipelineMetrics.getStageTimer(PipelineMetrics.Stage.PERSIST).count()).isZero();
+  }
+
+  @Test
+  void shouldCountMessagesByMessageTypeAndTransmissionType() {
+    pipelineMetrics.countMessage(parse(POSITION_MESSAGE));
+    pipelineMetrics.countMessage(parse(POSITION_MESSAGE));
+    pipelineMetrics.countMessage(parse(NEW_AIRCRAFT_MESSAGE));
+
+    assertThat(messageCounter("MSG", "AIRBORNE_POSITION").count()).isEqualTo(2.0);
+    assertThat(messageCounter("AIR", "NONE").count()).isEqualTo(1.0);
+    assertThat(messageCounter("MSG", "AIRBORNE_VELOCITY")).isNull();
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.codebrewer.dump1090processor.basestation.service.SupervisedTcpReceivingChannelAdapter.backoffDelayMillis;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BooleanSupplier;
+import org.codebrewer.dump1090processor.basestation.service.SupervisedTcpReceivingChannelAdapter.FeedState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.ip.tcp.connection.TcpNetClientConnectionFactory;
+import org.springframework.messaging.Message;
+
+class SupervisedTcpReceivingChannelAdapterTest {
+  private ServerSocket serverSocket;
+  private SupervisedTcpReceivingChannelAdapter adapter;
+
+  private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+    for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+      Thread.sleep(10L);
+    }
+
+    assertThat(condition.getAsBoolean()).isTrue();
+  }
+
+  @BeforeEach
+  void setUp() throws IOException {
+    serverSocket = new ServerSocket(0);
+    serverSocket.setSoTimeout(5000);
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    if (adapter != null) {
+      adapter.stop();
+    }
+
+    serverSocket.close();
+  }
+
+  private QueueChannel startAdapter(long stallTimeoutMillis) {
+    final TcpNetClientConnectionFactory connectionFactory =
+        new TcpNetClientConnectionFactory("localhost", serverSocket.getLocalPort());
+    final QueueChannel outputChannel = new QueueChannel();
+
+    connectionFactory.setSingleUse(false);
+    connectionFactory.setDeserializer(new ByteSliceLineDeserializer());
+    adapter = new SupervisedTcpReceivingChannelAdapter(50L, 200L, 2.0, 0.5, stallTimeoutMillis);
+    adapter.setConnectionFactory(connectionFactory);
+    adapter.setOutputChannel(outputChannel);
+    adapter.start();
+
+    return outputChannel;
+  }
+
+  @Test
+  void shouldGrowBackoffDelayToMaximum() {
+    assertThat(backoffDelayMillis(0, 1000L, 60000L, 2.0, 0.0, 0.9)).isEqualTo(1000L);
+    assertThat(backoffDelayMillis(3, 1000L, 60000L, 2.0, 0.0, 0.9)).isEqualTo(8000L);
+    assertThat(backoffDelayMillis(10, 1000L, 60000L, 2.0, 0.0, 0.9)).isEqualTo(60000L);
+  }
+
+  @Test
+  void shouldReduceBackoffDelayByJitter() {
+    assertThat(backoffDelayMillis(2, 1000L, 60000L, 2.0, 0.5, 0.0)).isEqualTo(4000L);
+    assertThat(backoffDelayMillis(2, 1000L, 60000L, 2.0, 0.5, 0.5)).isEqualTo(3000L);
+    assertThat(backoffDelayMillis(2, 1000L, 60000L, 2.0, 1.0, 0.5)).isEqualTo(2000L);
+  }
+
+  @Test
+  void shouldRejectInvalidBackoff() {
+    assertThatThrownBy(() -> new SupervisedTcpReceivingChannelAdapter(0L, 1000L, 2.0, 0.5, 0L))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> new SupervisedTcpReceivingChannelAdapter(1000L, 500L, 2.0, 0.5, 0L))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> new SupervisedTcpReceivingChannelAdapter(1000L, 5000L, 0.5, 0.5, 0L))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> new SupervisedTcpReceivingChannelAdapter(1000L, 5000L, 2.0, 1.5, 0L))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void shouldReconnectWhenFeedIsClosed() throws IOException, InterruptedException {
+    final QueueChannel outputChannel = startAdapter(0L);
+
+    try (Socket socket = serverSocket.accept()) {
+      final OutputStream outputStream = socket.getOutputStream();
+
+      outputStream.write("MSG,8,1,1,4CA2D6,1\r\n".getBytes(StandardCharsets.US_ASCII));
+      outputStream.flush();
+
+      final Message<?> message = outputChannel.receive(5000L);
+
+      assertThat(message).isNotNull();
+      assertThat(message.getPayload()).hasToString("MSG,8,1,1,4CA2D6,1");
+      assertThat(adapter.getFeedState()).isEqualTo(FeedState.CONNECTED);
+      assertThat(adapter.getConnectAttemptCount()).isEqualTo(1L);
+      assertThat(adapter.getLastByteAgeMillis()).isNotNegative();
+    }
+
+    final Socket reconnected = serverSocket.accept();
+
+    try {
+      awaitCondition(() -> adapter.getFeedState() == FeedState.CONNECTED);
+
+      assertThat(adapter.getConnectAttemptCount()).isEqualTo(2L);
+      assertThat(adapter.getUptimeMillis()).isNotNegative();
+    } finally {
+      reconnected.close();
+    }
+
+    adapter.stop();
+    awaitCondition(() -> adapter.getFeedState() == FeedState.STOPPED);
+
+    assertThat(adapter.getUptimeMillis()).isZero();
+  }
+
+  @Test
+  void shouldReconnectWhenFeedStalls() throws IOException, InterruptedException {
+    startAdapter(200L);
+
+    try (Socket first = serverSocket.accept()) {
+      assertThat(first.getInputStream().read()).isEqualTo(-1);
+    }
+
+    final Socket second = serverSocket.accept();
+
+    try {
+      awaitCondition(() -> adapter.getConnectAttemptCount() == 2L);
+    } finally {
+      second.close();
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatNullPointerException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import org.junit.jupiter.api.Test;
+
+class TimestampDecoderTest {
+  private static final ZoneId LONDON = ZoneId.of("Europe/London");
+  private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy/MM/dd");
+  private static final DateTimeFormatter TIME_FORMATTER =
+      DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
+  private static Instant decodeBytes(TimestampDecoder decoder, String date, String time) {
+    final byte[] bytes = (" " + date + "," + time + " ").getBytes(StandardCharsets.US_ASCII);
+
+    return decoder.decode(bytes, 1, 1 + date.length(), 2 + date.length(), bytes.length - 1);
+  }
+
+  // Checks that every minute (and a few seconds either side of each hour) of a day decodes to the
+  // same instant that java.time gives
+  //
+  private static void assertDecodesDayLikeJavaTime(ZoneId zoneId, LocalDate date) {
+    final TimestampDecoder decoder = new TimestampDecoder(zoneId);
+    final String dateToken = DATE_FORMATTER.format(date);
+
+    for (int secondOfDay = 0; secondOfDay < 86_400; secondOfDay++) {
+      final int secondOfHour = secondOfDay % 3_600;
+
+      if (secondOfDay % 60 != 0 && secondOfHour > 2 && secondOfHour < 3_597) {
+        continue;
+      }
+
+      final LocalDateTime localDateTime =
+          date.atStartOfDay().plusSeconds(secondOfDay).plusNanos(123_000_000);
+      final String timeToken = TIME_FORMATTER.format(localDateTime);
+      final Instant expected = localDateTime.atZone(zoneId).toInstant();
+
+      assertThat(decoder.decode(dateToken, timeToken))
+          .as("%s %s in %s", dateToken, timeToken, zoneId)
+          .isEqualTo(expected);
+      assertThat(decodeBytes(decoder, dateToken, timeToken))
+          .as("%s %s in %s", dateToken, timeToken, zoneId)
+          .isEqualTo(expected);
+    }
+  }
+
+  @Test
+  void shouldThrowIfZoneIdIsNull() {
+    assertThatNullPointerException().isThrownBy(() -> new TimestampDecoder(null));
+  }
+
+  @Test
+  void shouldDecodeDayWithoutTransitionLikeJavaTime() {
+    assertDecodesDayLikeJavaTime(LONDON, LocalDate.of(2020, 6, 21));
+    assertDecodesDayLikeJavaTime(ZoneId.of("UTC"), LocalDate.of(2020, 2, 29));
+    assertDecodesDayLikeJavaTime(ZoneId.of("Asia/Kolkata"), LocalDate.of(2020, 12, 31));
+  }
+
+  @Test
+  void shouldDecodeDayWithDaylightSavingGapLikeJavaTime() {
+    assertDecodesDayLikeJavaTime(LONDON, LocalDate.of(2020, 3, 29));
+  }
+
+  @Test
+  void shouldDecodeDayWithDaylightSavingOverlapLikeJavaTime() {
+    assertDecodesDayLikeJavaTime(LONDON, LocalDate.of(2020, 10, 25));
+  }
+
+  @Test
+  void shouldDecodeDaysWithTransitionAtMidnightLikeJavaTime() {
+    // Clocks in Sao Paulo went forward from midnight on 2018-11-04 and back to midnight at the
+    // end of 2019-02-16
+    //
+    final ZoneId saoPaulo = ZoneId.of("America/Sao_Paulo");
+
+    assertDecodesDayLikeJavaTime(saoPaulo, LocalDate.of(2018, 11, 3));
+    assertDecodesDayLikeJavaTime(saoPaulo, LocalDate.of(2018, 11, 4));
+    assertDecodesDayLikeJavaTime(saoPaulo, LocalDate.of(2019, 2, 16));
+    assertDecodesDayLikeJavaTime(saoPaulo, LocalDate.of(2019, 2, 17));
+  }
+
+  @Test
+  void shouldDecodeTimestampsEitherSideOfMidnight() {
+    final TimestampDecoder decoder = new TimestampDecoder(LONDON);
+
+    // Messages arriving out of order around midnight alternate between dates
+    //
+    for (int i = 0; i < 3; i++) {
+      assertThat(decoder.decode("2020/12/31", "23:59:59.999"))
+          .isEqualTo(Instant.parse("2020-12-31T23:59:59.999Z"));
+      assertThat(decoder.decode("2021/01/01", "00:00:00.000"))
+          .isEqualTo(Instant.parse("2021-01-01T00:00:00Z"));
+    }
+
+    assertThat(decoder.decode("2021/01/02", "00:00:00"))
+        .isEqualTo(Instant.parse("2021-01-02T00:00:00Z"));
+    assertThat(decoder.decode("2020/12/31", "23:59:59.999"))
+        .isEqualTo(Instant.parse("2020-12-31T23:59:59.999Z"));
+  }
+
+  @Test
+  void shouldTruncateFractionOfSecondAfterThreeDecimals() {
+    final TimestampDecoder decoder = new TimestampDecoder(LONDON);
+
+    assertThat(decoder.decode("2017/12/23", "16:01:15.4"))
+        .isEqualTo(Instant.parse("2017-12-23T16:01:15.400Z"));
+    assertThat(decoder.decode("2017/12/23", "16:01:15.42"))
+        .isEqualTo(Instant.parse("2017-12-23T16:01:15.420Z"));
+    assertThat(decoder.decode("2017/12/23", "16:01:15.4294967295"))
+        .isEqualTo(Instant.parse("2017-12-23T16:01:15.429Z"));
+    assertThat(decodeBytes(decoder, "2017/12/23", "16:01:15.4294967295"))
+        .isEqualTo(Instant.parse("2017-12-23T16:01:15.429Z"));
+  }
+
+  @Test
+  void shouldReturnNullForUnexpectedForms() {
+    final TimestampDecoder decoder = new TimestampDecoder(LONDON);
+
+    assertThat(decoder.decode("2020-06-21", "12:00:00.000")).isNull();
+    assertThat(decoder.decode("2020/6/21", "12:00:00.000")).isNull();
+    assertThat(decoder.decode("2020/06/21", "12:00")).isNull();
+    assertThat(decoder.decode("2020/06/21", "12:00:00.")).isNull();
+    assertThat(decoder.decode("2020/06/21", "12:00:00,000")).isNull();
+    assertThat(decoder.decode("2020/06/21", "12:00:0x.000")).isNull();
+    assertThat(decoder.decode("2020/06/21", "12:00:00.0x0")).isNull();
+    assertThat(decodeBytes(decoder, "2020/06/21", "12:00")).isNull();
+  }
+
+  @Test
+  void shouldReturnNullForInvalidDatesAndTimes() {
+    final TimestampDecoder decoder = new TimestampDecoder(LONDON);
+
+    // Cache the date that some invalid dates might be confused with
+    //
+    assertThat(decoder.decode("2019/03/30", "12:00:00.000")).isNotNull();
+
+    assertThat(decoder.decode("2019/02/29", "12:00:00.000")).isNull();
+    assertThat(decoder.decode("2019/04/31", "12:00:00.000")).isNull();
+    assertThat(decoder.decode("2019/13/01", "12:00:00.000")).isNull();
+    assertThat(decoder.decode("2019/00/01", "12:00:00.000")).isNull();
+    assertThat(decoder.decode("2019/03/00", "12:00:00.000")).isNull();
+    assertThat(decoder.decode("0000/03/30", "12:00:00.000")).isNull();
+    assertThat(decoder.decode("2019/03/30", "24:00:00.000")).isNull();
+    assertThat(decoder.decode("2019/03/30", "12:60:00.000")).isNull();
+    assertThat(decoder.decode("2019/03/30", "12:00:60.000")).isNull();
+  }
+}
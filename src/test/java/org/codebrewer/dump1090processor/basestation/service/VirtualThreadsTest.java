@@ -0,0 +1,69 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+class VirtualThreadsTest {
+  private static boolean isVirtual(Thread thread) {
+    try {
+      return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+    } catch (ReflectiveOperationException e) {
+      return false;
+    }
+  }
+
+  @Test
+  void shouldCreateNamedPlatformThreads() {
+    final ThreadFactory threadFactory = VirtualThreads.threadFactory("reader-", false);
+    final Thread first = threadFactory.newThread(() -> { });
+    final Thread second = threadFactory.newThread(() -> { });
+
+    assertThat(first.getName()).isEqualTo("reader-0");
+    assertThat(second.getName()).isEqualTo("reader-1");
+    assertThat(first.isDaemon()).isTrue();
+    assertThat(isVirtual(first)).isFalse();
+  }
+
+  @Test
+  void shouldCreateVirtualThreadsIfSupported() {
+    final Thread thread = VirtualThreads.threadFactory("writer-", true).newThread(() -> { });
+
+    assertThat(thread.getName()).isEqualTo("writer-0");
+    assertThat(isVirtual(thread)).isEqualTo(VirtualThreads.isAvailable());
+  }
+
+  @Test
+  void shouldRunEachTaskOnNewThread() throws InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(1);
+    final AtomicReference<String> threadName = new AtomicReference<>();
+
+    VirtualThreads.threadPerTaskExecutor("task-", true).execute(() -> {
+      threadName.set(Thread.currentThread().getName());
+      latch.countDown();
+    });
+
+    assertThat(latch.await(1L, TimeUnit.SECONDS)).isTrue();
+    assertThat(threadName.get()).isEqualTo("task-0");
+  }
+}
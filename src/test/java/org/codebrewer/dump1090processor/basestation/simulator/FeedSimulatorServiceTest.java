@@ -0,0 +1,78 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.simulator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class FeedSimulatorServiceTest {
+  private FeedSimulatorService feedSimulatorService;
+
+  @BeforeEach
+  void setUp() {
+    feedSimulatorService = new FeedSimulatorService(0, 10, 0, 1090L, 51.4775, -0.4614, false);
+  }
+
+  @AfterEach
+  void tearDown() {
+    feedSimulatorService.stop();
+  }
+
+  @Test
+  void shouldServeSimulatedMessagesToClient() throws IOException {
+    assertThat(feedSimulatorService.isRunning()).isFalse();
+    feedSimulatorService.start();
+    assertThat(feedSimulatorService.isRunning()).isTrue();
+
+    try (Socket socket =
+        new Socket(InetAddress.getLoopbackAddress(), feedSimulatorService.getPort())) {
+      final BufferedReader reader = new BufferedReader(
+          new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+
+      for (int i = 0; i < 1000; i++) {
+        assertThat(reader.readLine()).matches("(AIR|ID|MSG|STA),.*");
+      }
+    }
+
+    assertThat(feedSimulatorService.getSentMessageCount()).isGreaterThanOrEqualTo(1000L);
+  }
+
+  @Test
+  void shouldStopServing() {
+    feedSimulatorService.start();
+    feedSimulatorService.stop();
+
+    assertThat(feedSimulatorService.isRunning()).isFalse();
+    assertThat(feedSimulatorService.getClientCount()).isZero();
+  }
+
+  @Test
+  void shouldSetRate() {
+    feedSimulatorService.setRate(100_000);
+
+    assertThat(feedSimulatorService.getRate()).isEqualTo(100_000);
+  }
+}
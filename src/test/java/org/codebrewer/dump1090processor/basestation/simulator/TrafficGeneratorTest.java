@@ -0,0 +1,90 @@
+/*
+ * Copyright 2021 Mark Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codebrewer.dump1090processor.basestation.simulator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import org.codebrewer.dump1090processor.basestation.domain.MessageType;
+import org.codebrewer.dump1090processor.basestation.domain.TransmissionType;
+import org.codebrewer.dump1090processor.basestation.entity.BaseStationMessage;
+import org.codebrewer.dump1090processor.basestation.entity.TransmissionMessage;
+import org.codebrewer.dump1090processor.basestation.service.MessageParsingService;
+import org.junit.jupiter.api.Test;
+
+class TrafficGeneratorTest {
+  private static final long START_MILLIS = 1_600_000_000_000L;
+  private static final double LATITUDE = 51.4775;
+  private static final double LONGITUDE = -0.4614;
+
+  private static List<String> generate(long seed, int aircraftCount, int messageCount) {
+    final TrafficGenerator trafficGenerator =
+        new TrafficGenerator(aircraftCount, seed, ZoneId.of("UTC"), LATITUDE, LONGITUDE);
+    final byte[] buffer = new byte[TrafficGenerator.MAX_MESSAGE_LENGTH];
+    final List<String> messageTexts = new ArrayList<>(messageCount);
+
+    for (int i = 0; i < messageCount; i++) {
+      final int length = trafficGenerator.writeMessage(buffer, 0, START_MILLIS + i * 10L);
+
+      assertThat(buffer[length - 2]).isEqualTo((byte) '\r');
+      assertThat(buffer[length - 1]).isEqualTo((byte) '\n');
+      messageTexts.add(new String(buffer, 0, length - 2, StandardCharsets.US_ASCII));
+    }
+
+    return messageTexts;
+  }
+
+  @Test
+  void shouldGenerateParseableMessagesOfEveryType() {
+    final MessageParsingService messageParsingService = new MessageParsingService();
+    final Set<MessageType> messageTypes = EnumSet.noneOf(MessageType.class);
+    final Set<TransmissionType> transmissionTypes = EnumSet.noneOf(TransmissionType.class);
+
+    for (String messageText : generate(1090L, 20, 100_000)) {
+      final BaseStationMessage message = messageParsingService.parseCsvMessageText(messageText);
+
+      assertThat(message).as(messageText).isNotNull();
+      messageTypes.add(MessageType.valueOf(messageText.substring(0, messageText.indexOf(','))));
+
+      if (message instanceof TransmissionMessage) {
+        final TransmissionMessage transmissionMessage = (TransmissionMessage) message;
+
+        transmissionTypes.add(transmissionMessage.getTransmissionType());
+
+        if (transmissionMessage.getPosition() != null) {
+          assertThat(transmissionMessage.getPosition().getPosition().getLat())
+              .isBetween(LATITUDE - 5.0, LATITUDE + 5.0);
+        }
+      }
+    }
+
+    assertThat(messageTypes)
+        .containsExactlyInAnyOrder(MessageType.AIR, MessageType.ID, MessageType.MSG, MessageType.STA);
+    assertThat(transmissionTypes).containsExactlyInAnyOrder(TransmissionType.values());
+  }
+
+  @Test
+  void shouldGenerateSameMessagesFromSameSeed() {
+    assertThat(generate(42L, 10, 1000)).isEqualTo(generate(42L, 10, 1000))
+                                       .isNotEqualTo(generate(43L, 10, 1000));
+  }
+}